@@ -4,4 +4,11 @@ plugins {
     alias(libs.plugins.kotlin.android) apply false
     alias(libs.plugins.kotlin.compose) apply false
     alias(libs.plugins.google.gms.google.services) apply false
-}
\ No newline at end of file
+}
+// Screen load regression suite (ScreenLoadRegressionTest) on a connected device or emulator.
+// Needs the Firestore emulator on the host: firebase emulators:exec --only firestore "./gradlew screenLoadTest"
+tasks.register("screenLoadTest") {
+    group = "verification"
+    description = "Runs the screen load regression test against the Firestore emulator."
+    dependsOn(":app:connectedDebugAndroidTest")
+}
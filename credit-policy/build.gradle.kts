@@ -0,0 +1,14 @@
+// Plain-Java rules shared by the Android app and the ledger server (no Android or server APIs in here).
+plugins {
+    `java-library`
+}
+
+java {
+    // Must stay consumable by the app's Android toolchain
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
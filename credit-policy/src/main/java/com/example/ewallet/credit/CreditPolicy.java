@@ -0,0 +1,79 @@
+package com.example.ewallet.credit;
+
+/**
+ * Loan limit derived from running aggregates of an account's history, in O(1): the aggregates are maintained
+ * incrementally on every transaction write (see CreditProfile in the app), so no history is ever re-scanned.
+ *   base        - INFLOW_MULTIPLE x average monthly inflow (income and received transfers; loans excluded)
+ *   volatility  - scaled down by the standard deviation of individual cash flows relative to that inflow
+ *   timeliness  - scaled by how long a borrowed cent stays outstanding on average (quick repayers get more)
+ * Accounts younger than SEASONING_MONTHS or with fewer than SEASONING_FLOWS flows keep the default limit.
+ * Lives in its own plain-Java module shared by the app (TakeLoanFragment) and the ledger server's CreditLimitBatch,
+ * so both always agree on a limit.
+ */
+public final class CreditPolicy {
+
+    public static final long DEFAULT_LIMIT_CENTS = 100_000L; // 1000.00, every new account's loanLimit
+    public static final long MIN_LIMIT_CENTS = 10_000L;    // 100.00
+    public static final long MAX_LIMIT_CENTS = 1_000_000L; // 10,000.00
+
+    static final int SEASONING_MONTHS = 3;
+    static final int SEASONING_FLOWS = 10;
+    static final double INFLOW_MULTIPLE = 1.5;
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final long MONTH_MS = 30L * DAY_MS;
+    private static final long ROUNDING_CENTS = 1_000L; // Limits move in steps of 10.00
+
+    /**
+     * The aggregates of one account, as stored on users/{uid}.
+     */
+    public static final class Features {
+        public long sinceMs;          // Start of the account's credit history
+        public long inflowCents;      // Total income and received transfers
+        public long flowCount;        // Number of cash flows (every transaction)
+        public long flowSumCents;     // Sum of signed flows
+        public double flowSumSqCents; // Sum of squared flows (cents^2)
+        public double loanCentMs;     // Principal cents x milliseconds outstanding, up to loanSinceMs
+        public long repaidCents;      // Principal repaid in total
+        public long principalCents;   // Principal outstanding now
+        public long loanSinceMs;      // Last change of the principal (loanAccruedAt)
+    }
+
+    private CreditPolicy() {
+        // Static helpers only
+    }
+
+    public static long limitCents(Features f, long nowMs) {
+        long ageMs = Math.max(0L, nowMs - f.sinceMs);
+        if (ageMs < SEASONING_MONTHS * MONTH_MS || f.flowCount < SEASONING_FLOWS) {
+            return DEFAULT_LIMIT_CENTS;
+        }
+
+        double monthlyInflow = f.inflowCents / (ageMs / (double) MONTH_MS);
+        double limit = INFLOW_MULTIPLE * monthlyInflow * volatilityFactor(f, monthlyInflow) * timelinessFactor(f, nowMs);
+
+        long rounded = (long) (limit / ROUNDING_CENTS) * ROUNDING_CENTS;
+        return Math.max(MIN_LIMIT_CENTS, Math.min(MAX_LIMIT_CENTS, rounded));
+    }
+
+    // 1.0 for steady accounts, down to 0.5 when single flows swing as much as a month's inflow or more
+    static double volatilityFactor(Features f, double monthlyInflow) {
+        double mean = f.flowSumCents / (double) f.flowCount;
+        double variance = Math.max(0.0, f.flowSumSqCents / f.flowCount - mean * mean);
+        double relative = Math.sqrt(variance) / Math.max(monthlyInflow, 1.0);
+        return Math.max(0.5, 1.0 / (1.0 + relative));
+    }
+
+    // 1.2 if borrowed money comes back within a month on average, 1.0 within a quarter, then down to 0.5 at a year
+    static double timelinessFactor(Features f, long nowMs) {
+        long borrowed = f.repaidCents + f.principalCents;
+        if (borrowed <= 0L) return 1.0; // Never borrowed
+
+        // The outstanding principal keeps counting until now, so not repaying lowers the factor over time
+        double centMs = f.loanCentMs + f.principalCents * (double) Math.max(0L, nowMs - f.loanSinceMs);
+        double averageDays = centMs / borrowed / DAY_MS;
+        if (averageDays <= 30) return 1.2;
+        if (averageDays <= 90) return 1.0;
+        return Math.max(0.5, 1.0 - (averageDays - 90) / 550.0);
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.ewallet.credit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The limit rules on hand-built aggregates: seasoning, the inflow multiple with rounding and clamping, and the
+ * volatility and timeliness factors.
+ */
+public class CreditPolicyTest {
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final long MONTH_MS = 30L * DAY_MS;
+    private static final long NOW = 1_700_000_000_000L;
+    private static final double DELTA = 1e-9;
+
+    // Six months of history: two identical paychecks of 'paycheckCents' a month, never borrowed
+    private static CreditPolicy.Features steadyEarner(long paycheckCents) {
+        CreditPolicy.Features f = new CreditPolicy.Features();
+        f.sinceMs = NOW - 6 * MONTH_MS;
+        f.flowCount = 12;
+        f.inflowCents = 12 * paycheckCents;
+        f.flowSumCents = 12 * paycheckCents;
+        f.flowSumSqCents = 12 * (double) paycheckCents * paycheckCents;
+        f.loanSinceMs = NOW;
+        return f;
+    }
+
+    @Test
+    public void newAccountsKeepTheDefaultLimit() {
+        CreditPolicy.Features young = steadyEarner(100_000L);
+        young.sinceMs = NOW - 2 * MONTH_MS;
+        assertEquals(CreditPolicy.DEFAULT_LIMIT_CENTS, CreditPolicy.limitCents(young, NOW));
+
+        CreditPolicy.Features quiet = steadyEarner(100_000L);
+        quiet.flowCount = CreditPolicy.SEASONING_FLOWS - 1;
+        assertEquals(CreditPolicy.DEFAULT_LIMIT_CENTS, CreditPolicy.limitCents(quiet, NOW));
+    }
+
+    @Test
+    public void limitIsAMultipleOfMonthlyInflow() {
+        // 2000.00 a month x 1.5
+        assertEquals(300_000L, CreditPolicy.limitCents(steadyEarner(100_000L), NOW));
+    }
+
+    @Test
+    public void limitIsRoundedDownAndClamped() {
+        // 1.5 x 2 x 333.33 = 999.99 a month, rounded down to 990.00
+        assertEquals(99_000L, CreditPolicy.limitCents(steadyEarner(33_333L), NOW));
+        assertEquals(CreditPolicy.MIN_LIMIT_CENTS, CreditPolicy.limitCents(steadyEarner(1_000L), NOW));
+        assertEquals(CreditPolicy.MAX_LIMIT_CENTS, CreditPolicy.limitCents(steadyEarner(10_000_000L), NOW));
+    }
+
+    @Test
+    public void volatileFlowsLowerTheLimit() {
+        CreditPolicy.Features f = steadyEarner(100_000L);
+        assertEquals(1.0, CreditPolicy.volatilityFactor(f, 200_000.0), DELTA);
+
+        // Flows of +/- 200_000: the standard deviation equals the monthly inflow
+        f.flowSumCents = 0L;
+        f.flowSumSqCents = 12 * 200_000.0 * 200_000.0;
+        assertEquals(0.5, CreditPolicy.volatilityFactor(f, 200_000.0), DELTA);
+
+        // Half the monthly inflow
+        f.flowSumSqCents = 12 * 100_000.0 * 100_000.0;
+        assertEquals(1.0 / 1.5, CreditPolicy.volatilityFactor(f, 200_000.0), DELTA);
+    }
+
+    @Test
+    public void quickRepayersGetMore() {
+        CreditPolicy.Features f = steadyEarner(100_000L);
+        f.repaidCents = 100_000L;
+        f.loanCentMs = 100_000.0 * 10 * DAY_MS; // Repaid after 10 days
+
+        assertEquals(1.2, CreditPolicy.timelinessFactor(f, NOW), DELTA);
+        assertEquals(360_000L, CreditPolicy.limitCents(f, NOW));
+    }
+
+    @Test
+    public void slowRepayersGetLess() {
+        CreditPolicy.Features f = steadyEarner(100_000L);
+        f.repaidCents = 100_000L;
+
+        f.loanCentMs = 100_000.0 * 60 * DAY_MS;
+        assertEquals(1.0, CreditPolicy.timelinessFactor(f, NOW), DELTA);
+
+        f.loanCentMs = 100_000.0 * 365 * DAY_MS;
+        assertEquals(0.5, CreditPolicy.timelinessFactor(f, NOW), DELTA);
+    }
+
+    @Test
+    public void outstandingPrincipalKeepsCountingUntilNow() {
+        CreditPolicy.Features f = steadyEarner(100_000L);
+        f.principalCents = 100_000L;
+        f.loanSinceMs = NOW - 200 * DAY_MS;
+
+        // 200 days outstanding: 1.0 - (200 - 90) / 550
+        assertEquals(0.8, CreditPolicy.timelinessFactor(f, NOW), DELTA);
+        assertEquals(240_000L, CreditPolicy.limitCents(f, NOW));
+    }
+
+    @Test
+    public void neverBorrowedIsNeutral() {
+        assertEquals(1.0, CreditPolicy.timelinessFactor(steadyEarner(100_000L), NOW), DELTA);
+    }
+}
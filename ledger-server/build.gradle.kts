@@ -0,0 +1,18 @@
+// JVM ledger service (sequencer, journal, partitions, batch jobs and benchmarks). Not part of the app/APK.
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_17
+    targetCompatibility = JavaVersion.VERSION_17
+}
+
+application {
+    mainClass.set("com.example.ewallet.ledger.LedgerHttpServer")
+}
+
+dependencies {
+    implementation(project(":credit-policy"))
+    testImplementation(libs.junit)
+}
@@ -0,0 +1,202 @@
+package com.example.ewallet.ledger;
+
+import com.example.ewallet.credit.CreditPolicy;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The wallet's business rules applied to an AccountStore, in the same order the app checks them:
+ * signup credits the $100.00 bonus with a $1000.00 loan limit, transfers need funds on the sender,
+ * loans must fit in (loanLimit - loanTaken) and repayments may not exceed the loan or the balance.
+ * For cross-partition transfers it also keeps two-phase holds: a reserved debit lowers the sender's available
+ * balance without touching the stored balance until COMMIT; ABORT simply drops the hold.
+ * COMMIT carries the account and signed amount of the logged decision, so it still applies after a restart lost the
+ * holds; AppliedCommits makes a re-driven COMMIT a no-op, including one cut off by a crash mid-commit.
+ * Invalid input is a LedgerResult, never an exception: apply() runs on the sequencer thread.
+ * Not thread-safe: only the sequencer thread calls apply().
+ */
+public class AccountBook {
+
+    public static final long SIGNUP_BONUS_CENTS = 10_000L;        // balance: 100.00
+    public static final long DEFAULT_LOAN_LIMIT_CENTS = CreditPolicy.DEFAULT_LIMIT_CENTS; // loanLimit: 1000.00
+
+    private final AccountStore store;
+    private final AppliedCommits appliedCommits;
+
+    // Two-phase holds by transaction id, and the total reserved per account
+    private final Map<Long, Hold> holds = new HashMap<>();
+    private final Map<String, Long> heldByUid = new HashMap<>();
+
+    private static final class Hold {
+        final String uid;
+        final long deltaCents; // Negative for a reserved debit, positive for a prepared credit
+
+        Hold(String uid, long deltaCents) {
+            this.uid = uid;
+            this.deltaCents = deltaCents;
+        }
+    }
+
+    public AccountBook(AccountStore store) {
+        this(store, inMemoryCommits());
+    }
+
+    public AccountBook(AccountStore store, AppliedCommits appliedCommits) {
+        this.store = store;
+        this.appliedCommits = appliedCommits;
+        appliedCommits.resolve(store); // A COMMIT cut off by a crash, before anything else touches the store
+    }
+
+    private static AppliedCommits inMemoryCommits() {
+        try {
+            return new AppliedCommits(null);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Never thrown without a file
+        }
+    }
+
+    public AccountStore store() {
+        return store;
+    }
+
+    public AppliedCommits appliedCommits() {
+        return appliedCommits;
+    }
+
+    public LedgerResult apply(LedgerOp op, String uid, String counterpartyUid, String userId, long amountCents) {
+        return apply(op, uid, counterpartyUid, userId, amountCents, 0L);
+    }
+
+    public LedgerResult apply(LedgerOp op, String uid, String counterpartyUid, String userId,
+                              long amountCents, long txId) {
+        switch (op) {
+            case SIGNUP:
+                return signup(uid, userId);
+            case TRANSFER:
+                return transfer(uid, counterpartyUid, amountCents);
+            case TAKE_LOAN:
+                return takeLoan(uid, amountCents);
+            case REPAY_LOAN:
+                return repayLoan(uid, amountCents);
+            case RESERVE_DEBIT:
+                return reserveDebit(txId, uid, amountCents);
+            case PREPARE_CREDIT:
+                return prepareCredit(txId, uid, amountCents);
+            case COMMIT:
+                return commit(txId, uid, amountCents);
+            case ABORT:
+                release(holds.remove(txId)); // Unknown (never prepared / already aborted) is a no-op
+                return LedgerResult.OK;
+            case QUERY:
+            default:
+                return store.find(uid) >= 0 ? LedgerResult.OK : LedgerResult.UNKNOWN_ACCOUNT;
+        }
+    }
+
+    // Validated here rather than left to the store, whose exceptions would reach the sequencer thread
+    private LedgerResult signup(String uid, String userId) {
+        if (!store.accepts(uid, userId)) return LedgerResult.INVALID_ACCOUNT;
+        if (store.find(uid) >= 0) return LedgerResult.DUPLICATE_ACCOUNT;
+        if (store.isFull()) return LedgerResult.STORE_FULL;
+        store.create(uid, userId, SIGNUP_BONUS_CENTS, DEFAULT_LOAN_LIMIT_CENTS);
+        return LedgerResult.OK;
+    }
+
+    private LedgerResult transfer(String fromUid, String toUid, long cents) {
+        if (cents <= 0) return LedgerResult.INVALID_AMOUNT;
+        if (fromUid.equals(toUid)) return LedgerResult.SAME_ACCOUNT;
+
+        int from = store.find(fromUid);
+        int to = store.find(toUid);
+        if (from < 0 || to < 0) return LedgerResult.UNKNOWN_ACCOUNT;
+        if (available(fromUid, from) < cents) return LedgerResult.INSUFFICIENT_FUNDS;
+
+        store.setBalance(from, store.balance(from) - cents);
+        store.setBalance(to, store.balance(to) + cents);
+        return LedgerResult.OK;
+    }
+
+    private LedgerResult takeLoan(String uid, long cents) {
+        if (cents <= 0) return LedgerResult.INVALID_AMOUNT;
+
+        int slot = store.find(uid);
+        if (slot < 0) return LedgerResult.UNKNOWN_ACCOUNT;
+        if (cents > store.loanLimit(slot) - store.loanTaken(slot)) return LedgerResult.LOAN_LIMIT_EXCEEDED;
+
+        store.setBalance(slot, store.balance(slot) + cents);
+        store.setLoanTaken(slot, store.loanTaken(slot) + cents);
+        return LedgerResult.OK;
+    }
+
+    private LedgerResult repayLoan(String uid, long cents) {
+        if (cents <= 0) return LedgerResult.INVALID_AMOUNT;
+
+        int slot = store.find(uid);
+        if (slot < 0) return LedgerResult.UNKNOWN_ACCOUNT;
+        if (cents > store.loanTaken(slot)) return LedgerResult.REPAYMENT_EXCEEDS_LOAN;
+        if (cents > available(uid, slot)) return LedgerResult.INSUFFICIENT_FUNDS;
+
+        store.setBalance(slot, store.balance(slot) - cents);
+        store.setLoanTaken(slot, store.loanTaken(slot) - cents);
+        return LedgerResult.OK;
+    }
+
+    // --- Two-phase participant ---
+
+    // Balance minus anything reserved by in-flight cross-partition transfers
+    public long available(String uid, int slot) {
+        Long held = heldByUid.get(uid);
+        return store.balance(slot) - (held != null ? held : 0L);
+    }
+
+    private LedgerResult reserveDebit(long txId, String uid, long cents) {
+        if (cents <= 0) return LedgerResult.INVALID_AMOUNT;
+        if (holds.containsKey(txId)) return LedgerResult.OK; // Duplicate prepare
+
+        int slot = store.find(uid);
+        if (slot < 0) return LedgerResult.UNKNOWN_ACCOUNT;
+        if (available(uid, slot) < cents) return LedgerResult.INSUFFICIENT_FUNDS;
+
+        holds.put(txId, new Hold(uid, -cents));
+        Long held = heldByUid.get(uid);
+        heldByUid.put(uid, (held != null ? held : 0L) + cents);
+        return LedgerResult.OK;
+    }
+
+    private LedgerResult prepareCredit(long txId, String uid, long cents) {
+        if (cents <= 0) return LedgerResult.INVALID_AMOUNT;
+        if (store.find(uid) < 0) return LedgerResult.UNKNOWN_ACCOUNT;
+        holds.put(txId, new Hold(uid, cents));
+        return LedgerResult.OK;
+    }
+
+    // 'deltaCents' is the logged decision's signed amount for 'uid' (negative for the sender). The hold is only
+    // released here: after a restart there is none, and the decision alone is enough to apply the commit.
+    private LedgerResult commit(long txId, String uid, long deltaCents) {
+        Hold hold = holds.remove(txId);
+        release(hold);
+        if (appliedCommits.contains(txId)) return LedgerResult.OK; // Applied before the restart
+
+        int slot = store.find(uid);
+        if (slot < 0) return LedgerResult.UNKNOWN_ACCOUNT;
+        // BEGIN before and APPLIED after the change, so a crash in between is settled at the next open
+        long balance = store.balance(slot);
+        appliedCommits.begin(txId, slot, balance);
+        store.setBalance(slot, balance + deltaCents);
+        appliedCommits.add(txId);
+        return LedgerResult.OK;
+    }
+
+    // Drops the reserved amount of a debit hold from the per-account total
+    private void release(Hold hold) {
+        if (hold == null || hold.deltaCents >= 0) return;
+        long remaining = heldByUid.get(hold.uid) + hold.deltaCents;
+        if (remaining == 0L) {
+            heldByUid.remove(hold.uid);
+        } else {
+            heldByUid.put(hold.uid, remaining);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.ewallet.ledger;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One change to one account, as pushed to live subscribers: the same transaction types the app writes to Firestore
+ * ("Income", "Transfer (Sent)", ...) plus the account's balance and loan right after the change.
+ * The SSE frame is rendered once when the event is created and shared by every subscriber of the account.
+ */
+public final class AccountEvent {
+
+    public final long sequence; // Sequencer sequence number, also the SSE event id
+    public final String uid;
+    public final String type;
+    public final long amountCents;
+    public final long balanceCents;
+    public final long loanTakenCents;
+    public final String counterpartyUid; // Other side of a transfer, otherwise null
+
+    final byte[] frame;
+
+    public AccountEvent(long sequence, String uid, String type, long amountCents, long balanceCents,
+                        long loanTakenCents, String counterpartyUid) {
+        this.sequence = sequence;
+        this.uid = uid;
+        this.type = type;
+        this.amountCents = amountCents;
+        this.balanceCents = balanceCents;
+        this.loanTakenCents = loanTakenCents;
+        this.counterpartyUid = counterpartyUid;
+        this.frame = render().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private String render() {
+        return "id: " + sequence + "\n"
+                + "event: account\n"
+                + "data: {\"sequence\":" + sequence
+                + ",\"type\":\"" + type + "\""
+                + ",\"amountCents\":" + amountCents
+                + ",\"balanceCents\":" + balanceCents
+                + ",\"loanTakenCents\":" + loanTakenCents
+                + (counterpartyUid != null ? ",\"counterpartyUid\":\"" + counterpartyUid + "\"" : "")
+                + "}\n\n";
+    }
+}
@@ -0,0 +1,403 @@
+package com.example.ewallet.ledger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes account changes from one LedgerSequencer to Server-Sent Events subscribers (GET /events?uid=..).
+ * - The sequencer thread turns each applied command into AccountEvents (sender and recipient for a transfer),
+ *   appends them to a bounded history ring and hands them to the account's subscribers: a map lookup and one
+ *   bounded-queue offer per subscriber, no I/O.
+ * - A few flusher threads write the queued frames to the sockets. A subscriber stays owned by one flusher until its
+ *   write has finished, so frames of one stream are never written concurrently or out of order. Idle subscribers
+ *   own no thread and no buffer, only their socket and a small subscriber object.
+ * - A write that blocks longer than WRITE_TIMEOUT_MS (client not reading, full socket buffer) is cut off by closing
+ *   the socket, so one slow client cannot hold a flusher thread.
+ * - A subscriber that falls more than BUFFER_EVENTS behind is disconnected instead of slowing the ledger down.
+ *   Its client reconnects with Last-Event-ID and catches up from the history ring; if the gap is older than the
+ *   ring, it gets a 'reset' event and reloads the account state instead. So does a client whose Last-Event-ID is
+ *   newer than anything retained: sequences restart at 0 with the process, so its id comes from an earlier run.
+ * - A replay only copies the retained range under the publish lock; it is filtered for the account outside it, while
+ *   the subscriber holds back live events so they still follow the replayed ones.
+ */
+public class AccountEventHub implements LedgerListener, AutoCloseable {
+
+    private static final int HISTORY_EVENTS = 1 << 16;
+    private static final int BUFFER_EVENTS = 256;
+    private static final long HEARTBEAT_SECONDS = 15L;
+    private static final long WRITE_TIMEOUT_MS = 5_000L;
+
+    private static final byte[] RESET_FRAME = "event: reset\ndata: {}\n\n".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HEARTBEAT_FRAME = ": keep-alive\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final Object lock = new Object();
+    private final AccountEvent[] history = new AccountEvent[HISTORY_EVENTS];
+    private long written = 0L; // Events ever appended; history[(written - 1) % size] is the newest
+    private final Map<String, List<Subscriber>> subscribersByUid = new HashMap<>();
+    private int subscriberCount = 0;
+
+    private final LinkedBlockingQueue<Subscriber> ready = new LinkedBlockingQueue<>();
+    private final Thread[] flushers;
+    private final ScheduledExecutorService heartbeat;
+    private final Set<Subscriber> writing = ConcurrentHashMap.newKeySet(); // Subscribers inside a socket write
+    private volatile boolean running = true;
+
+    // --- Metrics ---
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong overflowDisconnects = new AtomicLong();
+    private final AtomicLong writeTimeouts = new AtomicLong();
+    private final AtomicLong fanOutNanos = new AtomicLong();
+
+    /**
+     * One open SSE connection. Its queue is created on the first event and dropped again once flushed.
+     */
+    private static final class Subscriber {
+        final String uid;
+        final Socket socket;
+        final OutputStream out;
+        ArrayDeque<byte[]> pending; // Guarded by this
+        boolean scheduled;          // In the ready queue or being flushed: owned by at most one flusher
+        volatile long writeStartedNanos;
+        boolean overflowed;
+        boolean reset;
+        boolean heartbeatDue;
+        boolean replaying;          // Live events only queue up until the replayed ones are in front of them
+        volatile boolean closed;
+
+        Subscriber(String uid, Socket socket, OutputStream out) {
+            this.uid = uid;
+            this.socket = socket;
+            this.out = out;
+        }
+
+        // Returns true if the subscriber must be put in the ready queue
+        synchronized boolean offer(byte[] frame) {
+            if (overflowed) return false;
+            if (pending == null) pending = new ArrayDeque<>(8);
+            if (pending.size() >= BUFFER_EVENTS) {
+                overflowed = true;
+                pending = null;
+            } else {
+                pending.add(frame);
+            }
+            return schedule();
+        }
+
+        synchronized boolean requestHeartbeat() {
+            heartbeatDue = true;
+            return schedule();
+        }
+
+        private boolean schedule() {
+            if (scheduled || replaying) return false;
+            scheduled = true;
+            return true;
+        }
+
+        // Called by the owning flusher after a write: keeps ownership if more arrived meanwhile
+        synchronized boolean releaseOrReschedule() {
+            if (pending != null || overflowed || reset || heartbeatDue) return true;
+            scheduled = false;
+            return false;
+        }
+    }
+
+    public AccountEventHub(int flusherThreads) {
+        flushers = new Thread[flusherThreads];
+        for (int i = 0; i < flusherThreads; i++) {
+            flushers[i] = new Thread(this::flushLoop, "ledger-events-" + i);
+            flushers[i].setDaemon(true);
+            flushers[i].start();
+        }
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "ledger-events-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::sendHeartbeats, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        heartbeat.scheduleWithFixedDelay(this::cutStalledWrites, 1L, 1L, TimeUnit.SECONDS);
+    }
+
+    // --- Sequencer side ---
+
+    @Override
+    public void onApplied(long sequence, LedgerOp op, String uid, String counterpartyUid, long amountCents,
+                          LedgerResult result, AccountStore store) {
+        if (result != LedgerResult.OK) return;
+
+        switch (op) {
+            case SIGNUP:
+                publish(event(sequence, uid, "Income", AccountBook.SIGNUP_BONUS_CENTS, null, store));
+                break;
+            case TRANSFER:
+                publish(event(sequence, uid, "Transfer (Sent)", amountCents, counterpartyUid, store));
+                publish(event(sequence, counterpartyUid, "Transfer (Received)", amountCents, uid, store));
+                break;
+            case TAKE_LOAN:
+                publish(event(sequence, uid, "Loan Taken", amountCents, null, store));
+                break;
+            case REPAY_LOAN:
+                publish(event(sequence, uid, "Loan Repayment", amountCents, null, store));
+                break;
+            default:
+                // Queries change nothing; two-phase steps are not streamed (sequence numbers are per partition)
+                break;
+        }
+    }
+
+    private static AccountEvent event(long sequence, String uid, String type, long amountCents,
+                                      String counterpartyUid, AccountStore store) {
+        int slot = store.find(uid);
+        return new AccountEvent(sequence, uid, type, amountCents, store.balance(slot), store.loanTaken(slot),
+                counterpartyUid);
+    }
+
+    private void publish(AccountEvent event) {
+        long start = System.nanoTime();
+        synchronized (lock) {
+            history[(int) (written & (HISTORY_EVENTS - 1))] = event;
+            written++;
+
+            List<Subscriber> subscribers = subscribersByUid.get(event.uid);
+            if (subscribers != null) {
+                for (int i = 0; i < subscribers.size(); i++) {
+                    Subscriber subscriber = subscribers.get(i);
+                    if (subscriber.offer(event.frame)) ready.add(subscriber);
+                }
+            }
+        }
+        published.incrementAndGet();
+        fanOutNanos.addAndGet(System.nanoTime() - start);
+    }
+
+    // --- Subscriptions ---
+
+    /**
+     * Takes over an accepted socket whose request was GET /events. The response head is written here;
+     * afterwards the socket belongs to the hub until the client disconnects or falls too far behind.
+     * lastEventId is the client's Last-Event-ID (-1 for a fresh subscription that loads the state itself).
+     */
+    public void subscribe(Socket socket, String uid, long lastEventId) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        String head = "HTTP/1.1 200 OK\r\n"
+                + "Content-Type: text/event-stream\r\n"
+                + "Cache-Control: no-cache\r\n"
+                + "Connection: keep-alive\r\n\r\n"
+                + "retry: 1000\n\n";
+        out.write(head.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+
+        Subscriber subscriber = new Subscriber(uid, socket, out);
+        subscriber.replaying = lastEventId >= 0;
+        AccountEvent[] missed = null;
+        // Registration and the copy of the missed range under the publish lock: no event is missed or sent twice
+        synchronized (lock) {
+            subscribersByUid.computeIfAbsent(uid, key -> new ArrayList<>(1)).add(subscriber);
+            subscriberCount++;
+            if (lastEventId >= 0) {
+                missed = eventsAfter(lastEventId);
+            }
+        }
+        if (lastEventId >= 0 && replay(subscriber, missed)) ready.add(subscriber);
+    }
+
+    // Caller holds lock. The retained events after lastEventId in order, or null if the client must reset.
+    private AccountEvent[] eventsAfter(long lastEventId) {
+        long oldest = Math.max(0L, written - HISTORY_EVENTS);
+        if (written == 0L || history[(int) ((written - 1) & (HISTORY_EVENTS - 1))].sequence < lastEventId) {
+            return null; // Ahead of everything retained: an id from before a restart
+        }
+        if (oldest > 0 && history[(int) (oldest & (HISTORY_EVENTS - 1))].sequence > lastEventId) {
+            return null; // The gap is older than the ring
+        }
+
+        // Sequences grow with the ring position, so binary search for the first event after lastEventId
+        long lo = oldest;
+        long hi = written;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (history[(int) (mid & (HISTORY_EVENTS - 1))].sequence <= lastEventId) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+
+        AccountEvent[] missed = new AccountEvent[(int) (written - lo)];
+        int start = (int) (lo & (HISTORY_EVENTS - 1));
+        int firstPart = Math.min(missed.length, HISTORY_EVENTS - start);
+        System.arraycopy(history, start, missed, 0, firstPart);
+        System.arraycopy(history, 0, missed, firstPart, missed.length - firstPart);
+        return missed;
+    }
+
+    // Outside the lock. Puts the account's missed events (or a reset) in front of the live events queued since
+    // registration and lets the flushers have the subscriber. Returns true if it must be put in the ready queue.
+    private static boolean replay(Subscriber subscriber, AccountEvent[] missed) {
+        ArrayDeque<byte[]> frames = new ArrayDeque<>();
+        if (missed != null) {
+            for (AccountEvent event : missed) {
+                if (event.uid.equals(subscriber.uid)) frames.add(event.frame);
+            }
+        }
+        synchronized (subscriber) {
+            subscriber.replaying = false;
+            if (subscriber.pending != null) frames.addAll(subscriber.pending);
+            // A backlog larger than the buffer would overflow on every reconnect: reload the state instead
+            if (missed == null || subscriber.overflowed || frames.size() > BUFFER_EVENTS) {
+                subscriber.overflowed = false;
+                subscriber.pending = null;
+                subscriber.reset = true;
+            } else if (!frames.isEmpty()) {
+                subscriber.pending = frames;
+            }
+            if (subscriber.pending == null && !subscriber.reset && !subscriber.heartbeatDue) return false;
+            return subscriber.schedule();
+        }
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (subscriber.closed) return;
+        subscriber.closed = true;
+        synchronized (lock) {
+            List<Subscriber> subscribers = subscribersByUid.get(subscriber.uid);
+            if (subscribers != null && subscribers.remove(subscriber)) {
+                subscriberCount--;
+                if (subscribers.isEmpty()) subscribersByUid.remove(subscriber.uid);
+            }
+        }
+        try {
+            subscriber.socket.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+
+    // --- Flushers ---
+
+    private void flushLoop() {
+        while (running) {
+            Subscriber subscriber;
+            try {
+                subscriber = ready.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            flush(subscriber);
+        }
+    }
+
+    private void flush(Subscriber subscriber) {
+        ArrayDeque<byte[]> frames;
+        boolean overflowed;
+        boolean reset;
+        boolean heartbeatDue;
+        synchronized (subscriber) {
+            frames = subscriber.pending;
+            overflowed = subscriber.overflowed;
+            reset = subscriber.reset;
+            heartbeatDue = subscriber.heartbeatDue;
+            subscriber.pending = null; // Idle subscribers keep no buffer
+            subscriber.reset = false;
+            subscriber.heartbeatDue = false;
+            // 'scheduled' stays set: publishes meanwhile only queue frames, no other flusher takes this subscriber
+        }
+        if (subscriber.closed) return;
+
+        if (overflowed) {
+            // Too slow: drop the connection, the client resumes from its Last-Event-ID
+            overflowDisconnects.incrementAndGet();
+            unsubscribe(subscriber);
+            return;
+        }
+
+        subscriber.writeStartedNanos = System.nanoTime();
+        writing.add(subscriber);
+        try {
+            if (reset) subscriber.out.write(RESET_FRAME);
+            if (frames != null) {
+                for (byte[] frame : frames) {
+                    subscriber.out.write(frame);
+                }
+            }
+            if (heartbeatDue && frames == null) subscriber.out.write(HEARTBEAT_FRAME);
+            subscriber.out.flush();
+        } catch (IOException e) {
+            unsubscribe(subscriber); // Also how a write cut off by cutStalledWrites() ends
+            return;
+        } finally {
+            writing.remove(subscriber);
+        }
+
+        // Frames published during the write go out next, from this subscriber's queue entry only
+        if (subscriber.releaseOrReschedule()) ready.add(subscriber);
+    }
+
+    // Closing the socket makes the blocked write fail; the client reconnects and resumes from Last-Event-ID
+    private void cutStalledWrites() {
+        long now = System.nanoTime();
+        for (Subscriber subscriber : writing) {
+            if (now - subscriber.writeStartedNanos < TimeUnit.MILLISECONDS.toNanos(WRITE_TIMEOUT_MS)) continue;
+            writeTimeouts.incrementAndGet();
+            unsubscribe(subscriber);
+        }
+    }
+
+    // Keeps proxies from timing out idle streams and detects clients that went away
+    private void sendHeartbeats() {
+        List<Subscriber> all = new ArrayList<>();
+        synchronized (lock) {
+            for (List<Subscriber> subscribers : subscribersByUid.values()) {
+                all.addAll(subscribers);
+            }
+        }
+        for (Subscriber subscriber : all) {
+            if (subscriber.requestHeartbeat()) ready.add(subscriber);
+        }
+    }
+
+    public String statsSummary() {
+        long events = published.get();
+        int subscribers;
+        synchronized (lock) {
+            subscribers = subscriberCount;
+        }
+        return "subscribers=" + subscribers
+                + " events=" + events
+                + " avgFanOutNanos=" + (events > 0 ? fanOutNanos.get() / events : 0)
+                + " overflowDisconnects=" + overflowDisconnects.get()
+                + " writeTimeouts=" + writeTimeouts.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        heartbeat.shutdownNow();
+        for (Thread flusher : flushers) {
+            flusher.interrupt();
+        }
+        List<Subscriber> all = new ArrayList<>();
+        synchronized (lock) {
+            for (List<Subscriber> subscribers : subscribersByUid.values()) {
+                all.addAll(subscribers);
+            }
+        }
+        for (Subscriber subscriber : all) {
+            unsubscribe(subscriber);
+        }
+    }
+}
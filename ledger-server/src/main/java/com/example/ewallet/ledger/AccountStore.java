@@ -0,0 +1,39 @@
+package com.example.ewallet.ledger;
+
+/**
+ * Storage for the ledger's account table: the same fixed numeric fields SignupActivity writes to users/{uid}
+ * (balance, loanLimit, loanTaken), held in integer cents and addressed by a slot number.
+ * Only the sequencer thread mutates a store, so implementations need no locking for writes.
+ */
+public interface AccountStore {
+
+    // Slot of the account, or -1 if it does not exist
+    int find(String uid);
+
+    // Creates the account and returns its slot; -1 if it already exists
+    int create(String uid, String userId, long balanceCents, long loanLimitCents);
+
+    // Whether create() can store these identifiers; checked first, so bad input is a result and not an exception
+    default boolean accepts(String uid, String userId) {
+        return uid != null && !uid.isEmpty();
+    }
+
+    // True when create() has no room for another account
+    default boolean isFull() {
+        return false;
+    }
+
+    int size();
+
+    String uid(int slot);
+
+    long balance(int slot);
+
+    long loanLimit(int slot);
+
+    long loanTaken(int slot);
+
+    void setBalance(int slot, long cents);
+
+    void setLoanTaken(int slot, long cents);
+}
@@ -0,0 +1,130 @@
+package com.example.ewallet.ledger;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Admission control in front of the money-moving routes (transfer, loan, repay) of the ledger service.
+ * 1. Per-account token bucket: each account may start ratePerSecond operations per second with bursts of
+ *    'burst'. Buckets live in one AtomicLongArray (8 bytes per bucket, no per-account objects) indexed by the
+ *    uid's hash; each entry packs the token level and the last refill time and is updated with one CAS.
+ *    Accounts that share a bucket share its budget, so the table is sized well above the number of hot accounts.
+ * 2. Global concurrency limit: at most maxConcurrent admitted operations are in flight. A request that finds the
+ *    limit reached waits up to maxQueueMs for a permit (counted as queued) and is shed after that.
+ * A rejected request gets a retry-after hint in milliseconds instead of waiting, so one account hammering the
+ * confirm button cannot tie up worker threads or the sequencer.
+ */
+public class AdmissionController {
+
+    public static final long ADMITTED = 0L;
+
+    private static final long MILLI_TOKENS = 1_000L;   // Tokens are kept in thousandths
+    private static final int TOKEN_BITS = 24;          // Up to ~16k tokens of burst
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+
+    private final AtomicLongArray buckets;
+    private final int mask;
+    private final long burstMilliTokens;
+    private final long milliTokensPerMs; // Refill rate; ratePerSecond tokens/s == ratePerSecond milli-tokens/ms
+    private final long originMs = System.currentTimeMillis();
+
+    private final Semaphore inFlight;
+    private final int maxConcurrent;
+    private final long maxQueueMs;
+
+    // --- Metrics ---
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong shedRate = new AtomicLong();
+    private final AtomicLong shedConcurrency = new AtomicLong();
+
+    public AdmissionController(int bucketCount, int ratePerSecond, int burst, int maxConcurrent, long maxQueueMs) {
+        if (Integer.bitCount(bucketCount) != 1) {
+            throw new IllegalArgumentException("Bucket count must be a power of two: " + bucketCount);
+        }
+        if ((long) burst * MILLI_TOKENS > TOKEN_MASK) {
+            throw new IllegalArgumentException("Burst too large: " + burst);
+        }
+        this.buckets = new AtomicLongArray(bucketCount);
+        this.mask = bucketCount - 1;
+        this.burstMilliTokens = burst * MILLI_TOKENS;
+        this.milliTokensPerMs = ratePerSecond;
+        this.inFlight = new Semaphore(maxConcurrent);
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueueMs = maxQueueMs;
+
+        // Every bucket starts full (last refill = origin)
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.set(i, pack(burstMilliTokens, 0L));
+        }
+    }
+
+    /**
+     * Returns ADMITTED if the operation may run (the caller must then call release()),
+     * otherwise the number of milliseconds after which a retry can succeed.
+     */
+    public long admit(String uid) {
+        long retryAfter = takeToken(uid);
+        if (retryAfter != ADMITTED) {
+            shedRate.incrementAndGet();
+            return retryAfter;
+        }
+
+        if (!inFlight.tryAcquire()) {
+            queued.incrementAndGet();
+            try {
+                if (!inFlight.tryAcquire(maxQueueMs, TimeUnit.MILLISECONDS)) {
+                    shedConcurrency.incrementAndGet();
+                    return Math.max(1L, maxQueueMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                shedConcurrency.incrementAndGet();
+                return Math.max(1L, maxQueueMs);
+            }
+        }
+        admitted.incrementAndGet();
+        return ADMITTED;
+    }
+
+    // Ends an admitted operation
+    public void release() {
+        inFlight.release();
+    }
+
+    private long takeToken(String uid) {
+        int h = uid.hashCode() * 0x9E3779B9;
+        int index = (h ^ (h >>> 16)) & mask;
+        long now = System.currentTimeMillis() - originMs;
+
+        while (true) {
+            long packed = buckets.get(index);
+            long tokens = packed & TOKEN_MASK;
+            long last = packed >>> TOKEN_BITS;
+
+            long elapsed = Math.max(0L, now - last);
+            long refilled = Math.min(burstMilliTokens, tokens + elapsed * milliTokensPerMs);
+            if (refilled < MILLI_TOKENS) {
+                // Time until one whole token is available
+                return Math.max(1L, (MILLI_TOKENS - refilled + milliTokensPerMs - 1) / milliTokensPerMs);
+            }
+            if (buckets.compareAndSet(index, packed, pack(refilled - MILLI_TOKENS, Math.max(now, last)))) {
+                return ADMITTED;
+            }
+        }
+    }
+
+    private static long pack(long milliTokens, long timeMs) {
+        return (timeMs << TOKEN_BITS) | milliTokens;
+    }
+
+    public String statsJson() {
+        return "{\"admitted\":" + admitted.get()
+                + ",\"queued\":" + queued.get()
+                + ",\"shedRate\":" + shedRate.get()
+                + ",\"shedConcurrency\":" + shedConcurrency.get()
+                + ",\"inFlight\":" + (maxConcurrent - inFlight.availablePermits()) + "}";
+    }
+}
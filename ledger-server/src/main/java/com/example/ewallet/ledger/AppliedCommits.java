@@ -0,0 +1,156 @@
+package com.example.ewallet.ledger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A partition's durable record of the two-phase transactions it has committed, so that a COMMIT re-driven by
+ * PartitionedLedger.recover() after a restart is applied exactly once even though the in-memory holds are gone.
+ *
+ * The writer thread brackets every balance change of a COMMIT with two records:
+ *   BEGIN   (txId, slot, balance before)  written before the balance changes
+ *   APPLIED (txId)                        written after it
+ * Like the MappedAccountStore's own writes, both survive a process crash (they are flushed, not forced per commit).
+ * A crash between the two leaves a BEGIN without APPLIED. Only the last BEGIN can be in that state, since the writer
+ * applies one command at a time, and nothing touched the account after it. So resolve() can tell from the stored
+ * balance whether the change landed, and record it as applied if it did.
+ * Only the txIds found at open are kept in memory: while running, every decision is committed exactly once,
+ * and duplicates only come from recover() re-driving decisions of an earlier run.
+ * With a null file the record is in-memory only (tests, benchmarks).
+ */
+public class AppliedCommits implements AutoCloseable {
+
+    private static final byte BEGIN = 1;
+    private static final byte APPLIED = 2;
+
+    private final File file;
+    private final Set<Long> appliedBeforeOpen = new HashSet<>();
+    private Begin interrupted; // BEGIN found at open without its APPLIED, until resolve()
+    private DataOutputStream out;
+
+    private static final class Begin {
+        final long txId;
+        final int slot;
+        final long balanceBeforeCents;
+
+        Begin(long txId, int slot, long balanceBeforeCents) {
+            this.txId = txId;
+            this.slot = slot;
+            this.balanceBeforeCents = balanceBeforeCents;
+        }
+    }
+
+    public AppliedCommits(File file) throws IOException {
+        this.file = file;
+        if (file == null) return;
+        if (file.exists()) {
+            readExisting();
+        }
+        out = open(true);
+    }
+
+    private DataOutputStream open(boolean append) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+    }
+
+    private void readExisting() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte kind = in.readByte();
+                long txId = in.readLong();
+                if (kind == BEGIN) {
+                    interrupted = new Begin(txId, in.readInt(), in.readLong());
+                } else {
+                    appliedBeforeOpen.add(txId);
+                    if (interrupted != null && interrupted.txId == txId) interrupted = null;
+                }
+            }
+        } catch (EOFException e) {
+            // End of file. A torn BEGIN was never followed by the balance change; a torn APPLIED leaves its BEGIN open
+        }
+    }
+
+    /**
+     * Settles a COMMIT that was interrupted between BEGIN and APPLIED. The balance can only differ from the one
+     * recorded in BEGIN if the change was made, since nothing else ran on the partition after it.
+     * Call once the store is open, before the partition starts.
+     */
+    public void resolve(AccountStore store) {
+        if (interrupted == null) return;
+        Begin begin = interrupted;
+        interrupted = null;
+        if (store.balance(begin.slot) != begin.balanceBeforeCents) {
+            appliedBeforeOpen.add(begin.txId);
+            add(begin.txId);
+        }
+        // Otherwise the change never landed: the re-driven COMMIT applies it
+    }
+
+    public boolean contains(long txId) {
+        return appliedBeforeOpen.contains(txId);
+    }
+
+    // Writer thread, right before the COMMIT changes the balance of 'slot'
+    public void begin(long txId, int slot, long balanceBeforeCents) {
+        if (out == null) return;
+        try {
+            out.writeByte(BEGIN);
+            out.writeLong(txId);
+            out.writeInt(slot);
+            out.writeLong(balanceBeforeCents);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Writer thread, right after the COMMIT changed the balance
+    public void add(long txId) {
+        if (out == null) return;
+        try {
+            out.writeByte(APPLIED);
+            out.writeLong(txId);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Rewrites the file with only the given txIds (the coordinator's unfinished decisions). Everything else
+     * is finished on both partitions and can never be re-driven. Call after resolve(), before the partition starts.
+     */
+    public void retainOnly(Collection<Long> txIds) throws IOException {
+        appliedBeforeOpen.retainAll(txIds);
+        if (out == null) return;
+        out.close();
+        File rewritten = new File(file.getPath() + ".tmp");
+        try (DataOutputStream tmp = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(rewritten)))) {
+            for (long txId : appliedBeforeOpen) {
+                tmp.writeByte(APPLIED);
+                tmp.writeLong(txId);
+            }
+            tmp.flush();
+        }
+        if (!rewritten.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+        out = open(true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (out != null) out.close();
+    }
+}
@@ -0,0 +1,363 @@
+package com.example.ewallet.ledger;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads exported Firestore data into the local ledger: 'users' documents into a MappedAccountStore and
+ * 'users/{uid}/transactions' plus 'transfers' documents into a Journal.
+ *
+ * Input is newline-delimited JSON (optionally .gz), one document per line: {"path":"users/abc","data":{...}},
+ * with the fields SignupActivity, TransferFragment and the loan screens write. Timestamps may be epoch millis,
+ * {"_seconds":..,"_nanoseconds":..} objects or ISO-8601 strings. Double amounts are rounded to integer cents;
+ * a user's balance is 'balanceCents' plus the legacy dollar 'balance', whichever the document has.
+ *
+ * Pipeline, with bounded queues between the stages so memory does not grow with the export size:
+ *   reader (1 thread)   - streams lines and hands them out in blocks of BLOCK_LINES
+ *   parsers (N threads) - parse JSON and normalize documents, in parallel
+ *   loader (1 thread)   - creates accounts, and collects transactions into batches of BATCH_RECORDS that are
+ *                         sorted by time and appended to the journal with one fsync per batch
+ * Imported accounts hold money that did not arrive through the ledger's signup bonus and loans; its total is
+ * recorded in the store's baseline file for SettlementBatch's conservation check.
+ * Legacy per-user transfer entries only know one side: the unknown uid is stored as "" (a sent entry has no
+ * counterparty, a received entry has an empty sender).
+ * Run with: java com.example.ewallet.ledger.BulkImporter storeFile journalDir accountCapacity export.ndjson[.gz]...
+ */
+public class BulkImporter {
+
+    private static final int BLOCK_LINES = 4_096;
+    private static final int BATCH_RECORDS = 65_536;
+    private static final int QUEUE_BLOCKS = 16;
+    private static final long PROGRESS_INTERVAL_MS = 5_000L;
+
+    private static final String[] END = new String[0];          // Marks the end of the line blocks
+    private static final List<Object> END_PARSED = new ArrayList<>(); // Marks the end of the parsed blocks
+
+    private final MappedAccountStore store;
+    private final Journal journal;
+    private final int parserThreads;
+
+    // --- Metrics ---
+    private final AtomicLong lines = new AtomicLong();
+    private final AtomicLong accounts = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private long openingOffsetCents; // Loader thread: sum of balance - loanTaken - SIGNUP_BONUS_CENTS
+
+    /**
+     * A normalized users/{uid} document.
+     */
+    private static final class ImportedAccount {
+        final String uid;
+        final String userId;
+        final long balanceCents;
+        final long loanLimitCents;
+        final long loanTakenCents;
+
+        ImportedAccount(String uid, String userId, long balanceCents, long loanLimitCents, long loanTakenCents) {
+            this.uid = uid;
+            this.userId = userId;
+            this.balanceCents = balanceCents;
+            this.loanLimitCents = loanLimitCents;
+            this.loanTakenCents = loanTakenCents;
+        }
+    }
+
+    public BulkImporter(MappedAccountStore store, Journal journal, int parserThreads) {
+        this.store = store;
+        this.journal = journal;
+        this.parserThreads = parserThreads;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Usage: BulkImporter storeFile journalDir accountCapacity export.ndjson[.gz]...");
+            return;
+        }
+        int capacity = Integer.parseInt(args[2]);
+        try (MappedAccountStore store = MappedAccountStore.open(new File(args[0]), capacity);
+             Journal journal = Journal.open(new File(args[1]), 256 * 1024 * 1024)) {
+            BulkImporter importer = new BulkImporter(store, journal, Runtime.getRuntime().availableProcessors());
+            List<File> files = new ArrayList<>();
+            for (int i = 3; i < args.length; i++) {
+                files.add(new File(args[i]));
+            }
+            System.out.println(importer.run(files));
+            SettlementBatch.addToBaseline(new File(args[0]), importer.openingOffsetCents());
+        }
+    }
+
+    /**
+     * Imports all files and returns a summary line. Safe to re-run only into an empty store and journal.
+     */
+    public String run(List<File> files) throws Exception {
+        BlockingQueue<String[]> lineBlocks = new ArrayBlockingQueue<>(QUEUE_BLOCKS);
+        BlockingQueue<List<Object>> parsedBlocks = new ArrayBlockingQueue<>(QUEUE_BLOCKS);
+        long start = System.nanoTime();
+
+        Thread[] parsers = new Thread[parserThreads];
+        for (int i = 0; i < parserThreads; i++) {
+            parsers[i] = new Thread(() -> parseLoop(lineBlocks, parsedBlocks), "import-parser-" + i);
+            parsers[i].start();
+        }
+
+        Throwable[] loaderFailure = new Throwable[1];
+        Thread loader = new Thread(() -> {
+            try {
+                loadLoop(parsedBlocks, start);
+            } catch (Throwable t) {
+                loaderFailure[0] = t;
+                drain(parsedBlocks); // Keep the parsers from blocking on a full queue
+            }
+        }, "import-loader");
+        loader.start();
+
+        // Reader: this thread
+        for (File file : files) {
+            read(file, lineBlocks);
+        }
+        for (int i = 0; i < parserThreads; i++) {
+            lineBlocks.put(END);
+        }
+        for (Thread parser : parsers) {
+            parser.join();
+        }
+        parsedBlocks.put(END_PARSED);
+        loader.join();
+        if (loaderFailure[0] != null) throw new IOException("Import failed", loaderFailure[0]);
+
+        store.force();
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        return "lines=" + lines.get()
+                + " accounts=" + accounts.get()
+                + " transactions=" + transactions.get()
+                + " skipped=" + skipped.get()
+                + " rejected=" + rejected.get()
+                + String.format(" seconds=%.1f rows/s=%.0f", seconds, lines.get() / seconds);
+    }
+
+    // Valid once run() returned
+    public long openingOffsetCents() {
+        return openingOffsetCents;
+    }
+
+    private static void drain(BlockingQueue<List<Object>> parsedBlocks) {
+        try {
+            while (parsedBlocks.take() != END_PARSED) {
+                // Discard
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- Reader ---
+
+    private void read(File file, BlockingQueue<String[]> lineBlocks) throws IOException, InterruptedException {
+        InputStream in = new FileInputStream(file);
+        if (file.getName().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 20)) {
+            String[] block = new String[BLOCK_LINES];
+            int count = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                block[count++] = line;
+                if (count == BLOCK_LINES) {
+                    lineBlocks.put(block);
+                    block = new String[BLOCK_LINES];
+                    count = 0;
+                }
+            }
+            if (count > 0) lineBlocks.put(Arrays.copyOf(block, count));
+        }
+    }
+
+    // --- Parsers ---
+
+    private void parseLoop(BlockingQueue<String[]> lineBlocks, BlockingQueue<List<Object>> parsedBlocks) {
+        try {
+            while (true) {
+                String[] block = lineBlocks.take();
+                if (block == END) return;
+
+                List<Object> parsed = new ArrayList<>(block.length * 2);
+                for (String line : block) {
+                    try {
+                        parseDocument(line, parsed);
+                    } catch (RuntimeException e) {
+                        rejected.incrementAndGet(); // Malformed line or field
+                    }
+                }
+                lines.addAndGet(block.length);
+                parsedBlocks.put(parsed);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void parseDocument(String line, List<Object> out) {
+        Map<String, Object> document = (Map<String, Object>) ExportJson.parse(line);
+        String path = (String) document.get("path");
+        Map<String, Object> data = (Map<String, Object>) document.get("data");
+        if (path == null || data == null) {
+            rejected.incrementAndGet();
+            return;
+        }
+
+        String[] segments = path.split("/");
+        if (segments.length == 2 && "users".equals(segments[0])) {
+            out.add(new ImportedAccount(segments[1], (String) data.get("userId"),
+                    balanceCents(data), cents(data.get("loanLimit")), cents(data.get("loanTaken"))));
+        } else if (segments.length == 4 && "users".equals(segments[0]) && "transactions".equals(segments[2])) {
+            JournalRecord record = fromUserTransaction(segments[1], data);
+            if (record != null) {
+                out.add(record);
+            } else {
+                skipped.incrementAndGet();
+            }
+        } else if (segments.length == 2 && "transfers".equals(segments[0])) {
+            String senderUid = (String) data.get("senderUid");
+            String recipientUid = (String) data.get("recipientUid");
+            if (senderUid == null || recipientUid == null) {
+                throw new IllegalArgumentException("Transfer without both parties: " + path);
+            }
+            out.add(new JournalRecord(JournalRecord.Kind.TRANSFER, 0L, millis(data.get("timestamp")),
+                    senderUid, recipientUid, cents(data.get("amount"))));
+        } else {
+            skipped.incrementAndGet(); // checkpoints, ledgerMonths, ...
+        }
+    }
+
+    private static JournalRecord fromUserTransaction(String uid, Map<String, Object> data) {
+        String type = (String) data.get("type");
+        long cents = cents(data.get("amount"));
+        long timestamp = millis(data.get("timestamp"));
+        if (type == null) return null;
+
+        switch (type) {
+            case "Income":
+                return new JournalRecord(JournalRecord.Kind.SIGNUP_CREDIT, 0L, timestamp, uid, null, cents);
+            case "Loan Taken":
+                return new JournalRecord(JournalRecord.Kind.LOAN_TAKEN, 0L, timestamp, uid, null, cents);
+            case "Loan Repayment":
+                return new JournalRecord(JournalRecord.Kind.LOAN_REPAYMENT, 0L, timestamp, uid, null, cents);
+            case "Transfer (Sent)":
+                return new JournalRecord(JournalRecord.Kind.TRANSFER, 0L, timestamp, uid, null, cents);
+            case "Transfer (Received)":
+                return new JournalRecord(JournalRecord.Kind.TRANSFER, 0L, timestamp, "", uid, cents);
+            default:
+                return null;
+        }
+    }
+
+    // Firestore stores amounts as doubles (dollars); integers may come back as longs
+    static long cents(Object value) {
+        if (value == null) return 0L;
+        return Math.round(((Number) value).doubleValue() * 100.0);
+    }
+
+    // Same reading as the app's CashBalance.centsOf: integer 'balanceCents' plus any legacy dollar 'balance' not yet
+    // migrated (server-side increments land in 'balanceCents' while the legacy field is still there)
+    static long balanceCents(Map<String, Object> data) {
+        Object exact = data.get("balanceCents");
+        return (exact != null ? ((Number) exact).longValue() : 0L) + cents(data.get("balance"));
+    }
+
+    @SuppressWarnings("unchecked")
+    static long millis(Object value) {
+        if (value instanceof Number) return ((Number) value).longValue();
+        if (value instanceof String) return Instant.parse((String) value).toEpochMilli();
+        if (value instanceof Map) {
+            Map<String, Object> timestamp = (Map<String, Object>) value;
+            Object seconds = timestamp.containsKey("_seconds") ? timestamp.get("_seconds") : timestamp.get("seconds");
+            Object nanos = timestamp.containsKey("_nanoseconds") ? timestamp.get("_nanoseconds") : timestamp.get("nanos");
+            return ((Number) seconds).longValue() * 1000L + (nanos != null ? ((Number) nanos).longValue() / 1_000_000L : 0L);
+        }
+        throw new IllegalArgumentException("Missing timestamp");
+    }
+
+    // --- Loader ---
+
+    private void loadLoop(BlockingQueue<List<Object>> parsedBlocks, long start) throws Exception {
+        List<JournalRecord> batch = new ArrayList<>(BATCH_RECORDS);
+        long sequence = journal.lastSequence() + 1;
+        long nextProgress = System.currentTimeMillis() + PROGRESS_INTERVAL_MS;
+
+        while (true) {
+            List<Object> block = parsedBlocks.take();
+            if (block == END_PARSED) break;
+
+            for (Object item : block) {
+                if (item instanceof ImportedAccount) {
+                    createAccount((ImportedAccount) item);
+                } else {
+                    batch.add((JournalRecord) item);
+                    if (batch.size() == BATCH_RECORDS) {
+                        sequence = appendBatch(batch, sequence);
+                    }
+                }
+            }
+
+            if (System.currentTimeMillis() >= nextProgress) {
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%d lines, %.0f rows/s%n", lines.get(), lines.get() / seconds);
+                nextProgress += PROGRESS_INTERVAL_MS;
+            }
+        }
+        appendBatch(batch, sequence);
+    }
+
+    private void createAccount(ImportedAccount account) {
+        // uid or userId that does not fit the store's fixed-size slot, or no slot left
+        if (!store.accepts(account.uid, account.userId) || store.isFull()) {
+            rejected.incrementAndGet();
+            return;
+        }
+        int slot = store.create(account.uid, account.userId, account.balanceCents, account.loanLimitCents);
+        if (slot < 0) {
+            rejected.incrementAndGet(); // Duplicate uid
+            return;
+        }
+        store.setLoanTaken(slot, account.loanTakenCents);
+        openingOffsetCents += account.balanceCents - account.loanTakenCents - AccountBook.SIGNUP_BONUS_CENTS;
+        accounts.incrementAndGet();
+    }
+
+    // Sorted by time (then uid) so the journal reads back in ledger order; one fsync covers the whole batch
+    private long appendBatch(List<JournalRecord> batch, long sequence) throws Exception {
+        if (batch.isEmpty()) return sequence;
+        batch.sort(Comparator.<JournalRecord>comparingLong(record -> record.timestampMillis)
+                .thenComparing(record -> record.uid));
+
+        long ticket = 0L;
+        for (JournalRecord record : batch) {
+            ticket = journal.append(new JournalRecord(record.kind, sequence++, record.timestampMillis,
+                    record.uid, record.counterpartyUid, record.amountCents));
+        }
+        journal.awaitDurable(ticket);
+        transactions.addAndGet(batch.size());
+        batch.clear();
+        return sequence;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.ewallet.ledger;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size, pre-allocated ring of LedgerCommand slots with many producers and exactly one consumer.
+ * Producers claim a sequence number, fill the slot and publish it; the consumer processes slots strictly in
+ * sequence order, which gives the ledger a single deterministic ordering of all commands.
+ * A producer that gets a full lap ahead of the consumer waits (backpressure instead of unbounded queues).
+ */
+final class CommandRingBuffer {
+
+    private final LedgerCommand[] slots;
+    private final int mask;
+    private final AtomicLongArray published; // Sequence number last published into each slot
+    private final AtomicLong claimed = new AtomicLong(-1L);
+    private final AtomicLong consumed = new AtomicLong(-1L); // Last sequence fully processed by the consumer
+
+    CommandRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        slots = new LedgerCommand[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new LedgerCommand();
+        }
+        mask = capacity - 1;
+        published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            published.set(i, -1L);
+        }
+    }
+
+    int capacity() {
+        return slots.length;
+    }
+
+    // Claims the next sequence, waiting while the ring is full
+    long claim() {
+        long sequence = claimed.incrementAndGet();
+        while (sequence - slots.length > consumed.get()) {
+            Thread.yield();
+        }
+        return sequence;
+    }
+
+    LedgerCommand slot(long sequence) {
+        return slots[(int) sequence & mask];
+    }
+
+    void publish(long sequence) {
+        published.set((int) sequence & mask, sequence);
+    }
+
+    boolean isPublished(long sequence) {
+        return published.get((int) sequence & mask) == sequence;
+    }
+
+    // Frees the slot for reuse by producers
+    void markConsumed(long sequence) {
+        consumed.lazySet(sequence);
+    }
+
+    long lastClaimed() {
+        return claimed.get();
+    }
+}
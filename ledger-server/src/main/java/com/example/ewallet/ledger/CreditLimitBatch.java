@@ -0,0 +1,178 @@
+package com.example.ewallet.ledger;
+
+import com.example.ewallet.credit.CreditPolicy;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Bulk refresh of every account's loanLimit from the credit aggregates stored on users/{uid} (CreditProfile).
+ * Each limit is O(1) from its own document (CreditPolicy), so the job is a single streaming pass: the reader
+ * hands out blocks of BLOCK_LINES lines and worker threads parse them and compute the limits in parallel.
+ * Input is the same newline-delimited export BulkImporter reads ({"path":"users/abc","data":{...}}, optionally
+ * .gz); other documents are skipped. Output is one {"path":..,"data":{"loanLimit":..}} line per account whose
+ * limit changed, ready for a merge import, so unchanged accounts cost no writes.
+ * Run with: java com.example.ewallet.ledger.CreditLimitBatch output.ndjson [nowMillis] export.ndjson[.gz]...
+ */
+public class CreditLimitBatch {
+
+    private static final int BLOCK_LINES = 4_096;
+    private static final int MAX_BLOCKS_IN_FLIGHT = 64; // Bounds memory when the workers fall behind
+
+    private final long nowMs;
+    private final int workers;
+
+    private final AtomicLong accounts = new AtomicLong();
+    private final AtomicLong raised = new AtomicLong();
+    private final AtomicLong lowered = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public CreditLimitBatch(long nowMs, int workers) {
+        this.nowMs = nowMs;
+        this.workers = workers;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: CreditLimitBatch output.ndjson [nowMillis] export.ndjson[.gz]...");
+            return;
+        }
+        int first = 1;
+        long now = System.currentTimeMillis();
+        if (args[1].matches("\\d+")) {
+            now = Long.parseLong(args[1]);
+            first = 2;
+        }
+        List<File> files = new ArrayList<>();
+        for (int i = first; i < args.length; i++) {
+            files.add(new File(args[i]));
+        }
+        CreditLimitBatch batch = new CreditLimitBatch(now, Runtime.getRuntime().availableProcessors());
+        System.out.println(batch.run(files, new File(args[0])));
+    }
+
+    /**
+     * Processes all files and returns a summary line. Blocks are written in input order.
+     */
+    public String run(List<File> files, File output) throws Exception {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        List<Future<String>> inFlight = new ArrayList<>();
+
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output), StandardCharsets.UTF_8), 1 << 20)) {
+            for (File file : files) {
+                InputStream in = new FileInputStream(file);
+                if (file.getName().endsWith(".gz")) {
+                    in = new GZIPInputStream(in, 1 << 16);
+                }
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 20)) {
+                    List<String> block = new ArrayList<>(BLOCK_LINES);
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.isEmpty()) continue;
+                        block.add(line);
+                        if (block.size() == BLOCK_LINES) {
+                            List<String> lines = block;
+                            inFlight.add(pool.submit(() -> process(lines)));
+                            block = new ArrayList<>(BLOCK_LINES);
+                            if (inFlight.size() >= MAX_BLOCKS_IN_FLIGHT) {
+                                out.write(inFlight.remove(0).get()); // Oldest first keeps the output in order
+                            }
+                        }
+                    }
+                    if (!block.isEmpty()) {
+                        List<String> lines = block;
+                        inFlight.add(pool.submit(() -> process(lines)));
+                    }
+                }
+            }
+            for (Future<String> pending : inFlight) {
+                out.write(pending.get());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+        return "accounts=" + accounts.get()
+                + " raised=" + raised.get()
+                + " lowered=" + lowered.get()
+                + " rejected=" + rejected.get()
+                + String.format(" seconds=%.1f accounts/s=%.0f", seconds, accounts.get() / seconds);
+    }
+
+    // Worker: one block of export lines in, the update lines for changed limits out
+    private String process(List<String> lines) {
+        StringBuilder updates = new StringBuilder();
+        for (String line : lines) {
+            try {
+                processDocument(line, updates);
+            } catch (RuntimeException e) {
+                rejected.incrementAndGet(); // Malformed line or field
+            }
+        }
+        return updates.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void processDocument(String line, StringBuilder updates) {
+        Map<String, Object> document = (Map<String, Object>) ExportJson.parse(line);
+        String path = (String) document.get("path");
+        Map<String, Object> data = (Map<String, Object>) document.get("data");
+        if (path == null || data == null) {
+            rejected.incrementAndGet();
+            return;
+        }
+        String[] segments = path.split("/");
+        if (segments.length != 2 || !"users".equals(segments[0])) return; // Not an account
+
+        long limit = CreditPolicy.limitCents(features(data), nowMs);
+        long stored = BulkImporter.cents(data.get("loanLimit"));
+        accounts.incrementAndGet();
+        if (limit == stored) return;
+
+        (limit > stored ? raised : lowered).incrementAndGet();
+        updates.append("{\"path\":\"").append(path).append("\",\"data\":{\"loanLimit\":")
+                .append(limit / 100).append('.').append(String.format("%02d", limit % 100)).append("}}\n");
+    }
+
+    // Field names as written by CreditProfile and LoanAccrual
+    private CreditPolicy.Features features(Map<String, Object> data) {
+        CreditPolicy.Features f = new CreditPolicy.Features();
+        f.sinceMs = data.get("creditSince") != null ? BulkImporter.millis(data.get("creditSince")) : nowMs;
+        f.inflowCents = longOf(data.get("creditInflow"));
+        f.flowCount = longOf(data.get("creditFlowCount"));
+        f.flowSumCents = longOf(data.get("creditFlowSum"));
+        f.flowSumSqCents = doubleOf(data.get("creditFlowSumSq"));
+        f.loanCentMs = doubleOf(data.get("creditLoanCentMs"));
+        f.repaidCents = longOf(data.get("creditRepaid"));
+        f.principalCents = BulkImporter.cents(data.get("loanTaken"));
+        f.loanSinceMs = data.get("loanAccruedAt") != null ? BulkImporter.millis(data.get("loanAccruedAt")) : nowMs;
+        return f;
+    }
+
+    private static long longOf(Object value) {
+        return value != null ? ((Number) value).longValue() : 0L;
+    }
+
+    private static double doubleOf(Object value) {
+        return value != null ? ((Number) value).doubleValue() : 0.0;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.ewallet.ledger;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The coordinator's record of two-phase decisions for cross-partition transfers (presumed abort):
+ * only COMMIT decisions are logged, before phase two starts, and DONE once both partitions applied them.
+ * After a coordinator restart, every COMMIT without DONE is re-driven; anything else is aborted.
+ * With a null file the log is in-memory only (tests, benchmarks).
+ */
+public class DecisionLog implements AutoCloseable {
+
+    private static final byte COMMIT = 1;
+    private static final byte DONE = 2;
+
+    /**
+     * A commit decision: enough to re-drive phase two on both partitions.
+     */
+    public static final class Decision {
+        public final long txId;
+        public final String fromUid;
+        public final String toUid;
+        public final long amountCents;
+
+        Decision(long txId, String fromUid, String toUid, long amountCents) {
+            this.txId = txId;
+            this.fromUid = fromUid;
+            this.toUid = toUid;
+            this.amountCents = amountCents;
+        }
+    }
+
+    private final FileOutputStream fileStream;
+    private final DataOutputStream out;
+    private final Map<Long, Decision> unfinished = new LinkedHashMap<>();
+    private long maxTxId = 0L;
+
+    public DecisionLog(File file) throws IOException {
+        if (file == null) {
+            fileStream = null;
+            out = null;
+            return;
+        }
+        if (file.exists()) {
+            readExisting(file);
+        }
+        fileStream = new FileOutputStream(file, true);
+        out = new DataOutputStream(fileStream);
+    }
+
+    private void readExisting(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte type = in.readByte();
+                long txId = in.readLong();
+                maxTxId = Math.max(maxTxId, txId);
+                if (type == COMMIT) {
+                    unfinished.put(txId, new Decision(txId, in.readUTF(), in.readUTF(), in.readLong()));
+                } else {
+                    unfinished.remove(txId);
+                }
+            }
+        } catch (EOFException e) {
+            // End of log (a torn last record is treated as never written: presumed abort)
+        }
+    }
+
+    // Durable before returning: phase two may only start once the decision survives a crash
+    public synchronized void logCommit(long txId, String fromUid, String toUid, long amountCents) throws IOException {
+        unfinished.put(txId, new Decision(txId, fromUid, toUid, amountCents));
+        maxTxId = Math.max(maxTxId, txId);
+        if (out == null) return;
+        out.writeByte(COMMIT);
+        out.writeLong(txId);
+        out.writeUTF(fromUid);
+        out.writeUTF(toUid);
+        out.writeLong(amountCents);
+        out.flush();
+        fileStream.getChannel().force(false);
+    }
+
+    // Not forced: losing a DONE only means the commit is re-driven once more (the partitions' AppliedCommits skip it)
+    public synchronized void logDone(long txId) throws IOException {
+        unfinished.remove(txId);
+        if (out == null) return;
+        out.writeByte(DONE);
+        out.writeLong(txId);
+        out.flush();
+    }
+
+    public synchronized List<Decision> unfinishedCommits() {
+        return new ArrayList<>(unfinished.values());
+    }
+
+    public synchronized long maxTxId() {
+        return maxTxId;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) out.close();
+    }
+}
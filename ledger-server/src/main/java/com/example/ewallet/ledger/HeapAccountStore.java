@@ -0,0 +1,86 @@
+package com.example.ewallet.ledger;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * On-heap AccountStore: a uid -> slot map plus parallel primitive arrays that grow by doubling.
+ */
+public class HeapAccountStore implements AccountStore {
+
+    private final Map<String, Integer> slotsByUid = new HashMap<>();
+    private String[] uids;
+    private long[] balances;
+    private long[] loanLimits;
+    private long[] loansTaken;
+    private int size = 0;
+
+    public HeapAccountStore(int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        uids = new String[capacity];
+        balances = new long[capacity];
+        loanLimits = new long[capacity];
+        loansTaken = new long[capacity];
+    }
+
+    @Override
+    public int find(String uid) {
+        Integer slot = slotsByUid.get(uid);
+        return slot != null ? slot : -1;
+    }
+
+    @Override
+    public int create(String uid, String userId, long balanceCents, long loanLimitCents) {
+        if (slotsByUid.containsKey(uid)) return -1;
+        if (size == uids.length) {
+            int capacity = uids.length * 2;
+            uids = Arrays.copyOf(uids, capacity);
+            balances = Arrays.copyOf(balances, capacity);
+            loanLimits = Arrays.copyOf(loanLimits, capacity);
+            loansTaken = Arrays.copyOf(loansTaken, capacity);
+        }
+        int slot = size++;
+        uids[slot] = uid;
+        balances[slot] = balanceCents;
+        loanLimits[slot] = loanLimitCents;
+        loansTaken[slot] = 0L;
+        slotsByUid.put(uid, slot);
+        return slot;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String uid(int slot) {
+        return uids[slot];
+    }
+
+    @Override
+    public long balance(int slot) {
+        return balances[slot];
+    }
+
+    @Override
+    public long loanLimit(int slot) {
+        return loanLimits[slot];
+    }
+
+    @Override
+    public long loanTaken(int slot) {
+        return loansTaken[slot];
+    }
+
+    @Override
+    public void setBalance(int slot, long cents) {
+        balances[slot] = cents;
+    }
+
+    @Override
+    public void setLoanTaken(int slot, long cents) {
+        loansTaken[slot] = cents;
+    }
+}
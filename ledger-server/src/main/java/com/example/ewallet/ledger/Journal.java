@@ -0,0 +1,332 @@
+package com.example.ewallet.ledger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal for JournalRecords, stored in fixed-size memory-mapped segment files.
+ *
+ * Record layout: [int bodyLength][int crc32(body)][body], body = kind(1) sequence(8) timestamp(8) amount(8)
+ * uidLength(2) uid counterpartyLength(2, -1 = none) counterparty. Segments are pre-sized and zero-filled,
+ * so a zero length marks the end of the data.
+ *
+ * Group commit: append() only copies the record into the mapped segment. A single flusher thread forces the
+ * segment to disk and releases every appender whose record was covered, so one fsync serves a whole batch of
+ * concurrent appends. On open, the last segment is scanned and a torn or CRC-failing tail is zeroed out.
+ */
+public class Journal implements AutoCloseable {
+
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final File dir;
+    private final int segmentSize;
+    private final Object lock = new Object();
+    private final Thread flusher;
+
+    // Guarded by 'lock'
+    private int segmentIndex;
+    private RandomAccessFile segmentFile;
+    private MappedByteBuffer segment;
+    private long writtenPosition; // Logical position: segmentIndex * segmentSize + offset
+    private long durablePosition;
+    private long forceCount = 0L;
+    private long lastSequence = -1L;
+    private boolean open = true;
+
+    private Journal(File dir, int segmentSize) {
+        this.dir = dir;
+        this.segmentSize = segmentSize;
+        this.flusher = new Thread(this::flushLoop, "journal-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Opens (or creates) the journal in 'dir', recovering the tail of the last segment.
+     */
+    public static Journal open(File dir, int segmentSize) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + dir);
+        }
+        Journal journal = new Journal(dir, segmentSize);
+        journal.recover();
+        journal.flusher.start();
+        return journal;
+    }
+
+    // --- Append path ---
+
+    /**
+     * Copies the record into the current segment and returns a ticket for awaitDurable().
+     */
+    public long append(JournalRecord record) throws IOException {
+        byte[] uid = record.uid.getBytes(StandardCharsets.UTF_8);
+        byte[] counterparty = record.counterpartyUid != null ? record.counterpartyUid.getBytes(StandardCharsets.UTF_8) : null;
+        int bodyLength = 1 + 8 + 8 + 8 + 2 + uid.length + 2 + (counterparty != null ? counterparty.length : 0);
+        int recordLength = HEADER_BYTES + bodyLength;
+        if (recordLength > segmentSize) {
+            throw new IllegalArgumentException("Record larger than a journal segment");
+        }
+
+        synchronized (lock) {
+            if (!open) throw new IOException("Journal is closed");
+
+            int offset = (int) (writtenPosition - (long) segmentIndex * segmentSize);
+            if (offset + recordLength > segmentSize) {
+                rollOver();
+                offset = 0;
+            }
+
+            // Body first (at offset + header), then CRC it in place, then the header
+            ByteBuffer body = segment.duplicate();
+            body.position(offset + HEADER_BYTES);
+            body.put(record.kind.code);
+            body.putLong(record.sequence);
+            body.putLong(record.timestampMillis);
+            body.putLong(record.amountCents);
+            body.putShort((short) uid.length);
+            body.put(uid);
+            if (counterparty != null) {
+                body.putShort((short) counterparty.length);
+                body.put(counterparty);
+            } else {
+                body.putShort((short) -1);
+            }
+
+            ByteBuffer crcView = segment.duplicate();
+            crcView.position(offset + HEADER_BYTES);
+            crcView.limit(offset + HEADER_BYTES + bodyLength);
+            CRC32 crc = new CRC32();
+            crc.update(crcView);
+
+            segment.putInt(offset + 4, (int) crc.getValue());
+            segment.putInt(offset, bodyLength); // Written last: a record is only visible once its length is set
+
+            writtenPosition += recordLength;
+            lastSequence = record.sequence;
+            lock.notifyAll(); // Wake the flusher
+            return writtenPosition;
+        }
+    }
+
+    // Blocks until everything up to 'ticket' has been forced to disk
+    public void awaitDurable(long ticket) throws IOException, InterruptedException {
+        synchronized (lock) {
+            while (durablePosition < ticket) {
+                if (!open) throw new IOException("Journal closed before the record became durable");
+                lock.wait();
+            }
+        }
+    }
+
+    public void appendDurably(JournalRecord record) throws IOException, InterruptedException {
+        awaitDurable(append(record));
+    }
+
+    public long lastSequence() {
+        synchronized (lock) {
+            return lastSequence;
+        }
+    }
+
+    // Number of fsyncs so far (appends / forceCount = average group-commit batch size)
+    public long forceCount() {
+        synchronized (lock) {
+            return forceCount;
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            MappedByteBuffer toForce;
+            synchronized (lock) {
+                while (open && writtenPosition == durablePosition) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (writtenPosition == durablePosition) return; // Closed and fully flushed
+                target = writtenPosition;
+                toForce = segment;
+            }
+
+            // Force outside the lock so the next batch can keep appending meanwhile
+            toForce.force();
+
+            synchronized (lock) {
+                if (target > durablePosition) durablePosition = target;
+                forceCount++;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Called with 'lock' held: seals the current segment and maps the next one
+    private void rollOver() throws IOException {
+        segment.force();
+        segmentFile.close();
+        segmentIndex++;
+        mapSegment(segmentIndex);
+        writtenPosition = (long) segmentIndex * segmentSize;
+        if (durablePosition < writtenPosition) {
+            durablePosition = writtenPosition; // Everything before the new segment was just forced
+        }
+    }
+
+    private void mapSegment(int index) throws IOException {
+        segmentFile = new RandomAccessFile(segmentPath(index), "rw");
+        if (segmentFile.length() < segmentSize) {
+            segmentFile.setLength(segmentSize);
+        }
+        segment = segmentFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    // --- Recovery and replay ---
+
+    private void recover() throws IOException {
+        List<File> segments = listSegments();
+        if (segments.isEmpty()) {
+            segmentIndex = 0;
+            mapSegment(0);
+            writtenPosition = 0L;
+            durablePosition = 0L;
+            return;
+        }
+
+        // Earlier segments were sealed on rollover; any damage there is real corruption
+        for (int i = 0; i < segments.size() - 1; i++) {
+            try (RandomAccessFile file = new RandomAccessFile(segments.get(i), "r")) {
+                MappedByteBuffer sealed = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+                int end = scan(sealed, record -> lastSequence = record.sequence);
+                if (end < 0) throw new IOException("Corrupt sealed journal segment " + segments.get(i));
+            }
+        }
+
+        File last = segments.get(segments.size() - 1);
+        segmentIndex = indexOf(last);
+        mapSegment(segmentIndex);
+        int end = scan(segment, record -> lastSequence = record.sequence);
+        if (end < 0) {
+            // Torn tail: keep the valid prefix, zero the rest so later appends start from a clean end
+            int validEnd = -end - 1;
+            for (int i = validEnd; i < segmentSize; i++) {
+                segment.put(i, (byte) 0);
+            }
+            segment.force();
+            end = validEnd;
+        }
+        writtenPosition = (long) segmentIndex * segmentSize + end;
+        durablePosition = writtenPosition;
+    }
+
+    /**
+     * Replays every record in order, straight from the mapped segments.
+     */
+    public void replay(Consumer<JournalRecord> sink) throws IOException {
+        for (File file : listSegments()) {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+                if (scan(buffer, sink) < 0) return; // Stop at a torn tail
+            }
+        }
+    }
+
+    /**
+     * Decodes records from the start of a segment. Returns the end offset of the data if it ended cleanly,
+     * or -(offset of the first bad record) - 1 if a record was truncated or failed its CRC.
+     */
+    private static int scan(ByteBuffer segmentBuffer, Consumer<JournalRecord> sink) {
+        int offset = 0;
+        int capacity = segmentBuffer.capacity();
+        CRC32 crc = new CRC32();
+
+        while (offset + HEADER_BYTES <= capacity) {
+            int bodyLength = segmentBuffer.getInt(offset);
+            if (bodyLength == 0) return offset; // Clean end of data
+            if (bodyLength < 0 || offset + HEADER_BYTES + bodyLength > capacity) return -offset - 1;
+
+            ByteBuffer body = segmentBuffer.duplicate();
+            body.position(offset + HEADER_BYTES);
+            body.limit(offset + HEADER_BYTES + bodyLength);
+            crc.reset();
+            crc.update(body.duplicate());
+            if ((int) crc.getValue() != segmentBuffer.getInt(offset + 4)) return -offset - 1;
+
+            JournalRecord record = decode(body);
+            if (record == null) return -offset - 1;
+            sink.accept(record);
+            offset += HEADER_BYTES + bodyLength;
+        }
+        return offset;
+    }
+
+    private static JournalRecord decode(ByteBuffer body) {
+        JournalRecord.Kind kind = JournalRecord.Kind.fromCode(body.get());
+        if (kind == null) return null;
+        long sequence = body.getLong();
+        long timestamp = body.getLong();
+        long amount = body.getLong();
+        byte[] uid = new byte[body.getShort()];
+        body.get(uid);
+        short counterpartyLength = body.getShort();
+        String counterparty = null;
+        if (counterpartyLength >= 0) {
+            byte[] bytes = new byte[counterpartyLength];
+            body.get(bytes);
+            counterparty = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new JournalRecord(kind, sequence, timestamp, new String(uid, StandardCharsets.UTF_8), counterparty, amount);
+    }
+
+    private List<File> listSegments() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SEGMENT_SUFFIX));
+        List<File> segments = new ArrayList<>();
+        if (files != null) {
+            Arrays.sort(files); // Zero-padded names sort in segment order
+            segments.addAll(Arrays.asList(files));
+        }
+        return segments;
+    }
+
+    private File segmentPath(int index) {
+        return new File(dir, String.format("%020d%s", index, SEGMENT_SUFFIX));
+    }
+
+    private static int indexOf(File segmentFile) {
+        String name = segmentFile.getName();
+        return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (!open) return;
+            open = false;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            segment.force();
+            durablePosition = writtenPosition;
+            lock.notifyAll();
+            segmentFile.close();
+        }
+    }
+}
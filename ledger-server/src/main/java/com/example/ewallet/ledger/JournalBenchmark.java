@@ -0,0 +1,66 @@
+package com.example.ewallet.ledger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures durable appends per second at different group-commit batch sizes.
+ * The batch size is driven by the number of concurrent appenders, each waiting for its own record to be durable,
+ * so N appenders let one fsync cover up to N records.
+ * Run with: java com.example.ewallet.ledger.JournalBenchmark [secondsPerRun]
+ */
+public class JournalBenchmark {
+
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+    private static final int[] APPENDER_COUNTS = {1, 4, 16, 64, 256};
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+        System.out.println("appenders  appends/s  fsyncs/s  avg-batch");
+        for (int appenders : APPENDER_COUNTS) {
+            run(appenders, seconds);
+        }
+    }
+
+    private static void run(int appenders, int seconds) throws Exception {
+        File dir = Files.createTempDirectory("journal-bench").toFile();
+        AtomicLong appended = new AtomicLong();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+
+        try (Journal journal = Journal.open(dir, SEGMENT_SIZE)) {
+            AtomicLong sequence = new AtomicLong();
+            Thread[] threads = new Thread[appenders];
+            for (int t = 0; t < appenders; t++) {
+                final String uid = "user-" + t;
+                threads[t] = new Thread(() -> {
+                    try {
+                        while (System.nanoTime() < deadline) {
+                            journal.appendDurably(new JournalRecord(JournalRecord.Kind.TRANSFER,
+                                    sequence.getAndIncrement(), System.currentTimeMillis(), uid, "recipient", 2_500L));
+                            appended.incrementAndGet();
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            long forces = Math.max(1L, journal.forceCount());
+            System.out.printf("%9d  %9d  %8d  %9.1f%n", appenders, appended.get() / seconds,
+                    forces / seconds, appended.get() / (double) forces);
+        } finally {
+            File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) file.delete();
+            }
+            dir.delete();
+        }
+    }
+}
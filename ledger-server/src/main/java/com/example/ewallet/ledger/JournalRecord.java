@@ -0,0 +1,52 @@
+package com.example.ewallet.ledger;
+
+/**
+ * One money-moving event in the write-ahead journal. The four kinds are exactly the state changes the wallet makes:
+ * the signup credit (SignupActivity), transfers (TransferFragment), loans taken (TakeLoanFragment) and
+ * loan repayments (RepayLoanFragment). Amounts are integer cents.
+ */
+public final class JournalRecord {
+
+    public enum Kind {
+        SIGNUP_CREDIT((byte) 1),
+        TRANSFER((byte) 2),
+        LOAN_TAKEN((byte) 3),
+        LOAN_REPAYMENT((byte) 4);
+
+        final byte code;
+
+        Kind(byte code) {
+            this.code = code;
+        }
+
+        static Kind fromCode(byte code) {
+            for (Kind kind : values()) {
+                if (kind.code == code) return kind;
+            }
+            return null;
+        }
+    }
+
+    public final Kind kind;
+    public final long sequence;
+    public final long timestampMillis;
+    public final String uid;             // Account credited/debited (sender for transfers)
+    public final String counterpartyUid; // Recipient for transfers, otherwise null
+    public final long amountCents;
+
+    public JournalRecord(Kind kind, long sequence, long timestampMillis, String uid,
+                         String counterpartyUid, long amountCents) {
+        this.kind = kind;
+        this.sequence = sequence;
+        this.timestampMillis = timestampMillis;
+        this.uid = uid;
+        this.counterpartyUid = counterpartyUid;
+        this.amountCents = amountCents;
+    }
+
+    @Override
+    public String toString() {
+        return "JournalRecord{" + kind + " #" + sequence + " " + uid
+                + (counterpartyUid != null ? " -> " + counterpartyUid : "") + " " + amountCents + "c}";
+    }
+}
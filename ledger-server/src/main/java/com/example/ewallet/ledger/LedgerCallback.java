@@ -0,0 +1,9 @@
+package com.example.ewallet.ledger;
+
+/**
+ * Completion callback for a ledger command. Called on the sequencer thread, so it must return quickly.
+ * The balance and loan fields describe the command's primary account (sender for transfers) after the command.
+ */
+public interface LedgerCallback {
+    void onComplete(long sequence, LedgerResult result, long balanceCents, long loanTakenCents);
+}
@@ -0,0 +1,25 @@
+package com.example.ewallet.ledger;
+
+/**
+ * A pre-allocated, reusable ring buffer slot. Producers fill it in place, so submitting a command allocates nothing.
+ */
+final class LedgerCommand {
+
+    LedgerOp op;
+    String uid;             // Primary account (sender for transfers)
+    String counterpartyUid; // Recipient for transfers, otherwise null
+    String userId;          // Human-readable id, only used by SIGNUP
+    long amountCents;       // Signed for COMMIT (the decision's change to uid)
+    long txId;              // Two-phase transaction id, only for RESERVE_DEBIT/PREPARE_CREDIT/COMMIT/ABORT
+    LedgerCallback callback;
+
+    void clear() {
+        op = null;
+        uid = null;
+        counterpartyUid = null;
+        userId = null;
+        amountCents = 0L;
+        txId = 0L;
+        callback = null;
+    }
+}
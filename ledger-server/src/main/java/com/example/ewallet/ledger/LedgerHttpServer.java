@@ -0,0 +1,431 @@
+package com.example.ewallet.ledger;
+
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal HTTP/1.1 front end for the LedgerSequencer, so the app (or curl) can use it as a local stand-in backend.
+ * Routes (amounts in integer cents, parameters in the query string):
+ *   POST /signup?uid=..&userId=..
+ *   POST /transfer?from=..&to=..&cents=..
+ *   POST /loan?uid=..&cents=..
+ *   POST /repay?uid=..&cents=..
+ *   GET  /account?uid=..
+ *   GET  /metrics
+ *   GET  /events?uid=..   (Server-Sent Events stream of the account's changes, resumable with Last-Event-ID)
+ *   POST /schedule?from=..&to=..&cents=..&frequency=ONCE|DAILY|WEEKLY|MONTHLY&firstRunMs=..
+ *   POST /schedule/cancel?id=..
+ *   GET  /schedule?id=..
+ * Every response is {"sequence":..,"result":"OK",...}; rejected commands return 409, bad requests 400.
+ * Transfers, loans, repayments and new standing orders pass the AdmissionController first and get 429 +
+ * Retry-After when shed; transfers and loans that break a VelocityChecker rule get 403, as do standing orders whose
+ * amount alone breaks a cents limit. Each run of a standing order is velocity checked again when it executes.
+ * Standing orders between unknown accounts are refused with 400.
+ * Run with: java com.example.ewallet.ledger.LedgerHttpServer [port] [accountStoreFile]
+ * With a store file, accounts live off-heap in a MappedAccountStore and survive restarts.
+ */
+public class LedgerHttpServer {
+
+    private static final long RESPONSE_TIMEOUT_MS = 5_000L;
+
+    private final LedgerSequencer sequencer;
+    private final AccountEventHub events; // Null when live events are not offered
+    private final AdmissionController admission; // Null when money operations are not rate limited
+    private final VelocityChecker velocity;      // Null when velocity rules are not enforced
+    private final TransferScheduler scheduler;   // Null when standing orders are not offered
+    private final int port;
+    private final ExecutorService workers;
+    private volatile ServerSocket serverSocket;
+
+    public LedgerHttpServer(LedgerSequencer sequencer, int port, int workerThreads) {
+        this(sequencer, null, port, workerThreads);
+    }
+
+    public LedgerHttpServer(LedgerSequencer sequencer, AccountEventHub events, int port, int workerThreads) {
+        this(sequencer, events, null, port, workerThreads);
+    }
+
+    public LedgerHttpServer(LedgerSequencer sequencer, AccountEventHub events, AdmissionController admission,
+                            int port, int workerThreads) {
+        this(sequencer, events, admission, null, port, workerThreads);
+    }
+
+    public LedgerHttpServer(LedgerSequencer sequencer, AccountEventHub events, AdmissionController admission,
+                            VelocityChecker velocity, int port, int workerThreads) {
+        this(sequencer, events, admission, velocity, null, port, workerThreads);
+    }
+
+    public LedgerHttpServer(LedgerSequencer sequencer, AccountEventHub events, AdmissionController admission,
+                            VelocityChecker velocity, TransferScheduler scheduler, int port, int workerThreads) {
+        this.sequencer = sequencer;
+        this.events = events;
+        this.admission = admission;
+        this.velocity = velocity;
+        this.scheduler = scheduler;
+        this.port = port;
+        this.workers = Executors.newFixedThreadPool(workerThreads);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        AccountStore store = args.length > 1
+                ? MappedAccountStore.open(new java.io.File(args[1]), 4_000_000)
+                : new HeapAccountStore(1 << 16);
+        LedgerSequencer sequencer = new LedgerSequencer(new AccountBook(store), 1 << 16);
+        AccountEventHub events = new AccountEventHub(4);
+        sequencer.setListener(events);
+        sequencer.start();
+        System.out.println("Ledger service listening on port " + port);
+        // Per account: 5 operations/s with bursts of 10; at most 1024 in flight, waiting up to 50 ms for a slot
+        AdmissionController admission = new AdmissionController(1 << 16, 5, 10, 1024, 50L);
+        Writer velocityLog = new OutputStreamWriter(new FileOutputStream("velocity-decisions.log", true), StandardCharsets.UTF_8);
+        VelocityChecker velocity = new VelocityChecker(VelocityChecker.defaultRules(), velocityLog);
+        TransferScheduler scheduler = new TransferScheduler(sequencer,
+                new ScheduleLog(new java.io.File("transfer-schedules.log")), velocity);
+        scheduler.start();
+        new LedgerHttpServer(sequencer, events, admission, velocity, scheduler, port, 32).serve();
+    }
+
+    // Blocks accepting connections until close() is called
+    public void serve() throws IOException {
+        serverSocket = new ServerSocket(port);
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                workers.execute(() -> handle(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) throw e;
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        if (serverSocket != null) serverSocket.close();
+        workers.shutdown();
+    }
+
+    private void handle(Socket socket) {
+        boolean handedOver = false;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            String requestLine = reader.readLine();
+            if (requestLine == null) return;
+
+            // All parameters travel in the query string; the only header read is the SSE resume position
+            String lastEventId = null;
+            String header;
+            while ((header = reader.readLine()) != null && !header.isEmpty()) {
+                if (header.regionMatches(true, 0, "Last-Event-ID:", 0, 14)) {
+                    lastEventId = header.substring(14).trim();
+                }
+            }
+
+            String[] parts = requestLine.split(" ");
+            if (parts.length < 2) {
+                respond(socket.getOutputStream(), 400, "{\"error\":\"Malformed request line\"}");
+                return;
+            }
+
+            String target = parts[1];
+            int queryStart = target.indexOf('?');
+            String path = queryStart >= 0 ? target.substring(0, queryStart) : target;
+            Map<String, String> params = parseQuery(queryStart >= 0 ? target.substring(queryStart + 1) : "");
+
+            if ("GET".equals(parts[0]) && "/events".equals(path)) {
+                handedOver = subscribe(socket, params, lastEventId);
+                return;
+            }
+            route(socket.getOutputStream(), parts[0], path, params);
+        } catch (IOException e) {
+            // Client went away; nothing to report
+        } finally {
+            if (!handedOver) closeQuietly(socket);
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do
+        }
+    }
+
+    // Returns true if the hub now owns the socket (it must stay open after this worker returns)
+    private boolean subscribe(Socket socket, Map<String, String> params, String lastEventIdHeader) throws IOException {
+        if (events == null) {
+            respond(socket.getOutputStream(), 404, "{\"error\":\"Live events are not enabled\"}");
+            return false;
+        }
+        String uid = params.get("uid");
+        if (uid == null || uid.isEmpty()) {
+            respond(socket.getOutputStream(), 400, "{\"error\":\"Missing parameter: uid\"}");
+            return false;
+        }
+
+        // Browsers resume with the Last-Event-ID header; other clients may pass ?since= instead
+        String resumeFrom = lastEventIdHeader != null ? lastEventIdHeader : params.get("since");
+        long lastEventId = -1L;
+        if (resumeFrom != null && !resumeFrom.isEmpty()) {
+            try {
+                lastEventId = Long.parseLong(resumeFrom);
+            } catch (NumberFormatException e) {
+                respond(socket.getOutputStream(), 400, "{\"error\":\"Invalid Last-Event-ID\"}");
+                return false;
+            }
+        }
+
+        events.subscribe(socket, uid, lastEventId);
+        return true;
+    }
+
+    private void route(OutputStream out, String method, String path, Map<String, String> params) throws IOException {
+        if ("GET".equals(method) && "/metrics".equals(path)) {
+            respond(out, 200, "{\"admission\":" + (admission != null ? admission.statsJson() : "null")
+                    + ",\"velocity\":" + (velocity != null ? velocity.statsJson() : "null")
+                    + ",\"scheduler\":" + (scheduler != null ? scheduler.statsJson() : "null")
+                    + ",\"events\":\"" + (events != null ? events.statsSummary() : "") + "\"}");
+            return;
+        }
+        String admissionKey = admission != null && "POST".equals(method) ? admissionKey(path, params) : null;
+        if (admissionKey == null) {
+            dispatch(out, method, path, params);
+            return;
+        }
+
+        long retryAfterMs = admission.admit(admissionKey);
+        if (retryAfterMs != AdmissionController.ADMITTED) {
+            long retryAfterSeconds = (retryAfterMs + 999) / 1000;
+            respond(out, 429, "{\"error\":\"Too many requests\",\"retryAfterMs\":" + retryAfterMs + "}",
+                    "Retry-After: " + retryAfterSeconds + "\r\n");
+            return;
+        }
+        try {
+            String brokenRule = velocity != null ? velocityCheck(path, params) : null;
+            if (brokenRule != null) {
+                respond(out, 403, "{\"error\":\"Velocity limit\",\"rule\":\"" + brokenRule + "\"}");
+                return;
+            }
+            dispatch(out, method, path, params);
+        } finally {
+            admission.release();
+        }
+    }
+
+    private void dispatch(OutputStream out, String method, String path, Map<String, String> params) throws IOException {
+        if (path.startsWith("/schedule")) {
+            schedule(out, method, path, params);
+        } else {
+            execute(out, method, path, params);
+        }
+    }
+
+    // Standing orders: answered directly by the TransferScheduler, the runs themselves go through the sequencer
+    private void schedule(OutputStream out, String method, String path, Map<String, String> params) throws IOException {
+        if (scheduler == null) {
+            respond(out, 404, "{\"error\":\"Scheduled transfers are not enabled\"}");
+            return;
+        }
+        try {
+            if ("GET".equals(method) && "/schedule".equals(path)) {
+                ScheduledTransfer order = scheduler.find(longParam(params, "id"));
+                if (order == null) {
+                    respond(out, 404, "{\"error\":\"Unknown schedule\"}");
+                } else {
+                    respond(out, 200, order.toJson());
+                }
+            } else if (!"POST".equals(method)) {
+                respond(out, 405, "{\"error\":\"Method not allowed\"}");
+            } else if ("/schedule".equals(path)) {
+                ScheduledTransfer.Frequency frequency;
+                try {
+                    frequency = ScheduledTransfer.Frequency.valueOf(required(params, "frequency"));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("Invalid frequency");
+                }
+                ScheduledTransfer order = scheduler.create(required(params, "from"), required(params, "to"),
+                        cents(params), frequency, longParam(params, "firstRunMs"));
+                respond(out, 200, order.toJson());
+            } else if ("/schedule/cancel".equals(path)) {
+                boolean cancelled = scheduler.cancel(longParam(params, "id"));
+                respond(out, cancelled ? 200 : 404, "{\"cancelled\":" + cancelled + "}");
+            } else {
+                respond(out, 404, "{\"error\":\"Unknown route\"}");
+            }
+        } catch (IllegalArgumentException e) {
+            respond(out, 400, "{\"error\":\"" + e.getMessage() + "\"}");
+        }
+    }
+
+    // Name of the velocity rule this operation would break, or null (also for malformed requests, left to execute)
+    private String velocityCheck(String path, Map<String, String> params) {
+        long amountCents;
+        try {
+            amountCents = cents(params);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if ("/transfer".equals(path)) {
+            return velocity.checkAndRecord(params.get("from"), VelocityChecker.Kind.TRANSFER, amountCents);
+        }
+        if ("/loan".equals(path)) {
+            return velocity.checkAndRecord(params.get("uid"), VelocityChecker.Kind.LOAN, amountCents);
+        }
+        if ("/schedule".equals(path)) {
+            // Runs are counted when they execute; an amount above a cents limit could never run at all
+            return velocity.checkAmount(params.get("from"), VelocityChecker.Kind.TRANSFER, amountCents);
+        }
+        return null;
+    }
+
+    // The account whose budget a money operation uses: the sender for transfers and standing orders
+    private static String admissionKey(String path, Map<String, String> params) {
+        switch (path) {
+            case "/transfer":
+            case "/schedule": return params.get("from");
+            case "/loan":
+            case "/repay": return params.get("uid");
+            default: return null;
+        }
+    }
+
+    private void execute(OutputStream out, String method, String path, Map<String, String> params) throws IOException {
+        Pending pending = new Pending();
+        try {
+            if ("GET".equals(method) && "/account".equals(path)) {
+                sequencer.query(required(params, "uid"), pending);
+            } else if (!"POST".equals(method)) {
+                respond(out, 405, "{\"error\":\"Method not allowed\"}");
+                return;
+            } else if ("/signup".equals(path)) {
+                sequencer.signup(required(params, "uid"), required(params, "userId"), pending);
+            } else if ("/transfer".equals(path)) {
+                sequencer.transfer(required(params, "from"), required(params, "to"), cents(params), pending);
+            } else if ("/loan".equals(path)) {
+                sequencer.takeLoan(required(params, "uid"), cents(params), pending);
+            } else if ("/repay".equals(path)) {
+                sequencer.repayLoan(required(params, "uid"), cents(params), pending);
+            } else {
+                respond(out, 404, "{\"error\":\"Unknown route\"}");
+                return;
+            }
+        } catch (IllegalArgumentException e) {
+            respond(out, 400, "{\"error\":\"" + e.getMessage() + "\"}");
+            return;
+        }
+
+        try {
+            if (!pending.done.await(RESPONSE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                respond(out, 503, "{\"error\":\"Ledger did not respond in time\"}");
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        String body = "{\"sequence\":" + pending.sequence
+                + ",\"result\":\"" + pending.result + "\""
+                + ",\"balanceCents\":" + pending.balanceCents
+                + ",\"loanTakenCents\":" + pending.loanTakenCents + "}";
+        respond(out, pending.result == LedgerResult.OK ? 200 : 409, body);
+    }
+
+    // Bridges the sequencer's callback to the waiting HTTP worker thread
+    private static final class Pending implements LedgerCallback {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile long sequence;
+        volatile LedgerResult result;
+        volatile long balanceCents;
+        volatile long loanTakenCents;
+
+        @Override
+        public void onComplete(long sequence, LedgerResult result, long balanceCents, long loanTakenCents) {
+            this.sequence = sequence;
+            this.result = result;
+            this.balanceCents = balanceCents;
+            this.loanTakenCents = loanTakenCents;
+            done.countDown();
+        }
+    }
+
+    private static String required(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static long cents(Map<String, String> params) {
+        try {
+            return Long.parseLong(required(params, "cents"));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cents value");
+        }
+    }
+
+    private static long longParam(Map<String, String> params, String name) {
+        try {
+            return Long.parseLong(required(params, name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + " value");
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String key = eq >= 0 ? pair.substring(0, eq) : pair;
+            String value = eq >= 0 ? pair.substring(eq + 1) : "";
+            params.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+        }
+        return params;
+    }
+
+    private static void respond(OutputStream out, int status, String body) throws IOException {
+        respond(out, status, body, "");
+    }
+
+    private static void respond(OutputStream out, int status, String body, String extraHeaders) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        String head = "HTTP/1.1 " + status + " " + reason(status) + "\r\n"
+                + extraHeaders
+                + "Content-Type: application/json\r\n"
+                + "Content-Length: " + bytes.length + "\r\n"
+                + "Connection: close\r\n\r\n";
+        out.write(head.getBytes(StandardCharsets.US_ASCII));
+        out.write(bytes);
+        out.flush();
+    }
+
+    private static String reason(int status) {
+        switch (status) {
+            case 200: return "OK";
+            case 400: return "Bad Request";
+            case 404: return "Not Found";
+            case 405: return "Method Not Allowed";
+            case 403: return "Forbidden";
+            case 409: return "Conflict";
+            case 429: return "Too Many Requests";
+            default: return "Service Unavailable";
+        }
+    }
+}
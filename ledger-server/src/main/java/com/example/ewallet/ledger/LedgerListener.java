@@ -0,0 +1,10 @@
+package com.example.ewallet.ledger;
+
+/**
+ * Observer of every command the sequencer applied, in sequence order. Called on the sequencer thread right after
+ * the command changed the AccountBook, so it may read the store but must return within microseconds.
+ */
+public interface LedgerListener {
+    void onApplied(long sequence, LedgerOp op, String uid, String counterpartyUid, long amountCents,
+                   LedgerResult result, AccountStore store);
+}
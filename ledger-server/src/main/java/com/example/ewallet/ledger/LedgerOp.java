@@ -0,0 +1,19 @@
+package com.example.ewallet.ledger;
+
+/**
+ * The operations the ledger service accepts. They mirror what the app does against Firestore:
+ * SignupActivity (SIGNUP), TransferFragment (TRANSFER), TakeLoanFragment (TAKE_LOAN) and RepayLoanFragment (REPAY_LOAN).
+ * QUERY changes nothing and only reports the account's current state.
+ * The last four are the participant side of a cross-partition transfer (see PartitionedLedger).
+ */
+public enum LedgerOp {
+    SIGNUP,
+    TRANSFER,
+    TAKE_LOAN,
+    REPAY_LOAN,
+    QUERY,
+    RESERVE_DEBIT,
+    PREPARE_CREDIT,
+    COMMIT,
+    ABORT
+}
@@ -0,0 +1,20 @@
+package com.example.ewallet.ledger;
+
+/**
+ * Outcome of one ledger command. Everything except OK means the command was rejected and changed nothing.
+ */
+public enum LedgerResult {
+    OK,
+    UNKNOWN_ACCOUNT,
+    DUPLICATE_ACCOUNT,
+    INVALID_AMOUNT,
+    SAME_ACCOUNT,
+    INSUFFICIENT_FUNDS,
+    LOAN_LIMIT_EXCEEDED,
+    REPAYMENT_EXCEEDS_LOAN,
+    INVALID_ACCOUNT, // uid or userId the store cannot hold (see AccountStore.accepts)
+    STORE_FULL,
+    TIMED_OUT,
+    SHUTTING_DOWN,   // Sent after PartitionedLedger.stop() began
+    INTERNAL_ERROR   // The command threw; the sequencer logged it and moved on
+}
@@ -0,0 +1,182 @@
+package com.example.ewallet.ledger;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-writer sequencer: every command goes through one pre-allocated ring buffer and is applied to the
+ * in-memory AccountBook by one dedicated thread, in sequence order. Because nothing else writes account state,
+ * there are no locks, no optimistic retries and no conflicts between transfers touching the same account.
+ */
+public class LedgerSequencer {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long PARK_NANOS = 50_000L;
+
+    private final CommandRingBuffer ring;
+    private final AccountBook book;
+    private final Thread writerThread;
+    private volatile boolean running = false;
+    private volatile LedgerListener listener; // Optional, e.g. the AccountEventHub
+
+    public LedgerSequencer(AccountBook book, int ringCapacity) {
+        this(book, ringCapacity, "ledger-sequencer");
+    }
+
+    public LedgerSequencer(AccountBook book, int ringCapacity, String threadName) {
+        this.book = book;
+        this.ring = new CommandRingBuffer(ringCapacity);
+        this.writerThread = new Thread(this::runLoop, threadName);
+        this.writerThread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        writerThread.start();
+    }
+
+    // Stops after every command claimed so far has been applied
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(writerThread);
+        writerThread.join();
+    }
+
+    // Set before start(); the listener sees every applied command on the writer thread
+    public void setListener(LedgerListener listener) {
+        this.listener = listener;
+    }
+
+    public AccountBook book() {
+        return book;
+    }
+
+    // --- Producer API (any thread) ---
+
+    public long signup(String uid, String userId, LedgerCallback callback) {
+        return submit(LedgerOp.SIGNUP, uid, null, userId, 0L, callback);
+    }
+
+    public long transfer(String fromUid, String toUid, long amountCents, LedgerCallback callback) {
+        return submit(LedgerOp.TRANSFER, fromUid, toUid, null, amountCents, callback);
+    }
+
+    public long takeLoan(String uid, long amountCents, LedgerCallback callback) {
+        return submit(LedgerOp.TAKE_LOAN, uid, null, null, amountCents, callback);
+    }
+
+    public long repayLoan(String uid, long amountCents, LedgerCallback callback) {
+        return submit(LedgerOp.REPAY_LOAN, uid, null, null, amountCents, callback);
+    }
+
+    public long query(String uid, LedgerCallback callback) {
+        return submit(LedgerOp.QUERY, uid, null, null, 0L, callback);
+    }
+
+    // --- Two-phase participant API (used by PartitionedLedger) ---
+
+    public long reserveDebit(long txId, String uid, long amountCents, LedgerCallback callback) {
+        return submit(LedgerOp.RESERVE_DEBIT, uid, null, null, amountCents, txId, callback);
+    }
+
+    public long prepareCredit(long txId, String uid, long amountCents, LedgerCallback callback) {
+        return submit(LedgerOp.PREPARE_CREDIT, uid, null, null, amountCents, txId, callback);
+    }
+
+    // 'deltaCents' is the signed change for 'uid' from the logged decision (negative for the sender)
+    public long commit(long txId, String uid, long deltaCents, LedgerCallback callback) {
+        return submit(LedgerOp.COMMIT, uid, null, null, deltaCents, txId, callback);
+    }
+
+    public long abort(long txId, String uid, LedgerCallback callback) {
+        return submit(LedgerOp.ABORT, uid, null, null, 0L, txId, callback);
+    }
+
+    private long submit(LedgerOp op, String uid, String counterpartyUid, String userId,
+                        long amountCents, LedgerCallback callback) {
+        return submit(op, uid, counterpartyUid, userId, amountCents, 0L, callback);
+    }
+
+    private long submit(LedgerOp op, String uid, String counterpartyUid, String userId,
+                        long amountCents, long txId, LedgerCallback callback) {
+        long sequence = ring.claim();
+        LedgerCommand command = ring.slot(sequence);
+        command.op = op;
+        command.uid = uid;
+        command.counterpartyUid = counterpartyUid;
+        command.userId = userId;
+        command.amountCents = amountCents;
+        command.txId = txId;
+        command.callback = callback;
+        ring.publish(sequence);
+        return sequence;
+    }
+
+    // --- Single writer ---
+
+    private void runLoop() {
+        long next = 0L;
+        int idle = 0;
+
+        while (running || next <= ring.lastClaimed()) {
+            if (!ring.isPublished(next)) {
+                idle = backOff(idle);
+                continue;
+            }
+            idle = 0;
+
+            LedgerCommand command = ring.slot(next);
+            LedgerOp op = command.op;
+            String uid = command.uid;
+            LedgerCallback callback = command.callback;
+
+            // A failing command must not end this thread: every later command would wait forever
+            LedgerResult result;
+            try {
+                result = book.apply(op, uid, command.counterpartyUid, command.userId,
+                        command.amountCents, command.txId);
+            } catch (RuntimeException e) {
+                System.err.println("Ledger command #" + next + " " + op + " failed: " + e);
+                result = LedgerResult.INTERNAL_ERROR;
+            }
+
+            LedgerListener currentListener = listener;
+            if (currentListener != null) {
+                try {
+                    currentListener.onApplied(next, op, uid, command.counterpartyUid, command.amountCents, result,
+                            book.store());
+                } catch (RuntimeException e) {
+                    System.err.println("Ledger listener failed on #" + next + ": " + e);
+                }
+            }
+
+            int slot = uid != null ? book.store().find(uid) : -1;
+            long balance = slot >= 0 ? book.store().balance(slot) : 0L;
+            long loanTaken = slot >= 0 ? book.store().loanTaken(slot) : 0L;
+
+            command.clear();
+            ring.markConsumed(next);
+
+            if (callback != null) {
+                try {
+                    callback.onComplete(next, result, balance, loanTaken);
+                } catch (RuntimeException e) {
+                    System.err.println("Ledger callback failed on #" + next + ": " + e);
+                }
+            }
+            next++;
+        }
+    }
+
+    // Spin, then yield, then park briefly: low latency under load, little CPU when idle
+    private int backOff(int idle) {
+        if (idle < SPIN_TRIES) {
+            // Busy spin
+        } else if (idle < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return idle + 1;
+    }
+}
@@ -0,0 +1,289 @@
+package com.example.ewallet.ledger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Off-heap AccountStore backed by one memory-mapped file, for millions of accounts without per-account objects.
+ *
+ * File layout:
+ *   header (64 bytes)   magic, version, slot capacity, index capacity, account count
+ *   slots (128 bytes)   uid (len + 47 ASCII bytes), userId (len + 31 bytes), balance, loanLimit, loanTaken, uid hash
+ *   index (4 bytes)     open-addressing uid -> slot table with linear probing; 0 = empty, otherwise slot + 1
+ *
+ * The index lives in the file too, so reopening is just a mmap: there is no load phase. Numeric fields are
+ * 8-byte aligned and accessed through a VarHandle, which makes per-slot reads/updates atomic for other threads
+ * (e.g. HTTP readers) while the sequencer remains the only structural writer (create).
+ * One mapping is limited to 2 GB, i.e. roughly 14 million accounts per file.
+ */
+public class MappedAccountStore implements AccountStore, AutoCloseable {
+
+    private static final int MAGIC = 0x45574C54; // "EWLT"
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 64;
+    private static final int H_MAGIC = 0;
+    private static final int H_VERSION = 4;
+    private static final int H_SLOT_CAPACITY = 8;
+    private static final int H_INDEX_CAPACITY = 12;
+    private static final int H_SIZE = 16;
+
+    private static final int SLOT_BYTES = 128;
+    private static final int S_UID = 0;          // 1 length byte + 47 bytes
+    private static final int UID_MAX = 47;
+    private static final int S_USER_ID = 48;     // 1 length byte + 31 bytes
+    private static final int USER_ID_MAX = 31;
+    private static final int S_BALANCE = 80;
+    private static final int S_LOAN_LIMIT = 88;
+    private static final int S_LOAN_TAKEN = 96;
+    private static final int S_HASH = 104;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int slotCapacity;
+    private final int indexCapacity;
+    private final int indexMask;
+    private final int indexBase;
+
+    private MappedAccountStore(RandomAccessFile file, MappedByteBuffer buffer, int slotCapacity, int indexCapacity) {
+        this.file = file;
+        this.buffer = buffer;
+        this.slotCapacity = slotCapacity;
+        this.indexCapacity = indexCapacity;
+        this.indexMask = indexCapacity - 1;
+        this.indexBase = HEADER_BYTES + slotCapacity * SLOT_BYTES;
+    }
+
+    /**
+     * Opens an existing store, or creates one able to hold 'slotCapacity' accounts.
+     */
+    public static MappedAccountStore open(File path, int slotCapacity) throws IOException {
+        boolean exists = path.exists() && path.length() >= HEADER_BYTES;
+        RandomAccessFile file = new RandomAccessFile(path, "rw");
+
+        if (exists) {
+            MappedByteBuffer header = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            header.order(ByteOrder.nativeOrder());
+            if (header.getInt(H_MAGIC) != MAGIC || header.getInt(H_VERSION) != VERSION) {
+                file.close();
+                throw new IOException("Not an account store: " + path);
+            }
+            slotCapacity = header.getInt(H_SLOT_CAPACITY);
+            int indexCapacity = header.getInt(H_INDEX_CAPACITY);
+            return map(file, slotCapacity, indexCapacity, false);
+        }
+
+        // Index at most half full keeps linear probes short
+        int indexCapacity = Integer.highestOneBit(Math.max(16, slotCapacity * 2 - 1)) << 1;
+        long totalBytes = HEADER_BYTES + (long) slotCapacity * SLOT_BYTES + (long) indexCapacity * 4;
+        if (totalBytes > Integer.MAX_VALUE) {
+            file.close();
+            throw new IllegalArgumentException("Capacity too large for a single mapping: " + slotCapacity);
+        }
+        file.setLength(totalBytes); // Zero-filled (sparse) until written
+        return map(file, slotCapacity, indexCapacity, true);
+    }
+
+    private static MappedAccountStore map(RandomAccessFile file, int slotCapacity, int indexCapacity, boolean init)
+            throws IOException {
+        long totalBytes = HEADER_BYTES + (long) slotCapacity * SLOT_BYTES + (long) indexCapacity * 4;
+        MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, totalBytes);
+        buffer.order(ByteOrder.nativeOrder());
+        if (init) {
+            buffer.putInt(H_VERSION, VERSION);
+            buffer.putInt(H_SLOT_CAPACITY, slotCapacity);
+            buffer.putInt(H_INDEX_CAPACITY, indexCapacity);
+            buffer.putInt(H_SIZE, 0);
+            buffer.putInt(H_MAGIC, MAGIC); // Last: marks the header as complete
+        }
+        return new MappedAccountStore(file, buffer, slotCapacity, indexCapacity);
+    }
+
+    // --- Lookup ---
+
+    @Override
+    public int find(String uid) {
+        int hash = hash(uid);
+        for (int i = hash & indexMask; ; i = (i + 1) & indexMask) {
+            int entry = (int) INTS.getAcquire(buffer, indexBase + i * 4);
+            if (entry == 0) return -1;
+            int slot = entry - 1;
+            if (buffer.getInt(slotBase(slot) + S_HASH) == hash && uidEquals(slot, uid)) return slot;
+        }
+    }
+
+    @Override
+    public int create(String uid, String userId, long balanceCents, long loanLimitCents) {
+        checkAscii(uid, UID_MAX, "uid");
+        String storedUserId = userId != null ? userId : "";
+        checkAscii(storedUserId, USER_ID_MAX, "userId");
+        if (find(uid) >= 0) return -1;
+
+        int slot = size();
+        if (slot >= slotCapacity) {
+            throw new IllegalStateException("Account store is full (" + slotCapacity + " slots)");
+        }
+
+        // 1. Fill the slot
+        int base = slotBase(slot);
+        writeAscii(base + S_UID, uid);
+        writeAscii(base + S_USER_ID, storedUserId);
+        LONGS.setRelease(buffer, base + S_BALANCE, balanceCents);
+        LONGS.setRelease(buffer, base + S_LOAN_LIMIT, loanLimitCents);
+        LONGS.setRelease(buffer, base + S_LOAN_TAKEN, 0L);
+        int hash = hash(uid);
+        buffer.putInt(base + S_HASH, hash);
+
+        // 2. Publish it in the index, 3. then bump the count
+        int i = hash & indexMask;
+        while ((int) INTS.getAcquire(buffer, indexBase + i * 4) != 0) {
+            i = (i + 1) & indexMask;
+        }
+        INTS.setRelease(buffer, indexBase + i * 4, slot + 1);
+        INTS.setRelease(buffer, H_SIZE, slot + 1);
+        return slot;
+    }
+
+    // Fixed-width ASCII fields: uid up to UID_MAX and userId up to USER_ID_MAX characters
+    @Override
+    public boolean accepts(String uid, String userId) {
+        return uid != null && !uid.isEmpty() && fitsAscii(uid, UID_MAX)
+                && (userId == null || fitsAscii(userId, USER_ID_MAX));
+    }
+
+    @Override
+    public boolean isFull() {
+        return size() >= slotCapacity;
+    }
+
+    @Override
+    public int size() {
+        return (int) INTS.getAcquire(buffer, H_SIZE);
+    }
+
+    public int capacity() {
+        return slotCapacity;
+    }
+
+    @Override
+    public String uid(int slot) {
+        return readAscii(slotBase(slot) + S_UID);
+    }
+
+    public String userId(int slot) {
+        return readAscii(slotBase(slot) + S_USER_ID);
+    }
+
+    // --- Numeric fields (atomic per slot) ---
+
+    @Override
+    public long balance(int slot) {
+        return (long) LONGS.getVolatile(buffer, slotBase(slot) + S_BALANCE);
+    }
+
+    @Override
+    public long loanLimit(int slot) {
+        return (long) LONGS.getVolatile(buffer, slotBase(slot) + S_LOAN_LIMIT);
+    }
+
+    @Override
+    public long loanTaken(int slot) {
+        return (long) LONGS.getVolatile(buffer, slotBase(slot) + S_LOAN_TAKEN);
+    }
+
+    @Override
+    public void setBalance(int slot, long cents) {
+        LONGS.setVolatile(buffer, slotBase(slot) + S_BALANCE, cents);
+    }
+
+    @Override
+    public void setLoanTaken(int slot, long cents) {
+        LONGS.setVolatile(buffer, slotBase(slot) + S_LOAN_TAKEN, cents);
+    }
+
+    public void setLoanLimit(int slot, long cents) {
+        LONGS.setVolatile(buffer, slotBase(slot) + S_LOAN_LIMIT, cents);
+    }
+
+    // Atomic add usable from any thread; returns the new balance
+    public long addBalance(int slot, long deltaCents) {
+        return (long) LONGS.getAndAdd(buffer, slotBase(slot) + S_BALANCE, deltaCents) + deltaCents;
+    }
+
+    public boolean compareAndSetBalance(int slot, long expectedCents, long newCents) {
+        return LONGS.compareAndSet(buffer, slotBase(slot) + S_BALANCE, expectedCents, newCents);
+    }
+
+    // Flushes dirty pages to the file (the journal remains the durability guarantee for individual commands)
+    public void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    // --- Helpers ---
+
+    private static int slotBase(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    private static int hash(String uid) {
+        int h = uid.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // Compares without allocating: uids are ASCII, one byte per char
+    private boolean uidEquals(int slot, String uid) {
+        int base = slotBase(slot) + S_UID;
+        int length = buffer.get(base);
+        if (length != uid.length()) return false;
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(base + 1 + i) != (byte) uid.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private void writeAscii(int offset, String value) {
+        buffer.put(offset, (byte) value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer.put(offset + 1 + i, (byte) value.charAt(i));
+        }
+    }
+
+    private String readAscii(int offset) {
+        int length = buffer.get(offset);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) buffer.get(offset + 1 + i);
+        }
+        return new String(chars);
+    }
+
+    private static boolean fitsAscii(String value, int maxLength) {
+        if (value.length() > maxLength) return false;
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) > 0x7F) return false;
+        }
+        return true;
+    }
+
+    // create() still refuses bad input from callers that skipped accepts()
+    private static void checkAscii(String value, int maxLength, String field) {
+        if (!fitsAscii(value, maxLength)) {
+            throw new IllegalArgumentException(field + " must be ASCII and at most " + maxLength + " characters");
+        }
+    }
+}
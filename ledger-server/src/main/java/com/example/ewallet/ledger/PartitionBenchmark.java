@@ -0,0 +1,113 @@
+package com.example.ewallet.ledger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures transfers per second as the number of partitions grows, with a fixed share of cross-partition transfers.
+ * One producer per partition sends transfers from that partition's accounts; CROSS_PERCENT of them go to an account
+ * on another partition and take the two-phase path. Afterwards the total of all balances must still equal the
+ * signup bonuses handed out, i.e. no money was created or lost by commits, aborts or timeouts.
+ * Run with: java com.example.ewallet.ledger.PartitionBenchmark [secondsPerRun]
+ */
+public class PartitionBenchmark {
+
+    private static final int[] PARTITION_COUNTS = {1, 2, 4, 8};
+    private static final int ACCOUNTS = 100_000;
+    private static final int CROSS_PERCENT = 10;
+    private static final int MAX_OUTSTANDING_PER_PRODUCER = 4_096;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+        System.out.println("partitions  transfers/s  conserved  stats");
+        for (int partitions : PARTITION_COUNTS) {
+            run(partitions, seconds);
+        }
+    }
+
+    private static void run(int partitionCount, int seconds) throws Exception {
+        AccountBook[] books = new AccountBook[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            books[i] = new AccountBook(new HeapAccountStore(2 * ACCOUNTS / partitionCount));
+        }
+        PartitionedLedger ledger = new PartitionedLedger(books, 1 << 16, new DecisionLog(null), 1_000L, 8_192);
+        ledger.start();
+
+        // Accounts grouped by owning partition so producers can pick local or remote recipients
+        List<List<String>> uidsByPartition = new ArrayList<>();
+        for (int i = 0; i < partitionCount; i++) {
+            uidsByPartition.add(new ArrayList<>());
+        }
+        AtomicLong signedUp = new AtomicLong();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            String uid = "uid-" + i;
+            uidsByPartition.get(ledger.partitionOf(uid)).add(uid);
+            ledger.signup(uid, "user" + i, (sequence, result, balance, loanTaken) -> signedUp.incrementAndGet());
+        }
+        while (signedUp.get() < ACCOUNTS) {
+            Thread.yield();
+        }
+
+        AtomicLong completed = new AtomicLong();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        Thread[] producers = new Thread[partitionCount];
+        for (int p = 0; p < partitionCount; p++) {
+            final int home = p;
+            producers[p] = new Thread(() -> produce(ledger, uidsByPartition, home, deadline, completed));
+            producers[p].start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        ledger.stop();
+
+        long total = 0L;
+        for (AccountBook book : books) {
+            AccountStore store = book.store();
+            for (int slot = 0; slot < store.size(); slot++) {
+                total += store.balance(slot);
+            }
+        }
+        boolean conserved = total == ACCOUNTS * AccountBook.SIGNUP_BONUS_CENTS;
+        System.out.printf("%10d  %11d  %9s  %s%n", partitionCount, completed.get() / seconds, conserved,
+                ledger.statsSummary());
+    }
+
+    private static void produce(PartitionedLedger ledger, List<List<String>> uidsByPartition, int home,
+                                long deadline, AtomicLong completed) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<String> local = uidsByPartition.get(home);
+        int partitionCount = uidsByPartition.size();
+        AtomicLong done = new AtomicLong();
+        long submitted = 0L;
+
+        LedgerCallback callback = (sequence, result, balance, loanTaken) -> {
+            done.incrementAndGet();
+            completed.incrementAndGet();
+        };
+
+        while (System.nanoTime() < deadline) {
+            if (submitted - done.get() >= MAX_OUTSTANDING_PER_PRODUCER) {
+                Thread.onSpinWait();
+                continue;
+            }
+            String from = local.get(random.nextInt(local.size()));
+            List<String> targets = local;
+            if (partitionCount > 1 && random.nextInt(100) < CROSS_PERCENT) {
+                int other = (home + 1 + random.nextInt(partitionCount - 1)) % partitionCount;
+                targets = uidsByPartition.get(other);
+            }
+            String to = targets.get(random.nextInt(targets.size()));
+            if (to.equals(from)) continue;
+
+            ledger.transfer(from, to, 1 + random.nextInt(500), callback);
+            submitted++;
+        }
+        while (done.get() < submitted) {
+            Thread.onSpinWait();
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.example.ewallet.ledger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Accounts hash-partitioned over several LedgerSequencers, each with its own AccountBook and writer thread.
+ * Signup, loans, repayments and same-partition transfers go straight to the owning sequencer (the fast path).
+ * A transfer between partitions runs a two-phase commit coordinated here:
+ *   1. RESERVE_DEBIT on the sender's partition and PREPARE_CREDIT on the recipient's partition, in parallel.
+ *   2. If both vote OK the decision is made durable in the DecisionLog, then COMMIT goes to both partitions;
+ *      otherwise (a rejection, or no answer within the timeout) ABORT goes to both.
+ * Votes arrive on sequencer threads and are handed to a coordinator thread, so one writer never blocks on another
+ * partition's full ring. At most maxInFlight cross-partition transfers are prepared at any time.
+ * stop() refuses new transfers and drains the in-flight ones before stopping the partitions, and stops the
+ * coordinator last, since the partitions' final votes and acks are handed to it.
+ */
+public class PartitionedLedger {
+
+    private static final int PREPARING = 0;
+    private static final int DECIDED = 1;
+
+    private final LedgerSequencer[] partitions;
+    private final DecisionLog decisionLog;
+    private final long prepareTimeoutNanos;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final ExecutorService coordinator;
+    private final ScheduledExecutorService reaper;
+    private final Map<Long, CrossTransfer> preparing = new ConcurrentHashMap<>();
+    private final AtomicLong nextTxId;
+    private volatile boolean stopping = false;
+
+    // --- Metrics ---
+    private final AtomicLong localTransfers = new AtomicLong();
+    private final AtomicLong crossCommits = new AtomicLong();
+    private final AtomicLong crossAborts = new AtomicLong();
+    private final AtomicLong crossTimeouts = new AtomicLong();
+
+    /**
+     * State of one cross-partition transfer while its votes are outstanding.
+     */
+    private static final class CrossTransfer {
+        final long txId;
+        final String fromUid;
+        final String toUid;
+        final long amountCents;
+        final LedgerCallback callback;
+        final long startedNanos = System.nanoTime();
+        final AtomicInteger state = new AtomicInteger(PREPARING);
+        final AtomicInteger votes = new AtomicInteger();
+        volatile LedgerResult rejection; // First non-OK vote, if any
+
+        CrossTransfer(long txId, String fromUid, String toUid, long amountCents, LedgerCallback callback) {
+            this.txId = txId;
+            this.fromUid = fromUid;
+            this.toUid = toUid;
+            this.amountCents = amountCents;
+            this.callback = callback;
+        }
+    }
+
+    public PartitionedLedger(AccountBook[] books, int ringCapacity, DecisionLog decisionLog,
+                             long prepareTimeoutMs, int maxInFlight) {
+        this.partitions = new LedgerSequencer[books.length];
+        // Only decisions that may still be re-driven need their applied marks; the rest are finished everywhere
+        List<Long> unfinishedTxIds = new ArrayList<>();
+        for (DecisionLog.Decision decision : decisionLog.unfinishedCommits()) {
+            unfinishedTxIds.add(decision.txId);
+        }
+        for (int i = 0; i < books.length; i++) {
+            try {
+                books[i].appliedCommits().retainOnly(unfinishedTxIds);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            partitions[i] = new LedgerSequencer(books[i], ringCapacity, "ledger-partition-" + i);
+        }
+        this.decisionLog = decisionLog;
+        this.prepareTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(prepareTimeoutMs);
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.nextTxId = new AtomicLong(decisionLog.maxTxId() + 1);
+        this.coordinator = Executors.newSingleThreadExecutor(r -> daemon(r, "ledger-coordinator"));
+        this.reaper = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "ledger-2pc-reaper"));
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    public void start() {
+        for (LedgerSequencer partition : partitions) {
+            partition.start();
+        }
+        long periodMs = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(prepareTimeoutNanos) / 2);
+        reaper.scheduleWithFixedDelay(this::abortExpired, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Refuses new transfers, waits for the in-flight ones (the reaper still aborts stuck prepares), stops the
+    // partitions and then the coordinator. A transfer still unfinished after the drain timeout is left to recover().
+    public void stop() throws InterruptedException {
+        stopping = true;
+        long drainMs = TimeUnit.NANOSECONDS.toMillis(prepareTimeoutNanos) + 5_000L;
+        if (inFlight.tryAcquire(maxInFlight, drainMs, TimeUnit.MILLISECONDS)) {
+            inFlight.release(maxInFlight);
+        } else {
+            System.err.println("Stopping with " + (maxInFlight - inFlight.availablePermits())
+                    + " cross-partition transfers in flight; recover() finishes the committed ones");
+        }
+        reaper.shutdownNow();
+        for (LedgerSequencer partition : partitions) {
+            partition.stop();
+        }
+        coordinator.shutdown();
+        coordinator.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    public int partitionCount() {
+        return partitions.length;
+    }
+
+    public LedgerSequencer partition(int index) {
+        return partitions[index];
+    }
+
+    // Same spreading as the account index, so neighbouring uids do not cluster on one partition
+    public int partitionOf(String uid) {
+        int h = uid.hashCode() * 0x9E3779B9;
+        return Math.floorMod(h ^ (h >>> 16), partitions.length);
+    }
+
+    // --- Single-partition operations ---
+
+    public void signup(String uid, String userId, LedgerCallback callback) {
+        partitions[partitionOf(uid)].signup(uid, userId, callback);
+    }
+
+    public void takeLoan(String uid, long amountCents, LedgerCallback callback) {
+        partitions[partitionOf(uid)].takeLoan(uid, amountCents, callback);
+    }
+
+    public void repayLoan(String uid, long amountCents, LedgerCallback callback) {
+        partitions[partitionOf(uid)].repayLoan(uid, amountCents, callback);
+    }
+
+    public void query(String uid, LedgerCallback callback) {
+        partitions[partitionOf(uid)].query(uid, callback);
+    }
+
+    // --- Transfers ---
+
+    public void transfer(String fromUid, String toUid, long amountCents, LedgerCallback callback) {
+        if (stopping) {
+            callback.onComplete(-1L, LedgerResult.SHUTTING_DOWN, 0L, 0L);
+            return;
+        }
+        int fromPartition = partitionOf(fromUid);
+        int toPartition = partitionOf(toUid);
+        if (fromPartition == toPartition) {
+            localTransfers.incrementAndGet();
+            partitions[fromPartition].transfer(fromUid, toUid, amountCents, callback);
+            return;
+        }
+
+        // Same early checks the single-partition path makes, without a round trip
+        if (amountCents <= 0) {
+            callback.onComplete(-1L, LedgerResult.INVALID_AMOUNT, 0L, 0L);
+            return;
+        }
+
+        inFlight.acquireUninterruptibly();
+        if (stopping) { // stop() began while this waited for a permit, and may already have drained
+            inFlight.release();
+            callback.onComplete(-1L, LedgerResult.SHUTTING_DOWN, 0L, 0L);
+            return;
+        }
+        CrossTransfer tx = new CrossTransfer(nextTxId.getAndIncrement(), fromUid, toUid, amountCents, callback);
+        preparing.put(tx.txId, tx);
+
+        LedgerCallback vote = (sequence, result, balanceCents, loanTakenCents) ->
+                handOff(() -> onVote(tx, result));
+        partitions[fromPartition].reserveDebit(tx.txId, fromUid, amountCents, vote);
+        partitions[toPartition].prepareCredit(tx.txId, toUid, amountCents, vote);
+    }
+
+    // Sequencer threads hand votes and acks over here. The coordinator only refuses them if stop() timed out
+    // draining and the partitions ran on past it; the decision log still has whatever recover() needs.
+    private void handOff(Runnable task) {
+        try {
+            coordinator.execute(task);
+        } catch (RejectedExecutionException e) {
+            System.err.println("Coordinator stopped; 2PC step left to recover()");
+        }
+    }
+
+    // Coordinator thread: decides once both votes are in
+    private void onVote(CrossTransfer tx, LedgerResult result) {
+        if (result != LedgerResult.OK && tx.rejection == null) {
+            tx.rejection = result;
+        }
+        if (tx.votes.incrementAndGet() < 2) return;
+        if (!tx.state.compareAndSet(PREPARING, DECIDED)) return; // Already aborted by the reaper
+        preparing.remove(tx.txId);
+
+        if (tx.rejection != null) {
+            crossAborts.incrementAndGet();
+            abortBoth(tx, tx.rejection);
+            return;
+        }
+
+        try {
+            decisionLog.logCommit(tx.txId, tx.fromUid, tx.toUid, tx.amountCents);
+        } catch (IOException e) {
+            // No durable decision means no commit (presumed abort)
+            crossAborts.incrementAndGet();
+            abortBoth(tx, LedgerResult.TIMED_OUT);
+            return;
+        }
+        crossCommits.incrementAndGet();
+        commitBoth(tx.txId, tx.fromUid, tx.toUid, tx.amountCents, tx.callback);
+    }
+
+    // Each COMMIT carries its account and signed amount, so it applies even without a hold (see recover())
+    private void commitBoth(long txId, String fromUid, String toUid, long amountCents, LedgerCallback callback) {
+        AtomicInteger acks = new AtomicInteger();
+        long[] senderState = new long[3]; // sequence, balance, loanTaken as reported by the sender's partition
+
+        LedgerCallback senderAck = (sequence, result, balanceCents, loanTakenCents) -> {
+            senderState[0] = sequence;
+            senderState[1] = balanceCents;
+            senderState[2] = loanTakenCents;
+            if (acks.incrementAndGet() == 2) handOff(() -> finish(txId, callback, senderState));
+        };
+        LedgerCallback recipientAck = (sequence, result, balanceCents, loanTakenCents) -> {
+            if (acks.incrementAndGet() == 2) handOff(() -> finish(txId, callback, senderState));
+        };
+        partitions[partitionOf(fromUid)].commit(txId, fromUid, -amountCents, senderAck);
+        partitions[partitionOf(toUid)].commit(txId, toUid, amountCents, recipientAck);
+    }
+
+    // Coordinator thread (logDone shares a lock with the fsync in logCommit, so it stays off the writers)
+    private void finish(long txId, LedgerCallback callback, long[] senderState) {
+        try {
+            decisionLog.logDone(txId);
+        } catch (IOException e) {
+            // Harmless: recover() re-drives the commit and AppliedCommits skips it on both partitions
+        }
+        inFlight.release();
+        if (callback != null) {
+            callback.onComplete(senderState[0], LedgerResult.OK, senderState[1], senderState[2]);
+        }
+    }
+
+    private void abortBoth(CrossTransfer tx, LedgerResult result) {
+        // ABORT of a transaction a partition never prepared is a no-op, so both always get one
+        partitions[partitionOf(tx.toUid)].abort(tx.txId, tx.toUid, null);
+        partitions[partitionOf(tx.fromUid)].abort(tx.txId, tx.fromUid, (sequence, ignored, balanceCents, loanTakenCents) -> {
+            inFlight.release();
+            if (tx.callback != null) {
+                tx.callback.onComplete(sequence, result, balanceCents, loanTakenCents);
+            }
+        });
+    }
+
+    // Reaper thread: aborts transfers whose votes did not arrive in time
+    private void abortExpired() {
+        long now = System.nanoTime();
+        for (CrossTransfer tx : preparing.values()) {
+            if (now - tx.startedNanos < prepareTimeoutNanos) continue;
+            if (!tx.state.compareAndSet(PREPARING, DECIDED)) continue;
+            preparing.remove(tx.txId);
+            crossTimeouts.incrementAndGet();
+            abortBoth(tx, LedgerResult.TIMED_OUT);
+        }
+    }
+
+    /**
+     * Re-drives phase two for every logged COMMIT without a DONE record. Call after start() and before taking
+     * traffic: the holds that reserved the sender's funds did not survive the restart.
+     * The COMMITs carry uid and amount, so they apply without those holds; a partition that had already applied
+     * a decision before the crash finds it in its AppliedCommits and skips it, so nothing is applied twice.
+     */
+    public int recover() {
+        List<DecisionLog.Decision> unfinished = decisionLog.unfinishedCommits();
+        for (DecisionLog.Decision decision : unfinished) {
+            inFlight.acquireUninterruptibly();
+            commitBoth(decision.txId, decision.fromUid, decision.toUid, decision.amountCents, null);
+        }
+        return unfinished.size();
+    }
+
+    public String statsSummary() {
+        return "local=" + localTransfers.get()
+                + " crossCommitted=" + crossCommits.get()
+                + " crossAborted=" + crossAborts.get()
+                + " crossTimedOut=" + crossTimeouts.get();
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.ewallet.ledger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only record of standing orders and their runs: CREATE and CANCEL (forced before the client is answered),
+ * RUN before a run's transfer is submitted (forced once per tick for the whole batch) and OUTCOME once the ledger
+ * has answered. Reading it back rebuilds the active orders with their next occurrence.
+ * Runs are at most once: a RUN without OUTCOME after a crash is reported as in doubt, never executed again,
+ * because paying the rent twice is worse than asking the user to check once.
+ * With a null file the log is in-memory only (tests, benchmarks).
+ */
+public class ScheduleLog implements AutoCloseable {
+
+    private static final byte CREATE = 1;
+    private static final byte CANCEL = 2;
+    private static final byte RUN = 3;
+    private static final byte OUTCOME = 4;
+
+    private final FileOutputStream fileStream;
+    private final DataOutputStream out;
+    private final Map<Long, ScheduledTransfer> recovered = new LinkedHashMap<>();
+    private final Map<Long, Long> inDoubt = new HashMap<>(); // Schedule id -> occurrence started but not settled
+    private long maxId = 0L;
+
+    public ScheduleLog(File file) throws IOException {
+        if (file == null) {
+            fileStream = null;
+            out = null;
+            return;
+        }
+        if (file.exists()) {
+            readExisting(file);
+        }
+        fileStream = new FileOutputStream(file, true);
+        out = new DataOutputStream(new BufferedOutputStream(fileStream, 1 << 16));
+    }
+
+    private void readExisting(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            while (true) {
+                byte type = in.readByte();
+                long id = in.readLong();
+                maxId = Math.max(maxId, id);
+                if (type == CREATE) {
+                    ScheduledTransfer order = new ScheduledTransfer(id, in.readUTF(), in.readUTF(), in.readLong(),
+                            ScheduledTransfer.Frequency.values()[in.readByte()], in.readLong());
+                    recovered.put(id, order);
+                } else if (type == CANCEL) {
+                    recovered.remove(id);
+                    inDoubt.remove(id);
+                } else if (type == RUN) {
+                    long occurrence = in.readLong();
+                    ScheduledTransfer order = recovered.get(id);
+                    if (order != null) order.nextOccurrence = occurrence + 1;
+                    inDoubt.put(id, occurrence);
+                } else {
+                    long occurrence = in.readLong();
+                    in.readLong(); // Ledger sequence, kept for audits
+                    long executedAtMs = in.readLong();
+                    String outcome = in.readUTF();
+                    ScheduledTransfer order = recovered.get(id);
+                    if (order != null) {
+                        order.nextOccurrence = Math.max(order.nextOccurrence, occurrence + 1);
+                        order.lastRunMs = executedAtMs;
+                        order.lastOutcome = outcome;
+                    }
+                    Long started = inDoubt.get(id);
+                    if (started != null && started == occurrence) inDoubt.remove(id);
+                }
+            }
+        } catch (EOFException e) {
+            // End of log (a torn last record counts as never written)
+        }
+
+        // Finished one-off orders need no timer
+        recovered.values().removeIf(order -> order.nextRunMs() < 0 && !inDoubt.containsKey(order.id));
+    }
+
+    // Durable before returning: the client is only told the order exists once it survives a crash
+    public synchronized void logCreate(ScheduledTransfer order) throws IOException {
+        maxId = Math.max(maxId, order.id);
+        if (out == null) return;
+        out.writeByte(CREATE);
+        out.writeLong(order.id);
+        out.writeUTF(order.fromUid);
+        out.writeUTF(order.toUid);
+        out.writeLong(order.amountCents);
+        out.writeByte(order.frequency.ordinal());
+        out.writeLong(order.firstRunMs);
+        force();
+    }
+
+    public synchronized void logCancel(long id) throws IOException {
+        if (out == null) return;
+        out.writeByte(CANCEL);
+        out.writeLong(id);
+        force();
+    }
+
+    // Buffered; the scheduler calls force() once for all runs of a tick before submitting them
+    public synchronized void logRun(long id, long occurrence) throws IOException {
+        if (out == null) return;
+        out.writeByte(RUN);
+        out.writeLong(id);
+        out.writeLong(occurrence);
+    }
+
+    // Not forced: a lost OUTCOME turns a completed run into an in-doubt one, never into a second run
+    public synchronized void logOutcome(long id, long occurrence, long sequence, long executedAtMs, String outcome)
+            throws IOException {
+        if (out == null) return;
+        out.writeByte(OUTCOME);
+        out.writeLong(id);
+        out.writeLong(occurrence);
+        out.writeLong(sequence);
+        out.writeLong(executedAtMs);
+        out.writeUTF(outcome);
+    }
+
+    public synchronized void force() throws IOException {
+        if (out == null) return;
+        out.flush();
+        fileStream.getChannel().force(false);
+    }
+
+    // Active orders found in the existing file (read once at startup)
+    public synchronized List<ScheduledTransfer> recoveredOrders() {
+        return new ArrayList<>(recovered.values());
+    }
+
+    // Runs that were started before the last shutdown but have no outcome: schedule id -> occurrence
+    public synchronized Map<Long, Long> inDoubtRuns() {
+        return new HashMap<>(inDoubt);
+    }
+
+    public synchronized long maxId() {
+        return maxId;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) out.close();
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.ewallet.ledger;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * A standing order: move amountCents from fromUid to toUid once, or daily, weekly or monthly from firstRunMs.
+ * Occurrence n is always computed from firstRunMs (not from the previous run), so a monthly order set up
+ * on the 31st runs on the last day of shorter months and returns to the 31st afterwards.
+ * The object is its own timer in the scheduler's TimerWheel.
+ */
+public class ScheduledTransfer extends TimerWheel.Timer {
+
+    public enum Frequency {
+        ONCE, DAILY, WEEKLY, MONTHLY;
+
+        // Time of occurrence n (0-based) in UTC, or -1 if the order has no such occurrence
+        long occurrenceMs(long firstRunMs, long n) {
+            if (n == 0) return firstRunMs;
+            switch (this) {
+                case DAILY: return firstRunMs + n * 86_400_000L;
+                case WEEKLY: return firstRunMs + n * 7 * 86_400_000L;
+                case MONTHLY:
+                    ZonedDateTime first = Instant.ofEpochMilli(firstRunMs).atZone(ZoneOffset.UTC);
+                    return first.plusMonths(n).toInstant().toEpochMilli();
+                default: return -1L;
+            }
+        }
+    }
+
+    public final long id;
+    public final String fromUid;
+    public final String toUid;
+    public final long amountCents;
+    public final Frequency frequency;
+    public final long firstRunMs;
+
+    // Written by the scheduler thread, read by HTTP workers
+    volatile long nextOccurrence;      // Index of the next run to execute
+    volatile long lastRunMs = -1L;      // When the last run was executed (-1: never)
+    volatile String lastOutcome;       // LedgerResult name, "SKIPPED", "VELOCITY_LIMIT" or "UNKNOWN"; null before the first run
+    volatile boolean cancelled;
+
+    ScheduledTransfer(long id, String fromUid, String toUid, long amountCents, Frequency frequency, long firstRunMs) {
+        this.id = id;
+        this.fromUid = fromUid;
+        this.toUid = toUid;
+        this.amountCents = amountCents;
+        this.frequency = frequency;
+        this.firstRunMs = firstRunMs;
+    }
+
+    // Time of the next run, or -1 when the order is finished
+    public long nextRunMs() {
+        return cancelled ? -1L : frequency.occurrenceMs(firstRunMs, nextOccurrence);
+    }
+
+    public String toJson() {
+        return "{\"id\":" + id
+                + ",\"from\":\"" + fromUid + "\",\"to\":\"" + toUid + "\""
+                + ",\"cents\":" + amountCents
+                + ",\"frequency\":\"" + frequency + "\""
+                + ",\"nextRunMs\":" + nextRunMs()
+                + ",\"lastRunMs\":" + lastRunMs
+                + ",\"lastOutcome\":" + (lastOutcome != null ? "\"" + lastOutcome + "\"" : "null") + "}";
+    }
+}
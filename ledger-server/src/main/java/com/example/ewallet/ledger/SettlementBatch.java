@@ -0,0 +1,325 @@
+package com.example.ewallet.ledger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Nightly settlement over every account of an AccountStore.
+ * - The slot range is cut into fixed chunks that run as ForkJoin tasks, so idle workers steal the remaining chunks
+ *   from busy ones and an uneven chunk does not hold up the run.
+ * - Each chunk writes the day's position of its accounts (balance, loan, headroom) to positions-NNNNN.csv and
+ *   then appends its totals to the day's checkpoint file. A restarted run skips every chunk already in the
+ *   checkpoint and reuses its totals, so a crash costs at most the chunks that were in progress.
+ * - Reads are paced by a shared accounts-per-second budget, leaving the store (and the disk) to interactive traffic.
+ * - Conservation: in the ledger money only enters through signup bonuses and loans and only leaves through
+ *   repayments, so sum(balance) must equal accounts * SIGNUP_BONUS_CENTS + sum(loanTaken) + the opening offset.
+ *   The offset is what BulkImporter brought in beyond that (imported balances and loans), recorded in the store's
+ *   baseline file at import; a store built by signups alone has none. Per account, balance >= 0 and
+ *   loanTaken <= loanLimit must hold.
+ * Against a live MappedAccountStore each read is atomic per field, but transfers applied during the run can
+ * make the ledger-wide check drift; for an exact check run it on a quiescent store or a copy of the file.
+ * Run with: java com.example.ewallet.ledger.SettlementBatch storeFile outputDir [accountsPerSecond] [workers]
+ */
+public class SettlementBatch {
+
+    static final int CHUNK_SLOTS = 4_096;
+    private static final int THROTTLE_BATCH = 256; // Accounts read per throttle permit request
+
+    private final AccountStore store;
+    private final File dayDir;
+    private final Throttle throttle;
+    private final int workers;
+    private final long openingOffsetCents;
+
+    /**
+     * Totals of one chunk (or of the whole run), as written to the checkpoint.
+     */
+    static final class Totals {
+        long accounts;
+        long balanceCents;
+        long loanTakenCents;
+        long violations;
+
+        void add(Totals other) {
+            accounts += other.accounts;
+            balanceCents += other.balanceCents;
+            loanTakenCents += other.loanTakenCents;
+            violations += other.violations;
+        }
+    }
+
+    /**
+     * Shared pacing: hands out time slots so all workers together stay under the configured rate.
+     */
+    static final class Throttle {
+        private final long nanosPerPermit;
+        private final AtomicLong nextFreeNanos = new AtomicLong(System.nanoTime());
+
+        Throttle(long permitsPerSecond) {
+            this.nanosPerPermit = permitsPerSecond > 0 ? 1_000_000_000L / permitsPerSecond : 0L;
+        }
+
+        void acquire(int permits) {
+            if (nanosPerPermit == 0L) return; // Unthrottled
+            long now = System.nanoTime();
+            long cost = permits * nanosPerPermit;
+            // Unused budget from idle periods is not saved up, so the rate never bursts above the limit
+            long slot = nextFreeNanos.getAndAccumulate(cost, (next, c) -> Math.max(next, now) + c);
+            long wait = Math.max(slot, now) - now;
+            if (wait > 0) LockSupport.parkNanos(wait);
+        }
+    }
+
+    public SettlementBatch(AccountStore store, File outputDir, Date day, long accountsPerSecond, int workers) {
+        this(store, outputDir, day, accountsPerSecond, workers, 0L);
+    }
+
+    public SettlementBatch(AccountStore store, File outputDir, Date day, long accountsPerSecond, int workers,
+                           long openingOffsetCents) {
+        SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd", Locale.US);
+        dayFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        this.store = store;
+        this.dayDir = new File(outputDir, dayFormat.format(day));
+        this.throttle = new Throttle(accountsPerSecond);
+        this.workers = workers;
+        this.openingOffsetCents = openingOffsetCents;
+    }
+
+    // --- Baseline: money a store holds beyond its signup bonuses and outstanding loans ---
+
+    public static File baselineFile(File storeFile) {
+        return new File(storeFile.getPath() + ".baseline");
+    }
+
+    // 0 without a baseline file: nothing was imported into the store
+    public static long readBaseline(File storeFile) throws IOException {
+        File file = baselineFile(storeFile);
+        if (!file.exists()) return 0L;
+        return Long.parseLong(new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII).trim());
+    }
+
+    // Called by BulkImporter with the offset of the accounts it created
+    public static void addToBaseline(File storeFile, long offsetCents) throws IOException {
+        File file = baselineFile(storeFile);
+        File rewritten = new File(file.getPath() + ".tmp");
+        long baseline = readBaseline(storeFile) + offsetCents;
+        try (FileOutputStream out = new FileOutputStream(rewritten)) {
+            out.write((baseline + "\n").getBytes(StandardCharsets.US_ASCII));
+            out.getChannel().force(false);
+        }
+        if (!rewritten.renameTo(file)) {
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: SettlementBatch storeFile outputDir [accountsPerSecond] [workers]");
+            return;
+        }
+        long rate = args.length > 2 ? Long.parseLong(args[2]) : 200_000L;
+        int workers = args.length > 3 ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+
+        File storeFile = new File(args[0]);
+        if (!storeFile.isFile()) {
+            System.err.println("No account store at " + storeFile);
+            return;
+        }
+        try (MappedAccountStore store = MappedAccountStore.open(storeFile, 0)) {
+            String summary = new SettlementBatch(store, new File(args[1]), new Date(), rate, workers,
+                    readBaseline(storeFile)).run();
+            System.out.println(summary);
+        }
+    }
+
+    /**
+     * Runs (or resumes) the day's settlement and returns the summary, which is also written to summary.txt.
+     */
+    public String run() throws IOException {
+        if (!dayDir.isDirectory() && !dayDir.mkdirs()) {
+            throw new IOException("Cannot create " + dayDir);
+        }
+
+        File checkpointFile = new File(dayDir, "checkpoint.csv");
+        Map<Integer, Totals> done = readCheckpoint(checkpointFile);
+
+        // The account count is fixed at the start; accounts created during the run belong to tomorrow
+        int size = store.size();
+        int chunkCount = (size + CHUNK_SLOTS - 1) / CHUNK_SLOTS;
+
+        Totals total = new Totals();
+        List<Integer> remaining = new ArrayList<>();
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            Totals previous = done.get(chunk);
+            if (previous != null) {
+                total.add(previous); // Settled before the restart
+            } else {
+                remaining.add(chunk);
+            }
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(workers);
+        try (FileOutputStream checkpointStream = new FileOutputStream(checkpointFile, true)) {
+            total.add(pool.invoke(new ChunkRange(remaining, 0, remaining.size(), size, checkpointStream)));
+        } finally {
+            pool.shutdown();
+        }
+
+        long expectedCents = total.accounts * AccountBook.SIGNUP_BONUS_CENTS + total.loanTakenCents
+                + openingOffsetCents;
+        String summary = "accounts=" + total.accounts
+                + " chunks=" + chunkCount + " (resumed " + done.size() + ")"
+                + " totalBalanceCents=" + total.balanceCents
+                + " outstandingLoanCents=" + total.loanTakenCents
+                + " openingOffsetCents=" + openingOffsetCents
+                + " conserved=" + (total.balanceCents == expectedCents)
+                + " driftCents=" + (total.balanceCents - expectedCents)
+                + " accountViolations=" + total.violations;
+
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(dayDir, "summary.txt")), StandardCharsets.UTF_8)) {
+            writer.write(summary);
+            writer.write('\n');
+        }
+        return summary;
+    }
+
+    /**
+     * Halves its list of chunks until one is left. Forked halves sit in the worker's deque where idle workers
+     * steal them, so the pool stays busy even when some chunks are slower than others.
+     * Serializable only through ForkJoinTask; never serialized.
+     */
+    @SuppressWarnings("serial")
+    private final class ChunkRange extends RecursiveTask<Totals> {
+        private final List<Integer> chunks;
+        private final int lo;
+        private final int hi;
+        private final int size;
+        private final FileOutputStream checkpointStream;
+
+        ChunkRange(List<Integer> chunks, int lo, int hi, int size, FileOutputStream checkpointStream) {
+            this.chunks = chunks;
+            this.lo = lo;
+            this.hi = hi;
+            this.size = size;
+            this.checkpointStream = checkpointStream;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (hi - lo == 0) return new Totals();
+            if (hi - lo == 1) {
+                int chunk = chunks.get(lo);
+                int from = chunk * CHUNK_SLOTS;
+                Totals totals = settleChunk(chunk, from, Math.min(size, from + CHUNK_SLOTS));
+                recordChunk(checkpointStream, chunk, totals);
+                return totals;
+            }
+            int mid = (lo + hi) >>> 1;
+            ChunkRange right = new ChunkRange(chunks, mid, hi, size, checkpointStream);
+            right.fork();
+            Totals totals = new ChunkRange(chunks, lo, mid, size, checkpointStream).compute();
+            totals.add(right.join());
+            return totals;
+        }
+    }
+
+    private Totals settleChunk(int chunk, int from, int to) {
+        Totals totals = new Totals();
+        File positions = new File(dayDir, String.format(Locale.US, "positions-%05d.csv", chunk));
+        // Rewritten from scratch: a half-written file from a crashed run is simply replaced
+        try (FileOutputStream positionsStream = new FileOutputStream(positions);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(positionsStream, StandardCharsets.UTF_8))) {
+            writer.write("uid,balanceCents,loanTakenCents,loanLimitCents,loanHeadroomCents\n");
+            for (int slot = from; slot < to; slot++) {
+                if ((slot - from) % THROTTLE_BATCH == 0) {
+                    throttle.acquire(Math.min(THROTTLE_BATCH, to - slot));
+                }
+                long balance = store.balance(slot);
+                long loanTaken = store.loanTaken(slot);
+                long loanLimit = store.loanLimit(slot);
+
+                totals.accounts++;
+                totals.balanceCents += balance;
+                totals.loanTakenCents += loanTaken;
+                if (balance < 0 || loanTaken < 0 || loanTaken > loanLimit) totals.violations++;
+
+                writer.write(store.uid(slot));
+                writer.write(',');
+                writer.write(Long.toString(balance));
+                writer.write(',');
+                writer.write(Long.toString(loanTaken));
+                writer.write(',');
+                writer.write(Long.toString(loanLimit));
+                writer.write(',');
+                writer.write(Long.toString(loanLimit - loanTaken));
+                writer.write('\n');
+            }
+            writer.flush();
+            positionsStream.getChannel().force(false); // Durable before the checkpoint says the chunk is done
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return totals;
+    }
+
+    // One line per settled chunk, forced before the chunk's totals are counted
+    private static void recordChunk(FileOutputStream checkpointStream, int chunk, Totals totals) {
+        String line = chunk + "," + totals.accounts + "," + totals.balanceCents + ","
+                + totals.loanTakenCents + "," + totals.violations + "\n";
+        synchronized (checkpointStream) {
+            try {
+                checkpointStream.write(line.getBytes(StandardCharsets.US_ASCII));
+                checkpointStream.getChannel().force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static Map<Integer, Totals> readCheckpoint(File checkpointFile) throws IOException {
+        Map<Integer, Totals> done = new HashMap<>();
+        if (!checkpointFile.exists()) return done;
+
+        String content = new String(Files.readAllBytes(checkpointFile.toPath()), StandardCharsets.US_ASCII);
+        // Only newline-terminated lines count: a torn last line from a crash is cut off (that chunk runs again)
+        int end = content.lastIndexOf('\n') + 1;
+        if (end < content.length()) {
+            try (RandomAccessFile file = new RandomAccessFile(checkpointFile, "rw")) {
+                file.setLength(end);
+            }
+        }
+        if (end == 0) return done;
+        for (String line : content.substring(0, end - 1).split("\n")) {
+            String[] fields = line.split(",");
+            if (fields.length == 5) {
+                Totals totals = new Totals();
+                totals.accounts = Long.parseLong(fields[1]);
+                totals.balanceCents = Long.parseLong(fields[2]);
+                totals.loanTakenCents = Long.parseLong(fields[3]);
+                totals.violations = Long.parseLong(fields[4]);
+                done.put(Integer.parseInt(fields[0]), totals);
+            }
+        }
+        return done;
+    }
+}
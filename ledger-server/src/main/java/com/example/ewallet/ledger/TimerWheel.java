@@ -0,0 +1,146 @@
+package com.example.ewallet.ledger;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel (Varghese & Lauck): 4 levels of 256 slots, level L covering 256^(L+1) ticks.
+ * A timer goes into the level that matches how far away it is, so inserting and cancelling are O(1) and
+ * advancing one tick only touches one slot per level. When a lower level wraps round, the current slot of the
+ * level above is cascaded down; a timer is moved at most once per level before it fires.
+ * Timers are intrusive (the caller's object is the list node), so millions of timers cost no extra allocation.
+ * Not thread-safe: one thread owns the wheel (see TransferScheduler).
+ */
+public class TimerWheel<T extends TimerWheel.Timer> {
+
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_DELTA = (1L << (SLOT_BITS * LEVELS)) - 1; // Further away: re-placed on cascade
+
+    /**
+     * Base class of anything that can sit in the wheel. A timer is in at most one wheel slot at a time.
+     */
+    public static class Timer {
+        long deadlineTick;
+        int slot = -1; // Index into heads; -1 when not scheduled
+        Timer prev;
+        Timer next;
+
+        public boolean isScheduled() {
+            return slot >= 0;
+        }
+    }
+
+    private final long tickMs;
+    private final Timer[] heads = new Timer[LEVELS * SLOTS];
+    private long currentTick;
+    private int size;
+
+    public TimerWheel(long tickMs, long startMs) {
+        this.tickMs = tickMs;
+        this.currentTick = startMs / tickMs;
+    }
+
+    // Deadlines at or before the current tick fire on the next advance()
+    public void schedule(T timer, long deadlineMs) {
+        if (timer.isScheduled()) cancel(timer);
+        timer.deadlineTick = Math.max(deadlineMs / tickMs, currentTick + 1);
+        place(timer);
+        size++;
+    }
+
+    public void cancel(T timer) {
+        if (!timer.isScheduled()) return;
+        unlink(timer);
+        size--;
+    }
+
+    /**
+     * Moves time forward to nowMs, handing every expired timer to 'expired' (already removed from the wheel,
+     * so the callback may schedule it again). Returns the number of timers fired.
+     */
+    @SuppressWarnings("unchecked")
+    public int advance(long nowMs, Consumer<T> expired) {
+        long targetTick = nowMs / tickMs;
+        int fired = 0;
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+
+            Timer timer = detachSlot((int) (currentTick & SLOT_MASK));
+            while (timer != null) {
+                Timer next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                size--;
+                fired++;
+                expired.accept((T) timer);
+                timer = next;
+            }
+        }
+        return fired;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long tickMs() {
+        return tickMs;
+    }
+
+    // Cascades the levels whose lower levels just wrapped round, highest first, so nothing skips a level
+    private void cascade() {
+        int level = 0;
+        while (level + 1 < LEVELS && (currentTick & ((1L << (SLOT_BITS * (level + 1))) - 1)) == 0) {
+            level++;
+        }
+        for (; level >= 1; level--) {
+            int index = (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+            Timer timer = detachSlot(level * SLOTS + index);
+            while (timer != null) {
+                Timer next = timer.next;
+                timer.prev = null;
+                timer.next = null;
+                place(timer);
+                timer = next;
+            }
+        }
+    }
+
+    private void place(Timer timer) {
+        long delta = Math.min(timer.deadlineTick - currentTick, MAX_DELTA);
+        int level = delta < SLOTS ? 0 : (63 - Long.numberOfLeadingZeros(delta)) / SLOT_BITS;
+        long placedTick = currentTick + delta; // Equals the deadline except beyond the wheel's range
+        int slot = level * SLOTS + (int) ((placedTick >>> (SLOT_BITS * level)) & SLOT_MASK);
+
+        timer.slot = slot;
+        timer.prev = null;
+        timer.next = heads[slot];
+        if (heads[slot] != null) heads[slot].prev = timer;
+        heads[slot] = timer;
+    }
+
+    // Takes the whole list out of a slot; the returned timers are marked unscheduled
+    private Timer detachSlot(int slot) {
+        Timer head = heads[slot];
+        heads[slot] = null;
+        for (Timer timer = head; timer != null; timer = timer.next) {
+            timer.slot = -1;
+        }
+        return head;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            heads[timer.slot] = timer.next;
+        }
+        if (timer.next != null) timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+        timer.slot = -1;
+    }
+}
@@ -0,0 +1,300 @@
+package com.example.ewallet.ledger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Executes standing orders (ScheduledTransfer) through the LedgerSequencer.
+ * One scheduler thread owns a TimerWheel holding the next run of every active order: creating, cancelling and
+ * firing an order are O(1) however many orders exist. Requests from HTTP workers reach the thread through a
+ * queue, like commands reach the sequencer, so the wheel needs no locks.
+ * Per tick: all due orders get a RUN record (one fsync for the batch), their transfers are submitted and each
+ * order is put back into the wheel at its next occurrence. The ledger's answers come back through a second queue
+ * and are written as OUTCOME records.
+ * After downtime the recovered orders are simply due: each missed occurrence runs on a following tick, oldest
+ * first, unless it is older than catchUpWindowMs, in which case it is recorded as SKIPPED.
+ * With a VelocityChecker every run is checked and counted like a transfer made by hand at that moment; a run that
+ * breaks a rule is recorded as VELOCITY_LIMIT and not submitted.
+ */
+public class TransferScheduler {
+
+    public static final long DEFAULT_TICK_MS = 1_000L;
+    public static final long DEFAULT_CATCH_UP_WINDOW_MS = 7 * 86_400_000L;
+    private static final long ACCOUNT_CHECK_TIMEOUT_MS = 5_000L;
+
+    private final LedgerSequencer sequencer;
+    private final ScheduleLog log;
+    private final VelocityChecker velocity; // Null when runs are not velocity checked
+    private final long tickMs;
+    private final long catchUpWindowMs;
+    private final Thread thread;
+    private volatile boolean running = false;
+
+    private final Map<Long, ScheduledTransfer> orders = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<ScheduledTransfer> changed = new ConcurrentLinkedQueue<>(); // Created or cancelled
+    private final ConcurrentLinkedQueue<RunOutcome> outcomes = new ConcurrentLinkedQueue<>();
+    private final AtomicLong nextId;
+    private TimerWheel<ScheduledTransfer> wheel; // Scheduler thread only
+
+    // --- Metrics ---
+    private final AtomicLong runsOk = new AtomicLong();
+    private final AtomicLong runsRejected = new AtomicLong();
+    private final AtomicLong runsSkipped = new AtomicLong();
+    private final AtomicLong runsDenied = new AtomicLong();
+    private final AtomicLong runsInDoubt = new AtomicLong();
+
+    // The ledger's answer to one run, handed from the sequencer thread to the scheduler thread
+    private static final class RunOutcome {
+        final ScheduledTransfer order;
+        final long occurrence;
+        final long sequence;
+        final LedgerResult result;
+
+        RunOutcome(ScheduledTransfer order, long occurrence, long sequence, LedgerResult result) {
+            this.order = order;
+            this.occurrence = occurrence;
+            this.sequence = sequence;
+            this.result = result;
+        }
+    }
+
+    public TransferScheduler(LedgerSequencer sequencer, ScheduleLog log) {
+        this(sequencer, log, null);
+    }
+
+    public TransferScheduler(LedgerSequencer sequencer, ScheduleLog log, VelocityChecker velocity) {
+        this(sequencer, log, velocity, DEFAULT_TICK_MS, DEFAULT_CATCH_UP_WINDOW_MS);
+    }
+
+    public TransferScheduler(LedgerSequencer sequencer, ScheduleLog log, long tickMs, long catchUpWindowMs) {
+        this(sequencer, log, null, tickMs, catchUpWindowMs);
+    }
+
+    public TransferScheduler(LedgerSequencer sequencer, ScheduleLog log, VelocityChecker velocity,
+                             long tickMs, long catchUpWindowMs) {
+        this.sequencer = sequencer;
+        this.log = log;
+        this.velocity = velocity;
+        this.tickMs = tickMs;
+        this.catchUpWindowMs = catchUpWindowMs;
+        this.nextId = new AtomicLong(log.maxId());
+        this.thread = new Thread(this::runLoop, "transfer-scheduler");
+        this.thread.setDaemon(true);
+    }
+
+    // Loads the orders found in the log, settles in-doubt runs and starts firing
+    public void start() throws IOException {
+        long now = System.currentTimeMillis();
+        for (ScheduledTransfer order : log.recoveredOrders()) {
+            orders.put(order.id, order);
+        }
+        for (Map.Entry<Long, Long> run : log.inDoubtRuns().entrySet()) {
+            // Started before the crash, answer unknown: recorded, not repeated (at most once)
+            log.logOutcome(run.getKey(), run.getValue(), -1L, now, "UNKNOWN");
+            runsInDoubt.incrementAndGet();
+            ScheduledTransfer order = orders.get(run.getKey());
+            if (order != null) {
+                order.lastRunMs = now;
+                order.lastOutcome = "UNKNOWN";
+            }
+        }
+        log.force();
+
+        wheel = new TimerWheel<>(tickMs, now);
+        for (ScheduledTransfer order : new ArrayList<>(orders.values())) {
+            placeOrFinish(order);
+        }
+        running = true;
+        thread.start();
+    }
+
+    public void stop() throws InterruptedException, IOException {
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+        drainOutcomes(System.currentTimeMillis());
+        log.force();
+    }
+
+    /**
+     * Creates a standing order; durable when this returns. Throws IllegalArgumentException for invalid orders,
+     * including ones naming an account the ledger does not know.
+     */
+    public ScheduledTransfer create(String fromUid, String toUid, long amountCents,
+                                    ScheduledTransfer.Frequency frequency, long firstRunMs) throws IOException {
+        if (amountCents <= 0) throw new IllegalArgumentException("Invalid cents value");
+        if (fromUid.equals(toUid)) throw new IllegalArgumentException("Sender and recipient are the same");
+        if (firstRunMs <= 0) throw new IllegalArgumentException("Invalid firstRunMs value");
+        if (!exists(fromUid) || !exists(toUid)) throw new IllegalArgumentException("Unknown account");
+
+        ScheduledTransfer order = new ScheduledTransfer(nextId.incrementAndGet(), fromUid, toUid, amountCents,
+                frequency, firstRunMs);
+        log.logCreate(order);
+        orders.put(order.id, order);
+        changed.add(order);
+        LockSupport.unpark(thread);
+        return order;
+    }
+
+    // Returns false if there is no such active order
+    public boolean cancel(long id) throws IOException {
+        ScheduledTransfer order = orders.remove(id);
+        if (order == null) return false;
+        order.cancelled = true;
+        log.logCancel(id);
+        changed.add(order);
+        LockSupport.unpark(thread);
+        return true;
+    }
+
+    public ScheduledTransfer find(long id) {
+        return orders.get(id);
+    }
+
+    // Asked through the sequencer: its writer thread is the only one that may read the account store
+    private boolean exists(String uid) throws IOException {
+        CountDownLatch answered = new CountDownLatch(1);
+        LedgerResult[] result = new LedgerResult[1];
+        sequencer.query(uid, (sequence, queried, balanceCents, loanTakenCents) -> {
+            result[0] = queried;
+            answered.countDown();
+        });
+        try {
+            if (!answered.await(ACCOUNT_CHECK_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Ledger did not respond in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        return result[0] == LedgerResult.OK;
+    }
+
+    // --- Scheduler thread ---
+
+    private void runLoop() {
+        List<ScheduledTransfer> due = new ArrayList<>();
+        while (running) {
+            long now = System.currentTimeMillis();
+            try {
+                applyChanges();
+                boolean wrote = drainOutcomes(now);
+
+                due.clear();
+                wheel.advance(now, due::add);
+                if (!due.isEmpty()) {
+                    runDue(due, now);
+                } else if (wrote) {
+                    log.force();
+                }
+            } catch (IOException e) {
+                // Without a durable RUN record nothing may be submitted; retry on the next tick
+                System.err.println("Schedule log write failed: " + e);
+            }
+
+            // Sleep until the next tick boundary (or until a new order arrives)
+            long untilNextTick = tickMs - (System.currentTimeMillis() % tickMs);
+            LockSupport.parkNanos(untilNextTick * 1_000_000L);
+        }
+    }
+
+    private void applyChanges() {
+        ScheduledTransfer order;
+        while ((order = changed.poll()) != null) {
+            if (order.cancelled) {
+                wheel.cancel(order);
+            } else {
+                placeOrFinish(order);
+            }
+        }
+    }
+
+    private void runDue(List<ScheduledTransfer> due, long now) throws IOException {
+        List<ScheduledTransfer> toRun = new ArrayList<>(due.size());
+        List<Long> occurrences = new ArrayList<>(due.size());
+
+        for (ScheduledTransfer order : due) {
+            if (order.cancelled) continue;
+            long occurrence = order.nextOccurrence;
+            long runAtMs = order.frequency.occurrenceMs(order.firstRunMs, occurrence);
+
+            String brokenRule = null;
+            if (now - runAtMs > catchUpWindowMs) {
+                // Missed long ago (e.g. a long outage): not worth surprising the user with it now
+                log.logOutcome(order.id, occurrence, -1L, now, "SKIPPED");
+                order.lastOutcome = "SKIPPED";
+                runsSkipped.incrementAndGet();
+            } else if (velocity != null && (brokenRule = velocity.checkAndRecord(order.fromUid,
+                    VelocityChecker.Kind.TRANSFER, order.amountCents)) != null) {
+                // Same limits as a transfer made by hand now; the order itself stays active
+                log.logOutcome(order.id, occurrence, -1L, now, "VELOCITY_LIMIT");
+                order.lastRunMs = now;
+                order.lastOutcome = "VELOCITY_LIMIT";
+                runsDenied.incrementAndGet();
+            } else {
+                log.logRun(order.id, occurrence);
+                toRun.add(order);
+                occurrences.add(occurrence);
+            }
+
+            order.nextOccurrence = occurrence + 1;
+            placeOrFinish(order);
+        }
+
+        // One fsync covers every RUN record of this tick; only then do the transfers start
+        log.force();
+        for (int i = 0; i < toRun.size(); i++) {
+            ScheduledTransfer order = toRun.get(i);
+            long occurrence = occurrences.get(i);
+            sequencer.transfer(order.fromUid, order.toUid, order.amountCents,
+                    (sequence, result, balanceCents, loanTakenCents) ->
+                            outcomes.add(new RunOutcome(order, occurrence, sequence, result)));
+        }
+    }
+
+    // Returns true if any record was written
+    private boolean drainOutcomes(long now) throws IOException {
+        boolean wrote = false;
+        RunOutcome outcome;
+        while ((outcome = outcomes.poll()) != null) {
+            log.logOutcome(outcome.order.id, outcome.occurrence, outcome.sequence, now, outcome.result.name());
+            outcome.order.lastRunMs = now;
+            outcome.order.lastOutcome = outcome.result.name();
+            if (outcome.result == LedgerResult.OK) {
+                runsOk.incrementAndGet();
+            } else {
+                runsRejected.incrementAndGet();
+            }
+            wrote = true;
+        }
+        return wrote;
+    }
+
+    // Puts the order into the wheel at its next occurrence, or forgets it when it has none left
+    private void placeOrFinish(ScheduledTransfer order) {
+        long nextRunMs = order.nextRunMs();
+        if (nextRunMs < 0) {
+            orders.remove(order.id);
+            return;
+        }
+        wheel.schedule(order, nextRunMs);
+    }
+
+    public String statsJson() {
+        return "{\"activeOrders\":" + orders.size()
+                + ",\"runsOk\":" + runsOk.get()
+                + ",\"runsRejected\":" + runsRejected.get()
+                + ",\"runsSkipped\":" + runsSkipped.get()
+                + ",\"runsDenied\":" + runsDenied.get()
+                + ",\"runsInDoubt\":" + runsInDoubt.get() + "}";
+    }
+}
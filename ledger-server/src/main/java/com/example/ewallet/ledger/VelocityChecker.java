@@ -0,0 +1,294 @@
+package com.example.ewallet.ledger;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Velocity checks for money leaving an account: how many transfers (or loans) and how many cents an account moved
+ * in the last minute, hour and day, checked against configurable rules before the command reaches the sequencer.
+ *
+ * Each account owns a fixed row of time buckets in shared primitive arrays (no per-event objects, constant memory
+ * per account): 12 x 5 s buckets for the minute, 12 x 5 min for the hour and 24 x 1 h for the day, per kind.
+ * A bucket remembers which time period it holds, so a stale bucket is simply overwritten when its slot comes
+ * round again. Checking a rule reads at most 24 buckets, independent of the account's history.
+ * Attempts are counted when admitted (also if the ledger later rejects them): probing is itself a signal.
+ * Denials are appended to the decision log, one line each.
+ *
+ * Any uid gets a row on its first attempt, also one that names no account, so the table is bounded (maxAccounts).
+ * Once it is full, a new uid takes over a row that recorded nothing for a day: all its buckets have left every
+ * window, so nothing is lost. The search is a clock hand over at most SCAN_ROWS rows per new uid. If none of them
+ * is idle, the operation is denied ("accounts-table-full") rather than evicting an account that is still being
+ * limited, which would let a flood of made-up uids reset someone's counters.
+ */
+public class VelocityChecker {
+
+    public enum Kind { TRANSFER, LOAN }
+
+    public enum Window {
+        MINUTE(12, 5_000L),
+        HOUR(12, 300_000L),
+        DAY(24, 3_600_000L);
+
+        final int buckets;
+        final long bucketMs;
+
+        Window(int buckets, long bucketMs) {
+            this.buckets = buckets;
+            this.bucketMs = bucketMs;
+        }
+    }
+
+    /**
+     * Limits for one kind of operation within one window; 0 disables a limit.
+     */
+    public static final class Rule {
+        final String name;
+        final Kind kind;
+        final Window window;
+        final int maxCount;
+        final long maxCents;
+
+        public Rule(String name, Kind kind, Window window, int maxCount, long maxCents) {
+            this.name = name;
+            this.kind = kind;
+            this.window = window;
+            this.maxCount = maxCount;
+            this.maxCents = maxCents;
+        }
+    }
+
+    // Sensible defaults for a consumer wallet (amounts in cents)
+    public static List<Rule> defaultRules() {
+        List<Rule> rules = new ArrayList<>();
+        rules.add(new Rule("transfers-per-minute", Kind.TRANSFER, Window.MINUTE, 5, 0L));
+        rules.add(new Rule("transfers-per-hour", Kind.TRANSFER, Window.HOUR, 30, 100_000L));
+        rules.add(new Rule("transfers-per-day", Kind.TRANSFER, Window.DAY, 100, 500_000L));
+        rules.add(new Rule("loans-per-day", Kind.LOAN, Window.DAY, 3, 0L));
+        return rules;
+    }
+
+    // Row layout: for each kind, the buckets of MINUTE, then HOUR, then DAY
+    private static final int BUCKETS_PER_KIND = 12 + 12 + 24;
+    private static final int BUCKETS_PER_ROW = BUCKETS_PER_KIND * Kind.values().length;
+    private static final int ROWS_PER_CHUNK = 4_096;
+    private static final int LOCK_STRIPES = 64;
+    private static final int SCAN_ROWS = 1_024;
+    private static final long IDLE_MS = Window.DAY.buckets * Window.DAY.bucketMs;
+    public static final int DEFAULT_MAX_ACCOUNTS = 65_536; // About 125 MB of buckets when full
+    public static final String TABLE_FULL = "accounts-table-full";
+
+    private final List<Rule> rules;
+    private final Writer decisionLog; // Null: denials are only counted
+    private final int maxAccounts;
+    private final ConcurrentHashMap<String, Integer> rowByUid = new ConcurrentHashMap<>();
+    private int nextRow;   // Guarded by 'this'
+    private int clockHand; // Guarded by 'this'
+    private volatile Chunk[] chunks = new Chunk[0];
+    private final Object[] stripes = new Object[LOCK_STRIPES];
+
+    // --- Metrics ---
+    private final AtomicLong allowed = new AtomicLong();
+    private final AtomicLongArray deniedByRule;
+    private final AtomicLong deniedTableFull = new AtomicLong();
+
+    /**
+     * Buckets of ROWS_PER_CHUNK accounts; allocated as accounts appear.
+     */
+    private static final class Chunk {
+        final long[] period = new long[ROWS_PER_CHUNK * BUCKETS_PER_ROW]; // Time period held (+1; 0 = empty)
+        final int[] count = new int[ROWS_PER_CHUNK * BUCKETS_PER_ROW];
+        final long[] cents = new long[ROWS_PER_CHUNK * BUCKETS_PER_ROW];
+        final String[] uid = new String[ROWS_PER_CHUNK];  // Owner of each row (under its stripe lock)
+        final long[] lastRecordedMs = new long[ROWS_PER_CHUNK];
+    }
+
+    public VelocityChecker(List<Rule> rules, Writer decisionLog) {
+        this(rules, decisionLog, DEFAULT_MAX_ACCOUNTS);
+    }
+
+    public VelocityChecker(List<Rule> rules, Writer decisionLog, int maxAccounts) {
+        this.rules = new ArrayList<>(rules);
+        this.decisionLog = decisionLog;
+        this.maxAccounts = maxAccounts;
+        this.deniedByRule = new AtomicLongArray(rules.size());
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+    }
+
+    /**
+     * Checks every rule for 'kind' as if this operation were added; if all pass, records it.
+     * Returns null when allowed, otherwise the name of the first rule that would be broken.
+     */
+    public String checkAndRecord(String uid, Kind kind, long amountCents) {
+        return checkAndRecord(uid, kind, amountCents, System.currentTimeMillis());
+    }
+
+    /**
+     * Name of the first cents limit for 'kind' that one operation of amountCents breaks on its own, or null.
+     * Records nothing: a new standing order is checked here, and each of its runs with checkAndRecord().
+     */
+    public String checkAmount(String uid, Kind kind, long amountCents) {
+        for (int r = 0; r < rules.size(); r++) {
+            Rule rule = rules.get(r);
+            if (rule.kind != kind || rule.maxCents <= 0 || amountCents <= rule.maxCents) continue;
+            deniedByRule.incrementAndGet(r);
+            logDenial(System.currentTimeMillis(), uid, kind, amountCents, rule.name, 1, amountCents);
+            return rule.name;
+        }
+        return null;
+    }
+
+    String checkAndRecord(String uid, Kind kind, long amountCents, long nowMs) {
+        while (true) {
+            int row = rowOf(uid, nowMs);
+            if (row < 0) {
+                deniedTableFull.incrementAndGet();
+                logDenial(nowMs, uid, kind, amountCents, TABLE_FULL, 0, 0L);
+                return TABLE_FULL;
+            }
+            Chunk chunk = chunks[row / ROWS_PER_CHUNK];
+            synchronized (stripes[row % LOCK_STRIPES]) {
+                // The row went idle and was handed to another uid between the lookup and the lock: look again
+                if (!uid.equals(chunk.uid[row % ROWS_PER_CHUNK])) continue;
+                return checkRow(chunk, row, kind, amountCents, nowMs, uid);
+            }
+        }
+    }
+
+    // Called with the row's stripe lock held
+    private String checkRow(Chunk chunk, int row, Kind kind, long amountCents, long nowMs, String uid) {
+        int rowBase = (row % ROWS_PER_CHUNK) * BUCKETS_PER_ROW + kind.ordinal() * BUCKETS_PER_KIND;
+        for (int r = 0; r < rules.size(); r++) {
+            Rule rule = rules.get(r);
+            if (rule.kind != kind) continue;
+
+            int base = rowBase + windowOffset(rule.window);
+            long current = nowMs / rule.window.bucketMs;
+            int windowCount = 1;
+            long windowCents = amountCents;
+            for (int b = 0; b < rule.window.buckets; b++) {
+                long held = chunk.period[base + b] - 1;
+                if (held > current - rule.window.buckets && held <= current) {
+                    windowCount += chunk.count[base + b];
+                    windowCents += chunk.cents[base + b];
+                }
+            }
+
+            if ((rule.maxCount > 0 && windowCount > rule.maxCount)
+                    || (rule.maxCents > 0 && windowCents > rule.maxCents)) {
+                deniedByRule.incrementAndGet(r);
+                logDenial(nowMs, uid, kind, amountCents, rule.name, windowCount, windowCents);
+                return rule.name;
+            }
+        }
+
+        for (Window window : Window.values()) {
+            int base = rowBase + windowOffset(window);
+            long current = nowMs / window.bucketMs;
+            int b = base + (int) (current % window.buckets);
+            if (chunk.period[b] != current + 1) {
+                // The slot still holds a period that has left the window: reuse it
+                chunk.period[b] = current + 1;
+                chunk.count[b] = 0;
+                chunk.cents[b] = 0L;
+            }
+            chunk.count[b]++;
+            chunk.cents[b] += amountCents;
+        }
+        chunk.lastRecordedMs[row % ROWS_PER_CHUNK] = nowMs;
+        allowed.incrementAndGet();
+        return null;
+    }
+
+    private static int windowOffset(Window window) {
+        switch (window) {
+            case MINUTE: return 0;
+            case HOUR: return Window.MINUTE.buckets;
+            default: return Window.MINUTE.buckets + Window.HOUR.buckets;
+        }
+    }
+
+    // Row of 'uid', assigning one on first use; -1 if the table is full and no scanned row is idle
+    private int rowOf(String uid, long nowMs) {
+        Integer row = rowByUid.get(uid);
+        if (row != null) return row;
+        synchronized (this) {
+            row = rowByUid.get(uid);
+            if (row != null) return row;
+
+            int newRow;
+            if (nextRow < maxAccounts) {
+                newRow = nextRow++;
+                ensureChunk(newRow / ROWS_PER_CHUNK);
+            } else {
+                newRow = takeIdleRow(nowMs);
+                if (newRow < 0) return -1;
+            }
+            Chunk chunk = chunks[newRow / ROWS_PER_CHUNK];
+            synchronized (stripes[newRow % LOCK_STRIPES]) {
+                chunk.uid[newRow % ROWS_PER_CHUNK] = uid;
+                chunk.lastRecordedMs[newRow % ROWS_PER_CHUNK] = nowMs; // Not idle before its first record
+            }
+            rowByUid.put(uid, newRow);
+            return newRow;
+        }
+    }
+
+    // Called holding 'this': frees the first row from the clock hand on that recorded nothing for a day
+    private int takeIdleRow(long nowMs) {
+        for (int scanned = 0; scanned < Math.min(SCAN_ROWS, maxAccounts); scanned++) {
+            int row = clockHand;
+            clockHand = (clockHand + 1) % maxAccounts;
+            Chunk chunk = chunks[row / ROWS_PER_CHUNK];
+            int slot = row % ROWS_PER_CHUNK;
+            synchronized (stripes[row % LOCK_STRIPES]) {
+                if (nowMs - chunk.lastRecordedMs[slot] <= IDLE_MS) continue;
+                rowByUid.remove(chunk.uid[slot]);
+                chunk.uid[slot] = null;
+                Arrays.fill(chunk.period, slot * BUCKETS_PER_ROW, (slot + 1) * BUCKETS_PER_ROW, 0L);
+            }
+            return row;
+        }
+        return -1;
+    }
+
+    private synchronized void ensureChunk(int index) {
+        if (index < chunks.length) return;
+        Chunk[] grown = Arrays.copyOf(chunks, index + 1);
+        for (int i = chunks.length; i < grown.length; i++) {
+            grown[i] = new Chunk();
+        }
+        chunks = grown;
+    }
+
+    private void logDenial(long nowMs, String uid, Kind kind, long amountCents, String rule, int count, long cents) {
+        if (decisionLog == null) return;
+        String line = nowMs + " DENY " + uid + " " + kind + " " + amountCents + " rule=" + rule
+                + " windowCount=" + count + " windowCents=" + cents + "\n";
+        synchronized (decisionLog) {
+            try {
+                decisionLog.write(line);
+                decisionLog.flush();
+            } catch (IOException e) {
+                // The decision itself stands; only its log line is lost
+            }
+        }
+    }
+
+    public String statsJson() {
+        StringBuilder json = new StringBuilder("{\"allowed\":").append(allowed.get()).append(",\"denied\":{");
+        for (int r = 0; r < rules.size(); r++) {
+            if (r > 0) json.append(',');
+            json.append('"').append(rules.get(r).name).append("\":").append(deniedByRule.get(r));
+        }
+        json.append(",\"").append(TABLE_FULL).append("\":").append(deniedTableFull.get());
+        return json.append("},\"accounts\":").append(rowByUid.size()).append('}').toString();
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.ewallet.ledger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Delivery order of the SSE stream: with several flusher threads, one subscriber must still see every event
+ * exactly once and in sequence order, including events published while its previous write was in progress.
+ * A resumed subscription gets the account's missed events ahead of live ones, or a reset if they are not retained.
+ */
+public class AccountEventHubTest {
+
+    private static final int EVENTS = 5_000;
+    private static final int IN_FLIGHT = 128;
+
+    private AccountEventHub hub;
+    private ServerSocket server;
+    private final HeapAccountStore store = new HeapAccountStore(4);
+
+    @Before
+    public void setUp() throws Exception {
+        hub = new AccountEventHub(4);
+        server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        store.create("alice", "alice", 0L, 0L);
+        store.create("bob", "bob", 0L, 0L);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        hub.close();
+        server.close();
+    }
+
+    @Test
+    public void framesArriveInOrderWithoutGapsOrDuplicates() throws Exception {
+        try (Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+             Socket accepted = server.accept()) {
+            hub.subscribe(accepted, "alice", -1L);
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+
+            // Publish from another thread while the client drains, so flushes overlap with publishes.
+            // At most IN_FLIGHT unread events: staying under BUFFER_EVENTS keeps the overflow disconnect out of it
+            Semaphore window = new Semaphore(IN_FLIGHT);
+            Thread publisher = new Thread(() -> {
+                for (int i = 0; i < EVENTS; i++) {
+                    window.acquireUninterruptibly();
+                    hub.onApplied(i, LedgerOp.TAKE_LOAN, "alice", null, 1L, LedgerResult.OK, store);
+                }
+            });
+            publisher.start();
+
+            long expected = 0L;
+            String line;
+            while (expected < EVENTS && (line = in.readLine()) != null) {
+                if (!line.startsWith("id: ")) continue;
+                assertEquals(expected, Long.parseLong(line.substring(4)));
+                expected++;
+                window.release();
+            }
+            publisher.join();
+            assertEquals(EVENTS, expected);
+        }
+        assertTrue(hub.statsSummary().contains("overflowDisconnects=0"));
+    }
+
+    private void loan(long sequence, String uid) {
+        hub.onApplied(sequence, LedgerOp.TAKE_LOAN, uid, null, 1L, LedgerResult.OK, store);
+    }
+
+    // The next 'count' event ids, or "reset" for a reset event
+    private static List<String> read(BufferedReader in, int count) throws Exception {
+        List<String> seen = new ArrayList<>();
+        String line;
+        while (seen.size() < count && (line = in.readLine()) != null) {
+            if (line.startsWith("id: ")) seen.add(line.substring(4));
+            if (line.equals("event: reset")) seen.add("reset");
+        }
+        return seen;
+    }
+
+    @Test
+    public void resumeReplaysTheAccountsMissedEventsBeforeLiveOnes() throws Exception {
+        for (long i = 0; i < 10; i++) {
+            loan(i, i % 2 == 0 ? "alice" : "bob");
+        }
+        try (Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+             Socket accepted = server.accept()) {
+            hub.subscribe(accepted, "alice", 3L);
+            loan(10L, "alice");
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+
+            assertEquals(Arrays.asList("4", "6", "8", "10"), read(in, 4));
+        }
+    }
+
+    @Test
+    public void idFromBeforeARestartGetsAReset() throws Exception {
+        for (long i = 0; i < 3; i++) {
+            loan(i, "alice");
+        }
+        try (Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+             Socket accepted = server.accept()) {
+            // Sequences restarted with the process: 500 was handed out by the previous one
+            hub.subscribe(accepted, "alice", 500L);
+            loan(3L, "alice");
+            BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+
+            assertEquals(Arrays.asList("reset", "3"), read(in, 2));
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.ewallet.ledger;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Admission decisions: the per-account token bucket (burst, refill, retry-after hint) and the global concurrency
+ * limit (queueing up to maxQueueMs, then shedding).
+ */
+public class AdmissionControllerTest {
+
+    private static final int BUCKETS = 1 << 16;
+
+    @Test
+    public void burstThenRetryAfter() {
+        AdmissionController controller = new AdmissionController(BUCKETS, 1, 3, 100, 0L);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(AdmissionController.ADMITTED, controller.admit("alice"));
+            controller.release();
+        }
+
+        // One token a second: the next one is at most a second away
+        long retryAfter = controller.admit("alice");
+        assertTrue("retryAfter=" + retryAfter, retryAfter > 0L && retryAfter <= 1_000L);
+        assertEquals("{\"admitted\":3,\"queued\":0,\"shedRate\":1,\"shedConcurrency\":0,\"inFlight\":0}",
+                controller.statsJson());
+    }
+
+    @Test
+    public void tokensRefillOverTime() throws Exception {
+        AdmissionController controller = new AdmissionController(BUCKETS, 1_000, 1, 100, 0L); // A token per ms
+        assertEquals(AdmissionController.ADMITTED, controller.admit("alice"));
+        controller.release();
+
+        Thread.sleep(5);
+        assertEquals(AdmissionController.ADMITTED, controller.admit("alice"));
+        controller.release();
+    }
+
+    @Test
+    public void accountsHaveTheirOwnBuckets() {
+        AdmissionController controller = new AdmissionController(BUCKETS, 1, 1, 100, 0L);
+        assertEquals(AdmissionController.ADMITTED, controller.admit("alice"));
+        controller.release();
+        assertTrue(controller.admit("alice") > 0L);
+
+        assertEquals(AdmissionController.ADMITTED, controller.admit("bob"));
+        controller.release();
+    }
+
+    @Test
+    public void concurrencyLimitShedsAfterTheQueueTimeout() {
+        AdmissionController controller = new AdmissionController(BUCKETS, 100, 10, 2, 20L);
+        assertEquals(AdmissionController.ADMITTED, controller.admit("alice"));
+        assertEquals(AdmissionController.ADMITTED, controller.admit("bob"));
+
+        assertEquals(20L, controller.admit("carol"));
+        assertEquals("{\"admitted\":2,\"queued\":1,\"shedRate\":0,\"shedConcurrency\":1,\"inFlight\":2}",
+                controller.statsJson());
+
+        controller.release();
+        assertEquals(AdmissionController.ADMITTED, controller.admit("carol"));
+        controller.release();
+        controller.release();
+    }
+
+    @Test
+    public void queuedRequestRunsWhenAPermitFreesUp() throws Exception {
+        AdmissionController controller = new AdmissionController(BUCKETS, 100, 10, 1, 10_000L);
+        assertEquals(AdmissionController.ADMITTED, controller.admit("alice"));
+
+        CountDownLatch waiting = new CountDownLatch(1);
+        long[] result = new long[1];
+        Thread bob = new Thread(() -> {
+            waiting.countDown();
+            result[0] = controller.admit("bob");
+        });
+        bob.start();
+        waiting.await();
+        Thread.sleep(20); // Let bob reach the queue
+        controller.release();
+        bob.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertEquals(AdmissionController.ADMITTED, result[0]);
+        assertTrue(controller.statsJson().contains("\"queued\":1,\"shedRate\":0,\"shedConcurrency\":0"));
+        controller.release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void bucketCountMustBeAPowerOfTwo() {
+        new AdmissionController(1_000, 10, 10, 10, 0L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void burstMustFitTheBucket() {
+        new AdmissionController(BUCKETS, 10, 100_000, 10, 0L);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.ewallet.ledger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Importing an NDJSON export: user balances in either shape (integer 'balanceCents', legacy dollar 'balance', or
+ * both while a document is mid-migration), transactions into the journal, and malformed lines counted, not fatal.
+ */
+public class BulkImporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File export(String... lines) throws IOException {
+        File file = folder.newFile("export.ndjson");
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static long balance(MappedAccountStore store, String uid) {
+        return store.balance(store.find(uid));
+    }
+
+    @Test
+    public void importsBothBalanceShapes() throws Exception {
+        File export = export(
+                "{\"path\":\"users/u-cents\",\"data\":{\"userId\":\"ana\",\"balanceCents\":12345,\"loanLimit\":1000.0,\"loanTaken\":0}}",
+                "{\"path\":\"users/u-legacy\",\"data\":{\"userId\":\"bob\",\"balance\":67.89,\"loanLimit\":1000.0,\"loanTaken\":25.5}}",
+                // Legacy balance plus a server-side increment that already landed in balanceCents
+                "{\"path\":\"users/u-both\",\"data\":{\"userId\":\"cid\",\"balance\":10.1,\"balanceCents\":500,\"loanLimit\":1000.0}}",
+                "{\"path\":\"users/u-none\",\"data\":{\"userId\":\"dee\"}}");
+
+        try (MappedAccountStore store = MappedAccountStore.open(new File(folder.getRoot(), "accounts.store"), 16);
+             Journal journal = Journal.open(folder.newFolder("journal"), 1 << 20)) {
+            String summary = new BulkImporter(store, journal, 2).run(Collections.singletonList(export));
+
+            assertTrue(summary, summary.startsWith("lines=4 accounts=4 "));
+            assertEquals(12_345L, balance(store, "u-cents"));
+            assertEquals(6_789L, balance(store, "u-legacy"));
+            assertEquals(2_550L, store.loanTaken(store.find("u-legacy")));
+            assertEquals(1_510L, balance(store, "u-both"));
+            assertEquals(0L, balance(store, "u-none"));
+            assertEquals(100_000L, store.loanLimit(store.find("u-cents")));
+        }
+    }
+
+    @Test
+    public void transactionsGoToTheJournalInTimeOrder() throws Exception {
+        File export = export(
+                "{\"path\":\"transfers/t1\",\"data\":{\"senderUid\":\"a\",\"recipientUid\":\"b\",\"amount\":1.5,\"timestamp\":2000}}",
+                "{\"path\":\"users/a/transactions/x\",\"data\":{\"type\":\"Loan Taken\",\"amount\":20,\"timestamp\":{\"_seconds\":1,\"_nanoseconds\":0}}}",
+                "{\"path\":\"users/a/transactions/y\",\"data\":{\"type\":\"Cashback\",\"amount\":1,\"timestamp\":3000}}",
+                "not json");
+
+        List<JournalRecord> replayed = new ArrayList<>();
+        File journalDir = folder.newFolder("journal");
+        try (MappedAccountStore store = MappedAccountStore.open(new File(folder.getRoot(), "accounts.store"), 16);
+             Journal journal = Journal.open(journalDir, 1 << 20)) {
+            String summary = new BulkImporter(store, journal, 1).run(Collections.singletonList(export));
+            assertTrue(summary, summary.contains(" transactions=2 skipped=1 rejected=1 "));
+        }
+        try (Journal journal = Journal.open(journalDir, 1 << 20)) {
+            journal.replay(replayed::add);
+        }
+
+        assertEquals(2, replayed.size());
+        assertEquals(JournalRecord.Kind.LOAN_TAKEN, replayed.get(0).kind);
+        assertEquals(2_000L, replayed.get(0).amountCents);
+        assertEquals(1_000L, replayed.get(0).timestampMillis);
+        assertEquals(JournalRecord.Kind.TRANSFER, replayed.get(1).kind);
+        assertEquals("b", replayed.get(1).counterpartyUid);
+        assertEquals(150L, replayed.get(1).amountCents);
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.ewallet.ledger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Journal recovery: records survive a reopen across segment rollovers, a torn or CRC-failing tail of the last
+ * segment is cut off (and appends continue right after the valid prefix), and damage in a sealed segment is fatal.
+ */
+public class JournalRecoveryTest {
+
+    private static final int SEGMENT_SIZE = 512; // About ten records, so a few dozen appends roll over
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static JournalRecord record(long sequence) {
+        // Transfers carry a counterparty, the other kinds do not
+        boolean transfer = sequence % 2 == 0;
+        return new JournalRecord(transfer ? JournalRecord.Kind.TRANSFER : JournalRecord.Kind.LOAN_TAKEN,
+                sequence, 1_700_000_000_000L + sequence, "user-" + sequence,
+                transfer ? "peer-" + sequence : null, 100L * sequence);
+    }
+
+    private Journal openWith(int records) throws IOException, InterruptedException {
+        Journal journal = Journal.open(folder.getRoot(), SEGMENT_SIZE);
+        for (int i = 0; i < records; i++) {
+            journal.appendDurably(record(i));
+        }
+        return journal;
+    }
+
+    private List<JournalRecord> replay() throws IOException {
+        List<JournalRecord> replayed = new ArrayList<>();
+        try (Journal journal = Journal.open(folder.getRoot(), SEGMENT_SIZE)) {
+            journal.replay(replayed::add);
+        }
+        return replayed;
+    }
+
+    private static void assertRecords(int count, List<JournalRecord> replayed) {
+        assertEquals(count, replayed.size());
+        for (int i = 0; i < count; i++) {
+            JournalRecord expected = record(i);
+            JournalRecord actual = replayed.get(i);
+            assertEquals(expected.kind, actual.kind);
+            assertEquals(expected.sequence, actual.sequence);
+            assertEquals(expected.timestampMillis, actual.timestampMillis);
+            assertEquals(expected.uid, actual.uid);
+            assertEquals(expected.counterpartyUid, actual.counterpartyUid);
+            assertEquals(expected.amountCents, actual.amountCents);
+        }
+    }
+
+    private File[] segments() {
+        File[] files = folder.getRoot().listFiles((dir, name) -> name.endsWith(".journal"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    // End of the data in a segment: records end in uid or counterparty text, never in a zero byte
+    private static int dataEnd(File segment) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(segment, "r")) {
+            for (int i = (int) file.length() - 1; i >= 0; i--) {
+                file.seek(i);
+                if (file.read() != 0) return i + 1;
+            }
+            return 0;
+        }
+    }
+
+    private static void flipLastDataByte(File segment) throws IOException {
+        int position = dataEnd(segment) - 1;
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(value ^ 0x01);
+        }
+    }
+
+    @Test
+    public void recordsSurviveReopenAcrossSegments() throws Exception {
+        try (Journal journal = openWith(40)) {
+            assertEquals(39L, journal.lastSequence());
+        }
+        assertTrue(segments().length > 2);
+
+        assertRecords(40, replay());
+        try (Journal journal = Journal.open(folder.getRoot(), SEGMENT_SIZE)) {
+            assertEquals(39L, journal.lastSequence());
+        }
+    }
+
+    @Test
+    public void appendsContinueAfterReopen() throws Exception {
+        openWith(15).close();
+        try (Journal journal = Journal.open(folder.getRoot(), SEGMENT_SIZE)) {
+            for (int i = 15; i < 30; i++) {
+                journal.appendDurably(record(i));
+            }
+        }
+        assertRecords(30, replay());
+    }
+
+    @Test
+    public void crcFailingTailIsCutOff() throws Exception {
+        openWith(25).close();
+        File[] segments = segments();
+        flipLastDataByte(segments[segments.length - 1]);
+
+        try (Journal journal = Journal.open(folder.getRoot(), SEGMENT_SIZE)) {
+            assertEquals(23L, journal.lastSequence());
+            journal.appendDurably(record(24)); // Rewritten in place of the damaged record
+        }
+        assertRecords(25, replay());
+    }
+
+    @Test
+    public void tornTailIsCutOff() throws Exception {
+        openWith(25).close();
+        File[] segments = segments();
+        File last = segments[segments.length - 1];
+        int end = dataEnd(last);
+        // A crash after the length was written but before the body and CRC reached the disk
+        try (RandomAccessFile file = new RandomAccessFile(last, "rw")) {
+            file.seek(end);
+            file.writeInt(40);
+        }
+
+        try (Journal journal = Journal.open(folder.getRoot(), SEGMENT_SIZE)) {
+            assertEquals(24L, journal.lastSequence());
+            journal.appendDurably(record(25));
+        }
+        assertRecords(26, replay());
+    }
+
+    @Test
+    public void damagedSealedSegmentFailsToOpen() throws Exception {
+        openWith(40).close();
+        flipLastDataByte(segments()[0]);
+
+        try {
+            Journal.open(folder.getRoot(), SEGMENT_SIZE);
+            fail("Opened a journal with a corrupt sealed segment");
+        } catch (IOException expected) {
+            // Only the tail of the last segment may be torn
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.ewallet.ledger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The off-heap account table and the signup path on top of it: accounts survive a reopen, and identifiers the
+ * fixed-width slots cannot hold or a full store are rejected with a LedgerResult instead of stopping the sequencer.
+ */
+public class MappedAccountStoreTest {
+
+    private static final String LONG_USER_ID = "ana-with-a-very-long-user-id-that-exceeds"; // 41 > 31 characters
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File storeFile() {
+        return new File(folder.getRoot(), "accounts.store");
+    }
+
+    @Test
+    public void accountsSurviveReopen() throws Exception {
+        try (MappedAccountStore store = MappedAccountStore.open(storeFile(), 100)) {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i, store.create("uid-" + i, "user" + i, 10_000L + i, 100_000L));
+            }
+            store.setLoanTaken(store.find("uid-7"), 2_500L);
+            assertEquals(-1, store.create("uid-7", "again", 1L, 1L));
+        }
+
+        try (MappedAccountStore store = MappedAccountStore.open(storeFile(), 1)) {
+            assertEquals(100, store.size());
+            assertEquals(100, store.capacity()); // Taken from the file, not the argument
+            int slot = store.find("uid-7");
+            assertEquals("uid-7", store.uid(slot));
+            assertEquals("user7", store.userId(slot));
+            assertEquals(10_007L, store.balance(slot));
+            assertEquals(2_500L, store.loanTaken(slot));
+            assertEquals(-1, store.find("uid-100"));
+        }
+    }
+
+    @Test
+    public void acceptsOnlyWhatFitsTheSlot() throws Exception {
+        try (MappedAccountStore store = MappedAccountStore.open(storeFile(), 4)) {
+            assertTrue(store.accepts(repeat('u', 47), repeat('n', 31)));
+            assertTrue(store.accepts("u1", null));
+            assertFalse(store.accepts(repeat('u', 48), "ana"));
+            assertFalse(store.accepts("u1", LONG_USER_ID));
+            assertFalse(store.accepts("u\u00e9", "ana"));
+            assertFalse(store.accepts("u1", "an\u00e1"));
+            assertFalse(store.accepts("", "ana"));
+        }
+    }
+
+    @Test
+    public void signupRejectsWhatTheStoreCannotHold() throws Exception {
+        try (MappedAccountStore store = MappedAccountStore.open(storeFile(), 2)) {
+            AccountBook book = new AccountBook(store);
+
+            assertEquals(LedgerResult.INVALID_ACCOUNT, book.apply(LedgerOp.SIGNUP, "u1", null, LONG_USER_ID, 0L));
+            assertEquals(LedgerResult.INVALID_ACCOUNT, book.apply(LedgerOp.SIGNUP, "u\u00e9", null, "ana", 0L));
+            assertEquals(0, store.size());
+
+            assertEquals(LedgerResult.OK, book.apply(LedgerOp.SIGNUP, "u1", null, "ana", 0L));
+            assertEquals(LedgerResult.DUPLICATE_ACCOUNT, book.apply(LedgerOp.SIGNUP, "u1", null, "ana", 0L));
+            assertEquals(LedgerResult.OK, book.apply(LedgerOp.SIGNUP, "u2", null, "bob", 0L));
+            assertEquals(LedgerResult.STORE_FULL, book.apply(LedgerOp.SIGNUP, "u3", null, "cid", 0L));
+            assertEquals(AccountBook.SIGNUP_BONUS_CENTS, store.balance(store.find("u2")));
+        }
+    }
+
+    @Test
+    public void sequencerKeepsRunningAfterARejectedSignup() throws Exception {
+        try (MappedAccountStore store = MappedAccountStore.open(storeFile(), 2)) {
+            LedgerSequencer sequencer = new LedgerSequencer(new AccountBook(store), 64);
+            sequencer.start();
+            BlockingQueue<LedgerResult> results = new LinkedBlockingQueue<>();
+            LedgerCallback callback = (sequence, result, balanceCents, loanTakenCents) -> results.add(result);
+
+            sequencer.signup("u1", LONG_USER_ID, callback);
+            sequencer.signup("u1", "ana", callback);
+            sequencer.signup("u2", "bob", callback);
+            sequencer.signup("u3", "cid", callback);
+            sequencer.transfer("u1", "u2", 1_000L, callback);
+
+            assertEquals(LedgerResult.INVALID_ACCOUNT, results.poll(5, TimeUnit.SECONDS));
+            assertEquals(LedgerResult.OK, results.poll(5, TimeUnit.SECONDS));
+            assertEquals(LedgerResult.OK, results.poll(5, TimeUnit.SECONDS));
+            assertEquals(LedgerResult.STORE_FULL, results.poll(5, TimeUnit.SECONDS));
+            assertEquals(LedgerResult.OK, results.poll(5, TimeUnit.SECONDS));
+            sequencer.stop();
+
+            assertEquals(AccountBook.SIGNUP_BONUS_CENTS + 1_000L, store.balance(store.find("u2")));
+        }
+    }
+
+    @Test
+    public void sequencerKeepsRunningAfterACommandThrows() throws Exception {
+        LedgerSequencer sequencer = new LedgerSequencer(new AccountBook(new HeapAccountStore(4)), 64);
+        sequencer.start();
+        BlockingQueue<LedgerResult> results = new LinkedBlockingQueue<>();
+        LedgerCallback callback = (sequence, result, balanceCents, loanTakenCents) -> results.add(result);
+
+        sequencer.transfer(null, "u1", 1_000L, callback); // Throws inside AccountBook
+        sequencer.signup("u1", "ana", callback);
+
+        assertEquals(LedgerResult.INTERNAL_ERROR, results.poll(5, TimeUnit.SECONDS));
+        assertEquals(LedgerResult.OK, results.poll(5, TimeUnit.SECONDS));
+        sequencer.stop();
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+}
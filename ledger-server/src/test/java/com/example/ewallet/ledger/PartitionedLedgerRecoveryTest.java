@@ -0,0 +1,209 @@
+package com.example.ewallet.ledger;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Crash recovery of cross-partition transfers: a logged COMMIT must be applied exactly once on each partition,
+ * even though the prepared holds only ever lived in memory, and stop() must let in-flight transfers finish.
+ */
+public class PartitionedLedgerRecoveryTest {
+
+    private static final int PARTITIONS = 2;
+    private static final long AMOUNT = 2_500L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Accounts survive "restarts" like a MappedAccountStore would; everything else is rebuilt from files
+    private final AccountStore[] stores = new AccountStore[PARTITIONS];
+    private String sender;
+    private String recipient;
+
+    @Before
+    public void setUp() throws IOException {
+        for (int i = 0; i < PARTITIONS; i++) {
+            stores[i] = new HeapAccountStore(16);
+        }
+        PartitionedLedger probe = open();
+        sender = "sender";
+        recipient = null;
+        for (int i = 0; recipient == null; i++) {
+            if (probe.partitionOf("recipient-" + i) != probe.partitionOf(sender)) recipient = "recipient-" + i;
+        }
+        stores[probe.partitionOf(sender)].create(sender, "alice", 10_000L, 0L);
+        stores[probe.partitionOf(recipient)].create(recipient, "bob", 10_000L, 0L);
+    }
+
+    private PartitionedLedger open() throws IOException {
+        AccountBook[] books = new AccountBook[PARTITIONS];
+        for (int i = 0; i < PARTITIONS; i++) {
+            books[i] = new AccountBook(stores[i], new AppliedCommits(folder.getRoot().toPath().resolve("applied-" + i).toFile()));
+        }
+        return new PartitionedLedger(books, 1 << 10, new DecisionLog(decisions()), 1_000L, 64);
+    }
+
+    private File decisions() {
+        return new File(folder.getRoot(), "decisions");
+    }
+
+    private long balance(PartitionedLedger ledger, String uid) {
+        AccountStore store = stores[ledger.partitionOf(uid)];
+        return store.balance(store.find(uid));
+    }
+
+    // Restart: fresh books (no holds), same stores and files; recover() and wait for phase two to drain
+    private PartitionedLedger restartAndRecover(int expectedRedriven) throws Exception {
+        PartitionedLedger ledger = open();
+        ledger.start();
+        assertEquals(expectedRedriven, ledger.recover());
+        ledger.stop();
+        return ledger;
+    }
+
+    @Test
+    public void loggedCommitIsAppliedAfterRestart() throws Exception {
+        try (DecisionLog log = new DecisionLog(decisions())) {
+            log.logCommit(1L, sender, recipient, AMOUNT); // Crash right after the decision
+        }
+
+        PartitionedLedger ledger = restartAndRecover(1);
+
+        assertEquals(10_000L - AMOUNT, balance(ledger, sender));
+        assertEquals(10_000L + AMOUNT, balance(ledger, recipient));
+    }
+
+    @Test
+    public void halfAppliedCommitIsCompletedOnlyWhereMissing() throws Exception {
+        PartitionedLedger first = open();
+        try (DecisionLog log = new DecisionLog(decisions())) {
+            log.logCommit(1L, sender, recipient, AMOUNT);
+        }
+        // The sender's partition committed before the crash, the recipient's did not
+        int senderPartition = first.partitionOf(sender);
+        AccountBook senderBook = first.partition(senderPartition).book();
+        senderBook.apply(LedgerOp.COMMIT, sender, null, null, -AMOUNT, 1L);
+        senderBook.appliedCommits().close();
+
+        PartitionedLedger ledger = restartAndRecover(1);
+
+        assertEquals(10_000L - AMOUNT, balance(ledger, sender));
+        assertEquals(10_000L + AMOUNT, balance(ledger, recipient));
+    }
+
+    @Test
+    public void repeatedRecoveryDoesNotApplyTwice() throws Exception {
+        try (DecisionLog log = new DecisionLog(decisions())) {
+            log.logCommit(1L, sender, recipient, AMOUNT);
+        }
+
+        long decidedLength = decisions().length();
+
+        // DONE is written but not forced: a second crash may lose it, so the same decision is re-driven again
+        restartAndRecover(1);
+        try (RandomAccessFile file = new RandomAccessFile(decisions(), "rw")) {
+            file.setLength(decidedLength);
+        }
+        PartitionedLedger ledger = restartAndRecover(1);
+
+        assertEquals(10_000L - AMOUNT, balance(ledger, sender));
+        assertEquals(10_000L + AMOUNT, balance(ledger, recipient));
+    }
+
+    @Test
+    public void liveCrossPartitionTransferCommits() throws Exception {
+        PartitionedLedger ledger = open();
+        ledger.start();
+        CountDownLatch done = new CountDownLatch(1);
+        LedgerResult[] result = new LedgerResult[1];
+        ledger.transfer(sender, recipient, AMOUNT, (sequence, r, balanceCents, loanTakenCents) -> {
+            result[0] = r;
+            done.countDown();
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        ledger.stop();
+
+        assertEquals(LedgerResult.OK, result[0]);
+        assertEquals(10_000L - AMOUNT, balance(ledger, sender));
+        assertEquals(10_000L + AMOUNT, balance(ledger, recipient));
+    }
+
+    @Test
+    public void commitCutOffBeforeTheBalanceChangeIsAppliedOnRecovery() throws Exception {
+        PartitionedLedger first = open();
+        try (DecisionLog log = new DecisionLog(decisions())) {
+            log.logCommit(1L, sender, recipient, AMOUNT);
+        }
+        // Crash right after the sender's BEGIN record
+        AccountStore senderStore = stores[first.partitionOf(sender)];
+        AppliedCommits senderCommits = first.partition(first.partitionOf(sender)).book().appliedCommits();
+        senderCommits.begin(1L, senderStore.find(sender), 10_000L);
+        senderCommits.close();
+
+        PartitionedLedger ledger = restartAndRecover(1);
+
+        assertEquals(10_000L - AMOUNT, balance(ledger, sender));
+        assertEquals(10_000L + AMOUNT, balance(ledger, recipient));
+    }
+
+    @Test
+    public void commitCutOffAfterTheBalanceChangeIsNotAppliedAgain() throws Exception {
+        PartitionedLedger first = open();
+        try (DecisionLog log = new DecisionLog(decisions())) {
+            log.logCommit(1L, sender, recipient, AMOUNT);
+        }
+        // Crash between the sender's balance change and its APPLIED record
+        AccountStore senderStore = stores[first.partitionOf(sender)];
+        int slot = senderStore.find(sender);
+        AppliedCommits senderCommits = first.partition(first.partitionOf(sender)).book().appliedCommits();
+        senderCommits.begin(1L, slot, 10_000L);
+        senderStore.setBalance(slot, 10_000L - AMOUNT);
+        senderCommits.close();
+
+        PartitionedLedger ledger = restartAndRecover(1);
+
+        assertEquals(10_000L - AMOUNT, balance(ledger, sender));
+        assertEquals(10_000L + AMOUNT, balance(ledger, recipient));
+
+        // And the resolution itself is durable
+        PartitionedLedger again = restartAndRecover(0);
+        assertEquals(10_000L - AMOUNT, balance(again, sender));
+    }
+
+    @Test
+    public void stopFinishesInFlightTransfersAndRefusesNewOnes() throws Exception {
+        int transfers = 500;
+        PartitionedLedger ledger = open();
+        ledger.start();
+        AtomicInteger ok = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(transfers);
+        for (int i = 0; i < transfers; i++) {
+            ledger.transfer(sender, recipient, 10L, (sequence, r, balanceCents, loanTakenCents) -> {
+                if (r == LedgerResult.OK) ok.incrementAndGet();
+                done.countDown();
+            });
+        }
+        ledger.stop();
+
+        assertEquals(0L, done.getCount());
+        assertEquals(transfers, ok.get());
+        assertEquals(10_000L - transfers * 10L, balance(ledger, sender));
+        assertEquals(10_000L + transfers * 10L, balance(ledger, recipient));
+
+        LedgerResult[] late = new LedgerResult[1];
+        ledger.transfer(sender, recipient, 10L, (sequence, r, balanceCents, loanTakenCents) -> late[0] = r);
+        assertEquals(LedgerResult.SHUTTING_DOWN, late[0]);
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.ewallet.ledger;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Nightly settlement: the conservation check for stores built by signups and for imported stores (against the
+ * baseline recorded at import), per-account violations, and resuming a run from its checkpoint.
+ */
+public class SettlementBatchTest {
+
+    private static final Date DAY = new Date(1_759_276_800_000L); // 2025-10-01
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String settle(AccountStore store, long openingOffsetCents) throws Exception {
+        return new SettlementBatch(store, new File(folder.getRoot(), "settlement"), DAY, 0L, 2, openingOffsetCents).run();
+    }
+
+    @Test
+    public void ledgerBuiltStoreIsConserved() throws Exception {
+        HeapAccountStore store = new HeapAccountStore(16);
+        AccountBook book = new AccountBook(store);
+        for (String uid : Arrays.asList("a", "b", "c")) {
+            assertEquals(LedgerResult.OK, book.apply(LedgerOp.SIGNUP, uid, null, uid, 0L));
+        }
+        assertEquals(LedgerResult.OK, book.apply(LedgerOp.TAKE_LOAN, "a", null, null, 50_000L));
+        assertEquals(LedgerResult.OK, book.apply(LedgerOp.TRANSFER, "a", "b", null, 30_000L));
+        assertEquals(LedgerResult.OK, book.apply(LedgerOp.REPAY_LOAN, "a", null, null, 20_000L));
+
+        String summary = settle(store, 0L);
+
+        assertTrue(summary, summary.contains("accounts=3 "));
+        assertTrue(summary, summary.contains(" outstandingLoanCents=30000 "));
+        assertTrue(summary, summary.contains(" conserved=true driftCents=0 accountViolations=0"));
+    }
+
+    @Test
+    public void importedStoreIsConservedAgainstItsBaseline() throws Exception {
+        File storeFile = new File(folder.getRoot(), "accounts.store");
+        File export = folder.newFile("export.ndjson");
+        Files.write(export.toPath(), Arrays.asList(
+                "{\"path\":\"users/u1\",\"data\":{\"userId\":\"ana\",\"balanceCents\":123456,\"loanLimit\":1000.0,\"loanTaken\":200}}",
+                "{\"path\":\"users/u2\",\"data\":{\"userId\":\"bob\",\"balance\":0.07,\"loanLimit\":1000.0}}"),
+                StandardCharsets.UTF_8);
+
+        try (MappedAccountStore store = MappedAccountStore.open(storeFile, 16);
+             Journal journal = Journal.open(folder.newFolder("journal"), 1 << 20)) {
+            BulkImporter importer = new BulkImporter(store, journal, 1);
+            importer.run(Collections.singletonList(export));
+            SettlementBatch.addToBaseline(storeFile, importer.openingOffsetCents());
+
+            // Ledger activity after the import keeps the books balanced
+            AccountBook book = new AccountBook(store);
+            assertEquals(LedgerResult.OK, book.apply(LedgerOp.SIGNUP, "u3", null, "cid", 0L));
+            assertEquals(LedgerResult.OK, book.apply(LedgerOp.TRANSFER, "u1", "u3", null, 5_000L));
+
+            assertEquals(123_456L - 20_000L - 10_000L + 7L - 10_000L, SettlementBatch.readBaseline(storeFile));
+            String summary = settle(store, SettlementBatch.readBaseline(storeFile));
+            assertTrue(summary, summary.contains(" conserved=true driftCents=0 "));
+
+            // Without the baseline the imported money looks like drift
+            String unbaselined = new SettlementBatch(store, folder.newFolder("other"), DAY, 0L, 1).run();
+            assertTrue(unbaselined, unbaselined.contains(" conserved=false driftCents=83463 "));
+        }
+    }
+
+    @Test
+    public void brokenAccountsAreCounted() throws Exception {
+        HeapAccountStore store = new HeapAccountStore(4);
+        store.create("a", "a", -1L, 100L);
+        store.create("b", "b", AccountBook.SIGNUP_BONUS_CENTS, 100L);
+        store.setLoanTaken(1, 101L);
+
+        String summary = settle(store, 0L);
+
+        assertTrue(summary, summary.endsWith(" accountViolations=2"));
+    }
+
+    @Test
+    public void restartReusesSettledChunks() throws Exception {
+        HeapAccountStore store = new HeapAccountStore(16);
+        AccountBook book = new AccountBook(store);
+        for (int i = 0; i < SettlementBatch.CHUNK_SLOTS + 10; i++) {
+            book.apply(LedgerOp.SIGNUP, "uid-" + i, null, "user" + i, 0L);
+        }
+        settle(store, 0L);
+        File dayDir = new File(folder.getRoot(), "settlement/2025-10-01");
+        File checkpoint = new File(dayDir, "checkpoint.csv");
+        // Keep only the first checkpoint line, plus a torn second one: one chunk must run again
+        String first = new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.US_ASCII).split("\n")[0];
+        Files.write(checkpoint.toPath(), (first + "\n1,4").getBytes(StandardCharsets.US_ASCII));
+
+        String summary = settle(store, 0L);
+
+        assertTrue(summary, summary.contains("accounts=" + (SettlementBatch.CHUNK_SLOTS + 10) + " chunks=2 (resumed 1)"));
+        assertTrue(summary, summary.contains(" conserved=true "));
+        assertEquals(2, new String(Files.readAllBytes(checkpoint.toPath()), StandardCharsets.US_ASCII).split("\n").length);
+    }
+}
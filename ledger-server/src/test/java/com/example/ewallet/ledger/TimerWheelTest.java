@@ -0,0 +1,138 @@
+package com.example.ewallet.ledger;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Firing times of the timing wheel: every timer fires on its own deadline tick, including timers that start in the
+ * upper levels and reach level 0 through cascades, and cancelled timers never fire.
+ */
+public class TimerWheelTest {
+
+    private static final long TICK_MS = 10;
+    private static final long START_MS = 1_000_000;
+
+    private static final class TestTimer extends TimerWheel.Timer {
+        final long deadlineMs;
+        long firedAtMs = -1;
+
+        TestTimer(long deadlineMs) {
+            this.deadlineMs = deadlineMs;
+        }
+    }
+
+    @Test
+    public void timersFireOnTheirDeadlineTickAcrossLevels() {
+        TimerWheel<TestTimer> wheel = new TimerWheel<>(TICK_MS, START_MS);
+        Random random = new Random(42);
+        List<TestTimer> timers = new ArrayList<>();
+        // Up to 4 x 256^2 ticks ahead: levels 0, 1 and 2, with cascades from both upper levels
+        for (int i = 0; i < 20_000; i++) {
+            TestTimer timer = new TestTimer(START_MS + TICK_MS * (1 + random.nextInt(4 * 256 * 256)));
+            timers.add(timer);
+            wheel.schedule(timer, timer.deadlineMs);
+        }
+        assertEquals(timers.size(), wheel.size());
+
+        long endMs = START_MS + TICK_MS * (4 * 256 * 256 + 1);
+        for (long nowMs = START_MS + TICK_MS; nowMs <= endMs; nowMs += TICK_MS) {
+            final long firedAt = nowMs;
+            wheel.advance(nowMs, timer -> timer.firedAtMs = firedAt);
+        }
+
+        for (TestTimer timer : timers) {
+            assertEquals(timer.deadlineMs, timer.firedAtMs);
+            assertFalse(timer.isScheduled());
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void largeAdvanceFiresEverythingDue() {
+        TimerWheel<TestTimer> wheel = new TimerWheel<>(TICK_MS, START_MS);
+        TestTimer due = new TestTimer(START_MS + TICK_MS * 70_000);
+        TestTimer later = new TestTimer(START_MS + TICK_MS * 70_001);
+        wheel.schedule(due, due.deadlineMs);
+        wheel.schedule(later, later.deadlineMs);
+
+        assertEquals(1, wheel.advance(due.deadlineMs, timer -> timer.firedAtMs = due.deadlineMs));
+        assertEquals(due.deadlineMs, due.firedAtMs);
+        assertTrue(later.isScheduled());
+        assertEquals(1, wheel.size());
+    }
+
+    @Test
+    public void pastDeadlinesFireOnTheNextTick() {
+        TimerWheel<TestTimer> wheel = new TimerWheel<>(TICK_MS, START_MS);
+        TestTimer overdue = new TestTimer(START_MS - 5 * TICK_MS);
+        wheel.schedule(overdue, overdue.deadlineMs);
+
+        assertEquals(1, wheel.advance(START_MS + TICK_MS, timer -> timer.firedAtMs = START_MS + TICK_MS));
+        assertEquals(START_MS + TICK_MS, overdue.firedAtMs);
+    }
+
+    @Test
+    public void cancelledTimersNeverFire() {
+        TimerWheel<TestTimer> wheel = new TimerWheel<>(TICK_MS, START_MS);
+        List<TestTimer> timers = new ArrayList<>();
+        for (int i = 1; i <= 1_000; i++) {
+            TestTimer timer = new TestTimer(START_MS + TICK_MS * i * 300L);
+            timers.add(timer);
+            wheel.schedule(timer, timer.deadlineMs);
+        }
+        for (int i = 0; i < timers.size(); i += 2) {
+            wheel.cancel(timers.get(i));
+            wheel.cancel(timers.get(i)); // Cancelling twice is a no-op
+        }
+        assertEquals(500, wheel.size());
+
+        List<TestTimer> fired = new ArrayList<>();
+        for (long nowMs = START_MS; nowMs <= START_MS + TICK_MS * 300_000; nowMs += 1_000 * TICK_MS) {
+            wheel.advance(nowMs, fired::add);
+        }
+
+        assertEquals(500, fired.size());
+        for (TestTimer timer : fired) {
+            assertEquals(1, timers.indexOf(timer) % 2);
+        }
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void reschedulingMovesTheTimer() {
+        TimerWheel<TestTimer> wheel = new TimerWheel<>(TICK_MS, START_MS);
+        TestTimer timer = new TestTimer(START_MS + 100 * TICK_MS);
+        wheel.schedule(timer, START_MS + 100 * TICK_MS);
+        wheel.schedule(timer, START_MS + 50_000 * TICK_MS);
+        assertEquals(1, wheel.size());
+
+        assertEquals(0, wheel.advance(START_MS + 49_999 * TICK_MS, t -> { }));
+        assertEquals(1, wheel.advance(START_MS + 50_000 * TICK_MS, t -> { }));
+    }
+
+    @Test
+    public void expiredTimersCanBeScheduledAgain() {
+        TimerWheel<TestTimer> wheel = new TimerWheel<>(TICK_MS, START_MS);
+        TestTimer periodic = new TestTimer(0);
+        wheel.schedule(periodic, START_MS + TICK_MS);
+
+        int[] runs = new int[1];
+        for (long nowMs = START_MS + TICK_MS; nowMs <= START_MS + 1_000 * TICK_MS; nowMs += TICK_MS) {
+            final long firedAt = nowMs;
+            wheel.advance(nowMs, timer -> {
+                runs[0]++;
+                wheel.schedule(timer, firedAt + 10 * TICK_MS); // Every 10 ticks
+            });
+        }
+
+        assertEquals(100, runs[0]);
+        assertTrue(periodic.isScheduled());
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.ewallet.ledger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Standing orders against a live sequencer: both accounts must exist when the order is made, and every run is
+ * velocity checked when it executes, like a transfer made by hand at that moment.
+ */
+public class TransferSchedulerTest {
+
+    private static final long TICK_MS = 10L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AccountStore store = new HeapAccountStore(16);
+    private LedgerSequencer sequencer;
+    private VelocityChecker velocity;
+    private TransferScheduler scheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        store.create("alice", "alice", 10_000L, 0L);
+        store.create("bob", "bob", 10_000L, 0L);
+        sequencer = new LedgerSequencer(new AccountBook(store), 64);
+        sequencer.start();
+        // One transfer per minute
+        velocity = new VelocityChecker(Collections.singletonList(new VelocityChecker.Rule("transfers-per-minute",
+                VelocityChecker.Kind.TRANSFER, VelocityChecker.Window.MINUTE, 1, 0L)), null);
+        scheduler = new TransferScheduler(sequencer, new ScheduleLog(new File(folder.getRoot(), "schedules")),
+                velocity, TICK_MS, TransferScheduler.DEFAULT_CATCH_UP_WINDOW_MS);
+        scheduler.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        scheduler.stop();
+        sequencer.stop();
+    }
+
+    private static String awaitOutcome(ScheduledTransfer order) throws InterruptedException {
+        for (int i = 0; i < 500 && order.lastOutcome == null; i++) {
+            Thread.sleep(TICK_MS);
+        }
+        return order.lastOutcome;
+    }
+
+    @Test
+    public void orderBetweenKnownAccountsRuns() throws Exception {
+        ScheduledTransfer order = scheduler.create("alice", "bob", 2_500L, ScheduledTransfer.Frequency.ONCE,
+                System.currentTimeMillis());
+
+        assertEquals("OK", awaitOutcome(order)); // Set after the ledger answered, so the balances are final
+        assertEquals(7_500L, store.balance(store.find("alice")));
+        assertEquals(12_500L, store.balance(store.find("bob")));
+    }
+
+    @Test
+    public void orderWithAnUnknownAccountIsRefused() throws Exception {
+        try {
+            scheduler.create("alice", "nobody", 2_500L, ScheduledTransfer.Frequency.DAILY, System.currentTimeMillis());
+            fail("Created an order to an unknown account");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("Unknown account", expected.getMessage());
+        }
+        try {
+            scheduler.create("nobody", "bob", 2_500L, ScheduledTransfer.Frequency.DAILY, System.currentTimeMillis());
+            fail("Created an order from an unknown account");
+        } catch (IllegalArgumentException expected) {
+            assertEquals("Unknown account", expected.getMessage());
+        }
+    }
+
+    @Test
+    public void runOverTheVelocityLimitIsNotSubmitted() throws Exception {
+        assertNull(velocity.checkAndRecord("alice", VelocityChecker.Kind.TRANSFER, 100L)); // Uses the minute's budget
+
+        ScheduledTransfer order = scheduler.create("alice", "bob", 2_500L, ScheduledTransfer.Frequency.ONCE,
+                System.currentTimeMillis());
+
+        assertEquals("VELOCITY_LIMIT", awaitOutcome(order));
+        assertEquals(10_000L, store.balance(store.find("alice")));
+        assertEquals("{\"activeOrders\":0,\"runsOk\":0,\"runsRejected\":0,\"runsSkipped\":0,\"runsDenied\":1,"
+                + "\"runsInDoubt\":0}", scheduler.statsJson());
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.ewallet.ledger;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sliding-window limits on the default rules: counts and amounts per window, windows expiring bucket by bucket,
+ * accounts and kinds that never affect each other, and a bounded table that only hands idle rows to new uids.
+ */
+public class VelocityCheckerTest {
+
+    private static final long T = 1_700_000_000_000L / 3_600_000L * 3_600_000L; // On an hour boundary
+    private static final long SECOND = 1_000L;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+
+    private final StringWriter log = new StringWriter();
+    private final VelocityChecker checker = new VelocityChecker(VelocityChecker.defaultRules(), log);
+
+    private String transfer(String uid, long cents, long nowMs) {
+        return checker.checkAndRecord(uid, VelocityChecker.Kind.TRANSFER, cents, nowMs);
+    }
+
+    @Test
+    public void countLimitSlidesWithTheMinute() {
+        for (int i = 0; i < 5; i++) {
+            assertNull(transfer("alice", 100L, T));
+        }
+        assertEquals("transfers-per-minute", transfer("alice", 100L, T + SECOND));
+        // The first bucket is still inside the window until a full minute has passed
+        assertEquals("transfers-per-minute", transfer("alice", 100L, T + MINUTE - 1));
+        assertNull(transfer("alice", 100L, T + MINUTE));
+    }
+
+    @Test
+    public void amountLimitAddsTheNewOperation() {
+        assertNull(transfer("alice", 60_000L, T));
+        assertEquals("transfers-per-hour", transfer("alice", 50_000L, T + 2 * MINUTE));
+        // Denied attempts are not recorded: exactly the hourly 1000.00 still fits
+        assertNull(transfer("alice", 40_000L, T + 4 * MINUTE));
+        assertEquals("transfers-per-hour", transfer("alice", 1L, T + 6 * MINUTE));
+        assertNull(transfer("alice", 1L, T + HOUR));
+    }
+
+    @Test
+    public void accountsAndKindsAreIndependent() {
+        for (int i = 0; i < 5; i++) {
+            assertNull(transfer("alice", 100L, T));
+        }
+        assertNull(transfer("bob", 100L, T));
+
+        for (int i = 0; i < 3; i++) {
+            assertNull(checker.checkAndRecord("alice", VelocityChecker.Kind.LOAN, 50_000L, T));
+        }
+        assertEquals("loans-per-day", checker.checkAndRecord("alice", VelocityChecker.Kind.LOAN, 50_000L, T + HOUR));
+        assertNull(checker.checkAndRecord("bob", VelocityChecker.Kind.LOAN, 50_000L, T + HOUR));
+    }
+
+    @Test
+    public void staleBucketsAreReused() {
+        VelocityChecker daily = new VelocityChecker(Collections.singletonList(
+                new VelocityChecker.Rule("two-per-day", VelocityChecker.Kind.TRANSFER, VelocityChecker.Window.DAY, 2, 0L)),
+                null);
+        assertNull(daily.checkAndRecord("alice", VelocityChecker.Kind.TRANSFER, 100L, T));
+        assertNull(daily.checkAndRecord("alice", VelocityChecker.Kind.TRANSFER, 100L, T + HOUR));
+        assertEquals("two-per-day", daily.checkAndRecord("alice", VelocityChecker.Kind.TRANSFER, 100L, T + 23 * HOUR));
+
+        // The slot of T comes round again: the old period is dropped, the one of T + 1h is still counted
+        assertNull(daily.checkAndRecord("alice", VelocityChecker.Kind.TRANSFER, 100L, T + 24 * HOUR));
+        assertEquals("two-per-day", daily.checkAndRecord("alice", VelocityChecker.Kind.TRANSFER, 100L, T + 24 * HOUR));
+    }
+
+    @Test
+    public void manyAccountsGrowTheBuckets() {
+        // More accounts than one chunk holds
+        for (int i = 0; i < 10_000; i++) {
+            assertNull(transfer("user-" + i, 100L, T));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertNull(transfer("user-" + i, 100L, T + SECOND));
+        }
+        assertTrue(checker.statsJson().endsWith("\"accounts\":10000}"));
+    }
+
+    @Test
+    public void denialsAreLoggedAndCounted() {
+        for (int i = 0; i < 5; i++) {
+            transfer("alice", 100L, T);
+        }
+        transfer("alice", 250L, T);
+
+        assertEquals(T + " DENY alice TRANSFER 250 rule=transfers-per-minute windowCount=6 windowCents=750\n",
+                log.toString());
+        assertEquals("{\"allowed\":5,\"denied\":{\"transfers-per-minute\":1,\"transfers-per-hour\":0,"
+                + "\"transfers-per-day\":0,\"loans-per-day\":0,\"accounts-table-full\":0},\"accounts\":1}",
+                checker.statsJson());
+    }
+
+    @Test
+    public void amountCheckRecordsNothing() {
+        assertNull(checker.checkAmount("alice", VelocityChecker.Kind.TRANSFER, 100_000L));
+        assertEquals("transfers-per-hour", checker.checkAmount("alice", VelocityChecker.Kind.TRANSFER, 100_001L));
+        assertNull(checker.checkAmount("alice", VelocityChecker.Kind.LOAN, 10_000_000L)); // No cents limit on loans
+
+        assertTrue(checker.statsJson().endsWith("\"transfers-per-hour\":1,\"transfers-per-day\":0,"
+                + "\"loans-per-day\":0,\"accounts-table-full\":0},\"accounts\":0}"));
+    }
+
+    @Test
+    public void fullTableHandsIdleRowsToNewUids() {
+        VelocityChecker small = new VelocityChecker(VelocityChecker.defaultRules(), log, 2);
+        assertNull(small.checkAndRecord("alice", VelocityChecker.Kind.TRANSFER, 100L, T));
+        assertNull(small.checkAndRecord("bob", VelocityChecker.Kind.TRANSFER, 100L, T + HOUR));
+
+        // Both rows recorded within the day: a third uid is refused rather than evicting one
+        assertEquals(VelocityChecker.TABLE_FULL, small.checkAndRecord("mallory", VelocityChecker.Kind.TRANSFER, 100L, T + 2 * HOUR));
+        assertTrue(small.statsJson().endsWith("\"accounts-table-full\":1},\"accounts\":2}"));
+
+        // A day after alice's last transfer that row is idle and goes to the new uid, starting empty
+        for (int i = 0; i < 5; i++) {
+            assertNull(small.checkAndRecord("carol", VelocityChecker.Kind.TRANSFER, 100L, T + 24 * HOUR + 1));
+        }
+        assertEquals("transfers-per-minute", small.checkAndRecord("carol", VelocityChecker.Kind.TRANSFER, 100L, T + 24 * HOUR + 1));
+        assertEquals(VelocityChecker.TABLE_FULL, small.checkAndRecord("alice", VelocityChecker.Kind.TRANSFER, 100L, T + 24 * HOUR + 1));
+
+        // bob's row and counts are untouched
+        assertEquals("transfers-per-hour", small.checkAndRecord("bob", VelocityChecker.Kind.TRANSFER, 100_000L, T + HOUR + MINUTE));
+        assertTrue(small.statsJson().endsWith("\"accounts\":2}"));
+    }
+}
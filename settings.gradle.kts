@@ -23,4 +23,6 @@ dependencyResolutionManagement {
 
 rootProject.name = "ewallet"
 include(":app")
+include(":credit-policy")   // Shared by the app and the ledger server
+include(":ledger-server")  // JVM-only backend, kept out of the APK
  
\ No newline at end of file
@@ -0,0 +1,379 @@
+package com.example.ewallet;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.os.Debug;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.FirebaseOptions;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.MemoryCacheSettings;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.WriteBatch;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Performance regression suite for the data path of every screen, run on a device against a seeded Firestore
+ * emulator. Each scenario runs the screen's own read, started on the main thread like the fragment does:
+ *   - the package-private readers (HomeFragment.readRecent, AllTransactionsFragment.readHistory,
+ *     StatsFragment.readHistory, RecipientSuggester.fetchHistory);
+ *   - CachedReads.documentRead for the profile document.
+ * It reads from Source.SERVER and then runs the screen's aggregation (StatsFragment.dailyBalances and
+ * expenseSummary, CreditProfile.limitOf, LoanAccrual).
+ * For each scenario it records the median latency, the documents read from the server (DocumentReads) and the
+ * bytes the runtime allocated.
+ *
+ * Results are compared with assets/screen_load_baseline.properties:
+ *   - more document reads than the baseline is always a regression;
+ *   - latency may grow by LATENCY_TOLERANCE and allocation by ALLOCATION_TOLERANCE, plus a small absolute slack.
+ * The measured values are logged in the baseline's format (tag ScreenLoad), for updating it.
+ * The seeded history is laid out from the start of the current month, so the read counts do not depend on the day
+ * the test runs.
+ * Run with the emulator on the host: firebase emulators:exec --only firestore "./gradlew screenLoadTest".
+ * Skipped when no emulator answers on 10.0.2.2:8080, so plain connectedAndroidTest runs are unaffected.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ScreenLoadRegressionTest {
+
+    private static final String TAG = "ScreenLoad";
+    private static final String EMULATOR_HOST = "10.0.2.2"; // The host machine as seen from the Android emulator
+    private static final int EMULATOR_PORT = 8080;
+    private static final String PROJECT_ID = "demo-ewallet"; // demo- projects never reach production
+    private static final String BASELINE_ASSET = "screen_load_baseline.properties";
+
+    // Seeded history of the subject: CLOSED_MONTHS checkpointed months plus the start of the current one
+    private static final int CLOSED_MONTHS = 6;
+    private static final int OWN_PER_MONTH = 100;
+    private static final int TRANSFERS_PER_MONTH = 100;   // Alternately sent and received
+    private static final int OWN_CURRENT_MONTH = 20;
+    private static final int TRANSFERS_CURRENT_MONTH = 20;
+    private static final int COUNTERPARTIES = 20;
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 10;
+    private static final long TIMEOUT_SECONDS = 60;
+
+    private static final double LATENCY_TOLERANCE = 0.5;
+    private static final long LATENCY_SLACK_MS = 10;
+    private static final double ALLOCATION_TOLERANCE = 0.25;
+    private static final long ALLOCATION_SLACK_BYTES = 256 * 1024;
+
+    private static final String[] DESCRIPTIONS = {"Groceries", "Rent", "Transport", "Dinner", "Utilities"};
+
+    private static FirebaseFirestore db;
+    private static String subjectUid;
+
+    // One screen's data path: starts the reads (main thread) and finishes with the aggregation (test thread)
+    private interface Scenario {
+        Task<?> start();
+    }
+
+    private static final class Result {
+        final long latencyMs;
+        final long reads;
+        final long allocatedBytes;
+
+        Result(long latencyMs, long reads, long allocatedBytes) {
+            this.latencyMs = latencyMs;
+            this.reads = reads;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    @BeforeClass
+    public static void seedEmulator() throws Exception {
+        assumeTrue("No Firestore emulator on " + EMULATOR_HOST + ":" + EMULATOR_PORT, emulatorReachable());
+
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        // A separate app instance: the default one is configured for production by EwalletApplication
+        FirebaseApp app = FirebaseApp.initializeApp(context, new FirebaseOptions.Builder()
+                .setProjectId(PROJECT_ID)
+                .setApplicationId("1:0:android:0")
+                .setApiKey("screen-load-test")
+                .build(), "screen-load-" + System.nanoTime());
+        db = FirebaseFirestore.getInstance(app);
+        db.useEmulator(EMULATOR_HOST, EMULATOR_PORT);
+        db.setFirestoreSettings(new FirebaseFirestoreSettings.Builder()
+                .setLocalCacheSettings(MemoryCacheSettings.newBuilder().build())
+                .build());
+
+        // Ids unique to this run, so an emulator that is not cleared between runs does not change the counts
+        String runId = Long.toString(System.currentTimeMillis(), 36);
+        subjectUid = "screen-load-" + runId;
+        seed(runId);
+    }
+
+    @Test
+    public void screenDataPathsStayWithinBaseline() throws Exception {
+        Map<String, Scenario> scenarios = new LinkedHashMap<>();
+        DocumentReference userRef = db.collection("users").document(subjectUid);
+
+        // Profile document plus the five most recent entries
+        scenarios.put("home", () -> Tasks.whenAllSuccess(
+                CachedReads.documentRead(userRef).fetch(Source.SERVER),
+                HomeFragment.readRecent(db, subjectUid, Source.SERVER)));
+        scenarios.put("allTransactions", () -> AllTransactionsFragment.readHistory(db, subjectUid, Source.SERVER));
+        scenarios.put("stats", () -> StatsFragment.readHistory(db, subjectUid, new ViewScope(TAG), Source.SERVER)
+                .continueWith(task -> {
+                    StatsFragment.StatsHistory history = task.getResult();
+                    return StatsFragment.dailyBalances(history.checkpoint, history.entries).size()
+                            + StatsFragment.expenseSummary(history.checkpoint, history.entries).size();
+                }));
+        // Sender balance plus the past counterparties behind the recipient suggestions
+        scenarios.put("transfer", () -> Tasks.whenAllSuccess(
+                CachedReads.documentRead(userRef).fetch(Source.SERVER),
+                new RecipientSuggester(db, subjectUid, (query, suggestions) -> { }).fetchHistory(Source.SERVER)));
+        scenarios.put("takeLoan", () -> CachedReads.documentRead(userRef).fetch(Source.SERVER)
+                .continueWith(task -> {
+                    Date now = new Date();
+                    return CreditProfile.limitOf(task.getResult(), now)
+                            - LoanAccrual.fromSnapshot(task.getResult(), now).getTotalOwed();
+                }));
+        scenarios.put("repayLoan", () -> CachedReads.documentRead(userRef).fetch(Source.SERVER)
+                .continueWith(task -> LoanAccrual.fromSnapshot(task.getResult(), new Date()).getTotalOwed()
+                        + CashBalance.centsOf(task.getResult())));
+
+        Properties baseline = loadBaseline();
+        List<String> regressions = new ArrayList<>();
+        StringBuilder measured = new StringBuilder();
+
+        for (Map.Entry<String, Scenario> scenario : scenarios.entrySet()) {
+            String name = scenario.getKey();
+            Result result = measure(scenario.getValue());
+            measured.append(name).append(".reads=").append(result.reads).append('\n')
+                    .append(name).append(".latencyMs=").append(result.latencyMs).append('\n')
+                    .append(name).append(".allocatedBytes=").append(result.allocatedBytes).append('\n');
+
+            String baseReads = baseline.getProperty(name + ".reads");
+            if (baseReads == null) {
+                regressions.add(name + ": no baseline entry");
+                continue;
+            }
+            long baseLatency = Long.parseLong(baseline.getProperty(name + ".latencyMs"));
+            long baseAllocated = Long.parseLong(baseline.getProperty(name + ".allocatedBytes"));
+
+            if (result.reads > Long.parseLong(baseReads)) {
+                regressions.add(name + ": " + result.reads + " document reads, baseline " + baseReads);
+            }
+            if (result.latencyMs > baseLatency * (1 + LATENCY_TOLERANCE) + LATENCY_SLACK_MS) {
+                regressions.add(name + ": p50 " + result.latencyMs + " ms, baseline " + baseLatency + " ms");
+            }
+            if (result.allocatedBytes > baseAllocated * (1 + ALLOCATION_TOLERANCE) + ALLOCATION_SLACK_BYTES) {
+                regressions.add(name + ": " + result.allocatedBytes / 1024 + " KB allocated, baseline "
+                        + baseAllocated / 1024 + " KB");
+            }
+        }
+
+        Log.i(TAG, "Measured (baseline format):\n" + measured);
+        assertTrue("Screen load regressions:\n  " + String.join("\n  ", regressions), regressions.isEmpty());
+    }
+
+    // Warm-up runs, then the median latency and allocation of MEASURED_RUNS and the reads of the last run
+    private static Result measure(Scenario scenario) throws Exception {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            runOnce(instrumentation, scenario);
+        }
+
+        long[] latencies = new long[MEASURED_RUNS];
+        long[] allocations = new long[MEASURED_RUNS];
+        long reads = 0L;
+        for (int i = 0; i < MEASURED_RUNS; i++) {
+            // Like a fresh visit: nothing reused from SingleFlight's short server TTL
+            CachedReads.invalidate("users/" + subjectUid);
+            instrumentation.waitForIdleSync();
+            long readsBefore = DocumentReads.serverReads();
+            long allocatedBefore = bytesAllocated();
+            long startNanos = System.nanoTime();
+
+            runOnce(instrumentation, scenario);
+
+            latencies[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            allocations[i] = bytesAllocated() - allocatedBefore;
+            instrumentation.waitForIdleSync(); // Read counts are added by main thread listeners
+            reads = DocumentReads.serverReads() - readsBefore;
+        }
+        return new Result(median(latencies), reads, median(allocations));
+    }
+
+    private static void runOnce(Instrumentation instrumentation, Scenario scenario) throws Exception {
+        List<Task<?>> started = new ArrayList<>(1);
+        instrumentation.runOnMainSync(() -> started.add(scenario.start())); // Screens start their reads here
+        Tasks.await(started.get(0), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    // --- Seed data (the same document shapes the app writes) ---
+
+    private static void seed(String runId) throws Exception {
+        Date now = new Date();
+        List<Map.Entry<DocumentReference, Map<String, Object>>> writes = new ArrayList<>();
+
+        List<String> counterpartyUids = new ArrayList<>();
+        for (int k = 0; k < COUNTERPARTIES; k++) {
+            String uid = subjectUid + "-c" + k;
+            counterpartyUids.add(uid);
+            writes.add(entry(db.collection("users").document(uid), user(uid, "sl" + runId + "c" + k, now)));
+        }
+
+        // Closed months first, then the current one; entries are generated in time order
+        DocumentReference userRef = db.collection("users").document(subjectUid);
+        BalanceCheckpoint running = BalanceCheckpoint.empty();
+        Date currentMonth = TransactionArchive.monthStart(now);
+        for (int monthsBack = CLOSED_MONTHS; monthsBack >= 0; monthsBack--) {
+            Date monthStart = addMonths(currentMonth, -monthsBack);
+            boolean closed = monthsBack > 0;
+            int own = closed ? OWN_PER_MONTH : OWN_CURRENT_MONTH;
+            int transfers = closed ? TRANSFERS_PER_MONTH : TRANSFERS_CURRENT_MONTH;
+
+            for (int i = 0; i < Math.max(own, transfers); i++) {
+                long hourMs = (i + 1) * 60L * 60 * 1000;
+                if (i < own) {
+                    Date timestamp = new Date(monthStart.getTime() + hourMs);
+                    String type = i % 3 == 0 ? "Income" : i % 3 == 1 ? "Loan Taken" : "Loan Repayment";
+                    double amount = "Loan Repayment".equals(type) ? 10.00 : 25.00;
+                    String description = DESCRIPTIONS[i % DESCRIPTIONS.length];
+
+                    Map<String, Object> transaction = new HashMap<>();
+                    transaction.put("type", type);
+                    transaction.put("amount", amount);
+                    transaction.put("description", description);
+                    transaction.put("source", "System");
+                    transaction.put("timestamp", timestamp);
+                    DocumentReference ref = userRef.collection("transactions").document();
+                    writes.add(entry(ref, transaction));
+                    running.apply(ref.getId(), type, description, amount, null, timestamp);
+                }
+                if (i < transfers) {
+                    Date timestamp = new Date(monthStart.getTime() + hourMs + 30L * 60 * 1000);
+                    String counterparty = counterpartyUids.get(i % COUNTERPARTIES);
+                    boolean sent = i % 2 == 0;
+                    String description = DESCRIPTIONS[i % DESCRIPTIONS.length];
+
+                    Map<String, Object> transfer = new HashMap<>();
+                    transfer.put("senderUid", sent ? subjectUid : counterparty);
+                    transfer.put("recipientUid", sent ? counterparty : subjectUid);
+                    transfer.put("senderUserId", sent ? "sl" + runId : "sl" + runId + "c" + (i % COUNTERPARTIES));
+                    transfer.put("recipientUserId", sent ? "sl" + runId + "c" + (i % COUNTERPARTIES) : "sl" + runId);
+                    transfer.put("amount", 5.00);
+                    transfer.put("description", description);
+                    transfer.put("source", "eWallet Bank");
+                    transfer.put("timestamp", timestamp);
+                    transfer.put(AtomicTransfer.FIELD_COMMITTED_AT, timestamp);
+                    DocumentReference ref = db.collection(TransactionHistory.TRANSFERS).document();
+                    writes.add(entry(ref, transfer));
+                    running.apply(ref.getId(), sent ? "Transfer (Sent)" : "Transfer (Received)", description, 5.00,
+                            null, timestamp);
+                }
+            }
+
+            if (closed) {
+                writes.add(entry(BalanceCheckpoint.checkpoints(db, subjectUid)
+                        .document(BalanceCheckpoint.monthKey(monthStart)), running.toDocument()));
+            }
+        }
+
+        Map<String, Object> subject = user(subjectUid, "sl" + runId, now);
+        subject.put(CashBalance.FIELD_CENTS, 10_000L + CashBalance.toCents(running.getClosingBalance()));
+        writes.add(entry(userRef, subject));
+
+        // Firestore allows at most 500 writes per batch
+        for (int from = 0; from < writes.size(); from += 500) {
+            WriteBatch batch = db.batch();
+            for (Map.Entry<DocumentReference, Map<String, Object>> write
+                    : writes.subList(from, Math.min(from + 500, writes.size()))) {
+                batch.set(write.getKey(), write.getValue());
+            }
+            Tasks.await(batch.commit(), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }
+        Log.i(TAG, "Seeded " + writes.size() + " documents for " + subjectUid);
+    }
+
+    private static Map<String, Object> user(String uid, String userId, Date now) {
+        Map<String, Object> user = new HashMap<>();
+        user.put("uid", uid);
+        user.put("userId", userId);
+        user.put("name", userId);
+        user.put(CashBalance.FIELD_CENTS, 10_000L);
+        user.put("loanLimit", 1000.00);
+        user.put("loanTaken", 0.00);
+        user.putAll(LoanAccrual.initialFields(now));
+        user.putAll(CreditProfile.initialFields(now));
+        user.putAll(LedgerReconciler.initialFields(now));
+        return user;
+    }
+
+    private static Map.Entry<DocumentReference, Map<String, Object>> entry(DocumentReference ref,
+                                                                           Map<String, Object> data) {
+        return new AbstractMap.SimpleEntry<>(ref, data);
+    }
+
+    // --- Helpers ---
+
+    private static boolean emulatorReachable() {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(EMULATOR_HOST, EMULATOR_PORT), 1_000);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static Properties loadBaseline() throws IOException {
+        Properties baseline = new Properties();
+        Context testContext = InstrumentationRegistry.getInstrumentation().getContext();
+        try (InputStream in = testContext.getAssets().open(BASELINE_ASSET)) {
+            baseline.load(in);
+        }
+        return baseline;
+    }
+
+    // Bytes allocated by this process since start (all threads, including Firestore's own)
+    private static long bytesAllocated() {
+        return Long.parseLong(Debug.getRuntimeStat("art.gc.bytes-allocated"));
+    }
+
+    private static Date addMonths(Date date, int months) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTime(date);
+        calendar.add(Calendar.MONTH, months);
+        return calendar.getTime();
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
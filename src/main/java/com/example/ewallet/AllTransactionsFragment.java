@@ -11,11 +11,10 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.Source;
 
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
@@ -29,6 +28,7 @@ import java.util.Locale;
 public class AllTransactionsFragment extends Fragment {
 
     private static final String TAG = "AllTransactionsFragment";
+    private ViewScope scope; // Loads bound to the current view
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
     private String currentUid;
@@ -43,6 +43,7 @@ public class AllTransactionsFragment extends Fragment {
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_all_transactions, container, false);
+        scope = new ViewScope(TAG);
 
         // Initialize Firebase
         mAuth = FirebaseAuth.getInstance();
@@ -71,37 +72,37 @@ public class AllTransactionsFragment extends Fragment {
     }
 
     private void loadAllTransactions() {
-        // Query the 'transactions' sub-collection
-        db.collection("users").document(currentUid).collection("transactions")
-                // Order by timestamp descending (newest first)
-                .orderBy("timestamp", Query.Direction.DESCENDING)
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful() && task.getResult() != null) {
-
-                        if (task.getResult().isEmpty()) {
+        // Merge the 'transactions' sub-collection with the shared transfers this user sent or received
+        // Newest first, no limit; the cached history is drawn first and redrawn only if the server differs
+        CachedReads.load("users/" + currentUid + "#history", source -> readHistory(db, currentUid, source),
+                scope.bind(new CachedReads.Callback<List<LedgerEntry>>() {
+                    @Override
+                    public void onResult(List<LedgerEntry> entries, boolean fromCache) {
+                        transactionsListContainer.removeAllViews(); // Replaces the cached rows, if any
+
+                        if (entries.isEmpty()) {
                             displayEmptyMessage();
                             return;
                         }
 
-                        // Loop through every transaction document retrieved
-                        for (QueryDocumentSnapshot document : task.getResult()) {
-                            String title = document.getString("description");
-                            Double amount = document.getDouble("amount");
-                            String type = document.getString("type");
-                            Date date = document.getDate("timestamp");
-
-                            if (amount != null && date != null) {
-                                // Dynamically create and populate the transaction list item UI
-                                addTransactionItemToUI(title, amount, type, date);
-                            }
+                        // Loop through every history entry retrieved
+                        for (LedgerEntry entry : entries) {
+                            // Dynamically create and populate the transaction list item UI
+                            addTransactionItemToUI(entry.description, entry.amount, entry.type, entry.timestamp);
                         }
+                    }
 
-                    } else {
-                        Log.e(TAG, "Error fetching all transactions: ", task.getException());
+                    @Override
+                    public void onFailure(Exception e) {
+                        Log.e(TAG, "Error fetching all transactions: ", e);
                         Toast.makeText(getContext(), "Failed to load transaction history.", Toast.LENGTH_SHORT).show();
                     }
-                });
+                }));
+    }
+
+    // Package-private: also driven by the screen load regression test (androidTest)
+    static Task<List<LedgerEntry>> readHistory(FirebaseFirestore db, String uid, Source source) {
+        return TransactionHistory.load(db, uid, TransactionHistory.ALL, true, 0, source);
     }
 
     private void addTransactionItemToUI(String title, double amount, String type, Date date) {
@@ -147,4 +148,11 @@ public class AllTransactionsFragment extends Fragment {
         emptyText.setPadding(0, 32, 0, 0);
         transactionsListContainer.addView(emptyText);
     }
-}
\ No newline at end of file
+
+    @Override
+    public void onDestroyView() {
+        // Drops pending callbacks and skips queued work for the view being destroyed
+        scope.close();
+        super.onDestroyView();
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.ewallet;
+
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Transaction;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The double-entry P2P transfer, shared by TransferFragment and payment requests (PaymentRequests.settle):
+ * debit the sender after an overdraft check, credit the recipient with a blind increment, record the transfer
+ * once in the shared 'transfers' collection and add it to both parties' monthly ledger digests and credit
+ * aggregates (CreditProfile).
+ * Runs inside the caller's Firestore transaction, so callers can add their own reads (before) and writes (after).
+ */
+public final class AtomicTransfer {
+
+    // Server commit time of a transfer or users/{uid}/transactions entry. 'timestamp' is the writer's clock
+    // (history order, monthly ledgers); this one is comparable across devices, so IncomingTransferFeed and the
+    // checkpoint replay (BalanceCheckpoint) resume on it
+    public static final String FIELD_COMMITTED_AT = "committedAt";
+
+    private AtomicTransfer() {
+        // Static helpers only
+    }
+
+    /**
+     * Applies the transfer within 'transaction' and returns the new transfers/{id} reference.
+     * Throws (failing the whole transaction) if the sender is missing or cannot cover the amount.
+     */
+    public static DocumentReference apply(Transaction transaction, FirebaseFirestore db,
+                                          String senderUid, String senderUserId,
+                                          String recipientUid, String recipientUserId,
+                                          double amount, String description) throws FirebaseFirestoreException {
+        DocumentReference senderRef = db.collection("users").document(senderUid);
+        DocumentReference recipientRef = db.collection("users").document(recipientUid);
+
+        // Balances move in integer cents (CashBalance), so the recipient's blind increment is exact
+        final long amountCents = CashBalance.toCents(amount);
+        final double creditAmount = CashBalance.toDollars(amountCents);
+
+        // A. Get Sender's data only. The recipient document is NOT read: it stays out of the read set,
+        // so concurrent transfers to the same person no longer conflict with each other.
+        Map<String, Object> senderData = transaction.get(senderRef).getData();
+
+        if (senderData == null) {
+            throw new RuntimeException("Sender data not found.");
+        }
+
+        // --- DEBIT SENDER ---
+        long senderBalanceCents = CashBalance.centsOf(senderData);
+        // Overdraft check against the locked, up-to-date sender balance
+        if (amountCents > senderBalanceCents) {
+            throw new RuntimeException("Insufficient funds for transfer.");
+        }
+
+        Date transferTimestamp = new Date();
+        DocumentReference transferRef = db.collection(TransactionHistory.TRANSFERS).document();
+
+        // Both parties' monthly ledger totals (LedgerDigest) ride on their user documents and reference the same
+        // transfer id, so a transfer writes three documents: sender, recipient and the transfer
+        Map<String, Object> senderUpdates = new HashMap<>(CashBalance.fields(senderBalanceCents - amountCents));
+        senderUpdates.putAll(CreditProfile.flowIncrements("Transfer (Sent)", creditAmount));
+        senderUpdates.putAll(LedgerDigest.fields(transferRef.getId(), "Transfer (Sent)", creditAmount,
+                transferTimestamp, -amountCents));
+        transaction.set(senderRef, senderUpdates, SetOptions.merge());
+
+        // --- CREDIT RECIPIENT (blind server-side increment) ---
+        // The recipient's existence was already proven by the caller's userId lookup;
+        // update() (unlike set/merge) still fails the whole transaction if the document has been deleted since.
+        // The recipient's credit aggregates and month totals are blind increments too.
+        Map<String, Object> recipientUpdates = CreditProfile.flowIncrements("Transfer (Received)", creditAmount);
+        recipientUpdates.putAll(CashBalance.increment(amountCents));
+        recipientUpdates.putAll(LedgerDigest.updates(transferRef.getId(), "Transfer (Received)", creditAmount,
+                transferTimestamp, amountCents));
+        transaction.update(recipientRef, recipientUpdates);
+
+        // --- RECORD THE TRANSFER ONCE (shared by both parties) ---
+        // A single top-level transfers/{id} document replaces the mirrored "Transfer (Sent)" and
+        // "Transfer (Received)" copies; history screens query it by senderUid or recipientUid.
+        Map<String, Object> transferRecord = new HashMap<>();
+        transferRecord.put("senderUid", senderUid);
+        transferRecord.put("recipientUid", recipientUid);
+        transferRecord.put("senderUserId", senderUserId);
+        transferRecord.put("recipientUserId", recipientUserId);
+        transferRecord.put("amount", creditAmount);
+        transferRecord.put("description", description);
+        transferRecord.put("source", "eWallet Bank");
+        transferRecord.put("timestamp", transferTimestamp);
+        transferRecord.put(FIELD_COMMITTED_AT, FieldValue.serverTimestamp());
+        transaction.set(transferRef, transferRecord);
+
+        return transferRef;
+    }
+}
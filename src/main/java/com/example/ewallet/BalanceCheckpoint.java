@@ -0,0 +1,232 @@
+package com.example.ewallet;
+
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * A balance snapshot stored under users/{uid}/checkpoints.
+ * Each checkpoint holds the closing balance, outstanding loan principal and expense totals after the
+ * last included transaction, so history views only replay the transactions written after it.
+ * Checkpoints are written at month boundaries (document id "yyyy-MM"), plus one "opening" checkpoint at signup.
+ * Months and the replay cursor go by the server commit time ('committedAt'), so an entry from a device whose
+ * clock is off still lands after the checkpoint it was committed after. Checkpoints from before that carry only
+ * "lastTimestamp"; loadLatest() does not see them, and the full replay that follows rewrites them.
+ */
+public class BalanceCheckpoint {
+
+    private static final String TAG = "BalanceCheckpoint";
+
+    public static final String COLLECTION = "checkpoints";
+    public static final String OPENING_ID = "opening";
+    public static final String FIELD_LAST_COMMITTED_AT = "lastCommittedAt";
+
+    private double closingBalance;
+    private double loanTaken;
+    private String lastTransactionId;
+    private Date lastCommittedAt;
+    private final Map<String, Double> expenseTotals;
+
+    public BalanceCheckpoint(double closingBalance, double loanTaken, String lastTransactionId,
+                             Date lastCommittedAt, Map<String, Double> expenseTotals) {
+        this.closingBalance = closingBalance;
+        this.loanTaken = loanTaken;
+        this.lastTransactionId = lastTransactionId;
+        this.lastCommittedAt = lastCommittedAt;
+        this.expenseTotals = new HashMap<>(expenseTotals);
+    }
+
+    // Starting point for accounts that have no checkpoint yet: replay from the very first transaction
+    public static BalanceCheckpoint empty() {
+        return new BalanceCheckpoint(0.0, 0.0, null, null, new HashMap<>());
+    }
+
+    public double getClosingBalance() {
+        return closingBalance;
+    }
+
+    public double getLoanTaken() {
+        return loanTaken;
+    }
+
+    public Date getLastCommittedAt() {
+        return lastCommittedAt;
+    }
+
+    public String getLastTransactionId() {
+        return lastTransactionId;
+    }
+
+    public Map<String, Double> getExpenseTotals() {
+        return expenseTotals;
+    }
+
+    // Cash OUT transaction types reduce the balance; everything else adds to it
+    public static boolean isOutflow(String type) {
+        return "Loan Repayment".equals(type) || "Transfer (Sent)".equals(type);
+    }
+
+    /**
+     * Applies one transaction on top of this checkpoint (balance, loan principal and expense totals).
+     * 'principalPaid' is only set on repayments that also settled interest; null means the whole amount.
+     */
+    public void apply(String transactionId, String type, String description, double amount,
+                      Double principalPaid, Date committedAt) {
+        if (isOutflow(type)) {
+            closingBalance -= amount;
+            if (description != null) {
+                Double currentTotal = expenseTotals.get(description);
+                expenseTotals.put(description, (currentTotal == null ? 0.0 : currentTotal) + amount);
+            }
+        } else {
+            closingBalance += amount;
+        }
+
+        if ("Loan Taken".equals(type)) {
+            loanTaken += amount;
+        } else if ("Loan Repayment".equals(type)) {
+            loanTaken = Math.max(0.0, loanTaken - (principalPaid != null ? principalPaid : amount));
+        }
+
+        lastTransactionId = transactionId;
+        lastCommittedAt = committedAt;
+    }
+
+    public BalanceCheckpoint copy() {
+        return new BalanceCheckpoint(closingBalance, loanTaken, lastTransactionId, lastCommittedAt, expenseTotals);
+    }
+
+    public Map<String, Object> toDocument() {
+        Map<String, Object> doc = new HashMap<>();
+        doc.put("closingBalance", closingBalance);
+        doc.put("loanTaken", loanTaken);
+        doc.put("lastTransactionId", lastTransactionId);
+        doc.put(FIELD_LAST_COMMITTED_AT, lastCommittedAt);
+        doc.put("expenseTotals", new HashMap<>(expenseTotals));
+        return doc;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static BalanceCheckpoint fromDocument(DocumentSnapshot document) {
+        Number balanceNum = (Number) document.get("closingBalance");
+        Number loanNum = (Number) document.get("loanTaken");
+        Map<String, Double> totals = new HashMap<>();
+
+        Object rawTotals = document.get("expenseTotals");
+        if (rawTotals instanceof Map) {
+            for (Map.Entry<String, Object> entry : ((Map<String, Object>) rawTotals).entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    totals.put(entry.getKey(), ((Number) entry.getValue()).doubleValue());
+                }
+            }
+        }
+
+        return new BalanceCheckpoint(
+                balanceNum != null ? balanceNum.doubleValue() : 0.0,
+                loanNum != null ? loanNum.doubleValue() : 0.0,
+                document.getString("lastTransactionId"),
+                document.getDate(FIELD_LAST_COMMITTED_AT),
+                totals);
+    }
+
+    // Month key used as checkpoint document id, e.g. "2026-10" (UTC so every device agrees on boundaries)
+    public static String monthKey(Date date) {
+        SimpleDateFormat monthFormat = new SimpleDateFormat("yyyy-MM", Locale.US);
+        monthFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return monthFormat.format(date);
+    }
+
+    public static CollectionReference checkpoints(FirebaseFirestore db, String uid) {
+        return db.collection("users").document(uid).collection(COLLECTION);
+    }
+
+    /**
+     * Reads the most recent checkpoint (one document read). Falls back to an empty checkpoint if none exists.
+     */
+    public static Task<BalanceCheckpoint> loadLatest(FirebaseFirestore db, String uid) {
+        return loadLatest(db, uid, Source.DEFAULT);
+    }
+
+    public static Task<BalanceCheckpoint> loadLatest(FirebaseFirestore db, String uid, Source source) {
+        return DocumentReads.counted(checkpoints(db, uid)
+                .orderBy(FIELD_LAST_COMMITTED_AT, Query.Direction.DESCENDING)
+                .limit(1)
+                .get(source))
+                .continueWith(task -> {
+                    if (!task.isSuccessful() || task.getResult() == null || task.getResult().isEmpty()) {
+                        return empty();
+                    }
+                    return fromDocument(task.getResult().getDocuments().get(0));
+                });
+    }
+
+    /**
+     * Loads the history entries (own transactions and shared transfers) after the given checkpoint, oldest first.
+     * The checkpoint's (lastCommittedAt, lastTransactionId) is the cursor, so an entry sharing the commit time of
+     * the last included one is still replayed.
+     */
+    public static Task<List<LedgerEntry>> historyAfter(FirebaseFirestore db, String uid, BalanceCheckpoint checkpoint) {
+        return historyAfter(db, uid, checkpoint, Source.DEFAULT);
+    }
+
+    public static Task<List<LedgerEntry>> historyAfter(FirebaseFirestore db, String uid, BalanceCheckpoint checkpoint,
+                                                       Source source) {
+        Date after = checkpoint.getLastCommittedAt();
+        TransactionHistory.Bounds bounds = after == null
+                ? TransactionHistory.ALL_REPLAY
+                : TransactionHistory.Bounds.after(after, checkpoint.getLastTransactionId());
+        return TransactionHistory.load(db, uid, bounds, false, 0, source);
+    }
+
+    /**
+     * Replays the transactions loaded after 'start' and writes a checkpoint for every month that has fully closed.
+     * The current month is never checkpointed because more transactions can still arrive in it.
+     */
+    public static void writeClosedMonths(FirebaseFirestore db, String uid, BalanceCheckpoint start,
+                                         List<LedgerEntry> entriesAfter) {
+        String currentMonth = monthKey(new Date());
+        BalanceCheckpoint running = start.copy();
+        String runningMonth = null;
+
+        WriteBatch batch = db.batch();
+        int pending = 0;
+
+        for (LedgerEntry entry : entriesAfter) {
+            String month = monthKey(entry.committedAt);
+            if (runningMonth != null && !month.equals(runningMonth)) {
+                // Month boundary crossed: 'running' now holds the closing state of 'runningMonth'
+                batch.set(checkpoints(db, uid).document(runningMonth), running.toDocument());
+                pending++;
+            }
+
+            running.apply(entry.id, entry.type, entry.description, entry.amount, entry.principalPaid, entry.committedAt);
+            runningMonth = month;
+        }
+
+        if (runningMonth != null && runningMonth.compareTo(currentMonth) < 0) {
+            batch.set(checkpoints(db, uid).document(runningMonth), running.toDocument());
+            pending++;
+        }
+
+        if (pending == 0) return;
+
+        final int written = pending;
+        batch.commit()
+                .addOnSuccessListener(aVoid -> Log.d(TAG, "Wrote " + written + " monthly checkpoint(s)."))
+                .addOnFailureListener(e -> Log.w(TAG, "Failed to write monthly checkpoints.", e));
+    }
+}
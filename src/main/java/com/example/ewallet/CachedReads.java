@@ -0,0 +1,179 @@
+package com.example.ewallet;
+
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.PersistentCacheSettings;
+import com.google.firebase.firestore.Source;
+
+import java.util.Collection;
+import java.util.Objects;
+
+/**
+ * Stale-while-revalidate reads for the screens: the same read is started against Firestore's persistent cache
+ * (Source.CACHE) and the server (Source.SERVER) at once. The cached result is shown as soon as the disk answers;
+ * the server result is delivered afterwards only if it differs, so an unchanged screen is not redrawn.
+ * When the server cannot be reached the cached result simply stays on screen.
+ * Writes, transactions and recipient checks keep reading from the server.
+ * Keyed reads (documents by path, screens by a "users/{uid}#name" key) are shared through SingleFlight:
+ * identical concurrent reads run once, and a server result is reused for SERVER_TTL_MS unless invalidated.
+ */
+public final class CachedReads {
+
+    private static final String TAG = "CachedReads";
+
+    // Our data per user is small (profile, a few checkpoints, history documents of ~0.5 KB each):
+    // 40 MB keeps tens of thousands of documents. Above it the SDK's garbage collector evicts the least
+    // recently used documents that no active listener is holding.
+    public static final long CACHE_SIZE_BYTES = 40L * 1024 * 1024;
+
+    // Long enough to absorb double taps and fragments re-created in quick succession, short enough that
+    // other devices' writes show up on the next visit. Writes from this device invalidate right away.
+    public static final long SERVER_TTL_MS = 2_000L;
+
+    /**
+     * One read that can be run against a given source (cache or server).
+     */
+    public interface Read<T> {
+        Task<T> fetch(Source source);
+    }
+
+    /**
+     * Called on the main thread: first with the cached result (fromCache = true), then with the server result
+     * if it differs. onFailure is only called when neither source produced anything to show.
+     */
+    public interface Callback<T> {
+        void onResult(T result, boolean fromCache);
+
+        void onFailure(Exception e);
+    }
+
+    // Tracks one stale-while-revalidate read; both tasks complete on the main thread
+    private static final class State<T> {
+        T shown;
+        boolean hasShown;
+        boolean serverDone;
+        boolean cacheDone;
+        Exception serverError;
+    }
+
+    private CachedReads() {
+        // Static helpers only
+    }
+
+    /**
+     * Configures the persistent cache explicitly. Must run before the first Firestore call (EwalletApplication).
+     */
+    public static void configure(FirebaseFirestore db) {
+        FirebaseFirestoreSettings settings = new FirebaseFirestoreSettings.Builder()
+                .setLocalCacheSettings(PersistentCacheSettings.newBuilder()
+                        .setSizeBytes(CACHE_SIZE_BYTES)
+                        .build())
+                .build();
+        db.setFirestoreSettings(settings);
+    }
+
+    // Cache-first read of a single document (user profile, balance, loan data), shared by document path
+    public static void document(DocumentReference ref, Callback<DocumentSnapshot> callback) {
+        load(ref.getPath(), documentRead(ref), callback);
+    }
+
+    // The read behind document(); package-private for the screen load regression test (androidTest)
+    static Read<DocumentSnapshot> documentRead(DocumentReference ref) {
+        return source -> DocumentReads.counted(ref.get(source));
+    }
+
+    // Same as load(read, callback), with both reads shared under 'key' (see shared())
+    public static <T> void load(String key, Read<T> read, Callback<T> callback) {
+        load(source -> shared(key, source, () -> read.fetch(source)), callback);
+    }
+
+    /**
+     * One read of 'source' shared through SingleFlight. Cache reads are only coalesced (they are local and
+     * already see this device's writes); server results are also reused for SERVER_TTL_MS.
+     */
+    public static <T> Task<T> shared(String key, Source source, SingleFlight.Fetch<T> fetch) {
+        return SingleFlight.get(key + "@" + source, source == Source.SERVER ? SERVER_TTL_MS : 0L, fetch);
+    }
+
+    // After a write: the next read of anything under 'pathPrefix' (e.g. "users/{uid}") goes to Firestore again
+    public static void invalidate(String pathPrefix) {
+        SingleFlight.invalidate(pathPrefix);
+    }
+
+    public static <T> void load(Read<T> read, Callback<T> callback) {
+        State<T> state = new State<>();
+
+        read.fetch(Source.CACHE).addOnCompleteListener(cacheTask -> {
+            state.cacheDone = true;
+            if (state.serverDone) {
+                // The server already answered; only report its error if nothing at all could be shown
+                if (!state.hasShown && state.serverError != null) {
+                    showCachedOrFail(state, cacheTask, callback);
+                }
+                return;
+            }
+            if (cacheTask.isSuccessful() && hasContent(cacheTask.getResult())) {
+                state.shown = cacheTask.getResult();
+                state.hasShown = true;
+                callback.onResult(state.shown, true);
+            }
+        });
+
+        read.fetch(Source.SERVER).addOnCompleteListener(serverTask -> {
+            state.serverDone = true;
+            if (serverTask.isSuccessful()) {
+                T fresh = serverTask.getResult();
+                if (!state.hasShown || !sameResult(state.shown, fresh)) {
+                    state.shown = fresh;
+                    state.hasShown = true;
+                    callback.onResult(fresh, false);
+                } else {
+                    Log.d(TAG, "Server result matches the cache; screen left as is.");
+                }
+                return;
+            }
+
+            state.serverError = serverTask.getException();
+            if (state.hasShown) {
+                // Offline or slow network: the cached result stays on screen
+                Log.d(TAG, "Revalidation failed, keeping cached result.", state.serverError);
+            } else if (state.cacheDone) {
+                callback.onFailure(state.serverError);
+            }
+            // Otherwise the cache read is still running and decides in its listener
+        });
+    }
+
+    private static <T> void showCachedOrFail(State<T> state, Task<T> cacheTask, Callback<T> callback) {
+        if (cacheTask.isSuccessful() && cacheTask.getResult() != null) {
+            state.shown = cacheTask.getResult();
+            state.hasShown = true;
+            callback.onResult(state.shown, true);
+        } else {
+            callback.onFailure(state.serverError);
+        }
+    }
+
+    // An empty cache answer (missing document, empty list) is not worth a flash of "$0.00" or "No transactions"
+    private static boolean hasContent(Object result) {
+        if (result == null) return false;
+        if (result instanceof DocumentSnapshot) return ((DocumentSnapshot) result).exists();
+        if (result instanceof Collection) return !((Collection<?>) result).isEmpty();
+        return true;
+    }
+
+    private static boolean sameResult(Object cached, Object fresh) {
+        if (cached instanceof DocumentSnapshot && fresh instanceof DocumentSnapshot) {
+            // Snapshot equality includes metadata (fromCache), so compare the document contents only
+            DocumentSnapshot a = (DocumentSnapshot) cached;
+            DocumentSnapshot b = (DocumentSnapshot) fresh;
+            return a.exists() == b.exists() && Objects.equals(a.getData(), b.getData());
+        }
+        return Objects.equals(cached, fresh);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.ewallet;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The cash balance on users/{uid}, kept as integer cents in 'balanceCents' so that blind increments
+ * (AtomicTransfer's recipient credit) add exactly and never accumulate binary rounding error.
+ * Accounts created before the switch still carry a dollar 'balance' (double). The two fields are additive:
+ *   balance = balanceCents + round(balance * 100)
+ * so a blind increment of 'balanceCents' on a legacy account is correct without reading it first.
+ * Every read-modify-write (sender debit, loan, repayment) folds the legacy field into 'balanceCents' and deletes it.
+ */
+public final class CashBalance {
+
+    public static final String FIELD_CENTS = "balanceCents";
+    public static final String LEGACY_FIELD = "balance"; // Dollars (double), accounts created before balanceCents
+
+    private CashBalance() {
+        // Static helpers only
+    }
+
+    public static long toCents(double amount) {
+        return Math.round(amount * 100.0);
+    }
+
+    public static double toDollars(long cents) {
+        return cents / 100.0;
+    }
+
+    public static long centsOf(DocumentSnapshot user) {
+        return centsOf(user.getData());
+    }
+
+    public static long centsOf(Map<String, Object> userData) {
+        if (userData == null) return 0L;
+        Number cents = (Number) userData.get(FIELD_CENTS);
+        Number legacy = (Number) userData.get(LEGACY_FIELD);
+        return (cents != null ? cents.longValue() : 0L) + (legacy != null ? toCents(legacy.doubleValue()) : 0L);
+    }
+
+    // Whether the document has a balance at all (either field)
+    public static boolean isPresent(DocumentSnapshot user) {
+        return user.contains(FIELD_CENTS) || user.contains(LEGACY_FIELD);
+    }
+
+    /**
+     * Fields for a new balance computed from a read in the same transaction. Also deletes the legacy dollar field,
+     * so use with update() or set(..., SetOptions.merge()).
+     */
+    public static Map<String, Object> fields(long cents) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(FIELD_CENTS, cents);
+        fields.put(LEGACY_FIELD, FieldValue.delete());
+        return fields;
+    }
+
+    // Blind server-side credit (no read): exact integer increment, leaves a legacy dollar field untouched
+    public static Map<String, Object> increment(long cents) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(FIELD_CENTS, FieldValue.increment(cents));
+        return fields;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.ewallet;
+
+import com.example.ewallet.credit.CreditPolicy;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Credit features kept as running aggregates on users/{uid}, next to the balance they describe:
+ *   creditSince, creditInflow (cents), creditFlowCount, creditFlowSum (cents), creditFlowSumSq (cents^2),
+ *   creditLoanCentMs (principal cents x ms outstanding) and creditRepaid (principal cents).
+ * Every write that moves money adds its increments to the user document it already writes (blind
+ * FieldValue.increment(), no extra reads or documents), so the limit (CreditPolicy) is computed from one snapshot.
+ * The stored loanLimit is a cached copy, refreshed by loan transactions and by CreditLimitBatch.
+ */
+public final class CreditProfile {
+
+    public static final String FIELD_SINCE = "creditSince";
+    public static final String FIELD_INFLOW = "creditInflow";
+    public static final String FIELD_FLOW_COUNT = "creditFlowCount";
+    public static final String FIELD_FLOW_SUM = "creditFlowSum";
+    public static final String FIELD_FLOW_SUM_SQ = "creditFlowSumSq";
+    public static final String FIELD_LOAN_CENT_MS = "creditLoanCentMs";
+    public static final String FIELD_REPAID = "creditRepaid";
+
+    private CreditProfile() {
+        // Static helpers only
+    }
+
+    // Empty aggregates for a brand new account (used by SignupActivity)
+    public static Map<String, Object> initialFields(Date now) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(FIELD_SINCE, now);
+        fields.put(FIELD_INFLOW, 0L);
+        fields.put(FIELD_FLOW_COUNT, 0L);
+        fields.put(FIELD_FLOW_SUM, 0L);
+        fields.put(FIELD_FLOW_SUM_SQ, 0.0);
+        fields.put(FIELD_LOAN_CENT_MS, 0.0);
+        fields.put(FIELD_REPAID, 0L);
+        return fields;
+    }
+
+    /**
+     * Increments for one cash flow of the account (any transaction type, as recorded in its history).
+     */
+    public static Map<String, Object> flowIncrements(String type, double amount) {
+        long cents = LedgerDigest.signedCents(type, amount);
+        Map<String, Object> increments = new HashMap<>();
+        increments.put(FIELD_FLOW_COUNT, FieldValue.increment(1));
+        increments.put(FIELD_FLOW_SUM, FieldValue.increment(cents));
+        increments.put(FIELD_FLOW_SUM_SQ, FieldValue.increment((double) cents * cents));
+        // Borrowed money is not income
+        if ("Income".equals(type) || "Transfer (Received)".equals(type)) {
+            increments.put(FIELD_INFLOW, FieldValue.increment(cents));
+        }
+        return increments;
+    }
+
+    /**
+     * Increments for a change of the loan principal, read from 'user' inside the same transaction: the old
+     * principal was outstanding since loanAccruedAt. Also starts the credit history of accounts created before it.
+     */
+    public static Map<String, Object> loanIncrements(DocumentSnapshot user, double principalRepaid, Date now) {
+        Number principal = (Number) user.get(LoanAccrual.FIELD_PRINCIPAL);
+        Date since = user.getDate(LoanAccrual.FIELD_ACCRUED_AT);
+        double principalCents = principal != null ? Math.round(principal.doubleValue() * 100.0) : 0.0;
+        long outstandingMs = since != null ? Math.max(0L, now.getTime() - since.getTime()) : 0L;
+
+        Map<String, Object> increments = new HashMap<>();
+        increments.put(FIELD_LOAN_CENT_MS, FieldValue.increment(principalCents * outstandingMs));
+        increments.put(FIELD_REPAID, FieldValue.increment(Math.round(principalRepaid * 100.0)));
+        if (user.getDate(FIELD_SINCE) == null) {
+            increments.put(FIELD_SINCE, now);
+        }
+        return increments;
+    }
+
+    // O(1): reads the aggregates from the snapshot and applies CreditPolicy
+    public static double limitOf(DocumentSnapshot user, Date now) {
+        CreditPolicy.Features f = new CreditPolicy.Features();
+        Date since = user.getDate(FIELD_SINCE);
+        Date loanSince = user.getDate(LoanAccrual.FIELD_ACCRUED_AT);
+        f.sinceMs = since != null ? since.getTime() : now.getTime(); // No history yet: default limit
+        f.inflowCents = longOf(user, FIELD_INFLOW);
+        f.flowCount = longOf(user, FIELD_FLOW_COUNT);
+        f.flowSumCents = longOf(user, FIELD_FLOW_SUM);
+        f.flowSumSqCents = doubleOf(user, FIELD_FLOW_SUM_SQ);
+        f.loanCentMs = doubleOf(user, FIELD_LOAN_CENT_MS);
+        f.repaidCents = longOf(user, FIELD_REPAID);
+        f.principalCents = Math.round(doubleOf(user, LoanAccrual.FIELD_PRINCIPAL) * 100.0);
+        f.loanSinceMs = loanSince != null ? loanSince.getTime() : now.getTime();
+        return CreditPolicy.limitCents(f, now.getTime()) / 100.0;
+    }
+
+    private static long longOf(DocumentSnapshot user, String field) {
+        Number value = (Number) user.get(field);
+        return value != null ? value.longValue() : 0L;
+    }
+
+    private static double doubleOf(DocumentSnapshot user, String field) {
+        Number value = (Number) user.get(field);
+        return value != null ? value.doubleValue() : 0.0;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.ewallet;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide count of documents the screens' data paths read from the server, counted the way Firestore bills
+ * them: one per returned document, one for a query that returns nothing, one per document get (even if missing).
+ * Cache reads are free and not counted. Logged with the ViewScope stats and asserted by the screen load
+ * regression test (androidTest), so a change that makes a screen read more documents is caught.
+ */
+public final class DocumentReads {
+
+    private static final AtomicLong serverReads = new AtomicLong();
+
+    private DocumentReads() {
+        // Static helpers only
+    }
+
+    // Counts the read once it succeeds; returns the same task for chaining
+    public static <T> Task<T> counted(Task<T> read) {
+        read.addOnSuccessListener(result -> {
+            if (result instanceof QuerySnapshot) {
+                QuerySnapshot snapshot = (QuerySnapshot) result;
+                if (!snapshot.getMetadata().isFromCache()) serverReads.addAndGet(Math.max(1, snapshot.size()));
+            } else if (result instanceof DocumentSnapshot) {
+                if (!((DocumentSnapshot) result).getMetadata().isFromCache()) serverReads.incrementAndGet();
+            }
+        });
+        return read;
+    }
+
+    public static long serverReads() {
+        return serverReads.get();
+    }
+
+    public static String stats() {
+        return "serverReads=" + serverReads.get();
+    }
+}
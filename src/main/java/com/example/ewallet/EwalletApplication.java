@@ -0,0 +1,21 @@
+package com.example.ewallet;
+
+import android.app.Application;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+
+/**
+ * Process-wide setup that has to happen before any Activity touches Firebase.
+ * Firestore settings can only be changed before the first read or write, so the persistent cache is
+ * configured here rather than in whichever Activity happens to start first (launcher, restored MainActivity, ...).
+ */
+public class EwalletApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+
+        // Explicit persistent cache size for the cache-first screens (see CachedReads)
+        CachedReads.configure(FirebaseFirestore.getInstance());
+    }
+}
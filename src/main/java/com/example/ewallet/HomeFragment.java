@@ -17,14 +17,17 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
+import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.Source;
 
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 /**
@@ -34,6 +37,7 @@ import java.util.Locale;
 public class HomeFragment extends Fragment {
 
     private static final String TAG = "HomeFragment";
+    private ViewScope scope; // Loads bound to the current view
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
     private String currentUid;
@@ -48,6 +52,32 @@ public class HomeFragment extends Fragment {
 
     private TextView seeAllLink; // Declare a variable for the See All link
 
+    // Tag used to find the 'No transactions' message among the pooled rows
+    private static final String EMPTY_MESSAGE_TAG = "empty_transactions_message";
+
+    // The entries currently shown, so a live incoming transfer can be put on top without a re-query
+    private final List<LedgerEntry> recentEntries = new ArrayList<>();
+    private static final int RECENT_LIMIT = 5;
+
+    // Pushed by the session's IncomingTransferFeed: refresh the balance and prepend the transfer
+    private final IncomingTransferFeed.Listener incomingTransferListener = entry -> {
+        if (getView() == null) return;
+        CachedReads.invalidate("users/" + currentUid); // The balance changed on the server
+        loadUserData(); // One document read; the transfer already incremented the balance
+        for (LedgerEntry shown : recentEntries) {
+            if (shown.id.equals(entry.id)) return; // Already part of the last history load
+        }
+        recentEntries.add(0, entry);
+        if (recentEntries.size() > RECENT_LIMIT) {
+            recentEntries.remove(recentEntries.size() - 1);
+        }
+        showRecentTransactions();
+    };
+
+    // Formatters are reused for every row instead of being created per bind
+    private final DecimalFormat amountFormat = new DecimalFormat("#,##0.00");
+    private final SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd, yyyy", Locale.US);
+
     public HomeFragment() {
         // Required empty public constructor
     }
@@ -57,6 +87,7 @@ public class HomeFragment extends Fragment {
                              Bundle savedInstanceState) {
         // Inflate the Home Screen layout (fragment_home.xml) into this fragment's view
         View view = inflater.inflate(R.layout.fragment_home, container, false);
+        scope = new ViewScope(TAG);
 
         // Initialize Firebase instances
         mAuth = FirebaseAuth.getInstance();
@@ -71,6 +102,8 @@ public class HomeFragment extends Fragment {
         // Load data and set up listeners
         loadUserData();
         loadRecentTransactions();
+        IncomingTransferFeed.addListener(incomingTransferListener);
+        scope.onClose(() -> IncomingTransferFeed.removeListener(incomingTransferListener));
         setupQuickActionListeners(view);
 // Link the See All TextView
         seeAllLink = view.findViewById(R.id.see_all_link);
@@ -92,81 +125,95 @@ public class HomeFragment extends Fragment {
             return;
         }
 
-        // Fetch the user's main profile document from Firestore
-        db.collection("users").document(currentUid).get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        // Retrieve user data using the keys defined in SignUpActivity
-                        String name = documentSnapshot.getString("name");
-                        // Use DoubleValue or check for Long when retrieving numbers from Firestore
-                        Double balance = documentSnapshot.getDouble("balance");
-
-                        // Format balance to display currency correctly
-                        DecimalFormat df = new DecimalFormat("#,##0.00");
-
-                        // Update UI with live data
-                        if (name != null) {
-                            userNameGreeting.setText("Hi, " + name);
-                        }
-                        if (balance != null) {
-                            balanceAmount.setText("$" + df.format(balance));
-                        }
-                        Log.d(TAG, "User data loaded successfully.");
-                    } else {
-                        Log.e(TAG, "User document does not exist in Firestore.");
-                        Toast.makeText(getContext(), "Profile data missing.", Toast.LENGTH_SHORT).show();
+        // Show the cached profile immediately, then the server copy if it changed (stale-while-revalidate)
+        CachedReads.document(db.collection("users").document(currentUid), scope.bind(new CachedReads.Callback<DocumentSnapshot>() {
+            @Override
+            public void onResult(DocumentSnapshot documentSnapshot, boolean fromCache) {
+                if (documentSnapshot.exists()) {
+                    // Retrieve user data using the keys defined in SignUpActivity
+                    String name = documentSnapshot.getString("name");
+                    // Integer cents (plus the dollar field of accounts not yet migrated, see CashBalance)
+                    boolean hasBalance = CashBalance.isPresent(documentSnapshot);
+
+                    // Format balance to display currency correctly
+                    DecimalFormat df = new DecimalFormat("#,##0.00");
+
+                    // Update UI with live data
+                    if (name != null) {
+                        userNameGreeting.setText("Hi, " + name);
+                    }
+                    if (hasBalance) {
+                        balanceAmount.setText("$" + df.format(CashBalance.toDollars(CashBalance.centsOf(documentSnapshot))));
                     }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error fetching user data: ", e);
-                    Toast.makeText(getContext(), "Failed to load balance.", Toast.LENGTH_SHORT).show();
-                });
+                    Log.d(TAG, "User data loaded successfully" + (fromCache ? " from cache." : "."));
+                } else {
+                    Log.e(TAG, "User document does not exist in Firestore.");
+                    Toast.makeText(getContext(), "Profile data missing.", Toast.LENGTH_SHORT).show();
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e(TAG, "Error fetching user data: ", e);
+                Toast.makeText(getContext(), "Failed to load balance.", Toast.LENGTH_SHORT).show();
+            }
+        }));
     }
 
     private void loadRecentTransactions() {
         if (currentUid == null) return;
 
-        // Clear any placeholder/old transactions from the layout
-        transactionsListLayout.removeAllViews();
-
-        // Query the 'transactions' sub-collection for the current user
-        db.collection("users").document(currentUid).collection("transactions")
-                // Order by timestamp descending (newest first)
-                .orderBy("timestamp", Query.Direction.DESCENDING)
-                // Limit to show only the top 5 transactions on the home screen
-                .limit(5)
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful() && task.getResult() != null) {
-
-                        // Check if there are any transactions returned
-                        if (task.getResult().isEmpty()) {
-                            displayEmptyTransactionsMessage();
-                            return;
-                        }
-
-                        // Loop through every transaction document retrieved
-                        for (QueryDocumentSnapshot document : task.getResult()) {
-                            // Retrieve transaction details
-                            String title = document.getString("description"); // Use description as the title
-                            // Ensure we safely retrieve Double, handling potential nulls
-                            Double amount = document.getDouble("amount");
-                            String type = document.getString("type"); // e.g., Income, Loan Taken
-                            Date date = document.getDate("timestamp");
-
-                            // Proceed only if mandatory fields are present
-                            if (amount != null && date != null) {
-                                // Dynamically create and populate the transaction list item UI
-                                addTransactionItemToUI(title, amount, type, date);
-                            }
-                        }
-
-                    } else {
-                        Log.w(TAG, "Error fetching recent transactions: ", task.getException());
+        // Rows already on screen are kept and rebound below instead of being removed and re-inflated
+
+        // Merge the user's own entries with the shared transfers they sent or received,
+        // newest first, limited to the top 5 transactions on the home screen
+        // (cached rows first, rebound only if the server returns something different)
+        CachedReads.load("users/" + currentUid + "#recent", source -> readRecent(db, currentUid, source),
+                scope.bind(new CachedReads.Callback<List<LedgerEntry>>() {
+                    @Override
+                    public void onResult(List<LedgerEntry> entries, boolean fromCache) {
+                        recentEntries.clear();
+                        recentEntries.addAll(entries);
+                        showRecentTransactions();
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        Log.w(TAG, "Error fetching recent transactions: ", e);
                         // Display a message if fetching failed or returned nothing
                         displayEmptyTransactionsMessage();
                     }
-                });
+                }));
+    }
+
+    // Package-private: also driven by the screen load regression test (androidTest)
+    static Task<List<LedgerEntry>> readRecent(FirebaseFirestore db, String uid, Source source) {
+        return TransactionHistory.load(db, uid, TransactionHistory.ALL, true, RECENT_LIMIT, source);
+    }
+
+    private void showRecentTransactions() {
+        // Check if there are any transactions to show
+        if (recentEntries.isEmpty()) {
+            releaseRowsFrom(0);
+            displayEmptyTransactionsMessage();
+            return;
+        }
+
+        // Drop the 'No transactions' message if it is showing
+        removeEmptyTransactionsMessage();
+
+        int rowIndex = 0;
+        // Loop through every history entry
+        for (LedgerEntry entry : recentEntries) {
+            // Rebind an existing row (or take one from the pre-inflated pool)
+            // The description is used as the title
+            bindTransactionRow(rowIndex, entry.description, entry.amount, entry.type, entry.timestamp);
+            rowIndex++;
+        }
+
+        // Give back rows that are no longer needed (fewer results than last time)
+        releaseRowsFrom(rowIndex);
+        TransactionRowPool.markHomePopulated();
     }
 
     // Function to display the 'No transactions' message
@@ -174,6 +221,7 @@ public class HomeFragment extends Fragment {
         // Only display if the list is truly empty
         if (transactionsListLayout.getChildCount() == 0) {
             TextView emptyText = new TextView(getContext());
+            emptyText.setTag(EMPTY_MESSAGE_TAG);
             emptyText.setText("No recent transactions found.");
             emptyText.setTextColor(COLOR_GRAY_LIGHT); // Use hardcoded color
             emptyText.setPadding(0, 16, 0, 0);
@@ -181,46 +229,71 @@ public class HomeFragment extends Fragment {
         }
     }
 
-    // HomeFragment.java: Update the addTransactionItemToUI method
+    private void removeEmptyTransactionsMessage() {
+        View emptyText = transactionsListLayout.findViewWithTag(EMPTY_MESSAGE_TAG);
+        if (emptyText != null) {
+            transactionsListLayout.removeView(emptyText);
+        }
+    }
+
+    // Detaches rows from 'fromIndex' onwards and returns them to the shared row pool
+    private void releaseRowsFrom(int fromIndex) {
+        while (transactionsListLayout.getChildCount() > fromIndex) {
+            View row = transactionsListLayout.getChildAt(fromIndex);
+            transactionsListLayout.removeViewAt(fromIndex);
+            if (row.getTag() instanceof TransactionRowPool.RowHolder) {
+                TransactionRowPool.release(row);
+            }
+        }
+    }
 
-    private void addTransactionItemToUI(String title, double amount, String type, Date date) {
-        // Inflate the reusable transaction_list_item.xml layout
-        View transactionView = getLayoutInflater().inflate(R.layout.transaction_list_item, transactionsListLayout, false);
+    private void bindTransactionRow(int index, String title, double amount, String type, Date date) {
+        // Reuse the row already at this position, otherwise take a pre-inflated one from the pool
+        View transactionView = index < transactionsListLayout.getChildCount() ? transactionsListLayout.getChildAt(index) : null;
+        boolean isNewRow = transactionView == null;
+        if (isNewRow) {
+            transactionView = TransactionRowPool.acquire(getLayoutInflater(), transactionsListLayout);
+        }
 
-        // --- 1. Find UI components in the inflated layout ---
-        TextView titleTv = transactionView.findViewById(R.id.transaction_title);
-        TextView dateTv = transactionView.findViewById(R.id.transaction_date);
-        TextView amountTv = transactionView.findViewById(R.id.transaction_amount);
+        // --- 1. UI components were looked up once and cached in the row's holder ---
+        TransactionRowPool.RowHolder holder = (TransactionRowPool.RowHolder) transactionView.getTag();
 
         // --- 2. Format and Set Data ---
 
         // Format the amount string (e.g., +$100.00 or -$24.00)
-        DecimalFormat df = new DecimalFormat("#,##0.00");
         String formattedAmount;
         int color;
 
         // Determine color and sign based on transaction type
         // FIX: Explicitly check for "Transfer (Received)" to ensure it displays as green income.
         if ("Income".equals(type) || "Loan Taken".equals(type) || "Transfer (Received)".equals(type)) {
-            formattedAmount = "+ $" + df.format(amount);
+            formattedAmount = "+ $" + amountFormat.format(amount);
             color = Color.parseColor("#A5D6A7"); // Light Green for Income/Positive Action
         } else {
             // This handles all expenses: Loan Repayment, Transfer (Sent)
-            formattedAmount = "- $" + df.format(amount);
+            formattedAmount = "- $" + amountFormat.format(amount);
             color = Color.parseColor("#FF5555"); // Red for Expense
         }
 
-        // Format the date
-        SimpleDateFormat dateFormat = new SimpleDateFormat("MMM dd, yyyy", Locale.US);
-
         // Set the formatted values to the TextViews
-        titleTv.setText(title);
-        dateTv.setText(dateFormat.format(date));
-        amountTv.setText(formattedAmount);
-        amountTv.setTextColor(color);
+        holder.title.setText(title);
+        holder.date.setText(dateFormat.format(date));
+        holder.amount.setText(formattedAmount);
+        holder.amount.setTextColor(color);
+
+        // --- 3. Add the item to the list only if it is not already there ---
+        if (isNewRow) {
+            transactionsListLayout.addView(transactionView);
+        }
+    }
 
-        // --- 3. Add the complete item to the list ---
-        transactionsListLayout.addView(transactionView);
+    @Override
+    public void onDestroyView() {
+        // Drops pending callbacks and unregisters from the incoming transfer feed
+        scope.close();
+        // Hand the rows back so the next HomeFragment instance does not have to inflate them again
+        releaseRowsFrom(0);
+        super.onDestroyView();
     }
 
     // --- Fragment Navigation ---
@@ -0,0 +1,184 @@
+package com.example.ewallet;
+
+import android.Manifest;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.content.ContextCompat;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * One snapshot listener per signed-in session on the transfers this user receives (shared 'transfers' collection,
+ * recipientUid == uid), limited to documents committed after the last one already seen.
+ * Only DocumentChange.ADDED deltas are handled: each new transfer is passed to the registered listeners
+ * (HomeFragment refreshes its balance and feed) and shown as a notification.
+ * The position is the server commit time (AtomicTransfer.FIELD_COMMITTED_AT), never a device clock. The last one
+ * seen is kept in SharedPreferences, so re-subscribing after the Activity is recreated does not read old transfers
+ * again. Needs the (recipientUid, committedAt) composite index.
+ */
+public final class IncomingTransferFeed {
+
+    private static final String TAG = "IncomingTransferFeed";
+    private static final String PREFS_NAME = "incoming_transfers";
+    private static final String CHANNEL_ID = "incoming_transfers";
+
+    /**
+     * Called on the main thread for every transfer received while the feed is running.
+     */
+    public interface Listener {
+        void onTransferReceived(LedgerEntry entry);
+    }
+
+    private static final List<Listener> listeners = new ArrayList<>();
+    private static ListenerRegistration registration;
+    private static String feedUid;
+    private static int session = 0; // Bumped by stop(), so a starting point found for an ended session is dropped
+    private static int notificationId = 0;
+
+    private IncomingTransferFeed() {
+        // Static helpers only
+    }
+
+    /**
+     * Starts listening for 'uid' (MainActivity.onCreate). Calling it again for the same user is a no-op.
+     */
+    public static void start(Context context, FirebaseFirestore db, String uid) {
+        if (uid.equals(feedUid)) return; // Running, or still finding the starting point
+        stop();
+
+        Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        String lastSeenKey = "lastCommitted_" + uid;
+
+        createChannel(appContext);
+        feedUid = uid;
+        final int startedSession = session;
+
+        if (prefs.contains(lastSeenKey)) {
+            listen(appContext, db, uid, prefs, lastSeenKey);
+            return;
+        }
+
+        // First run on this device: start after the newest transfer already received (older ones are in the
+        // history screens). Taken from the server's commit times, not this device's clock
+        receivedTransfers(db, uid)
+                .orderBy(AtomicTransfer.FIELD_COMMITTED_AT, Query.Direction.DESCENDING)
+                .limit(1)
+                .get()
+                .addOnCompleteListener(task -> {
+                    if (startedSession != session) return; // Stopped meanwhile
+                    long newest = 0L;
+                    if (task.isSuccessful()) {
+                        for (DocumentSnapshot transfer : task.getResult().getDocuments()) {
+                            Date committedAt = transfer.getDate(AtomicTransfer.FIELD_COMMITTED_AT);
+                            if (committedAt != null) newest = committedAt.getTime();
+                        }
+                    } else {
+                        Log.w(TAG, "Could not read the newest received transfer; starting from now.",
+                                task.getException());
+                        newest = System.currentTimeMillis();
+                    }
+                    prefs.edit().putLong(lastSeenKey, newest).apply();
+                    listen(appContext, db, uid, prefs, lastSeenKey);
+                });
+    }
+
+    private static Query receivedTransfers(FirebaseFirestore db, String uid) {
+        return db.collection(TransactionHistory.TRANSFERS).whereEqualTo("recipientUid", uid);
+    }
+
+    private static void listen(Context appContext, FirebaseFirestore db, String uid,
+                               SharedPreferences prefs, String lastSeenKey) {
+        Date lastSeen = new Date(prefs.getLong(lastSeenKey, 0L));
+
+        // Keyed on the server commit time: a sender whose clock runs behind can no longer write a transfer
+        // that sorts before 'lastSeen' and is never delivered
+        Query newTransfers = receivedTransfers(db, uid)
+                .whereGreaterThan(AtomicTransfer.FIELD_COMMITTED_AT, lastSeen)
+                .orderBy(AtomicTransfer.FIELD_COMMITTED_AT, Query.Direction.ASCENDING);
+
+        registration = newTransfers.addSnapshotListener((snapshots, e) -> {
+            if (e != null) {
+                Log.w(TAG, "Incoming transfer listener failed.", e);
+                return;
+            }
+            if (snapshots == null) return;
+
+            long newest = prefs.getLong(lastSeenKey, 0L);
+            for (DocumentChange change : snapshots.getDocumentChanges()) {
+                if (change.getType() != DocumentChange.Type.ADDED) continue;
+
+                // ADDED is only reported once per document while the listener lives
+                LedgerEntry entry = LedgerEntry.fromTransfer(change.getDocument(), uid);
+                if (entry == null) continue;
+                Date committedAt = change.getDocument().getDate(AtomicTransfer.FIELD_COMMITTED_AT);
+                if (committedAt != null) newest = Math.max(newest, committedAt.getTime());
+
+                for (Listener listener : new ArrayList<>(listeners)) {
+                    listener.onTransferReceived(entry);
+                }
+                notifyReceived(appContext, entry, change.getDocument().getString("senderUserId"));
+            }
+            prefs.edit().putLong(lastSeenKey, newest).apply();
+        });
+    }
+
+    // Ends the session's listener (Activity destroyed or user signed out)
+    public static void stop() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+        feedUid = null;
+        session++;
+    }
+
+    public static void addListener(Listener listener) {
+        if (!listeners.contains(listener)) listeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private static void createChannel(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return;
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Incoming transfers",
+                NotificationManager.IMPORTANCE_DEFAULT);
+        channel.setDescription("Money received from other eWallet users");
+        context.getSystemService(NotificationManager.class).createNotificationChannel(channel);
+    }
+
+    private static void notifyReceived(Context context, LedgerEntry entry, String senderUserId) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            return; // The in-app feed still updates
+        }
+
+        String amount = "$" + new DecimalFormat("#,##0.00").format(entry.amount);
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_transfer_placeholder)
+                .setContentTitle("You received " + amount + (senderUserId != null ? " from " + senderUserId : ""))
+                .setContentText(entry.description != null ? entry.description : "Transfer received")
+                .setAutoCancel(true);
+        NotificationManagerCompat.from(context).notify(notificationId++, builder.build());
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.ewallet;
+
+import com.google.firebase.firestore.FieldValue;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Per-account, per-month running totals kept next to the user's history ('transactions' + shared 'transfers').
+ * Every transaction write also increments users/{uid}.ledgerMonths.{yyyy-MM}:
+ *   sum    - signed amount in integer cents (income positive, cash out negative)
+ *   count  - number of transaction documents
+ *   digest - order-independent rolling digest (sum of 31-bit per-transaction hashes)
+ *   balanceDelta - change the same write applied to the cash balance, in cents. Passed by the caller from its
+ *                  own balance arithmetic (not derived from the history entry), so the running total of these is
+ *                  an independent record of the balance at every month end (see LedgerReconciler)
+ * Because all four are blind FieldValue.increment() updates, recording costs no extra reads. They are a map field
+ * of the user document, which every such write updates anyway, so they cost no extra document write either
+ * (a transfer writes sender, recipient and the transfer itself). Totals written before that are documents of the
+ * users/{uid}/ledgerMonths sub-collection, which are only read now; LedgerReconciler adds both up per month.
+ */
+public final class LedgerDigest {
+
+    public static final String FIELD_MONTHS = "ledgerMonths";
+    public static final String COLLECTION = "ledgerMonths"; // Older totals, one document per month
+    public static final String FIELD_BALANCE_DELTA = "balanceDelta";
+
+    private LedgerDigest() {
+        // Static helpers only
+    }
+
+    // Signed cents for a transaction as it affects the cash balance
+    public static long signedCents(String type, double amount) {
+        long cents = Math.round(amount * 100.0);
+        return BalanceCheckpoint.isOutflow(type) ? -cents : cents;
+    }
+
+    /**
+     * 31-bit hash of one transaction (id + signed cents). Summing these gives a digest that does not depend
+     * on write order, so it can be maintained with atomic increments and recomputed from a plain query.
+     */
+    public static long entryHash(String transactionId, long signedCents) {
+        long h = transactionId.hashCode() * 0x9E3779B97F4A7C15L ^ signedCents;
+        h ^= (h >>> 33);
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= (h >>> 33);
+        return h & 0x7FFFFFFFL;
+    }
+
+    private static Map<String, Object> increments(String transactionId, String type, double amount,
+                                                  long balanceDeltaCents) {
+        long cents = signedCents(type, amount);
+        Map<String, Object> updates = new HashMap<>();
+        updates.put("sum", FieldValue.increment(cents));
+        updates.put("count", FieldValue.increment(1));
+        updates.put("digest", FieldValue.increment(entryHash(transactionId, cents)));
+        updates.put(FIELD_BALANCE_DELTA, FieldValue.increment(balanceDeltaCents));
+        return updates;
+    }
+
+    /**
+     * Month totals for one transaction document, to add to the users/{uid} fields written with
+     * set(..., SetOptions.merge()) in the same transaction or batch (nested maps merge field by field).
+     * 'balanceDeltaCents' is what that write does to users/{uid}.balanceCents.
+     */
+    public static Map<String, Object> fields(String transactionId, String type, double amount, Date timestamp,
+                                             long balanceDeltaCents) {
+        Map<String, Object> month = new HashMap<>();
+        month.put(BalanceCheckpoint.monthKey(timestamp), increments(transactionId, type, amount, balanceDeltaCents));
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(FIELD_MONTHS, month);
+        return fields;
+    }
+
+    // Same as fields(), as dotted field paths for update() (the transfer recipient)
+    public static Map<String, Object> updates(String transactionId, String type, double amount, Date timestamp,
+                                              long balanceDeltaCents) {
+        String prefix = FIELD_MONTHS + "." + BalanceCheckpoint.monthKey(timestamp) + ".";
+        Map<String, Object> updates = new HashMap<>();
+        for (Map.Entry<String, Object> increment : increments(transactionId, type, amount, balanceDeltaCents).entrySet()) {
+            updates.put(prefix + increment.getKey(), increment.getValue());
+        }
+        return updates;
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.ewallet;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * One line of a user's history, as shown by the Home, All Transactions and Stats screens.
+ * Entries come either from users/{uid}/transactions (signup bonus, loans, repayments, older transfers)
+ * or from the shared top-level 'transfers' collection, where a single document serves both parties.
+ * Entries written before 'committedAt' existed, still pending locally, or read from an archive have only their
+ * 'timestamp', which then stands in for the commit time.
+ */
+public class LedgerEntry {
+
+    public final String id;
+    public final String type; // "Income", "Loan Taken", "Loan Repayment", "Transfer (Sent)", "Transfer (Received)"
+    public final double amount;
+    public final String description;
+    public final Date timestamp;       // Writer's clock: what history screens show and group by
+    public final Date committedAt;     // Server commit time, the replay order; 'timestamp' where there is none
+    public final Double principalPaid; // Only set on repayments that also settled interest
+
+    public LedgerEntry(String id, String type, double amount, String description, Date timestamp, Double principalPaid) {
+        this(id, type, amount, description, timestamp, timestamp, principalPaid);
+    }
+
+    public LedgerEntry(String id, String type, double amount, String description, Date timestamp, Date committedAt,
+                       Double principalPaid) {
+        this.id = id;
+        this.type = type;
+        this.amount = amount;
+        this.description = description;
+        this.timestamp = timestamp;
+        this.committedAt = committedAt != null ? committedAt : timestamp;
+        this.principalPaid = principalPaid;
+    }
+
+    // Reads a users/{uid}/transactions document; returns null if mandatory fields are missing
+    public static LedgerEntry fromTransaction(DocumentSnapshot document) {
+        Double amount = document.getDouble("amount");
+        Date date = document.getDate("timestamp");
+        String type = document.getString("type");
+        if (amount == null || date == null || type == null) return null;
+
+        return new LedgerEntry(document.getId(), type, amount, document.getString("description"), date,
+                document.getDate(AtomicTransfer.FIELD_COMMITTED_AT), document.getDouble("principalPaid"));
+    }
+
+    // Reads a transfers/{id} document from the point of view of 'uid' (sender or recipient)
+    public static LedgerEntry fromTransfer(DocumentSnapshot document, String uid) {
+        Double amount = document.getDouble("amount");
+        Date date = document.getDate("timestamp");
+        if (amount == null || date == null) return null;
+
+        String type = uid.equals(document.getString("senderUid")) ? "Transfer (Sent)" : "Transfer (Received)";
+        return new LedgerEntry(document.getId(), type, amount, document.getString("description"), date,
+                document.getDate(AtomicTransfer.FIELD_COMMITTED_AT), null);
+    }
+
+    public boolean isOutflow() {
+        return BalanceCheckpoint.isOutflow(type);
+    }
+
+    // Value equality, so a revalidated history can be compared with the cached one (CachedReads)
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof LedgerEntry)) return false;
+        LedgerEntry other = (LedgerEntry) o;
+        return Double.compare(amount, other.amount) == 0
+                && Objects.equals(id, other.id)
+                && Objects.equals(type, other.type)
+                && Objects.equals(description, other.description)
+                && Objects.equals(timestamp, other.timestamp)
+                && Objects.equals(principalPaid, other.principalPaid);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, type, amount, timestamp);
+    }
+}
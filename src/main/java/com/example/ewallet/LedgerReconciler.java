@@ -0,0 +1,322 @@
+package com.example.ewallet;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Transaction;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Background reconciliation of the users/{uid} cash balance (CashBalance) against its history
+ * ('transactions' + shared 'transfers').
+ * Uses the monthly totals written by LedgerDigest so a run is cheap:
+ * 1. Balance check: balance == baseline + sum of the monthly 'sum' fields since. The totals are read from the
+ *    user document, plus one read per month document of the older ledgerMonths sub-collection.
+ * 2. Only months whose digest changed since the last verified run are re-read and recomputed.
+ * 3. On a balance mismatch, the first month whose running 'balanceDelta' (what the writes actually did to the
+ *    balance field) departs from the running 'sum' (what the history says) is the month the drift started.
+ *    Both are in the month documents already read, so this costs nothing extra.
+ * The baseline (users/{uid}.ledgerBaseline) is where reconciliation starts. New accounts get it at signup with
+ * zero balance. Accounts that predate the monthly ledgers have history the totals never saw, so their first run
+ * seeds it from a consistent (transactional) read of the balance and the current month, and earlier months are
+ * skipped.
+ * Runs at most once a day per account (see runIfDue), results are only logged and remembered locally.
+ */
+public class LedgerReconciler {
+
+    private static final String TAG = "LedgerReconciler";
+    private static final String PREFS_NAME = "ledger_reconciler";
+    private static final long RUN_INTERVAL_MS = 24L * 60 * 60 * 1000; // Once a day
+
+    public static final String FIELD_BASELINE = "ledgerBaseline";
+
+    private final FirebaseFirestore db;
+    private final SharedPreferences prefs;
+    private final String uid;
+    private final DocumentReference userRef;
+
+    /**
+     * One month's LedgerDigest totals: the user document's ledgerMonths entry plus the older month document,
+     * for a month that was recorded in both while the app was being updated.
+     */
+    private static final class MonthTotals {
+        long sum;
+        long count;
+        long digest;
+        long delta;
+
+        void add(Map<String, Object> fields) {
+            sum += longOf(fields.get("sum"));
+            count += longOf(fields.get("count"));
+            digest += longOf(fields.get("digest"));
+            delta += longOf(fields.get(LedgerDigest.FIELD_BALANCE_DELTA));
+        }
+    }
+
+    /**
+     * Starting point of reconciliation: the balance at a moment within 'month', together with that month's
+     * 'sum' and 'balanceDelta' at the same moment. Months before 'month' are not reconciled, and 'month' itself is
+     * only digest-verified when it was seeded at its very start (signup).
+     */
+    private static final class Baseline {
+        final String month;
+        final long balanceCents;
+        final long sumCents;
+        final long deltaCents;
+        final boolean monthComplete;
+
+        Baseline(String month, long balanceCents, long sumCents, long deltaCents, boolean monthComplete) {
+            this.month = month;
+            this.balanceCents = balanceCents;
+            this.sumCents = sumCents;
+            this.deltaCents = deltaCents;
+            this.monthComplete = monthComplete;
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> map = new HashMap<>();
+            map.put("month", month);
+            map.put("balanceCents", balanceCents);
+            map.put("sumCents", sumCents);
+            map.put("deltaCents", deltaCents);
+            map.put("monthComplete", monthComplete);
+            return map;
+        }
+
+        @SuppressWarnings("unchecked")
+        static Baseline fromUser(DocumentSnapshot user) {
+            Object raw = user.get(FIELD_BASELINE);
+            if (!(raw instanceof Map)) return null;
+            Map<String, Object> map = (Map<String, Object>) raw;
+            if (!(map.get("month") instanceof String)) return null;
+            return new Baseline((String) map.get("month"), longOf(map.get("balanceCents")),
+                    longOf(map.get("sumCents")), longOf(map.get("deltaCents")),
+                    Boolean.TRUE.equals(map.get("monthComplete")));
+        }
+
+        // This month's part of a monthly total that is after the baseline
+        long sumAfter(String monthId, long sum) {
+            return month.equals(monthId) ? sum - sumCents : sum;
+        }
+
+        long deltaAfter(String monthId, long delta) {
+            return month.equals(monthId) ? delta - deltaCents : delta;
+        }
+    }
+
+    public LedgerReconciler(Context context, FirebaseFirestore db, String uid) {
+        this.db = db;
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.uid = uid;
+        this.userRef = db.collection("users").document(uid);
+    }
+
+    // Baseline for a new account (signup), before its first transaction
+    public static Map<String, Object> initialFields(Date now) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(FIELD_BASELINE, new Baseline(BalanceCheckpoint.monthKey(now), 0L, 0L, 0L, true).toMap());
+        return fields;
+    }
+
+    // Entry point used by MainActivity: skips the run if this account was reconciled recently
+    public static void runIfDue(Context context, FirebaseFirestore db, String uid) {
+        LedgerReconciler reconciler = new LedgerReconciler(context, db, uid);
+        long lastRun = reconciler.prefs.getLong("lastRun_" + uid, 0L);
+        if (System.currentTimeMillis() - lastRun < RUN_INTERVAL_MS) return;
+        reconciler.run();
+    }
+
+    public void run() {
+        prefs.edit().putLong("lastRun_" + uid, System.currentTimeMillis()).apply();
+
+        Task<DocumentSnapshot> userTask = userRef.get();
+        Task<QuerySnapshot> monthsTask = userRef.collection(LedgerDigest.COLLECTION).get();
+
+        Tasks.whenAllComplete(userTask, monthsTask).addOnCompleteListener(all -> {
+            if (!userTask.isSuccessful() || !monthsTask.isSuccessful()
+                    || userTask.getResult() == null || monthsTask.getResult() == null) {
+                Log.w(TAG, "Reconciliation skipped: could not read ledger totals.");
+                return;
+            }
+
+            DocumentSnapshot user = userTask.getResult();
+            if (!CashBalance.isPresent(user)) {
+                Log.d(TAG, "Reconciliation skipped: account has no balance yet.");
+                return;
+            }
+
+            Baseline baseline = Baseline.fromUser(user);
+            if (baseline == null) {
+                seedBaseline(); // Reconciled from the next run on
+                return;
+            }
+
+            // Month id ("yyyy-MM") -> totals, sorted chronologically, from the baseline's month on
+            TreeMap<String, MonthTotals> months = new TreeMap<>();
+            for (DocumentSnapshot monthDoc : monthsTask.getResult().getDocuments()) {
+                addMonth(months, monthDoc.getId(), monthDoc.getData());
+            }
+            for (Map.Entry<String, Map<String, Object>> month : userMonths(user).entrySet()) {
+                addMonth(months, month.getKey(), month.getValue());
+            }
+            months.headMap(baseline.month).clear();
+
+            verifyChangedMonths(months, baseline);
+            checkBalance(CashBalance.centsOf(user), months, baseline);
+        });
+    }
+
+    // --- 0. Legacy accounts: record where reconciliation starts ---
+
+    private void seedBaseline() {
+        String month = BalanceCheckpoint.monthKey(new Date());
+        DocumentReference monthRef = userRef.collection(LedgerDigest.COLLECTION).document(month);
+
+        // Balance and the current month's totals from one consistent snapshot (retried on concurrent writes)
+        db.runTransaction((Transaction.Function<Void>) transaction -> {
+            DocumentSnapshot user = transaction.get(userRef);
+            DocumentSnapshot monthDoc = transaction.get(monthRef);
+            if (!user.exists() || Baseline.fromUser(user) != null) return null; // Seeded by another device
+
+            TreeMap<String, MonthTotals> totals = new TreeMap<>();
+            addMonth(totals, month, monthDoc.getData());
+            addMonth(totals, month, userMonths(user).get(month));
+            MonthTotals current = totals.get(month);
+            Baseline baseline = new Baseline(month, CashBalance.centsOf(user),
+                    current != null ? current.sum : 0L, current != null ? current.delta : 0L, false);
+            transaction.update(userRef, FIELD_BASELINE, baseline.toMap());
+            return null;
+        }).addOnSuccessListener(aVoid -> {
+            Log.d(TAG, "Reconciliation baseline recorded for " + month + "; earlier months are not reconciled.");
+            prefs.edit().putString("lastResult_" + uid, "BASELINE_" + month).apply();
+        }).addOnFailureListener(e -> Log.w(TAG, "Could not record the reconciliation baseline.", e));
+    }
+
+    // --- 1. Balance vs. running sum ---
+
+    private void checkBalance(long balanceCents, TreeMap<String, MonthTotals> months, Baseline baseline) {
+        long ledger = baseline.balanceCents;  // Balance according to the history totals
+        long written = baseline.balanceCents; // Balance according to what the writes did to the field
+        String firstDivergent = null;
+        for (Map.Entry<String, MonthTotals> month : months.entrySet()) {
+            ledger += baseline.sumAfter(month.getKey(), month.getValue().sum);
+            written += baseline.deltaAfter(month.getKey(), month.getValue().delta);
+            if (firstDivergent == null && ledger != written) firstDivergent = month.getKey();
+        }
+
+        if (ledger == balanceCents) {
+            Log.d(TAG, "Balance reconciled across " + months.size() + " month(s).");
+            prefs.edit().putString("lastResult_" + uid, "OK").apply();
+            return;
+        }
+
+        // A balance write that recorded neither a history entry nor its delta (e.g. an edit outside the app)
+        // leaves both running totals in agreement
+        String result = firstDivergent != null ? "DRIFT_FROM_" + firstDivergent : "DRIFT_OUTSIDE_LEDGER";
+        Log.w(TAG, "Balance drift detected: balance=" + balanceCents + "c, ledger=" + ledger + "c. Result: "
+                + result);
+        prefs.edit().putString("lastResult_" + uid, result).apply();
+    }
+
+    // --- 2. Re-verify only the months whose digest changed ---
+
+    private void verifyChangedMonths(TreeMap<String, MonthTotals> months, Baseline baseline) {
+        for (Map.Entry<String, MonthTotals> monthEntry : months.entrySet()) {
+            String month = monthEntry.getKey();
+            MonthTotals totals = monthEntry.getValue();
+            // A seeded baseline month also holds entries from before the monthly totals existed
+            if (month.equals(baseline.month) && !baseline.monthComplete) continue;
+            long storedDigest = totals.digest;
+            String verifiedKey = "digest_" + uid + "_" + month;
+
+            if (prefs.contains(verifiedKey) && prefs.getLong(verifiedKey, 0L) == storedDigest) {
+                continue; // Unchanged since it was last verified: no reads needed
+            }
+
+            Date[] range = monthRange(month);
+            if (range == null) continue;
+
+            // Own entries plus shared transfers for this month only
+            TransactionHistory.Bounds monthBounds = TransactionHistory.Bounds.between(range[0], range[1]);
+
+            TransactionHistory.load(db, uid, monthBounds, false, 0)
+                    .addOnSuccessListener(entries -> {
+                        long sum = 0L;
+                        long count = 0L;
+                        long digest = 0L;
+                        for (LedgerEntry entry : entries) {
+                            long cents = LedgerDigest.signedCents(entry.type, entry.amount);
+                            sum += cents;
+                            count++;
+                            digest += LedgerDigest.entryHash(entry.id, cents);
+                        }
+
+                        if (sum == totals.sum && count == totals.count && digest == storedDigest) {
+                            prefs.edit().putLong(verifiedKey, storedDigest).apply();
+                        } else {
+                            Log.w(TAG, "Month " + month + " does not match its transactions: stored sum="
+                                    + totals.sum + "c, actual sum=" + sum + "c.");
+                        }
+                    })
+                    .addOnFailureListener(e -> Log.w(TAG, "Could not verify month " + month, e));
+        }
+    }
+
+    // [start, end) of a "yyyy-MM" month in UTC, matching BalanceCheckpoint.monthKey
+    private static Date[] monthRange(String month) {
+        SimpleDateFormat monthFormat = new SimpleDateFormat("yyyy-MM", Locale.US);
+        monthFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            Date start = monthFormat.parse(month);
+            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+            calendar.setTime(start);
+            calendar.add(Calendar.MONTH, 1);
+            return new Date[]{start, calendar.getTime()};
+        } catch (ParseException e) {
+            Log.w(TAG, "Unexpected ledger month id: " + month);
+            return null;
+        }
+    }
+
+    private static void addMonth(TreeMap<String, MonthTotals> months, String month, Map<String, Object> fields) {
+        if (fields == null) return;
+        MonthTotals totals = months.get(month);
+        if (totals == null) {
+            totals = new MonthTotals();
+            months.put(month, totals);
+        }
+        totals.add(fields);
+    }
+
+    // users/{uid}.ledgerMonths: month id -> totals
+    @SuppressWarnings("unchecked")
+    private static Map<String, Map<String, Object>> userMonths(DocumentSnapshot user) {
+        Map<String, Map<String, Object>> months = new HashMap<>();
+        Object raw = user.get(LedgerDigest.FIELD_MONTHS);
+        if (!(raw instanceof Map)) return months;
+        for (Map.Entry<String, Object> month : ((Map<String, Object>) raw).entrySet()) {
+            if (month.getValue() instanceof Map) months.put(month.getKey(), (Map<String, Object>) month.getValue());
+        }
+        return months;
+    }
+
+    private static long longOf(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+}
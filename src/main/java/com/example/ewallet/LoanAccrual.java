@@ -0,0 +1,122 @@
+package com.example.ewallet;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Closed-form interest accrual for a user's outstanding loan.
+ * Nothing runs per day: the user document stores the principal, the interest already settled into the
+ * document, the yearly rate and the time of the last accrual. The amount owed at any moment is computed
+ * from those four fields whenever the loan is read (display) or touched (take loan / repayment).
+ * The stored interest is not rounded: every touch restarts accrual from 'now', so rounding it there would drop
+ * whatever accrued since the last touch whenever that is under half a cent. Only what is shown or paid is
+ * rounded to cents; a repayment settles the rounded interest and leaves the sub-cent remainder accruing.
+ */
+public final class LoanAccrual {
+
+    // Field names on users/{uid} (loanTaken keeps its original meaning: outstanding principal)
+    public static final String FIELD_PRINCIPAL = "loanTaken";
+    public static final String FIELD_INTEREST = "loanInterest";
+    public static final String FIELD_RATE = "loanRate";
+    public static final String FIELD_ACCRUED_AT = "loanAccruedAt";
+
+    // Yearly simple interest applied when a document does not carry its own rate yet (12% p.a.)
+    public static final double DEFAULT_ANNUAL_RATE = 0.12;
+
+    private static final double MILLIS_PER_YEAR = 365.0 * 24 * 60 * 60 * 1000;
+
+    private final double principal;
+    private final double interest; // Interest owed as of 'accruedAt', including the elapsed period; unrounded
+    private final double rate;
+    private final Date accruedAt;
+
+    private LoanAccrual(double principal, double interest, double rate, Date accruedAt) {
+        this.principal = principal;
+        this.interest = interest;
+        this.rate = rate;
+        this.accruedAt = accruedAt;
+    }
+
+    /**
+     * Reads the loan fields from a users/{uid} snapshot and brings the interest up to 'now'.
+     * Older documents without rate/timestamp fields simply start accruing from 'now'.
+     */
+    public static LoanAccrual fromSnapshot(DocumentSnapshot snapshot, Date now) {
+        Number principalNum = (Number) snapshot.get(FIELD_PRINCIPAL);
+        Number interestNum = (Number) snapshot.get(FIELD_INTEREST);
+        Number rateNum = (Number) snapshot.get(FIELD_RATE);
+        Date lastAccrual = snapshot.getDate(FIELD_ACCRUED_AT);
+
+        double principal = principalNum != null ? principalNum.doubleValue() : 0.0;
+        double storedInterest = interestNum != null ? interestNum.doubleValue() : 0.0;
+        double rate = rateNum != null ? rateNum.doubleValue() : DEFAULT_ANNUAL_RATE;
+
+        return accrue(principal, storedInterest, rate, lastAccrual, now);
+    }
+
+    /**
+     * Simple interest on the principal: interest(now) = storedInterest + principal * rate * years elapsed.
+     */
+    static LoanAccrual accrue(double principal, double storedInterest, double rate, Date lastAccrual, Date now) {
+        double interest = storedInterest;
+        if (lastAccrual != null && principal > 0) {
+            long elapsedMillis = Math.max(0L, now.getTime() - lastAccrual.getTime());
+            interest += principal * rate * (elapsedMillis / MILLIS_PER_YEAR);
+        }
+        return new LoanAccrual(principal, interest, rate, now);
+    }
+
+    public double getPrincipal() {
+        return principal;
+    }
+
+    // Interest owed in cents, as shown and paid
+    public double getInterest() {
+        return roundCents(interest);
+    }
+
+    public double getTotalOwed() {
+        return roundCents(principal + roundCents(interest));
+    }
+
+    // Disbursing a new loan: interest up to now is already settled into 'interest', principal grows.
+    public LoanAccrual withLoan(double amount) {
+        return new LoanAccrual(roundCents(principal + amount), interest, rate, accruedAt);
+    }
+
+    // Repayment settles accrued interest first and only the remainder reduces the principal.
+    public LoanAccrual withRepayment(double amount) {
+        double interestPaid = interestPortionOf(amount);
+        double principalPaid = Math.min(amount - interestPaid, principal);
+        return new LoanAccrual(roundCents(principal - principalPaid), interest - interestPaid, rate, accruedAt);
+    }
+
+    // How much of a repayment goes to interest (the rest goes to principal)
+    public double interestPortionOf(double amount) {
+        return roundCents(Math.min(amount, getInterest()));
+    }
+
+    /**
+     * The fields to merge back into users/{uid} so the next read starts accruing from 'accruedAt'.
+     */
+    public Map<String, Object> toFields() {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put(FIELD_PRINCIPAL, principal);
+        fields.put(FIELD_INTEREST, interest);
+        fields.put(FIELD_RATE, rate);
+        fields.put(FIELD_ACCRUED_AT, accruedAt);
+        return fields;
+    }
+
+    // Initial loan fields for a brand new account (used by SignupActivity)
+    public static Map<String, Object> initialFields(Date now) {
+        return new LoanAccrual(0.0, 0.0, DEFAULT_ANNUAL_RATE, now).toFields();
+    }
+
+    static double roundCents(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+}
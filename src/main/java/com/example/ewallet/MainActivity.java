@@ -1,10 +1,15 @@
 package com.example.ewallet;
 
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentTransaction;
+import android.Manifest;
 import android.content.Intent;
+import android.content.pm.PackageManager;
 import android.graphics.Color; // Import Color class to handle hex codes
+import android.os.Build;
 import android.os.Bundle;
 import android.widget.ImageView;
 import android.widget.LinearLayout;
@@ -12,6 +17,7 @@ import android.widget.TextView; // Required for TextView access
 import android.widget.Toast;
 
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.FirebaseFirestore;
 
 /**
  * MainActivity serves as the host for all application Fragments (Home, Stats, Settings).
@@ -58,9 +64,40 @@ public class MainActivity extends AppCompatActivity {
 
             // 4. Set up the bottom navigation listeners
             setupBottomNavigation();
+
+            // 5. Pre-inflate Home screen transaction rows off the main thread once startup is idle
+            TransactionRowPool.prewarm(this);
+
+            // 6. Cheap background ledger check (balance vs. transactions), at most once a day
+            LedgerReconciler.runIfDue(this, FirebaseFirestore.getInstance(), mAuth.getCurrentUser().getUid());
+
+            // 7. Pack history older than a year into monthly archive documents, at most once a week
+            TransactionArchiver.runIfDue(this, FirebaseFirestore.getInstance(), mAuth.getCurrentUser().getUid());
+
+            // 8. Live feed of incoming transfers for this session (balance, home feed, notification)
+            requestNotificationPermission();
+            IncomingTransferFeed.start(this, FirebaseFirestore.getInstance(), mAuth.getCurrentUser().getUid());
+        }
+    }
+
+    // Android 13+ only shows the incoming transfer notifications after the user allowed them
+    private void requestNotificationPermission() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU
+                && ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS)
+                != PackageManager.PERMISSION_GRANTED) {
+            ActivityCompat.requestPermissions(this, new String[]{Manifest.permission.POST_NOTIFICATIONS}, 1);
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        // The listener belongs to this session; a recreated Activity starts it again from the last seen transfer
+        IncomingTransferFeed.stop();
+        // Pooled rows hold this Activity's context; drop them with it
+        TransactionRowPool.clear();
+        super.onDestroy();
+    }
+
     // Ensures the user is logged in; redirects to WelcomeActivity otherwise.
     private void checkAuthentication() {
         if (mAuth.getCurrentUser() == null) {
@@ -124,6 +161,7 @@ public class MainActivity extends AppCompatActivity {
 
         // Logout Button Click
         navLogoutContainer.setOnClickListener(v -> {
+            IncomingTransferFeed.stop();
             mAuth.signOut(); // Sign the user out of Firebase
             Toast.makeText(this, "Logged out successfully.", Toast.LENGTH_SHORT).show();
 
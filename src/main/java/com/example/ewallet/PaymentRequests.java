@@ -0,0 +1,236 @@
+package com.example.ewallet;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Payment requests ("split the bill"): one paymentRequests/{id} document per request plus one
+ * paymentRequests/{id}/payers/{payerUid} entry per payer, which is what the payer's screen queries.
+ * Payer userIds are resolved with whereIn lookups (30 per query) and the entries are written with WriteBatches
+ * (500 writes each), so a request to N people costs about N/30 reads and N/500 commits instead of N round trips.
+ * The request document is written only after every entry batch, so its payerCount always matches its entries;
+ * until then an entry cannot be paid, because settling updates the request document.
+ * Settling runs the regular AtomicTransfer inside the same transaction that marks the entry paid, and adds to the
+ * request's paidCount/paidTotalCents with blind increments: the request's status never requires reading its payers.
+ * Amounts are integer cents; documents from before that carry dollar doubles ('amount', 'paidTotal') instead.
+ * The payers query needs a collection group index on (payerUid, status, timestamp).
+ */
+public final class PaymentRequests {
+
+    public static final String COLLECTION = "paymentRequests";
+    public static final String PAYERS = "payers";
+    public static final String STATUS_PENDING = "PENDING";
+    public static final String STATUS_PAID = "PAID";
+
+    private static final int LOOKUP_CHUNK = 30; // Firestore limit for whereIn
+    private static final int BATCH_LIMIT = 500; // Firestore limit for writes per batch
+
+    public static final String FIELD_AMOUNT_CENTS = "amountCents";
+    public static final String FIELD_PAID_TOTAL_CENTS = "paidTotalCents";
+
+    private PaymentRequests() {
+        // Static helpers only
+    }
+
+    /**
+     * Creates a request for 'amountEach' from every payer userId. Fails with IllegalArgumentException
+     * (nothing written) if a userId does not exist. Returns the new request id.
+     */
+    public static Task<String> create(FirebaseFirestore db, String requesterUid, String requesterUserId,
+                                      List<String> payerUserIds, double amountEach, String description) {
+        // Each payer once, never the requester
+        List<String> userIds = new ArrayList<>(new LinkedHashSet<>(payerUserIds));
+        userIds.remove(requesterUserId);
+        if (userIds.isEmpty()) {
+            return Tasks.forException(new IllegalArgumentException("Add at least one other user ID."));
+        }
+
+        // --- 1. Resolve userIds to uids, 30 per query ---
+        List<Task<QuerySnapshot>> lookups = new ArrayList<>();
+        for (int i = 0; i < userIds.size(); i += LOOKUP_CHUNK) {
+            List<String> chunk = userIds.subList(i, Math.min(i + LOOKUP_CHUNK, userIds.size()));
+            lookups.add(db.collection("users").whereIn("userId", new ArrayList<>(chunk)).get());
+        }
+
+        return Tasks.whenAllSuccess(lookups).continueWithTask(task -> {
+            if (!task.isSuccessful()) {
+                throw task.getException();
+            }
+
+            Map<String, String> uidByUserId = new HashMap<>();
+            for (Task<QuerySnapshot> lookup : lookups) {
+                for (DocumentSnapshot user : lookup.getResult().getDocuments()) {
+                    uidByUserId.put(user.getString("userId"), user.getId());
+                }
+            }
+            List<String> unknown = new ArrayList<>();
+            for (String userId : userIds) {
+                if (!uidByUserId.containsKey(userId)) unknown.add(userId);
+            }
+            if (!unknown.isEmpty()) {
+                throw new IllegalArgumentException("User IDs not found: " + unknown);
+            }
+
+            // --- 2. Fan out: one entry per payer, 500 writes per batch, then the request document ---
+            final long amountCents = CashBalance.toCents(amountEach);
+            Date timestamp = new Date();
+            DocumentReference requestRef = db.collection(COLLECTION).document();
+
+            Map<String, Object> request = new HashMap<>();
+            request.put("requesterUid", requesterUid);
+            request.put("requesterUserId", requesterUserId);
+            request.put(FIELD_AMOUNT_CENTS, amountCents);
+            request.put("description", description);
+            request.put("payerCount", userIds.size());
+            request.put("paidCount", 0);
+            request.put(FIELD_PAID_TOTAL_CENTS, 0L);
+            request.put("timestamp", timestamp);
+
+            List<String> payerUids = new ArrayList<>();
+            List<Task<Void>> commits = new ArrayList<>();
+            WriteBatch batch = db.batch();
+            int writes = 0;
+
+            for (String userId : userIds) {
+                if (writes == BATCH_LIMIT) {
+                    commits.add(batch.commit());
+                    batch = db.batch();
+                    writes = 0;
+                }
+                String payerUid = uidByUserId.get(userId);
+                payerUids.add(payerUid);
+                Map<String, Object> entry = new HashMap<>();
+                entry.put("requestId", requestRef.getId());
+                entry.put("requesterUid", requesterUid);
+                entry.put("requesterUserId", requesterUserId);
+                entry.put("payerUid", payerUid);
+                entry.put("payerUserId", userId);
+                entry.put(FIELD_AMOUNT_CENTS, amountCents);
+                entry.put("description", description);
+                entry.put("status", STATUS_PENDING);
+                entry.put("timestamp", timestamp);
+                batch.set(requestRef.collection(PAYERS).document(payerUid), entry);
+                writes++;
+            }
+            commits.add(batch.commit());
+
+            // Requests to more than 500 people span several batches, each atomic on its own. The request document
+            // goes last, so it only exists once every entry does
+            return Tasks.whenAll(commits).continueWithTask(commitTask -> {
+                if (!commitTask.isSuccessful()) {
+                    throw commitTask.getException();
+                }
+                return requestRef.set(request);
+            }).continueWith(requestTask -> {
+                if (!requestTask.isSuccessful()) {
+                    removeEntries(db, requestRef, payerUids);
+                    throw requestTask.getException();
+                }
+                return requestRef.getId();
+            });
+        });
+    }
+
+    // Best effort after a failed create: takes back entries whose batch did land, so payers are not shown a request
+    // that never appeared. One that stays behind cannot be paid: settle() fails on the missing request document.
+    private static void removeEntries(FirebaseFirestore db, DocumentReference requestRef, List<String> payerUids) {
+        for (int i = 0; i < payerUids.size(); i += BATCH_LIMIT) {
+            WriteBatch batch = db.batch();
+            for (String payerUid : payerUids.subList(i, Math.min(i + BATCH_LIMIT, payerUids.size()))) {
+                batch.delete(requestRef.collection(PAYERS).document(payerUid));
+            }
+            batch.commit();
+        }
+    }
+
+    // Open requests addressed to this user, newest first (payers/{uid} entries across all requests)
+    public static Task<QuerySnapshot> pendingFor(FirebaseFirestore db, String payerUid) {
+        return db.collectionGroup(PAYERS)
+                .whereEqualTo("payerUid", payerUid)
+                .whereEqualTo("status", STATUS_PENDING)
+                .orderBy("timestamp", Query.Direction.DESCENDING)
+                .get();
+    }
+
+    // The user's own recent requests; their status comes from paidCount/payerCount on each document
+    public static Task<QuerySnapshot> sentBy(FirebaseFirestore db, String requesterUid, int limit) {
+        return db.collection(COLLECTION)
+                .whereEqualTo("requesterUid", requesterUid)
+                .orderBy("timestamp", Query.Direction.DESCENDING)
+                .limit(limit)
+                .get();
+    }
+
+    /**
+     * Pays one entry: checks it is still pending, runs the regular transfer to the requester, marks the entry
+     * paid and bumps the request's aggregate, all in one transaction. Returns the transfer id.
+     */
+    public static Task<String> settle(FirebaseFirestore db, DocumentReference entryRef,
+                                      String payerUid, String payerUserId) {
+        return db.runTransaction((Transaction.Function<String>) transaction -> {
+            // Reads first (Firestore transactions): the entry here, the payer's balance inside AtomicTransfer
+            DocumentSnapshot entry = transaction.get(entryRef);
+            if (!entry.exists() || !payerUid.equals(entry.getString("payerUid"))) {
+                throw new RuntimeException("Payment request not found.");
+            }
+            if (!STATUS_PENDING.equals(entry.getString("status"))) {
+                throw new RuntimeException("Payment request already paid.");
+            }
+
+            long amountCents = amountCents(entry);
+            DocumentReference transferRef = AtomicTransfer.apply(transaction, db, payerUid, payerUserId,
+                    entry.getString("requesterUid"), entry.getString("requesterUserId"),
+                    CashBalance.toDollars(amountCents), entry.getString("description"));
+
+            transaction.update(entryRef, "status", STATUS_PAID,
+                    "transferId", transferRef.getId(),
+                    "paidAt", new Date());
+
+            // Incremental status: blind increments on the request, which is not read, so payers settling at the
+            // same time do not conflict with each other. update() fails if the request document is not written yet
+            DocumentReference requestRef = entryRef.getParent().getParent();
+            transaction.update(requestRef, "paidCount", FieldValue.increment(1),
+                    FIELD_PAID_TOTAL_CENTS, FieldValue.increment(amountCents));
+
+            return transferRef.getId();
+        });
+    }
+
+    // Amount per payer, on a request or an entry
+    public static long amountCents(DocumentSnapshot document) {
+        return centsOf(document, FIELD_AMOUNT_CENTS, "amount");
+    }
+
+    public static long paidTotalCents(DocumentSnapshot request) {
+        return centsOf(request, FIELD_PAID_TOTAL_CENTS, "paidTotal");
+    }
+
+    // Integer cents plus the legacy dollar field, like CashBalance.centsOf: payments on a request created before
+    // the cents fields add to paidTotalCents while its 'paidTotal' stays
+    private static long centsOf(DocumentSnapshot document, String centsField, String legacyField) {
+        Long cents = document.getLong(centsField);
+        Double legacy = document.getDouble(legacyField);
+        return (cents != null ? cents : 0L) + (legacy != null ? CashBalance.toCents(legacy) : 0L);
+    }
+
+    public static boolean isComplete(DocumentSnapshot request) {
+        Long payerCount = request.getLong("payerCount");
+        Long paidCount = request.getLong("paidCount");
+        return payerCount != null && paidCount != null && paidCount >= payerCount;
+    }
+}
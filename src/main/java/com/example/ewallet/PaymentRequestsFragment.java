@@ -0,0 +1,291 @@
+package com.example.ewallet;
+
+import android.graphics.Color;
+import android.os.Bundle;
+import androidx.fragment.app.Fragment;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fragment to ask several users for money at once ("split the bill") and to pay requests addressed to this user
+ * with one tap. The Firestore side (lookup, batched fan-out, settlement) lives in PaymentRequests.
+ */
+public class PaymentRequestsFragment extends Fragment {
+
+    private static final String TAG = "PaymentRequestsFragment";
+    private ViewScope scope; // Loads bound to the current view
+    private static final int SENT_LIMIT = 20; // Own requests shown at the bottom of the screen
+
+    private FirebaseAuth mAuth;
+    private FirebaseFirestore db;
+    private String currentUid;
+    private String currentUserId = null; // Human-readable ID, needed for requests and transfers
+
+    // UI Elements
+    private EditText inputPayerIds, inputRequestAmount, inputRequestDescription;
+    private Button btnSendRequest;
+    private LinearLayout incomingContainer, outgoingContainer;
+
+    public PaymentRequestsFragment() {
+        // Required empty public constructor
+    }
+
+    @Override
+    public View onCreateView(LayoutInflater inflater, ViewGroup container,
+                             Bundle savedInstanceState) {
+        View view = inflater.inflate(R.layout.fragment_payment_requests, container, false);
+        scope = new ViewScope(TAG);
+
+        // Initialize Firebase
+        mAuth = FirebaseAuth.getInstance();
+        db = FirebaseFirestore.getInstance();
+        currentUid = mAuth.getCurrentUser() != null ? mAuth.getCurrentUser().getUid() : null;
+
+        // Link UI components
+        inputPayerIds = view.findViewById(R.id.input_payer_ids);
+        inputRequestAmount = view.findViewById(R.id.input_request_amount);
+        inputRequestDescription = view.findViewById(R.id.input_request_description);
+        btnSendRequest = view.findViewById(R.id.btn_send_request);
+        incomingContainer = view.findViewById(R.id.incoming_requests_container);
+        outgoingContainer = view.findViewById(R.id.outgoing_requests_container);
+
+        btnSendRequest.setOnClickListener(v -> sendRequest());
+
+        // Back Button Logic: Pop fragment off the stack
+        view.findViewById(R.id.btn_back).setOnClickListener(v -> {
+            if (getActivity() != null) {
+                getActivity().getSupportFragmentManager().popBackStack();
+            }
+        });
+
+        if (currentUid != null) {
+            loadCurrentUserId();
+            loadIncomingRequests();
+            loadOutgoingRequests();
+        }
+
+        return view;
+    }
+
+    private void loadCurrentUserId() {
+        CachedReads.document(db.collection("users").document(currentUid), scope.bind(new CachedReads.Callback<DocumentSnapshot>() {
+            @Override
+            public void onResult(DocumentSnapshot documentSnapshot, boolean fromCache) {
+                currentUserId = documentSnapshot.getString("userId");
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.w(TAG, "Error loading user ID: ", e);
+            }
+        }));
+    }
+
+    private void sendRequest() {
+        // --- 1. Input Validation ---
+        String payerIdsStr = inputPayerIds.getText().toString().trim();
+        String amountStr = inputRequestAmount.getText().toString().trim();
+        String descriptionStr = inputRequestDescription.getText().toString().trim();
+
+        if (TextUtils.isEmpty(payerIdsStr) || TextUtils.isEmpty(amountStr)) {
+            Toast.makeText(getContext(), "User IDs and Amount are required.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (currentUserId == null) {
+            Toast.makeText(getContext(), "Profile still loading, please try again.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        double amount;
+        try {
+            amount = Double.parseDouble(amountStr);
+        } catch (NumberFormatException e) {
+            Toast.makeText(getContext(), "Invalid amount entered.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (amount <= 0) {
+            Toast.makeText(getContext(), "Amount must be positive.", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        // User IDs may be separated by commas, spaces or new lines
+        List<String> payerUserIds = new ArrayList<>();
+        for (String userId : payerIdsStr.split("[,\\s]+")) {
+            if (!userId.isEmpty()) payerUserIds.add(userId);
+        }
+        String description = TextUtils.isEmpty(descriptionStr) ? "Payment Request" : descriptionStr;
+
+        // --- 2. Create the request and fan it out to every payer ---
+        btnSendRequest.setEnabled(false);
+        // The request is written regardless; only its feedback is bound to this view
+        scope.onComplete(PaymentRequests.create(db, currentUid, currentUserId, payerUserIds, amount, description),
+                task -> {
+                    btnSendRequest.setEnabled(true);
+                    if (task.isSuccessful()) {
+                        Toast.makeText(getContext(), "Request sent.", Toast.LENGTH_SHORT).show();
+                        inputPayerIds.setText("");
+                        inputRequestAmount.setText("");
+                        inputRequestDescription.setText("");
+                        loadOutgoingRequests();
+                    } else {
+                        Exception e = task.getException();
+                        Log.e(TAG, "Creating payment request failed: ", e);
+                        // Unknown user IDs are reported by name; anything else is a generic failure
+                        String message = e instanceof IllegalArgumentException
+                                ? e.getMessage() : "Could not send the request.";
+                        Toast.makeText(getContext(), message, Toast.LENGTH_LONG).show();
+                    }
+                });
+    }
+
+    private void loadIncomingRequests() {
+        scope.onComplete(PaymentRequests.pendingFor(db, currentUid), task -> {
+            incomingContainer.removeAllViews();
+            if (!task.isSuccessful() || task.getResult() == null) {
+                Log.w(TAG, "Error loading requests to pay: ", task.getException());
+                addMessage(incomingContainer, "Could not load requests.");
+                return;
+            }
+            if (task.getResult().isEmpty()) {
+                addMessage(incomingContainer, "Nothing to pay.");
+                return;
+            }
+            for (DocumentSnapshot entry : task.getResult().getDocuments()) {
+                addIncomingRow(entry);
+            }
+        });
+    }
+
+    private void loadOutgoingRequests() {
+        scope.onComplete(PaymentRequests.sentBy(db, currentUid, SENT_LIMIT), task -> {
+            outgoingContainer.removeAllViews();
+            if (!task.isSuccessful() || task.getResult() == null) {
+                Log.w(TAG, "Error loading own requests: ", task.getException());
+                addMessage(outgoingContainer, "Could not load your requests.");
+                return;
+            }
+            if (task.getResult().isEmpty()) {
+                addMessage(outgoingContainer, "No requests sent yet.");
+                return;
+            }
+            for (DocumentSnapshot request : task.getResult().getDocuments()) {
+                addOutgoingRow(request);
+            }
+        });
+    }
+
+    private void addIncomingRow(DocumentSnapshot entry) {
+        DecimalFormat df = new DecimalFormat("#,##0.00");
+        long amountCents = PaymentRequests.amountCents(entry);
+
+        LinearLayout row = newRow();
+        TextView text = newRowText(entry.getString("requesterUserId") + " requests $"
+                + df.format(CashBalance.toDollars(amountCents)) + "\n" + entry.getString("description"));
+
+        // One tap pays: the regular atomic transfer, plus marking this entry paid
+        Button payButton = new Button(getContext());
+        payButton.setText("Pay");
+        payButton.setBackgroundColor(Color.parseColor("#8A63D2"));
+        payButton.setTextColor(Color.WHITE);
+        payButton.setOnClickListener(v -> {
+            if (currentUserId == null) return;
+            payButton.setEnabled(false);
+            Task<String> settlement = PaymentRequests.settle(db, entry.getReference(), currentUid, currentUserId);
+            // Not bound to the view: the balance changed whether or not this screen is still showing
+            settlement.addOnSuccessListener(transferId -> CachedReads.invalidate("users/" + currentUid));
+            scope.onComplete(settlement, task -> {
+                if (task.isSuccessful()) {
+                    Toast.makeText(getContext(), "Paid.", Toast.LENGTH_SHORT).show();
+                    incomingContainer.removeView(row);
+                    if (incomingContainer.getChildCount() == 0) {
+                        addMessage(incomingContainer, "Nothing to pay.");
+                    }
+                } else {
+                    Log.e(TAG, "Paying request failed: ", task.getException());
+                    payButton.setEnabled(true);
+                    Toast.makeText(getContext(), "Payment failed. Please check network/balance.", Toast.LENGTH_LONG).show();
+                }
+            });
+        });
+
+        row.addView(text);
+        row.addView(payButton);
+        incomingContainer.addView(row);
+    }
+
+    private void addOutgoingRow(DocumentSnapshot request) {
+        DecimalFormat df = new DecimalFormat("#,##0.00");
+        Long payerCount = request.getLong("payerCount");
+        Long paidCount = request.getLong("paidCount");
+        long paidTotalCents = PaymentRequests.paidTotalCents(request);
+        long amountCents = PaymentRequests.amountCents(request);
+
+        // Status straight from the request's counters, no payer entries are read
+        long expectedCents = amountCents * (payerCount != null ? payerCount : 0);
+        String status = PaymentRequests.isComplete(request) ? "Settled" : (paidCount + "/" + payerCount + " paid");
+
+        LinearLayout row = newRow();
+        TextView text = newRowText(request.getString("description") + "\n$"
+                + df.format(CashBalance.toDollars(paidTotalCents)) + " of $"
+                + df.format(CashBalance.toDollars(expectedCents)));
+        TextView statusTv = new TextView(getContext());
+        statusTv.setText(status);
+        statusTv.setTextSize(16f);
+        statusTv.setTypeface(null, android.graphics.Typeface.BOLD);
+        statusTv.setTextColor(PaymentRequests.isComplete(request)
+                ? Color.parseColor("#A5D6A7") : Color.parseColor("#FFB74D"));
+
+        row.addView(text);
+        row.addView(statusTv);
+        outgoingContainer.addView(row);
+    }
+
+    private LinearLayout newRow() {
+        LinearLayout row = new LinearLayout(getContext());
+        row.setLayoutParams(new LinearLayout.LayoutParams(
+                LinearLayout.LayoutParams.MATCH_PARENT, LinearLayout.LayoutParams.WRAP_CONTENT));
+        row.setOrientation(LinearLayout.HORIZONTAL);
+        row.setPadding(0, 20, 0, 20);
+        return row;
+    }
+
+    private TextView newRowText(String text) {
+        TextView textView = new TextView(getContext());
+        textView.setText(text);
+        textView.setTextColor(Color.WHITE);
+        textView.setTextSize(16f);
+        textView.setLayoutParams(new LinearLayout.LayoutParams(0, LinearLayout.LayoutParams.WRAP_CONTENT, 1.0f));
+        return textView;
+    }
+
+    private void addMessage(LinearLayout container, String message) {
+        TextView emptyText = new TextView(getContext());
+        emptyText.setText(message);
+        emptyText.setTextColor(Color.parseColor("#A0A0A0"));
+        container.addView(emptyText);
+    }
+
+    @Override
+    public void onDestroyView() {
+        // Drops pending callbacks and skips queued work for the view being destroyed
+        scope.close();
+        super.onDestroyView();
+    }
+}
@@ -0,0 +1,253 @@
+package com.example.ewallet;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * As-you-type recipient suggestions for TransferFragment.
+ *   - Past counterparties (recent sent and received transfers) live in a RecipientTrie and are matched on every
+ *     keystroke without touching the network.
+ *   - Other users are found with a Firestore range query on userId (orderBy/startAt/endAt prefix bounds), debounced
+ *     so that at most one query runs per DEBOUNCE_MS, and cached per prefix.
+ *   - A cached prefix, or a longer prefix of a cached one whose result was complete, is answered synchronously
+ *     from memory, i.e. within the same frame as the keystroke.
+ * Main thread only. close() (from the fragment's ViewScope) cancels the pending query and drops late results.
+ */
+public final class RecipientSuggester {
+
+    private static final String TAG = "RecipientSuggester";
+
+    public static final int MAX_SUGGESTIONS = 5;
+    private static final long DEBOUNCE_MS = 300L;
+    private static final int MIN_REMOTE_PREFIX = 2;  // One character would match a large slice of all users
+    private static final int REMOTE_LIMIT = 8;       // A result shorter than this holds every match of its prefix
+    private static final int HISTORY_LIMIT = 200;    // Recent transfers per direction feeding the trie
+    private static final int PREFIX_CACHE_SIZE = 64;
+
+    /**
+     * Receives the suggestions for the text currently in the input ('query'), best first.
+     */
+    public interface Listener {
+        void onSuggestions(String query, List<RecipientTrie.Entry> suggestions);
+    }
+
+    private final FirebaseFirestore db;
+    private final String uid;
+    private final Listener listener;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    private RecipientTrie trie = new RecipientTrie();
+    private final LruCache<String, Page> remoteByPrefix = new LruCache<>(PREFIX_CACHE_SIZE);
+    private final Map<String, String> remoteUids = new HashMap<>(); // userId -> uid seen in range query results
+
+    private String currentQuery = "";
+    private String inFlightPrefix = null;
+    private Runnable pendingQuery = null;
+    private boolean closed = false;
+
+    // --- Metrics ---
+    private int localAnswers = 0;  // Keystrokes answered from the trie and prefix cache alone
+    private int remoteQueries = 0;
+
+    // Range query result for one prefix; 'complete' when the page was not cut off by REMOTE_LIMIT
+    private static final class Page {
+        final List<RecipientTrie.Entry> matches;
+        final boolean complete;
+
+        Page(List<RecipientTrie.Entry> matches, boolean complete) {
+            this.matches = matches;
+            this.complete = complete;
+        }
+    }
+
+    public RecipientSuggester(FirebaseFirestore db, String uid, Listener listener) {
+        this.db = db;
+        this.uid = uid;
+        this.listener = listener;
+    }
+
+    /**
+     * Builds the trie from recent transfers in both directions (cached copy first, then the server copy).
+     * Shared per user under "users/{uid}#counterparties", so a transfer's invalidation also refreshes it.
+     */
+    public void loadHistory(ViewScope scope) {
+        CachedReads.load("users/" + uid + "#counterparties", this::fetchHistory,
+                scope.bind(new CachedReads.Callback<RecipientTrie>() {
+                    @Override
+                    public void onResult(RecipientTrie loaded, boolean fromCache) {
+                        if (closed) return;
+                        trie = loaded;
+                        Log.d(TAG, "Counterparties loaded: " + loaded.size() + (fromCache ? " (cache)" : ""));
+                        publish(currentQuery); // Refresh whatever is typed already
+                    }
+
+                    @Override
+                    public void onFailure(Exception e) {
+                        // Suggestions stay limited to range query results; typing an exact ID still works
+                        Log.w(TAG, "Could not load past counterparties.", e);
+                    }
+                }));
+    }
+
+    // Package-private: also driven by the screen load regression test (androidTest)
+    Task<RecipientTrie> fetchHistory(Source source) {
+        Task<QuerySnapshot> sent = DocumentReads.counted(recentTransfers("senderUid").get(source));
+        Task<QuerySnapshot> received = DocumentReads.counted(recentTransfers("recipientUid").get(source));
+        return Tasks.whenAllSuccess(sent, received).continueWith(task -> {
+            RecipientTrie built = new RecipientTrie();
+            addCounterparties(built, sent.getResult(), "recipientUserId", "recipientUid");
+            addCounterparties(built, received.getResult(), "senderUserId", "senderUid");
+            return built;
+        });
+    }
+
+    private Query recentTransfers(String partyField) {
+        return db.collection(TransactionHistory.TRANSFERS)
+                .whereEqualTo(partyField, uid)
+                .orderBy("timestamp", Query.Direction.DESCENDING)
+                .limit(HISTORY_LIMIT);
+    }
+
+    private static void addCounterparties(RecipientTrie target, QuerySnapshot transfers, String userIdField, String uidField) {
+        for (DocumentSnapshot transfer : transfers.getDocuments()) {
+            Date timestamp = transfer.getDate("timestamp");
+            target.record(transfer.getString(userIdField), transfer.getString(uidField),
+                    timestamp != null ? timestamp.getTime() : 0L);
+        }
+    }
+
+    /**
+     * Called from the input's TextWatcher on every change. Always answers right away from memory;
+     * schedules one debounced range query only when the prefix has no complete cached answer yet.
+     */
+    public void onQueryChanged(String text) {
+        if (closed) return;
+        currentQuery = text.trim();
+        cancelPending();
+
+        if (publish(currentQuery) || currentQuery.length() < MIN_REMOTE_PREFIX) {
+            localAnswers++;
+            return;
+        }
+
+        final String prefix = currentQuery;
+        pendingQuery = () -> {
+            pendingQuery = null;
+            if (cachedRemote(prefix) == null) queryRemote(prefix); // A shorter prefix may have answered meanwhile
+        };
+        handler.postDelayed(pendingQuery, DEBOUNCE_MS);
+    }
+
+    // Delivers trie matches plus cached range query matches; returns false if the remote side is still unknown
+    private boolean publish(String query) {
+        List<RecipientTrie.Entry> remote = cachedRemote(query);
+        List<RecipientTrie.Entry> suggestions = new ArrayList<>(
+                trie.suggest(query, MAX_SUGGESTIONS, System.currentTimeMillis()));
+
+        if (remote != null) {
+            for (RecipientTrie.Entry entry : remote) {
+                if (suggestions.size() >= MAX_SUGGESTIONS) break;
+                if (trie.uidOf(entry.userId) == null) suggestions.add(entry); // Past counterparties are already ranked
+            }
+        }
+        listener.onSuggestions(query, suggestions);
+        return remote != null;
+    }
+
+    // Exact prefix, or narrowed down from the longest cached shorter prefix whose result was complete
+    private List<RecipientTrie.Entry> cachedRemote(String query) {
+        if (query.length() < MIN_REMOTE_PREFIX) return null;
+        Page cached = remoteByPrefix.get(query);
+        if (cached != null) return cached.matches;
+
+        for (int length = query.length() - 1; length >= MIN_REMOTE_PREFIX; length--) {
+            Page shorter = remoteByPrefix.get(query.substring(0, length));
+            if (shorter == null) continue;
+            if (!shorter.complete) return null; // Truncated: longer prefixes may match users not in it
+
+            List<RecipientTrie.Entry> narrowed = new ArrayList<>();
+            for (RecipientTrie.Entry entry : shorter.matches) {
+                if (entry.userId.startsWith(query)) narrowed.add(entry);
+            }
+            remoteByPrefix.put(query, new Page(narrowed, true));
+            return narrowed;
+        }
+        return null;
+    }
+
+    private void queryRemote(String prefix) {
+        if (closed || prefix.equals(inFlightPrefix)) return;
+        inFlightPrefix = prefix;
+        remoteQueries++;
+
+        // '\uf8ff' sorts after every regular character, so [prefix, prefix + '\uf8ff'] is exactly "starts with prefix"
+        db.collection("users")
+                .orderBy("userId")
+                .startAt(prefix)
+                .endAt(prefix + "\uf8ff")
+                .limit(REMOTE_LIMIT)
+                .get()
+                .addOnCompleteListener(task -> {
+                    if (prefix.equals(inFlightPrefix)) inFlightPrefix = null;
+                    if (closed) return;
+                    if (!task.isSuccessful()) {
+                        // Trie suggestions stay on screen; the next keystroke may try again
+                        Log.w(TAG, "Recipient prefix search failed for '" + prefix + "'.", task.getException());
+                        return;
+                    }
+
+                    List<RecipientTrie.Entry> matches = new ArrayList<>();
+                    for (DocumentSnapshot user : task.getResult().getDocuments()) {
+                        String userId = user.getString("userId");
+                        if (userId == null || user.getId().equals(uid)) continue; // Not ourselves
+                        matches.add(new RecipientTrie.Entry(userId, user.getId()));
+                        remoteUids.put(userId, user.getId());
+                    }
+                    // Completeness is judged on the raw page: our own account still counts towards the limit
+                    remoteByPrefix.put(prefix, new Page(matches, task.getResult().size() < REMOTE_LIMIT));
+
+                    // Only redraw if the input still starts with this prefix (the user may have typed on or deleted)
+                    if (currentQuery.startsWith(prefix)) publish(currentQuery);
+                });
+    }
+
+    /**
+     * The uid for an exact user ID picked from the suggestions (past counterparty or range query hit),
+     * so the transfer can skip the recipient lookup. Null if the ID was never seen.
+     */
+    public String uidOf(String userId) {
+        String known = trie.uidOf(userId);
+        return known != null ? known : remoteUids.get(userId);
+    }
+
+    private void cancelPending() {
+        if (pendingQuery != null) {
+            handler.removeCallbacks(pendingQuery);
+            pendingQuery = null;
+        }
+    }
+
+    public void close() {
+        if (closed) return;
+        closed = true;
+        cancelPending();
+        Log.d(TAG, "Suggestions closed. localAnswers=" + localAnswers + " remoteQueries=" + remoteQueries
+                + " counterparties=" + trie.size());
+    }
+}
@@ -0,0 +1,109 @@
+package com.example.ewallet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * On-device prefix tree of past transfer counterparties (user IDs), used for as-you-type recipient suggestions.
+ * Each counterparty keeps how often and how recently money moved between the two users; suggest() ranks a prefix's
+ * matches by frequency decayed with age, so a payee from last week beats one paid often a year ago.
+ * Built and queried on the main thread only (RecipientSuggester); a few hundred entries answer in microseconds.
+ */
+public final class RecipientTrie {
+
+    // Weight of one transfer halves every 30 days
+    private static final double HALF_LIFE_MS = 30L * 24 * 60 * 60 * 1000;
+
+    /**
+     * One known counterparty.
+     */
+    public static final class Entry {
+        public final String userId;
+        public final String uid;
+        int count;
+        long lastMs;
+
+        Entry(String userId, String uid) {
+            this.userId = userId;
+            this.uid = uid;
+        }
+
+        double score(long nowMs) {
+            double ageMs = Math.max(0L, nowMs - lastMs);
+            return count * Math.pow(0.5, ageMs / HALF_LIFE_MS);
+        }
+    }
+
+    private static final class Node {
+        final Map<Character, Node> children = new HashMap<>();
+        Entry entry; // Set when a user ID ends here
+    }
+
+    private final Node root = new Node();
+    private final Map<String, Entry> byUserId = new HashMap<>();
+
+    // One transfer with 'userId' at 'timeMs' (order of calls does not matter)
+    public void record(String userId, String uid, long timeMs) {
+        if (userId == null || userId.isEmpty() || uid == null) return;
+
+        Entry entry = byUserId.get(userId);
+        if (entry == null) {
+            Node node = root;
+            for (int i = 0; i < userId.length(); i++) {
+                char c = userId.charAt(i);
+                Node child = node.children.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(c, child);
+                }
+                node = child;
+            }
+            entry = new Entry(userId, uid);
+            node.entry = entry;
+            byUserId.put(userId, entry);
+        }
+        entry.count++;
+        entry.lastMs = Math.max(entry.lastMs, timeMs);
+    }
+
+    // Exact match only; null for user IDs never transacted with
+    public String uidOf(String userId) {
+        Entry entry = byUserId.get(userId);
+        return entry != null ? entry.uid : null;
+    }
+
+    /**
+     * Best 'limit' counterparties whose user ID starts with 'prefix' (case-sensitive, like the Firestore range query).
+     * An empty prefix returns the overall favourites.
+     */
+    public List<Entry> suggest(String prefix, int limit, long nowMs) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        if (node == null) return Collections.emptyList();
+
+        // Collect the subtree iteratively (user IDs can be long; no recursion depth concerns)
+        List<Entry> matches = new ArrayList<>();
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node current = stack.pop();
+            if (current.entry != null) matches.add(current.entry);
+            for (Node child : current.children.values()) {
+                stack.push(child);
+            }
+        }
+
+        matches.sort((a, b) -> Double.compare(b.score(nowMs), a.score(nowMs)));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    public int size() {
+        return byUserId.size();
+    }
+}
@@ -15,6 +15,8 @@ import android.widget.Toast;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.SetOptions;
 import com.google.firebase.firestore.Transaction;
@@ -31,11 +33,12 @@ import java.util.Map;
 public class RepayLoanFragment extends Fragment {
 
     private static final String TAG = "RepayLoanFragment";
+    private ViewScope scope; // Loads bound to the current view
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
     private String currentUid;
 
-    // Stores the user's current outstanding debt and current cash balance
+    // Stores the user's current outstanding debt (principal + accrued interest) and current cash balance
     private double currentLoanTaken = 0.0;
     private double currentCashBalance = 0.0;
 
@@ -53,6 +56,7 @@ public class RepayLoanFragment extends Fragment {
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_repay_loan, container, false);
+        scope = new ViewScope(TAG);
 
         // Initialize Firebase
         mAuth = FirebaseAuth.getInstance();
@@ -103,43 +107,51 @@ public class RepayLoanFragment extends Fragment {
         if (currentUid == null) return;
 
         // Fetch the user's document to get the current outstanding loan and cash balance
-        db.collection("users").document(currentUid).get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        // FIX: Safely retrieve Double values using the Number cast method
-                        Number loanTakenNum = (Number) documentSnapshot.get("loanTaken");
-                        Number cashBalanceNum = (Number) documentSnapshot.get("balance");
-
-                        if (loanTakenNum != null && cashBalanceNum != null) {
-                            currentLoanTaken = loanTakenNum.doubleValue();
-                            currentCashBalance = cashBalanceNum.doubleValue();
-
-                            // Display the outstanding loan amount
-                            DecimalFormat df = new DecimalFormat("#,##0.00");
-                            textLoanTakenAmount.setText("$" + df.format(currentLoanTaken));
-
-                            Log.d(TAG, "Loan data loaded. Taken: " + currentLoanTaken + ", Balance: " + currentCashBalance);
-
-                            // Disable buttons if no loan is outstanding and set color based on debt status
-                            if (currentLoanTaken <= 0) {
-                                btnRepayComplete.setEnabled(false);
-                                btnContinueRepay.setEnabled(false);
-                                // Green if 0 debt (safe color assignment)
-                                textLoanTakenAmount.setTextColor(Color.parseColor("#A5D6A7"));
-                            } else {
-                                // Red if debt is outstanding
-                                textLoanTakenAmount.setTextColor(Color.parseColor("#FF5555"));
-                            }
+        // (cached copy first, refreshed from the server in the background)
+        CachedReads.document(db.collection("users").document(currentUid), scope.bind(new CachedReads.Callback<DocumentSnapshot>() {
+            @Override
+            public void onResult(DocumentSnapshot documentSnapshot, boolean fromCache) {
+                if (documentSnapshot.exists()) {
+                    // FIX: Safely retrieve Double values using the Number cast method
+                    Number loanTakenNum = (Number) documentSnapshot.get("loanTaken");
+
+                    if (loanTakenNum != null && CashBalance.isPresent(documentSnapshot)) {
+                        // Outstanding debt includes the interest accrued since the last loan/repayment
+                        currentLoanTaken = LoanAccrual.fromSnapshot(documentSnapshot, new Date()).getTotalOwed();
+                        currentCashBalance = CashBalance.toDollars(CashBalance.centsOf(documentSnapshot));
+
+                        // Display the outstanding loan amount
+                        DecimalFormat df = new DecimalFormat("#,##0.00");
+                        textLoanTakenAmount.setText("$" + df.format(currentLoanTaken));
+
+                        Log.d(TAG, "Loan data loaded. Taken: " + currentLoanTaken + ", Balance: " + currentCashBalance);
+
+                        // Disable buttons if no loan is outstanding and set color based on debt status
+                        if (currentLoanTaken <= 0) {
+                            btnRepayComplete.setEnabled(false);
+                            btnContinueRepay.setEnabled(false);
+                            // Green if 0 debt (safe color assignment)
+                            textLoanTakenAmount.setTextColor(Color.parseColor("#A5D6A7"));
                         } else {
-                            Log.w(TAG, "Loan fields are missing in document.");
+                            // Re-enable in case a cached copy showed no debt first
+                            btnRepayComplete.setEnabled(true);
+                            btnContinueRepay.setEnabled(true);
+                            // Red if debt is outstanding
+                            textLoanTakenAmount.setTextColor(Color.parseColor("#FF5555"));
                         }
+                    } else {
+                        Log.w(TAG, "Loan fields are missing in document.");
                     }
-                })
-                .addOnFailureListener(e -> {
-                    Log.w(TAG, "Error loading loan data: ", e);
-                    textLoanTakenAmount.setText("$0.00");
-                    Toast.makeText(getContext(), "Could not fetch loan data.", Toast.LENGTH_SHORT).show();
-                });
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.w(TAG, "Error loading loan data: ", e);
+                textLoanTakenAmount.setText("$0.00");
+                Toast.makeText(getContext(), "Could not fetch loan data.", Toast.LENGTH_SHORT).show();
+            }
+        }));
     }
 
     private void processRepayment() {
@@ -184,39 +196,61 @@ public class RepayLoanFragment extends Fragment {
         db.runTransaction((Transaction.Function<Void>) transaction -> {
             // Re-read user data inside the transaction for maximum accuracy
             DocumentReference snapshotRef = db.collection("users").document(currentUid);
-            Map<String, Object> userData = transaction.get(snapshotRef).getData();
+            DocumentSnapshot userSnapshot = transaction.get(snapshotRef);
+            Map<String, Object> userData = userSnapshot.getData();
 
             if (userData == null) {
                 throw new RuntimeException("User data not found for repayment process.");
             }
 
             // Safely retrieve current values again
-            double updatedCurrentBalance = ((Number) userData.get("balance")).doubleValue();
-            double updatedCurrentLoanTaken = ((Number) userData.get("loanTaken")).doubleValue();
+            long updatedBalanceCents = CashBalance.centsOf(userData);
+            LoanAccrual currentLoan = LoanAccrual.fromSnapshot(userSnapshot, new Date());
+
+            // Never take more than is actually owed (interest keeps accruing between load and commit)
+            double appliedAmount = Math.min(finalRepayAmount, currentLoan.getTotalOwed());
+            long appliedCents = CashBalance.toCents(appliedAmount);
+            if (appliedCents > updatedBalanceCents) {
+                throw new RuntimeException("Insufficient balance for repayment.");
+            }
 
             // Calculate new balances/limits
-            double newBalance = updatedCurrentBalance - finalRepayAmount; // Cash balance decreases
-            double newLoanTaken = updatedCurrentLoanTaken - finalRepayAmount; // Debt decreases
+            long newBalanceCents = updatedBalanceCents - appliedCents; // Cash balance decreases
+            // Debt decreases: accrued interest is settled first, then the principal
+            LoanAccrual newLoan = currentLoan.withRepayment(appliedAmount);
+            double interestPaid = currentLoan.interestPortionOf(appliedAmount);
 
-            // **FIXED BUG:** loanLimit is NOT changed. It remains the fixed value (e.g., $1000.00).
+            // **FIXED BUG:** loanLimit is NOT changed by the repayment itself.
             // The available capacity increases naturally because 'newLoanTaken' decreases.
 
             // --- Record Repayment as Transaction (Expense) ---
             Map<String, Object> repaymentTransaction = new HashMap<>();
             repaymentTransaction.put("type", "Loan Repayment");
-            repaymentTransaction.put("amount", finalRepayAmount);
+            repaymentTransaction.put("amount", appliedAmount);
+            repaymentTransaction.put("interestPaid", interestPaid);
+            repaymentTransaction.put("principalPaid", LoanAccrual.roundCents(appliedAmount - interestPaid));
             repaymentTransaction.put("description", "Loan Repayment Made");
             repaymentTransaction.put("source", "Debt Repayment");
-            repaymentTransaction.put("timestamp", new Date());
+            Date repaymentTimestamp = new Date();
+            repaymentTransaction.put("timestamp", repaymentTimestamp);
+            repaymentTransaction.put(AtomicTransfer.FIELD_COMMITTED_AT, FieldValue.serverTimestamp());
 
             // Add transaction document to the sub-collection
-            transaction.set(userRef.collection("transactions").document(), repaymentTransaction);
+            DocumentReference repaymentRef = userRef.collection("transactions").document();
+            transaction.set(repaymentRef, repaymentTransaction);
 
             // --- Update Main User Document ---
             Map<String, Object> updates = new HashMap<>();
-            updates.put("balance", newBalance);
-            updates.put("loanTaken", newLoanTaken);
-            // We intentionally do NOT update loanLimit here.
+            updates.putAll(CashBalance.fields(newBalanceCents));
+            updates.putAll(newLoan.toFields()); // loanTaken (principal), loanInterest, loanRate, loanAccruedAt
+            // Credit aggregates: how long the repaid principal was outstanding, plus the cash flow
+            updates.putAll(CreditProfile.loanIncrements(userSnapshot,
+                    currentLoan.getPrincipal() - newLoan.getPrincipal(), repaymentTimestamp));
+            updates.putAll(CreditProfile.flowIncrements("Loan Repayment", appliedAmount));
+            // Keep the monthly ledger totals/digest in step with the new entry (blind increment, no read)
+            updates.putAll(LedgerDigest.fields(repaymentRef.getId(), "Loan Repayment", appliedAmount,
+                    repaymentTimestamp, newBalanceCents - updatedBalanceCents));
+            // We intentionally do NOT update loanLimit here (it is derived from the aggregates when read).
 
             // Set the updates on the user document
             transaction.set(userRef, updates, SetOptions.merge());
@@ -224,6 +258,9 @@ public class RepayLoanFragment extends Fragment {
             return null; // Commit transaction
 
         }).addOnSuccessListener(aVoid -> {
+            // Not bound to the view: later reads of this user must see the write even if the screen is gone
+            CachedReads.invalidate("users/" + currentUid);
+        }).addOnSuccessListener(scope.bindSuccess(aVoid -> {
             // --- 3. Success Feedback and Navigation ---
             Toast.makeText(getContext(), "Loan Repayment Successful! Your capacity is restored.", Toast.LENGTH_LONG).show();
 
@@ -232,9 +269,16 @@ public class RepayLoanFragment extends Fragment {
                 getActivity().getSupportFragmentManager().popBackStack();
             }
 
-        }).addOnFailureListener(e -> {
+        })).addOnFailureListener(scope.bindFailure(e -> {
             Log.e(TAG, "Transaction failure: Repayment process failed.", e);
             Toast.makeText(getContext(), "Repayment failed. Please try again.", Toast.LENGTH_LONG).show();
-        });
+        }));
+    }
+
+    @Override
+    public void onDestroyView() {
+        // Drops pending callbacks and skips queued work for the view being destroyed
+        scope.close();
+        super.onDestroyView();
     }
-}
\ No newline at end of file
+}
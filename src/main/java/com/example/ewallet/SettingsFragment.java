@@ -27,6 +27,7 @@ import java.util.Map;
 public class SettingsFragment extends Fragment {
 
     private static final String TAG = "SettingsFragment";
+    private ViewScope scope; // Loads bound to the current view
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
     private FirebaseUser currentUser;
@@ -51,6 +52,7 @@ public class SettingsFragment extends Fragment {
                              Bundle savedInstanceState) {
         // Inflate the layout for this fragment
         View view = inflater.inflate(R.layout.fragment_settings, container, false);
+        scope = new ViewScope(TAG);
 
         // Initialize Firebase
         mAuth = FirebaseAuth.getInstance();
@@ -130,17 +132,18 @@ public class SettingsFragment extends Fragment {
         updates.put("name", newName);
 
         db.collection("users").document(currentUser.getUid()).set(updates, SetOptions.merge())
-                .addOnSuccessListener(aVoid -> {
+                .addOnSuccessListener(aVoid -> CachedReads.invalidate("users/" + currentUser.getUid()))
+                .addOnSuccessListener(scope.bindSuccess(aVoid -> {
                     Toast.makeText(getContext(), "Name updated successfully!", Toast.LENGTH_LONG).show();
                     // Optional: Automatically go back to Home to see the change
                     if (getActivity() != null) {
                         getActivity().getSupportFragmentManager().popBackStack();
                     }
-                })
-                .addOnFailureListener(e -> {
+                }))
+                .addOnFailureListener(scope.bindFailure(e -> {
                     Log.e(TAG, "Error updating name: ", e);
                     Toast.makeText(getContext(), "Failed to update name.", Toast.LENGTH_SHORT).show();
-                });
+                }));
     }
 
     // --- Password Update Logic ---
@@ -168,17 +171,24 @@ public class SettingsFragment extends Fragment {
 
         // 2. Update Password in Firebase Authentication
         currentUser.updatePassword(newPassword)
-                .addOnSuccessListener(aVoid -> {
+                .addOnSuccessListener(scope.bindSuccess(aVoid -> {
                     Toast.makeText(getContext(), "Password updated successfully!", Toast.LENGTH_LONG).show();
                     // Optional: Automatically go back to Home
                     if (getActivity() != null) {
                         getActivity().getSupportFragmentManager().popBackStack();
                     }
-                })
-                .addOnFailureListener(e -> {
+                }))
+                .addOnFailureListener(scope.bindFailure(e -> {
                     Log.e(TAG, "Error updating password: ", e);
                     // Note: Password updates often fail if the user hasn't recently logged in (security constraint)
                     Toast.makeText(getContext(), "Failed: Please sign out and sign in again before changing password.", Toast.LENGTH_LONG).show();
-                });
+                }));
     }
-}
\ No newline at end of file
+
+    @Override
+    public void onDestroyView() {
+        // Drops pending callbacks and skips queued work for the view being destroyed
+        scope.close();
+        super.onDestroyView();
+    }
+}
@@ -11,7 +11,11 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
 
 import java.util.Date; // Needed to timestamp the transaction
 import java.util.HashMap;
@@ -110,10 +114,17 @@ public class SignupActivity extends AppCompatActivity {
         user.put("name", name);
 
         // **UPDATED FINANCIAL FIELDS:** Initial balance set to $100.00
-        user.put("balance", 100.00);       // Initial starting balance (in dollars)
-        user.put("loanLimit", 1000.00);    // Fixed maximum loan limit (in dollars)
+        user.put(CashBalance.FIELD_CENTS, 10_000L); // Initial starting balance ($100.00 in cents)
+        user.put("loanLimit", 1000.00);    // Starting loan limit; later derived from history (CreditPolicy)
         user.put("loanTaken", 0.00);       // Starting loan outstanding is zero
 
+        // Interest accrual fields (rate + last accrual time); interest is computed lazily on read
+        user.putAll(LoanAccrual.initialFields(new Date()));
+        // Running credit aggregates, updated by every later transaction write
+        user.putAll(CreditProfile.initialFields(new Date()));
+        // Reconciliation starts from zero: the whole history of this account is in the monthly ledgers
+        user.putAll(LedgerReconciler.initialFields(new Date()));
+
         // Save the main user document
         db.collection("users").document(uid)
                 .set(user)
@@ -138,11 +149,27 @@ public class SignupActivity extends AppCompatActivity {
         transaction.put("description", "Signup Bonus");
         transaction.put("source", "System");
         transaction.put("timestamp", new Date()); // Live mobile date/time for sorting
-
-        // Write the transaction document into the 'transactions' sub-collection
-        db.collection("users").document(uid).collection("transactions")
-                .add(transaction) // .add() creates a document with an auto-generated ID
-                .addOnSuccessListener(documentReference -> {
+        transaction.put(AtomicTransfer.FIELD_COMMITTED_AT, FieldValue.serverTimestamp());
+
+        // Write the transaction document into the 'transactions' sub-collection together with the
+        // opening balance checkpoint, so history views never have to replay from zero. Both get the same server
+        // commit time, and the checkpoint's id tie-break keeps the signup entry out of the replay
+        DocumentReference transactionRef = db.collection("users").document(uid).collection("transactions").document();
+        BalanceCheckpoint opening = BalanceCheckpoint.empty();
+        opening.apply(transactionRef.getId(), "Income", "Signup Bonus", 100.00, null, (Date) transaction.get("timestamp"));
+
+        WriteBatch batch = db.batch();
+        batch.set(transactionRef, transaction); // auto-generated ID
+        Map<String, Object> userIncrements = CreditProfile.flowIncrements("Income", 100.00);
+        userIncrements.putAll(LedgerDigest.fields(transactionRef.getId(), "Income", 100.00,
+                (Date) transaction.get("timestamp"), 10_000L)); // The opening balanceCents
+        batch.set(db.collection("users").document(uid), userIncrements, SetOptions.merge());
+        Map<String, Object> openingDocument = opening.toDocument();
+        openingDocument.put(BalanceCheckpoint.FIELD_LAST_COMMITTED_AT, FieldValue.serverTimestamp());
+        batch.set(BalanceCheckpoint.checkpoints(db, uid).document(BalanceCheckpoint.OPENING_ID), openingDocument);
+
+        batch.commit()
+                .addOnSuccessListener(aVoid -> {
                     Log.d(TAG, "Transactions sub-collection initialized. Redirecting.");
 
                     // --- 5. Final Success: REDIRECT TO SIGN IN ---
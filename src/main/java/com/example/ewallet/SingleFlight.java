@@ -0,0 +1,103 @@
+package com.example.ewallet;
+
+import com.google.android.gms.tasks.Task;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request coalescing for identical reads, keyed by document path or query name (see CachedReads):
+ *   - while a read for a key is in flight, every further request for it shares the same Task (coalesced);
+ *   - a successful result is reused for 'ttlMs' afterwards (hit); failures are never reused;
+ *   - anything else starts a new read (miss).
+ * Rapid bottom-nav taps or back-to-back quick actions therefore cost one Firestore read instead of several.
+ * Writers call invalidate() with the user's path so the next read after a write always goes to Firestore.
+ */
+public final class SingleFlight {
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong coalesced = new AtomicLong();
+
+    // Key -> in-flight or recently completed read. Tasks complete on the main thread; the lock only guards the map
+    private static final Map<String, Flight> flights = new HashMap<>();
+
+    /**
+     * Starts the read for a key that nobody is reading yet.
+     */
+    public interface Fetch<T> {
+        Task<T> start();
+    }
+
+    private static final class Flight {
+        final Task<?> task;
+        final long ttlMs;
+        long completedAt = -1L; // -1 while in flight
+
+        Flight(Task<?> task, long ttlMs) {
+            this.task = task;
+            this.ttlMs = ttlMs;
+        }
+
+        boolean reusable(long now) {
+            return completedAt < 0 || now - completedAt < ttlMs;
+        }
+    }
+
+    private SingleFlight() {
+        // Static helpers only
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Task<T> get(String key, long ttlMs, Fetch<T> fetch) {
+        long now = System.currentTimeMillis();
+        Flight flight;
+        synchronized (flights) {
+            Flight existing = flights.get(key);
+            if (existing != null && existing.reusable(now)) {
+                (existing.completedAt < 0 ? coalesced : hits).incrementAndGet();
+                return (Task<T>) existing.task;
+            }
+            purgeExpired(now);
+            misses.incrementAndGet();
+            flight = new Flight(fetch.start(), ttlMs);
+            flights.put(key, flight);
+        }
+
+        final Flight started = flight;
+        started.task.addOnCompleteListener(task -> {
+            synchronized (flights) {
+                if (flights.get(key) != started) return; // Invalidated meanwhile
+                if (task.isSuccessful() && started.ttlMs > 0) {
+                    started.completedAt = System.currentTimeMillis();
+                } else {
+                    flights.remove(key);
+                }
+            }
+        });
+        return (Task<T>) started.task;
+    }
+
+    /**
+     * Forgets every flight whose key starts with 'keyPrefix' (e.g. "users/{uid}" after a write to that user).
+     * Callers already sharing an in-flight task keep it; the next request starts a fresh read.
+     */
+    public static void invalidate(String keyPrefix) {
+        synchronized (flights) {
+            flights.keySet().removeIf(key -> key.startsWith(keyPrefix));
+        }
+    }
+
+    private static void purgeExpired(long now) {
+        Iterator<Flight> it = flights.values().iterator();
+        while (it.hasNext()) {
+            if (!it.next().reusable(now)) it.remove();
+        }
+    }
+
+    public static String stats() {
+        return "hits=" + hits.get() + " misses=" + misses.get() + " coalesced=" + coalesced.get();
+    }
+}
@@ -20,24 +20,26 @@ import com.github.mikephil.charting.data.BarEntry;
 // NOTE: IndexAxisFormatter and its import have been intentionally REMOVED for stability.
 // -----------------------------
 
+import com.google.android.gms.tasks.Task;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.Source;
 
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.TreeMap;
 
 /**
  * Fragment to display user's balance history (Bar Chart) and transaction summaries.
  * Uses MPAndroidChart for professional rendering.
+ * The chart covers the period since the latest monthly checkpoint (the current month), starting from the
+ * checkpoint's closing balance; the expense summary still covers the whole history via the checkpoint's totals.
  */
 public class StatsFragment extends Fragment {
 
@@ -48,6 +50,7 @@ public class StatsFragment extends Fragment {
 
     private BarChart chart; // Link to the BarChart view
     private LinearLayout summaryListContainer;
+    private ViewScope scope; // Loads bound to the current view
 
     public StatsFragment() {
         // Required empty public constructor
@@ -57,6 +60,7 @@ public class StatsFragment extends Fragment {
     public View onCreateView(LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_stats, container, false);
+        scope = new ViewScope(TAG);
 
         // Initialize Firebase
         mAuth = FirebaseAuth.getInstance();
@@ -78,59 +82,115 @@ public class StatsFragment extends Fragment {
     }
 
     private void loadAllTransactions() {
-        // Fetch ALL transactions, ordered by timestamp, to rebuild history
-        db.collection("users").document(currentUid).collection("transactions")
-                .orderBy("timestamp", Query.Direction.ASCENDING)
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful() && task.getResult() != null) {
-                        List<DocumentSnapshot> documents = task.getResult().getDocuments();
-
-                        processTransactionsForChart(documents);
-                        processTransactionsForSummary(documents);
-                    } else {
-                        Log.e(TAG, "Error fetching transactions for stats.", task.getException());
-                        Toast.makeText(getContext(), "Failed to load transaction history.", Toast.LENGTH_SHORT).show();
-                    }
-                });
+        // Start from the latest monthly checkpoint, then fetch only the transactions written after it.
+        // This bounds the replay to roughly one month of activity instead of the whole history.
+        // Both reads run against the cache first (instant chart), then against the server.
+        // Bound to the view: once it is gone, neither the history download nor the aggregation starts
+        ViewScope loadScope = scope;
+        CachedReads.load(source -> readHistory(db, currentUid, loadScope, source), scope.bind(new CachedReads.Callback<StatsHistory>() {
+            @Override
+            public void onResult(StatsHistory history, boolean fromCache) {
+                processTransactionsForChart(history.checkpoint, history.entries);
+                processTransactionsForSummary(history.checkpoint, history.entries);
+
+                // Persist checkpoints for any month that closed since the last one.
+                // Only from server data: the cache may hold an incomplete history.
+                if (!fromCache) {
+                    BalanceCheckpoint.writeClosedMonths(db, currentUid, history.checkpoint, history.entries);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e(TAG, "Error fetching transactions for stats.", e);
+                Toast.makeText(getContext(), "Failed to load transaction history.", Toast.LENGTH_SHORT).show();
+            }
+        }));
+    }
+
+    // Latest checkpoint plus the entries after it, both read from 'source'; each stage first checks the view.
+    // The two reads are shared with other Stats screens (SingleFlight), the per-view checks are not.
+    // Package-private: also driven by the screen load regression test (androidTest)
+    static Task<StatsHistory> readHistory(FirebaseFirestore db, String uid, ViewScope loadScope, Source source) {
+        String userPath = "users/" + uid;
+        return CachedReads.shared(userPath + "#checkpoint", source,
+                () -> BalanceCheckpoint.loadLatest(db, uid, source)).continueWithTask(checkpointTask -> {
+            loadScope.checkActive();
+            BalanceCheckpoint checkpoint = checkpointTask.getResult();
+            String cursor = checkpoint.getLastCommittedAt() + "/" + checkpoint.getLastTransactionId();
+            return CachedReads.shared(userPath + "#after:" + cursor, source,
+                    () -> BalanceCheckpoint.historyAfter(db, uid, checkpoint, source))
+                    .continueWith(task -> {
+                        loadScope.checkActive();
+                        return new StatsHistory(checkpoint, task.getResult());
+                    });
+        });
+    }
+
+    /**
+     * What the Stats screen is drawn from; compared by CachedReads to skip redrawing an unchanged screen.
+     */
+    static final class StatsHistory {
+        final BalanceCheckpoint checkpoint;
+        final List<LedgerEntry> entries;
+
+        StatsHistory(BalanceCheckpoint checkpoint, List<LedgerEntry> entries) {
+            this.checkpoint = checkpoint;
+            this.entries = entries;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof StatsHistory)) return false;
+            StatsHistory other = (StatsHistory) o;
+            return Objects.equals(checkpoint.getLastCommittedAt(), other.checkpoint.getLastCommittedAt())
+                    && Objects.equals(checkpoint.getLastTransactionId(), other.checkpoint.getLastTransactionId())
+                    && checkpoint.getClosingBalance() == other.checkpoint.getClosingBalance()
+                    && entries.equals(other.entries);
+        }
+
+        @Override
+        public int hashCode() {
+            return entries.hashCode();
+        }
     }
 
     // --- 1. Chart Data Processing and Setup (Aesthetics Focus) ---
 
-    private void processTransactionsForChart(List<DocumentSnapshot> transactionDocuments) {
-        if (transactionDocuments.isEmpty()) return;
+    private void processTransactionsForChart(BalanceCheckpoint checkpoint, List<LedgerEntry> entries) {
+        if (entries.isEmpty()) return;
 
+        // Setup the chart with the processed daily balances
+        setupBarChart(dailyBalances(checkpoint, entries));
+    }
+
+    // Closing balance per day after the checkpoint (pure; shared with the screen load regression test)
+    static TreeMap<String, Double> dailyBalances(BalanceCheckpoint checkpoint, List<LedgerEntry> entries) {
         // TreeMap ensures balances are grouped and sorted by date
         TreeMap<String, Double> dailyBalances = new TreeMap<>();
-        double currentBalance = 0.0;
+        // Replay starts from the checkpoint's closing balance (0.0 only if no checkpoint exists yet), so the bars
+        // only cover days after the latest checkpoint; older days are no longer read just to draw the chart
+        double currentBalance = checkpoint.getClosingBalance();
 
         // Use short day names (EEE) for the X-axis mapping, though we won't label them directly
         SimpleDateFormat dateFormat = new SimpleDateFormat("EEE", Locale.US);
 
-        for (DocumentSnapshot document : transactionDocuments) {
-            Double amount = document.getDouble("amount");
-            String type = document.getString("type");
-            Date date = document.getDate("timestamp");
-
-            if (amount != null && date != null && type != null) {
-                // Determine transaction sign (+/-)
-                double transactionValue = amount;
+        for (LedgerEntry entry : entries) {
+            // Determine transaction sign (+/-)
+            double transactionValue = entry.amount;
 
-                // If it's a cash OUT, it reduces the balance
-                if (type.equals("Loan Repayment") || type.equals("Transfer (Sent)")) {
-                    transactionValue *= -1;
-                }
+            // If it's a cash OUT, it reduces the balance
+            if (entry.isOutflow()) {
+                transactionValue *= -1;
+            }
 
-                currentBalance += transactionValue;
+            currentBalance += transactionValue;
 
-                // Store the cumulative balance for this date
-                String dateKey = dateFormat.format(date);
-                dailyBalances.put(dateKey, currentBalance);
-            }
+            // Store the cumulative balance for this date
+            String dateKey = dateFormat.format(entry.committedAt); // Same clock as the replay order
+            dailyBalances.put(dateKey, currentBalance);
         }
-
-        // Setup the chart with the processed daily balances
-        setupBarChart(dailyBalances);
+        return dailyBalances;
     }
 
     private void setupBarChart(TreeMap<String, Double> dailyBalances) {
@@ -184,27 +244,26 @@ public class StatsFragment extends Fragment {
 
     // --- 2. Summary Data Processing (Unchanged) ---
 
-    private void processTransactionsForSummary(List<DocumentSnapshot> transactionDocuments) {
-        Map<String, Double> summary = new HashMap<>();
+    private void processTransactionsForSummary(BalanceCheckpoint checkpoint, List<LedgerEntry> entries) {
+        displaySummary(expenseSummary(checkpoint, entries));
+    }
 
-        for (DocumentSnapshot document : transactionDocuments) {
-            String description = document.getString("description");
-            Double amount = document.getDouble("amount");
-            String type = document.getString("type");
+    // Expense total per description over the whole history (pure; shared with the screen load regression test)
+    static Map<String, Double> expenseSummary(BalanceCheckpoint checkpoint, List<LedgerEntry> entries) {
+        // Expense totals up to the checkpoint are stored on it; only newer transactions are added here
+        Map<String, Double> summary = new HashMap<>(checkpoint.getExpenseTotals());
 
-            if (amount != null && description != null && type != null) {
-                if (type.equals("Loan Repayment") || type.equals("Transfer (Sent)")) {
+        for (LedgerEntry entry : entries) {
+            if (entry.description != null && entry.isOutflow()) {
 
-                    Double currentTotal = summary.get(description);
-                    if (currentTotal == null) {
-                        currentTotal = 0.0;
-                    }
-                    summary.put(description, currentTotal + amount);
+                Double currentTotal = summary.get(entry.description);
+                if (currentTotal == null) {
+                    currentTotal = 0.0;
                 }
+                summary.put(entry.description, currentTotal + entry.amount);
             }
         }
-
-        displaySummary(summary);
+        return summary;
     }
 
     private void displaySummary(Map<String, Double> summary) {
@@ -248,4 +307,11 @@ public class StatsFragment extends Fragment {
             summaryListContainer.addView(itemLayout);
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void onDestroyView() {
+        // Drops pending callbacks and skips queued work for the view being destroyed
+        scope.close();
+        super.onDestroyView();
+    }
+}
@@ -15,6 +15,8 @@ import android.widget.Toast;
 // Needed Firebase and Firestore imports
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.SetOptions;
 import com.google.firebase.firestore.Transaction;
@@ -32,10 +34,11 @@ import java.util.Map;
 public class TakeLoanFragment extends Fragment {
 
     private static final String TAG = "TakeLoanFragment";
+    private ViewScope scope; // Loads bound to the current view
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
     private String currentUid;
-    // This stores the currently available limit (LoanLimit - LoanTaken) fetched from DB
+    // This stores the currently available limit (LoanLimit - LoanTaken), LoanLimit from CreditProfile
     private double availableLimit = 0.0;
 
     // UI Elements
@@ -52,6 +55,7 @@ public class TakeLoanFragment extends Fragment {
                              Bundle savedInstanceState) {
         // Inflate the layout for this fragment (fragment_take_loan.xml)
         View view = inflater.inflate(R.layout.fragment_take_loan, container, false);
+        scope = new ViewScope(TAG);
 
         // Initialize Firebase instances
         mAuth = FirebaseAuth.getInstance();
@@ -105,29 +109,34 @@ public class TakeLoanFragment extends Fragment {
         if (currentUid == null) return;
 
         // Fetch the user's document to calculate available loan limit
-        db.collection("users").document(currentUid).get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        // Retrieve all necessary loan/balance data
-                        Double loanLimit = documentSnapshot.getDouble("loanLimit"); // Max loan allowed (1000.00)
-                        Double loanTaken = documentSnapshot.getDouble("loanTaken"); // Current outstanding loan (0.00 initially)
-
-                        if (loanLimit != null && loanTaken != null) {
-                            // Calculate available limit: LoanLimit - LoanTaken
-                            availableLimit = loanLimit - loanTaken;
-
-                            // Display the available limit with formatting
-                            DecimalFormat df = new DecimalFormat("#,##0.00");
-                            textAvailableLimit.setText("$" + df.format(availableLimit));
-                            Log.d(TAG, "Available limit loaded: " + availableLimit);
-                        }
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.w(TAG, "Error loading limit: ", e);
-                    textAvailableLimit.setText("$0.00");
-                    Toast.makeText(getContext(), "Could not fetch limits.", Toast.LENGTH_SHORT).show();
-                });
+        // (cached copy first, refreshed from the server in the background)
+        CachedReads.document(db.collection("users").document(currentUid), scope.bind(new CachedReads.Callback<DocumentSnapshot>() {
+            @Override
+            public void onResult(DocumentSnapshot documentSnapshot, boolean fromCache) {
+                if (documentSnapshot.exists()) {
+                    // Retrieve all necessary loan/balance data
+                    // Max loan allowed, derived from the account's credit aggregates (O(1), no history read)
+                    double loanLimit = CreditProfile.limitOf(documentSnapshot, new Date());
+                    // Current outstanding loan: principal plus interest accrued up to now
+                    LoanAccrual loan = LoanAccrual.fromSnapshot(documentSnapshot, new Date());
+
+                    // Calculate available limit: LoanLimit - (Principal + Accrued Interest)
+                    availableLimit = Math.max(0.0, loanLimit - loan.getTotalOwed());
+
+                    // Display the available limit with formatting
+                    DecimalFormat df = new DecimalFormat("#,##0.00");
+                    textAvailableLimit.setText("$" + df.format(availableLimit));
+                    Log.d(TAG, "Available limit loaded: " + availableLimit);
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.w(TAG, "Error loading limit: ", e);
+                textAvailableLimit.setText("$0.00");
+                Toast.makeText(getContext(), "Could not fetch limits.", Toast.LENGTH_SHORT).show();
+            }
+        }));
     }
 
     private void processLoan() {
@@ -171,18 +180,26 @@ public class TakeLoanFragment extends Fragment {
         db.runTransaction((Transaction.Function<Void>) transaction -> {
             // Get the user data snapshot within the transaction (locks the data)
             DocumentReference snapshotRef = db.collection("users").document(currentUid);
-            Map<String, Object> userData = transaction.get(snapshotRef).getData();
+            DocumentSnapshot userSnapshot = transaction.get(snapshotRef);
+            Map<String, Object> userData = userSnapshot.getData();
 
             if (userData == null) {
                 throw new RuntimeException("User data not found for loan process.");
             }
 
             // Calculate new balances based on data retrieved above
-            double currentBalance = (Double) userData.get("balance");
-            double currentLoanTaken = (Double) userData.get("loanTaken");
+            long currentBalanceCents = CashBalance.centsOf(userData);
+
+            // Settle interest accrued so far into the document, then add the new principal
+            LoanAccrual newLoan = LoanAccrual.fromSnapshot(userSnapshot, new Date()).withLoan(finalLoanAmount);
+
+            // Re-check against the limit computed from the locked snapshot (the screen's copy may be stale)
+            double loanLimit = CreditProfile.limitOf(userSnapshot, new Date());
+            if (newLoan.getTotalOwed() > loanLimit) {
+                throw new RuntimeException("Loan exceeds the credit limit.");
+            }
 
-            double newBalance = currentBalance + finalLoanAmount; // Loan adds to cash balance
-            double newLoanTaken = currentLoanTaken + finalLoanAmount; // Loan adds to debt balance
+            long newBalanceCents = currentBalanceCents + CashBalance.toCents(finalLoanAmount); // Loan adds to cash balance
 
             // --- Record Loan as Transaction (Income) ---
             Map<String, Object> loanTransaction = new HashMap<>();
@@ -190,15 +207,25 @@ public class TakeLoanFragment extends Fragment {
             loanTransaction.put("amount", finalLoanAmount);
             loanTransaction.put("description", "Loan Disbursed");
             loanTransaction.put("source", "eWallet Bank");
-            loanTransaction.put("timestamp", new Date()); // Record the current date/time
+            Date loanTimestamp = new Date();
+            loanTransaction.put("timestamp", loanTimestamp); // Record the current date/time
+            loanTransaction.put(AtomicTransfer.FIELD_COMMITTED_AT, FieldValue.serverTimestamp());
 
             // Add transaction document to the sub-collection (uses auto-ID)
-            transaction.set(userRef.collection("transactions").document(), loanTransaction);
+            DocumentReference loanTransactionRef = userRef.collection("transactions").document();
+            transaction.set(loanTransactionRef, loanTransaction);
 
             // --- Update Main User Document (Atomic Update) ---
             Map<String, Object> updates = new HashMap<>();
-            updates.put("balance", newBalance);
-            updates.put("loanTaken", newLoanTaken);
+            updates.putAll(CashBalance.fields(newBalanceCents));
+            updates.putAll(newLoan.toFields()); // loanTaken (principal), loanInterest, loanRate, loanAccruedAt
+            // Credit aggregates for the new principal and cash flow; the cached loanLimit is refreshed on the way
+            updates.putAll(CreditProfile.loanIncrements(userSnapshot, 0.0, loanTimestamp));
+            updates.putAll(CreditProfile.flowIncrements("Loan Taken", finalLoanAmount));
+            // Keep the monthly ledger totals/digest in step with the new entry (blind increment, no read)
+            updates.putAll(LedgerDigest.fields(loanTransactionRef.getId(), "Loan Taken", finalLoanAmount,
+                    loanTimestamp, newBalanceCents - currentBalanceCents));
+            updates.put("loanLimit", loanLimit);
 
             // Set the updates on the user document
             transaction.set(userRef, updates, SetOptions.merge());
@@ -206,6 +233,9 @@ public class TakeLoanFragment extends Fragment {
             return null; // Return null to indicate success and commit the transaction
 
         }).addOnSuccessListener(aVoid -> {
+            // Not bound to the view: later reads of this user must see the write even if the screen is gone
+            CachedReads.invalidate("users/" + currentUid);
+        }).addOnSuccessListener(scope.bindSuccess(aVoid -> {
             // --- 4. Success Feedback ---
             Log.d(TAG, "Loan transaction committed successfully.");
             showSuccessAlert(); // Shows success message and navigates back
@@ -213,10 +243,10 @@ public class TakeLoanFragment extends Fragment {
             // Reload the limit display to show the updated debt
             loadAvailableLimit();
 
-        }).addOnFailureListener(e -> {
+        })).addOnFailureListener(scope.bindFailure(e -> {
             Log.e(TAG, "Transaction failure: Loan process failed.", e);
             Toast.makeText(getContext(), "Transaction failed. Please try again.", Toast.LENGTH_LONG).show();
-        });
+        }));
     }
 
     // Custom method to display the alert-type success message and navigate back
@@ -228,4 +258,11 @@ public class TakeLoanFragment extends Fragment {
             getActivity().getSupportFragmentManager().popBackStack();
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void onDestroyView() {
+        // Drops pending callbacks and skips queued work for the view being destroyed
+        scope.close();
+        super.onDestroyView();
+    }
+}
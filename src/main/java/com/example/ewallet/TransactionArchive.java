@@ -0,0 +1,205 @@
+package com.example.ewallet;
+
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compact storage for archived history: users/{uid}/archive/{yyyy-MM} holds every entry of that month
+ * (own transactions and the user's side of shared transfers) as one deflated binary blob, plus plain totals
+ * (count, sum in cents, LedgerDigest digest) so the month can be checked without decoding it.
+ * A month with more than ENTRIES_PER_PART entries continues in {yyyy-MM}.1, .2, ... to stay far below the
+ * 1 MiB document limit. Entry layout: id, type, amount (cents), time offset within the month (ms),
+ * optional description and principalPaid; about 30 bytes per entry after compression, mostly the document id.
+ */
+public final class TransactionArchive {
+
+    public static final String COLLECTION = "archive";
+    public static final int ENTRIES_PER_PART = 4_000;
+
+    private static final byte FORMAT_VERSION = 1;
+    private static final int OTHER_TYPE = 0xFF;
+    private static final int HAS_DESCRIPTION = 1;
+    private static final int HAS_PRINCIPAL_PAID = 2;
+
+    // Known types are stored as one byte
+    private static final String[] TYPES = {
+            "Income", "Loan Taken", "Loan Repayment", "Transfer (Sent)", "Transfer (Received)"
+    };
+
+    private TransactionArchive() {
+        // Static helpers only
+    }
+
+    public static CollectionReference archive(FirebaseFirestore db, String uid) {
+        return db.collection("users").document(uid).collection(COLLECTION);
+    }
+
+    /**
+     * Archive documents whose month overlaps 'bounds', ordered by month. Months are selected by their start:
+     * from the month containing the lower bound up to (excluding) the upper bound.
+     */
+    static Query query(FirebaseFirestore db, String uid, TransactionHistory.Bounds bounds, Query.Direction direction) {
+        Query query = archive(db, uid);
+        if (bounds.lowerBound() != null) {
+            query = query.whereGreaterThanOrEqualTo("monthStart", monthStart(bounds.lowerBound()));
+        }
+        if (bounds.upperBound() != null) {
+            query = query.whereLessThan("monthStart", bounds.upperBound());
+        }
+        return query.orderBy("monthStart", direction);
+    }
+
+    public static String partId(String month, int part) {
+        return part == 0 ? month : month + "." + part;
+    }
+
+    // First instant of the UTC month containing 'date', matching BalanceCheckpoint.monthKey
+    public static Date monthStart(Date date) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTime(date);
+        calendar.set(Calendar.DAY_OF_MONTH, 1);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTime();
+    }
+
+    /**
+     * Builds the document for one part of a month. 'entries' must all belong to that month.
+     */
+    static Map<String, Object> partDocument(String month, Date monthStart, int part, List<LedgerEntry> entries) {
+        long sum = 0L;
+        long digest = 0L;
+        Date first = null;
+        Date last = null;
+        for (LedgerEntry entry : entries) {
+            long cents = LedgerDigest.signedCents(entry.type, entry.amount);
+            sum += cents;
+            digest += LedgerDigest.entryHash(entry.id, cents);
+            if (first == null || entry.timestamp.before(first)) first = entry.timestamp;
+            if (last == null || entry.timestamp.after(last)) last = entry.timestamp;
+        }
+
+        Map<String, Object> document = new HashMap<>();
+        document.put("month", month);
+        document.put("monthStart", monthStart);
+        document.put("part", part);
+        document.put("count", entries.size());
+        document.put("sum", sum);
+        document.put("digest", digest);
+        document.put("firstTimestamp", first);
+        document.put("lastTimestamp", last);
+        document.put("entries", Blob.fromBytes(encode(entries, monthStart)));
+        return document;
+    }
+
+    // Decodes one archive document; a corrupt blob fails loudly rather than silently dropping money
+    public static List<LedgerEntry> decode(DocumentSnapshot document) {
+        Blob blob = document.getBlob("entries");
+        Date monthStart = document.getDate("monthStart");
+        if (blob == null || monthStart == null) return Collections.emptyList();
+        try {
+            return decode(blob.toBytes(), monthStart);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupt archive document " + document.getId(), e);
+        }
+    }
+
+    static byte[] encode(List<LedgerEntry> entries, Date monthStart) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes))) {
+            out.writeByte(FORMAT_VERSION);
+            writeVarLong(out, entries.size());
+            for (LedgerEntry entry : entries) {
+                out.writeUTF(entry.id);
+
+                int typeIndex = typeIndex(entry.type);
+                out.writeByte(typeIndex);
+                if (typeIndex == OTHER_TYPE) out.writeUTF(entry.type);
+
+                writeVarLong(out, Math.round(entry.amount * 100.0));
+                writeVarLong(out, entry.timestamp.getTime() - monthStart.getTime());
+
+                int flags = (entry.description != null ? HAS_DESCRIPTION : 0)
+                        | (entry.principalPaid != null ? HAS_PRINCIPAL_PAID : 0);
+                out.writeByte(flags);
+                if (entry.description != null) out.writeUTF(entry.description);
+                if (entry.principalPaid != null) writeVarLong(out, Math.round(entry.principalPaid * 100.0));
+            }
+        } catch (IOException e) {
+            // In-memory streams do not fail
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static List<LedgerEntry> decode(byte[] data, Date monthStart) throws IOException {
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(data)))) {
+            int version = in.readByte();
+            if (version != FORMAT_VERSION) throw new IOException("Unknown archive format " + version);
+
+            int count = (int) readVarLong(in);
+            List<LedgerEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                int typeIndex = in.readUnsignedByte();
+                String type = typeIndex == OTHER_TYPE ? in.readUTF() : TYPES[typeIndex];
+                double amount = readVarLong(in) / 100.0;
+                Date timestamp = new Date(monthStart.getTime() + readVarLong(in));
+
+                int flags = in.readUnsignedByte();
+                String description = (flags & HAS_DESCRIPTION) != 0 ? in.readUTF() : null;
+                Double principalPaid = (flags & HAS_PRINCIPAL_PAID) != 0 ? readVarLong(in) / 100.0 : null;
+                entries.add(new LedgerEntry(id, type, amount, description, timestamp, principalPaid));
+            }
+            return entries;
+        }
+    }
+
+    private static int typeIndex(String type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i].equals(type)) return i;
+        }
+        return OTHER_TYPE;
+    }
+
+    // Unsigned LEB128: small numbers (most amounts and offsets) take 1-4 bytes instead of 8
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0L;
+        int shift = 0;
+        while (true) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+            shift += 7;
+        }
+    }
+}
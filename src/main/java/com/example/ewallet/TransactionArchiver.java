@@ -0,0 +1,335 @@
+package com.example.ewallet;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Background job that packs history older than a configurable number of whole months into TransactionArchive
+ * documents (one per month) and deletes the originals, so history scans read ~1 document per old month.
+ * Per month: existing archive parts are read and merged with the new entries (by id, so re-running is harmless),
+ * then the first WriteBatch writes the complete archive together with the first deletions; later batches only
+ * delete. At every point each entry is in the archive, in its original document, or both (reads de-duplicate).
+ * Own 'transactions' documents are deleted. A shared transfer is only marked archivedBy this user, and deleted
+ * by whichever party archives it second: after marking, a transaction re-reads the transfer and deletes it if both
+ * parties are in archivedBy, so two parties archiving at the same time cannot both leave it behind.
+ * Monthly ledger totals (LedgerDigest) are left untouched.
+ * Since transfers this user already archived stay in the collection until the other party archives them too,
+ * each direction is read from a cursor (timestamp, id) saved after every successful run, so those transfers
+ * are not fetched again and cannot fill the page.
+ * Runs at most once a week per account and handles a bounded number of documents per run (see runIfDue).
+ */
+public class TransactionArchiver {
+
+    private static final String TAG = "TransactionArchiver";
+    private static final String PREFS_NAME = "transaction_archiver";
+    private static final long RUN_INTERVAL_MS = 7L * 24 * 60 * 60 * 1000; // Once a week
+    public static final int DEFAULT_ARCHIVE_AFTER_MONTHS = 12;
+
+    private static final int FETCH_LIMIT = 1_000; // Originals read per source per run
+    private static final int BATCH_LIMIT = 500;   // Firestore limit for writes per batch
+
+    private final FirebaseFirestore db;
+    private final SharedPreferences prefs;
+    private final String uid;
+
+    // The originals and decoded entries of one month
+    private static final class MonthWork {
+        final Date monthStart;
+        final List<LedgerEntry> entries = new ArrayList<>();
+        final List<DocumentReference> ownDocuments = new ArrayList<>();
+        final List<DocumentSnapshot> transferDocuments = new ArrayList<>();
+
+        MonthWork(Date monthStart) {
+            this.monthStart = monthStart;
+        }
+    }
+
+    public TransactionArchiver(Context context, FirebaseFirestore db, String uid) {
+        this.db = db;
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.uid = uid;
+    }
+
+    // Entry point used by MainActivity: skips the run if this account was archived recently
+    public static void runIfDue(Context context, FirebaseFirestore db, String uid) {
+        TransactionArchiver archiver = new TransactionArchiver(context, db, uid);
+        long lastRun = archiver.prefs.getLong("lastRun_" + uid, 0L);
+        if (System.currentTimeMillis() - lastRun < RUN_INTERVAL_MS) return;
+
+        archiver.run(DEFAULT_ARCHIVE_AFTER_MONTHS).addOnCompleteListener(task -> {
+            if (task.isSuccessful()) {
+                Log.d(TAG, "Archived " + task.getResult() + " document(s).");
+                archiver.prefs.edit().putLong("lastRun_" + uid, System.currentTimeMillis()).apply();
+            } else {
+                Log.w(TAG, "Archiving failed; will retry on next start.", task.getException());
+            }
+        });
+    }
+
+    /**
+     * Archives entries from months that ended at least 'archiveAfterMonths' whole months ago.
+     * Returns the number of original documents archived by this run.
+     */
+    public Task<Integer> run(int archiveAfterMonths) {
+        Date cutoff = cutoff(archiveAfterMonths);
+
+        Query own = db.collection("users").document(uid).collection("transactions");
+
+        Task<QuerySnapshot> ownTask = oldest(own, cutoff).get();
+        Task<QuerySnapshot> sentTask = oldestTransfers("senderUid", cutoff).get();
+        Task<QuerySnapshot> receivedTask = oldestTransfers("recipientUid", cutoff).get();
+
+        return Tasks.whenAllSuccess(ownTask, sentTask, receivedTask).continueWithTask(task -> {
+            if (!task.isSuccessful()) {
+                throw task.getException();
+            }
+
+            // Month id ("yyyy-MM") -> work, oldest month first
+            TreeMap<String, MonthWork> months = new TreeMap<>();
+            for (DocumentSnapshot document : ownTask.getResult().getDocuments()) {
+                LedgerEntry entry = LedgerEntry.fromTransaction(document);
+                if (entry == null) continue; // Malformed entries stay where they are
+                MonthWork work = monthOf(months, entry.timestamp);
+                work.entries.add(entry);
+                work.ownDocuments.add(document.getReference());
+            }
+            List<DocumentSnapshot> transfers = new ArrayList<>(sentTask.getResult().getDocuments());
+            transfers.addAll(receivedTask.getResult().getDocuments());
+            for (DocumentSnapshot document : transfers) {
+                LedgerEntry entry = LedgerEntry.fromTransfer(document, uid);
+                if (entry == null || archivedBy(document).contains(uid)) continue; // Already in our archive
+                MonthWork work = monthOf(months, entry.timestamp);
+                work.entries.add(entry);
+                work.transferDocuments.add(document);
+            }
+
+            // One month after the other keeps at most one month's entries in flight
+            Task<Integer> chain = Tasks.forResult(0);
+            for (Map.Entry<String, MonthWork> month : months.entrySet()) {
+                chain = chain.continueWithTask(previous -> {
+                    if (!previous.isSuccessful()) {
+                        throw previous.getException();
+                    }
+                    int archivedSoFar = previous.getResult();
+                    return archiveMonth(month.getKey(), month.getValue())
+                            .continueWith(done -> {
+                                if (!done.isSuccessful()) {
+                                    throw done.getException();
+                                }
+                                return archivedSoFar + done.getResult();
+                            });
+                });
+            }
+
+            // Every transfer read is now archived by us (or malformed): the next run starts after the last one
+            return chain.continueWith(done -> {
+                if (!done.isSuccessful()) {
+                    throw done.getException();
+                }
+                saveCursor("senderUid", sentTask.getResult());
+                saveCursor("recipientUid", receivedTask.getResult());
+                return done.getResult();
+            });
+        });
+    }
+
+    private Task<Integer> archiveMonth(String month, MonthWork work) {
+        return TransactionArchive.archive(db, uid).whereEqualTo("month", month).get().continueWithTask(task -> {
+            if (!task.isSuccessful()) {
+                throw task.getException();
+            }
+
+            // --- 1. Merge with what is already archived for this month ---
+            Map<String, LedgerEntry> merged = new LinkedHashMap<>();
+            int existingParts = 0;
+            for (DocumentSnapshot part : task.getResult().getDocuments()) {
+                for (LedgerEntry entry : TransactionArchive.decode(part)) {
+                    merged.put(entry.id, entry);
+                }
+                existingParts++;
+            }
+            for (LedgerEntry entry : work.entries) {
+                merged.putIfAbsent(entry.id, entry);
+            }
+            List<LedgerEntry> entries = new ArrayList<>(merged.values());
+            Collections.sort(entries, TransactionHistory.HISTORY_ORDER);
+
+            // --- 2. First batch: the whole archive for the month plus as many deletions as still fit ---
+            List<WriteBatch> batches = new ArrayList<>();
+            WriteBatch batch = db.batch();
+            int writes = 0;
+            int parts = 0;
+            for (int from = 0; from < entries.size(); from += TransactionArchive.ENTRIES_PER_PART) {
+                List<LedgerEntry> partEntries = entries.subList(from, Math.min(from + TransactionArchive.ENTRIES_PER_PART, entries.size()));
+                batch.set(TransactionArchive.archive(db, uid).document(TransactionArchive.partId(month, parts)),
+                        TransactionArchive.partDocument(month, work.monthStart, parts, new ArrayList<>(partEntries)));
+                parts++;
+                writes++;
+            }
+            for (int stale = parts; stale < existingParts; stale++) {
+                // Cannot happen while entries are only added, kept so parts never go stale
+                batch.delete(TransactionArchive.archive(db, uid).document(TransactionArchive.partId(month, stale)));
+                writes++;
+            }
+
+            // --- 3. Originals: own documents are deleted, shared transfers marked or deleted ---
+            List<DocumentReference> marked = new ArrayList<>();
+            for (DocumentReference document : work.ownDocuments) {
+                if (writes == BATCH_LIMIT) {
+                    batches.add(batch);
+                    batch = db.batch();
+                    writes = 0;
+                }
+                batch.delete(document);
+                writes++;
+            }
+            for (DocumentSnapshot transfer : work.transferDocuments) {
+                if (writes == BATCH_LIMIT) {
+                    batches.add(batch);
+                    batch = db.batch();
+                    writes = 0;
+                }
+                String otherUid = uid.equals(transfer.getString("senderUid"))
+                        ? transfer.getString("recipientUid") : transfer.getString("senderUid");
+                if (archivedBy(transfer).contains(otherUid)) {
+                    batch.delete(transfer.getReference()); // Both parties have it archived now
+                } else {
+                    batch.update(transfer.getReference(), "archivedBy", FieldValue.arrayUnion(uid));
+                    marked.add(transfer.getReference());
+                }
+                writes++;
+            }
+            batches.add(batch);
+
+            // The archive must be committed before any later batch removes more originals
+            Task<Void> commits = batches.get(0).commit();
+            for (int i = 1; i < batches.size(); i++) {
+                WriteBatch next = batches.get(i);
+                commits = commits.continueWithTask(previous -> {
+                    if (!previous.isSuccessful()) {
+                        throw previous.getException();
+                    }
+                    return next.commit();
+                });
+            }
+
+            // --- 4. The other party may have marked a transfer since it was read: settle it now ---
+            commits = commits.continueWithTask(previous -> {
+                if (!previous.isSuccessful()) {
+                    throw previous.getException();
+                }
+                List<Task<Void>> settled = new ArrayList<>();
+                for (DocumentReference transfer : marked) {
+                    settled.add(deleteIfArchivedByBoth(transfer));
+                }
+                return Tasks.whenAll(settled);
+            });
+
+            int archived = work.ownDocuments.size() + work.transferDocuments.size();
+            int partCount = parts;
+            return commits.continueWith(done -> {
+                if (!done.isSuccessful()) {
+                    throw done.getException();
+                }
+                Log.d(TAG, "Month " + month + ": " + entries.size() + " entries in " + partCount + " part(s).");
+                return archived;
+            });
+        });
+    }
+
+    // Runs after this user's mark is committed. Of two parties archiving at once, the one whose transaction runs
+    // last sees both marks; if both see them, the later delete finds no document and does nothing
+    private Task<Void> deleteIfArchivedByBoth(DocumentReference transferRef) {
+        return db.runTransaction((Transaction.Function<Void>) transaction -> {
+            DocumentSnapshot transfer = transaction.get(transferRef);
+            if (!transfer.exists()) return null;
+            List<String> archivedBy = archivedBy(transfer);
+            if (archivedBy.contains(transfer.getString("senderUid"))
+                    && archivedBy.contains(transfer.getString("recipientUid"))) {
+                transaction.delete(transferRef);
+            }
+            return null;
+        });
+    }
+
+    private static Query oldest(Query query, Date cutoff) {
+        return query.whereLessThan("timestamp", cutoff)
+                .orderBy("timestamp", Query.Direction.ASCENDING)
+                .limit(FETCH_LIMIT);
+    }
+
+    // Transfers of one direction ('senderUid' or 'recipientUid') after the saved cursor, in (timestamp, id) order
+    private Query oldestTransfers(String partyField, Date cutoff) {
+        Query query = db.collection(TransactionHistory.TRANSFERS).whereEqualTo(partyField, uid)
+                .whereLessThan("timestamp", cutoff)
+                .orderBy("timestamp", Query.Direction.ASCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.ASCENDING);
+        String afterId = prefs.getString(cursorKey("cursorId_", partyField), null);
+        if (afterId != null) {
+            query = query.startAfter(new Date(prefs.getLong(cursorKey("cursorTime_", partyField), 0L)), afterId);
+        }
+        return query.limit(FETCH_LIMIT);
+    }
+
+    private void saveCursor(String partyField, QuerySnapshot page) {
+        if (page.isEmpty()) return;
+        DocumentSnapshot last = page.getDocuments().get(page.size() - 1);
+        Date timestamp = last.getDate("timestamp");
+        if (timestamp == null) return; // Cannot happen: the query filters on it
+        prefs.edit()
+                .putLong(cursorKey("cursorTime_", partyField), timestamp.getTime())
+                .putString(cursorKey("cursorId_", partyField), last.getId())
+                .apply();
+    }
+
+    private String cursorKey(String prefix, String partyField) {
+        return prefix + partyField + "_" + uid;
+    }
+
+    private static MonthWork monthOf(TreeMap<String, MonthWork> months, Date timestamp) {
+        String month = BalanceCheckpoint.monthKey(timestamp);
+        MonthWork work = months.get(month);
+        if (work == null) {
+            work = new MonthWork(TransactionArchive.monthStart(timestamp));
+            months.put(month, work);
+        }
+        return work;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> archivedBy(DocumentSnapshot transfer) {
+        Object value = transfer.get("archivedBy");
+        return value instanceof List ? (List<String>) value : Collections.emptyList();
+    }
+
+    // Start of the UTC month 'archiveAfterMonths' months before the current one: everything earlier is archived
+    private static Date cutoff(int archiveAfterMonths) {
+        Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+        calendar.setTime(TransactionArchive.monthStart(new Date()));
+        calendar.add(Calendar.MONTH, -archiveAfterMonths);
+        return calendar.getTime();
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.ewallet;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a user's history by merging the per-user 'transactions' sub-collection with the shared top-level
+ * 'transfers' collection (one document per P2P transfer, queried by senderUid and by recipientUid), plus the
+ * compact monthly documents that TransactionArchiver packed old entries into (decoded on demand).
+ * The transfers queries need composite indexes on (senderUid, timestamp) and (recipientUid, timestamp), and for
+ * the replay after a checkpoint on (senderUid, committedAt) and (recipientUid, committedAt).
+ */
+public final class TransactionHistory {
+
+    public static final String TRANSFERS = "transfers";
+
+    /**
+     * Range applied identically to all queries; archived months are selected by the same range and every
+     * loaded entry is filtered with contains(). The cursor is on the server commit time, not the writer's clock:
+     * an entry from a device whose clock runs behind can commit after a checkpoint yet carry an earlier
+     * timestamp. Entries are replayed in (committedAt, id) order, so the document id separates entries that
+     * share a commit time. Entries without 'committedAt' (written before it existed) only match a full replay.
+     */
+    public static final class Bounds {
+        private final Date after;      // Exclusive (committedAt, id) cursor, or null
+        private final String afterId;  // Tie-breaker for entries at exactly 'after'; null excludes all of them
+        private final Date from;       // Inclusive lower bound, or null
+        private final Date until;      // Exclusive upper bound, or null
+        private final boolean replay;  // Sorted in replay order rather than history order
+
+        private Bounds(Date after, String afterId, Date from, Date until, boolean replay) {
+            this.after = after;
+            this.afterId = afterId;
+            this.from = from;
+            this.until = until;
+            this.replay = replay;
+        }
+
+        // Entries after the cursor (committedAt, id) in replay order (replay after a checkpoint).
+        // Queried inclusively on committedAt; entries at 'after' with an id up to 'afterId' are filtered out
+        public static Bounds after(Date after, String afterId) {
+            return new Bounds(after, afterId, null, null, true);
+        }
+
+        // Entries in [from, until) (one ledger month)
+        public static Bounds between(Date from, Date until) {
+            return new Bounds(null, null, from, until, false);
+        }
+
+        public Query apply(Query query) {
+            if (after != null) query = query.whereGreaterThanOrEqualTo(AtomicTransfer.FIELD_COMMITTED_AT, after);
+            if (from != null) query = query.whereGreaterThanOrEqualTo("timestamp", from);
+            if (until != null) query = query.whereLessThan("timestamp", until);
+            return query;
+        }
+
+        public boolean contains(LedgerEntry entry) {
+            return isAfterCursor(entry.committedAt, entry.id)
+                    && (from == null || !entry.timestamp.before(from))
+                    && (until == null || entry.timestamp.before(until));
+        }
+
+        private boolean isAfterCursor(Date committedAt, String id) {
+            if (after == null) return true;
+            int byTime = committedAt.compareTo(after);
+            if (byTime != 0) return byTime > 0;
+            return afterId != null && id.compareTo(afterId) > 0;
+        }
+
+        // Field the queries are ordered by: Firestore orders on the field a range filter is on. Without a cursor
+        // it stays 'timestamp', since ordering on committedAt would drop the entries that have none
+        String orderField() {
+            return after != null ? AtomicTransfer.FIELD_COMMITTED_AT : "timestamp";
+        }
+
+        Comparator<LedgerEntry> order() {
+            return replay ? REPLAY_ORDER : HISTORY_ORDER;
+        }
+
+        Date lowerBound() {
+            return after != null ? after : from;
+        }
+
+        Date upperBound() {
+            return until;
+        }
+
+        boolean isAll() {
+            return after == null && from == null && until == null;
+        }
+    }
+
+    // No extra constraints: the full history
+    public static final Bounds ALL = new Bounds(null, null, null, null, false);
+
+    // The full history in replay order (replay when there is no checkpoint yet)
+    public static final Bounds ALL_REPLAY = new Bounds(null, null, null, null, true);
+
+    // History order: by timestamp, ties broken by document id (what the history screens show)
+    public static final Comparator<LedgerEntry> HISTORY_ORDER = (a, b) -> {
+        int byTime = a.timestamp.compareTo(b.timestamp);
+        return byTime != 0 ? byTime : a.id.compareTo(b.id);
+    };
+
+    // Replay order: by server commit time, ties broken by document id (the order checkpoints record their cursor in)
+    public static final Comparator<LedgerEntry> REPLAY_ORDER = (a, b) -> {
+        int byTime = a.committedAt.compareTo(b.committedAt);
+        return byTime != 0 ? byTime : a.id.compareTo(b.id);
+    };
+
+    private TransactionHistory() {
+        // Static helpers only
+    }
+
+    /**
+     * Loads up to 'limit' entries (0 = no limit) within 'bounds', sorted by timestamp (by commit time after a cursor).
+     * Each source is ordered and limited on the server, so at most 4 * limit documents are read
+     * (an archived month counts as one document however many entries it holds).
+     */
+    public static Task<List<LedgerEntry>> load(FirebaseFirestore db, String uid, Bounds bounds,
+                                               boolean newestFirst, int limit) {
+        return load(db, uid, bounds, newestFirst, limit, Source.DEFAULT);
+    }
+
+    /**
+     * Same as above, reading from the given source (Source.CACHE for the first paint, see CachedReads).
+     */
+    public static Task<List<LedgerEntry>> load(FirebaseFirestore db, String uid, Bounds bounds,
+                                               boolean newestFirst, int limit, Source source) {
+        Query.Direction direction = newestFirst ? Query.Direction.DESCENDING : Query.Direction.ASCENDING;
+        String orderField = bounds.orderField();
+
+        Query ownEntries = bounds.apply(db.collection("users").document(uid).collection("transactions"));
+        Query sent = bounds.apply(db.collection(TRANSFERS).whereEqualTo("senderUid", uid));
+        Query received = bounds.apply(db.collection(TRANSFERS).whereEqualTo("recipientUid", uid));
+
+        Task<QuerySnapshot> ownTask = DocumentReads.counted(
+                limited(ownEntries.orderBy(orderField, direction), limit).get(source));
+        Task<QuerySnapshot> sentTask = DocumentReads.counted(
+                limited(sent.orderBy(orderField, direction), limit).get(source));
+        Task<QuerySnapshot> receivedTask = DocumentReads.counted(
+                limited(received.orderBy(orderField, direction), limit).get(source));
+        // Every archived month holds at least one entry, so 'limit' months are enough (only exact without bounds:
+        // a boundary month may hold no entry inside the range)
+        Task<QuerySnapshot> archiveTask = DocumentReads.counted(
+                limited(TransactionArchive.query(db, uid, bounds, direction), bounds.isAll() ? limit : 0).get(source));
+
+        return Tasks.whenAllSuccess(ownTask, sentTask, receivedTask, archiveTask).continueWith(task -> {
+            if (!task.isSuccessful()) {
+                throw task.getException();
+            }
+
+            // Keyed by id: a shared transfer stays in 'transfers' until both parties archived it,
+            // so it can be returned by both its archive month and the live query
+            Map<String, LedgerEntry> byId = new HashMap<>();
+            for (DocumentSnapshot document : archiveTask.getResult().getDocuments()) {
+                for (LedgerEntry entry : TransactionArchive.decode(document)) {
+                    if (bounds.contains(entry)) byId.put(entry.id, entry);
+                }
+            }
+            for (DocumentSnapshot document : ownTask.getResult().getDocuments()) {
+                addIfContained(byId, bounds, LedgerEntry.fromTransaction(document));
+            }
+            for (DocumentSnapshot document : sentTask.getResult().getDocuments()) {
+                addIfContained(byId, bounds, LedgerEntry.fromTransfer(document, uid));
+            }
+            for (DocumentSnapshot document : receivedTask.getResult().getDocuments()) {
+                addIfContained(byId, bounds, LedgerEntry.fromTransfer(document, uid));
+            }
+            List<LedgerEntry> entries = new ArrayList<>(byId.values());
+            Comparator<LedgerEntry> order = bounds.order();
+            Collections.sort(entries, newestFirst ? Collections.reverseOrder(order) : order);
+
+            if (limit > 0 && entries.size() > limit) {
+                return new ArrayList<>(entries.subList(0, limit));
+            }
+            return entries;
+        });
+    }
+
+    // The cursor filter drops entries at the cursor's commit time that were already included before it
+    private static void addIfContained(Map<String, LedgerEntry> byId, Bounds bounds, LedgerEntry entry) {
+        if (entry != null && bounds.contains(entry)) byId.putIfAbsent(entry.id, entry);
+    }
+
+    private static Query limited(Query query, int limit) {
+        return limit > 0 ? query.limit(limit) : query;
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.ewallet;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import androidx.asynclayoutinflater.view.AsyncLayoutInflater;
+
+import java.util.ArrayDeque;
+
+/**
+ * A small pool of pre-inflated transaction_list_item rows for the Home screen feed.
+ * MainActivity pre-inflates the rows with AsyncLayoutInflater once the main thread is idle after startup,
+ * HomeFragment takes rows from here instead of inflating them on the main thread, and gives them back
+ * in onDestroyView so the next HomeFragment instance can rebind them.
+ * Counters make main-thread inflation time and time-to-first-populated-home-screen measurable.
+ */
+public final class TransactionRowPool {
+
+    private static final String TAG = "TransactionRowPool";
+
+    // Home shows at most 5 recent transactions (see HomeFragment.loadRecentTransactions)
+    public static final int POOL_SIZE = 5;
+
+    private static final ArrayDeque<View> pool = new ArrayDeque<>();
+    private static Context poolContext; // Rows belong to the Activity that pre-inflated them
+
+    // --- Metrics ---
+    private static int pooledHits = 0;
+    private static int mainThreadInflations = 0;
+    private static long mainThreadInflateNanos = 0L;
+    private static long firstPopulatedMs = -1L;
+
+    private TransactionRowPool() {
+        // Static helpers only
+    }
+
+    /**
+     * Holder kept in the row's tag so rebinding does not repeat findViewById.
+     */
+    public static final class RowHolder {
+        public final TextView title;
+        public final TextView date;
+        public final TextView amount;
+
+        RowHolder(View row) {
+            title = row.findViewById(R.id.transaction_title);
+            date = row.findViewById(R.id.transaction_date);
+            amount = row.findViewById(R.id.transaction_amount);
+        }
+    }
+
+    /**
+     * Schedules asynchronous inflation of POOL_SIZE rows once the main thread has nothing else to do.
+     * Must be called on the main thread (MainActivity.onCreate).
+     */
+    public static void prewarm(Context activityContext) {
+        if (poolContext != activityContext) {
+            clear();
+            poolContext = activityContext;
+        }
+
+        Looper.myQueue().addIdleHandler(() -> {
+            if (poolContext != activityContext) return false; // Activity was replaced meanwhile
+
+            AsyncLayoutInflater asyncInflater = new AsyncLayoutInflater(activityContext);
+            // A throwaway LinearLayout parent gives the rows the right LayoutParams type
+            LinearLayout paramsParent = new LinearLayout(activityContext);
+            for (int i = pool.size(); i < POOL_SIZE; i++) {
+                asyncInflater.inflate(R.layout.transaction_list_item, paramsParent, (view, resid, parent) -> {
+                    if (poolContext == activityContext && pool.size() < POOL_SIZE) {
+                        view.setTag(new RowHolder(view));
+                        pool.push(view);
+                    }
+                });
+            }
+            return false; // Run once
+        });
+    }
+
+    /**
+     * Returns a pooled row if one is ready, otherwise inflates synchronously (timed as main-thread inflation).
+     */
+    public static View acquire(LayoutInflater inflater, ViewGroup parent) {
+        if (inflater.getContext() == poolContext || parent.getContext() == poolContext) {
+            View pooled = pool.poll();
+            if (pooled != null) {
+                pooledHits++;
+                return pooled;
+            }
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        View row = inflater.inflate(R.layout.transaction_list_item, parent, false);
+        row.setTag(new RowHolder(row));
+        mainThreadInflateNanos += SystemClock.elapsedRealtimeNanos() - start;
+        mainThreadInflations++;
+        return row;
+    }
+
+    // Gives a detached row back to the pool for the next Home screen instance
+    public static void release(View row) {
+        if (row.getContext() == poolContext && row.getParent() == null && pool.size() < POOL_SIZE) {
+            pool.push(row);
+        }
+    }
+
+    // Drops all pooled rows (called when the owning Activity is destroyed to avoid leaking it)
+    public static void clear() {
+        pool.clear();
+        poolContext = null;
+    }
+
+    /**
+     * Records the first time the Home feed was populated, measured from process start.
+     */
+    public static void markHomePopulated() {
+        if (firstPopulatedMs >= 0) return;
+        firstPopulatedMs = SystemClock.elapsedRealtime() - android.os.Process.getStartElapsedRealtime();
+        Log.d(TAG, "Time to first populated home screen: " + firstPopulatedMs + " ms. " + statsSummary());
+    }
+
+    public static String statsSummary() {
+        return "Pooled rows used: " + pooledHits
+                + ", main-thread inflations: " + mainThreadInflations
+                + " (" + (mainThreadInflateNanos / 1000) + " us total)";
+    }
+}
@@ -5,7 +5,9 @@ import android.graphics.Color;
 import android.os.Bundle;
 import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentTransaction;
+import android.text.Editable;
 import android.text.TextUtils;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -13,21 +15,20 @@ import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.ImageView;
+import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.SetOptions;
 import com.google.firebase.firestore.Transaction;
 import com.google.firebase.firestore.QuerySnapshot;
 
 import java.text.DecimalFormat;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 /**
  * A Fragment for peer-to-peer (P2P) transfers within the eWallet system.
@@ -36,6 +37,7 @@ import java.util.Map;
 public class TransferFragment extends Fragment {
 
     private static final String TAG = "TransferFragment";
+    private ViewScope scope; // Loads bound to the current view
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
     private String currentUid;
@@ -45,6 +47,8 @@ public class TransferFragment extends Fragment {
     // UI Elements
     private EditText inputRecipientId, inputTransferAmount, inputDescription;
     private Button btnConfirmTransfer, btnOtherBankTransfer;
+    private LinearLayout recipientSuggestions;
+    private RecipientSuggester suggester; // As-you-type recipient suggestions
 
     // Data storage for the transaction
     private String recipientUid = null;
@@ -59,6 +63,7 @@ public class TransferFragment extends Fragment {
                              Bundle savedInstanceState) {
         // Inflate the layout for this fragment (fragment_transfer.xml)
         View view = inflater.inflate(R.layout.fragment_transfer, container, false);
+        scope = new ViewScope(TAG);
 
         // Initialize Firebase
         mAuth = FirebaseAuth.getInstance();
@@ -71,9 +76,11 @@ public class TransferFragment extends Fragment {
         inputDescription = view.findViewById(R.id.input_description);
         btnConfirmTransfer = view.findViewById(R.id.btn_confirm_transfer);
         btnOtherBankTransfer = view.findViewById(R.id.btn_other_bank_transfer);
+        recipientSuggestions = view.findViewById(R.id.recipient_suggestions);
 
         // Load the sender's current balance and custom User ID immediately
         loadSenderBalance();
+        setupRecipientSuggestions();
 
         // Setup Button Listeners
         btnConfirmTransfer.setOnClickListener(v -> searchRecipientAndProcessTransfer());
@@ -83,6 +90,13 @@ public class TransferFragment extends Fragment {
             Toast.makeText(getContext(), "Other Bank Transfer: Feature coming soon!", Toast.LENGTH_SHORT).show();
         });
 
+        // Ask one or more users for money instead of sending it
+        view.findViewById(R.id.link_payment_requests).setOnClickListener(v -> {
+            if (getActivity() != null) {
+                ((MainActivity) getActivity()).loadFragment(new PaymentRequestsFragment(), true);
+            }
+        });
+
         // Back Button Logic: Pop fragment off the stack
         view.findViewById(R.id.btn_back).setOnClickListener(v -> {
             if (getActivity() != null) {
@@ -96,24 +110,89 @@ public class TransferFragment extends Fragment {
     private void loadSenderBalance() {
         if (currentUid == null) return;
 
-        // Fetch the sender's document to check cash balance and get user ID
-        db.collection("users").document(currentUid).get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        Number balanceNum = (Number) documentSnapshot.get("balance");
-                        String customId = documentSnapshot.getString("userId");
-
-                        if (balanceNum != null && customId != null) {
-                            currentCashBalance = balanceNum.doubleValue();
-                            senderCustomUserId = customId; // Store sender's custom ID
-                            Log.d(TAG, "Sender balance and ID loaded: " + currentCashBalance);
-                        }
+        // Fetch the sender's document to check cash balance and get user ID (cached copy first).
+        // Only used for input checks: the transfer transaction itself re-reads the balance on the server
+        CachedReads.document(db.collection("users").document(currentUid), scope.bind(new CachedReads.Callback<DocumentSnapshot>() {
+            @Override
+            public void onResult(DocumentSnapshot documentSnapshot, boolean fromCache) {
+                if (documentSnapshot.exists()) {
+                    String customId = documentSnapshot.getString("userId");
+
+                    if (CashBalance.isPresent(documentSnapshot) && customId != null) {
+                        currentCashBalance = CashBalance.toDollars(CashBalance.centsOf(documentSnapshot));
+                        senderCustomUserId = customId; // Store sender's custom ID
+                        Log.d(TAG, "Sender balance and ID loaded: " + currentCashBalance);
                     }
-                })
-                .addOnFailureListener(e -> {
-                    Log.w(TAG, "Error loading sender balance: ", e);
-                    Toast.makeText(getContext(), "Could not load balance for transfer checks.", Toast.LENGTH_SHORT).show();
-                });
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.w(TAG, "Error loading sender balance: ", e);
+                Toast.makeText(getContext(), "Could not load balance for transfer checks.", Toast.LENGTH_SHORT).show();
+            }
+        }));
+    }
+
+    private void setupRecipientSuggestions() {
+        if (currentUid == null) return;
+
+        suggester = new RecipientSuggester(db, currentUid, this::showSuggestions);
+        scope.onClose(suggester::close);
+        suggester.loadHistory(scope);
+
+        inputRecipientId.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                suggester.onQueryChanged(s.toString());
+            }
+        });
+    }
+
+    // Called synchronously for known prefixes, so rows are reused rather than inflated per keystroke
+    private void showSuggestions(String query, List<RecipientTrie.Entry> suggestions) {
+        // Nothing to offer, or the input already holds the only match
+        if (suggestions.isEmpty() || (suggestions.size() == 1 && suggestions.get(0).userId.equals(query))) {
+            recipientSuggestions.setVisibility(View.GONE);
+            return;
+        }
+
+        while (recipientSuggestions.getChildCount() < suggestions.size()) {
+            recipientSuggestions.addView(newSuggestionRow());
+        }
+        for (int i = 0; i < recipientSuggestions.getChildCount(); i++) {
+            TextView row = (TextView) recipientSuggestions.getChildAt(i);
+            if (i < suggestions.size()) {
+                row.setText(suggestions.get(i).userId);
+                row.setVisibility(View.VISIBLE);
+            } else {
+                row.setVisibility(View.GONE);
+            }
+        }
+        recipientSuggestions.setVisibility(View.VISIBLE);
+    }
+
+    private TextView newSuggestionRow() {
+        TextView row = new TextView(getContext());
+        int padding = (int) (12 * getResources().getDisplayMetrics().density);
+        row.setPadding(padding + padding / 3, padding, padding, padding);
+        row.setTextColor(Color.WHITE);
+        row.setTextSize(16);
+        row.setOnClickListener(v -> {
+            // Picking a suggestion fills the input; the TextWatcher then hides the list
+            String picked = ((TextView) v).getText().toString();
+            inputRecipientId.setText(picked);
+            inputRecipientId.setSelection(picked.length());
+        });
+        return row;
     }
 
     private void searchRecipientAndProcessTransfer() {
@@ -156,92 +235,67 @@ public class TransferFragment extends Fragment {
         final double finalTransferAmount = transferAmount;
         final String finalDescription = TextUtils.isEmpty(descriptionStr) ? "P2P Transfer" : descriptionStr;
 
+        // A suggested recipient (past counterparty or prefix search hit) already comes with its uid: skip the lookup.
+        // AtomicTransfer's update() still fails the transaction if that account has been deleted since
+        String knownUid = suggester != null ? suggester.uidOf(recipientIdStr) : null;
+        if (knownUid != null) {
+            recipientUid = knownUid;
+            recipientUserId = recipientIdStr;
+            executeAtomicTransfer(finalTransferAmount, finalDescription);
+            return;
+        }
+
         // --- 3. Search for Recipient in Firestore ---
         db.collection("users")
                 .whereEqualTo("userId", recipientIdStr) // Search using the custom User ID
                 .limit(1)
                 .get()
                 .addOnSuccessListener(querySnapshot -> {
+                    // Not bound to the view: the user confirmed the transfer, so it runs even if the screen is gone
+                    // (executeAtomicTransfer binds its own feedback)
+                    if (querySnapshot.isEmpty()) return;
+
+                    // Recipient found, get their UID (Document ID)
+                    DocumentReference recipientDoc = querySnapshot.getDocuments().get(0).getReference();
+                    recipientUid = recipientDoc.getId();
+                    recipientUserId = recipientIdStr;
+
+                    // Proceed with the atomic double-entry transaction
+                    executeAtomicTransfer(finalTransferAmount, finalDescription);
+                })
+                .addOnSuccessListener(scope.bindSuccess(querySnapshot -> {
                     if (querySnapshot.isEmpty()) {
                         Toast.makeText(getContext(), "Recipient User ID not found.", Toast.LENGTH_LONG).show();
-                    } else {
-                        // Recipient found, get their UID (Document ID)
-                        DocumentReference recipientDoc = querySnapshot.getDocuments().get(0).getReference();
-                        recipientUid = recipientDoc.getId();
-                        recipientUserId = recipientIdStr;
-
-                        // Proceed with the atomic double-entry transaction
-                        executeAtomicTransfer(finalTransferAmount, finalDescription);
                     }
-                })
-                .addOnFailureListener(e -> {
+                }))
+                .addOnFailureListener(scope.bindFailure(e -> {
                     Log.e(TAG, "Recipient search failed: ", e);
                     Toast.makeText(getContext(), "Error searching recipient.", Toast.LENGTH_SHORT).show();
-                });
+                }));
     }
 
     private void executeAtomicTransfer(double amount, String description) {
         // --- 4. Atomic Double-Entry Transaction ---
-
-        DocumentReference senderRef = db.collection("users").document(currentUid);
-        DocumentReference recipientRef = db.collection("users").document(recipientUid);
-
         db.runTransaction((Transaction.Function<Void>) transaction -> {
-            // A. Get Sender's data and B. Get Recipient's data (Essential for transaction integrity)
-            Map<String, Object> senderData = transaction.get(senderRef).getData();
-            Map<String, Object> recipientData = transaction.get(recipientRef).getData();
-
-            if (senderData == null || recipientData == null) {
-                throw new RuntimeException("Sender or Recipient data not found.");
-            }
-
-            // --- DEBIT SENDER ---
-            double senderBalance = ((Number) senderData.get("balance")).doubleValue();
-            double newSenderBalance = senderBalance - amount;
-
-            Map<String, Object> senderUpdates = new HashMap<>();
-            senderUpdates.put("balance", newSenderBalance);
-            transaction.set(senderRef, senderUpdates, SetOptions.merge());
-
-            // --- CREDIT RECIPIENT ---
-            double recipientBalance = ((Number) recipientData.get("balance")).doubleValue();
-            double newRecipientBalance = recipientBalance + amount;
-
-            Map<String, Object> recipientUpdates = new HashMap<>();
-            recipientUpdates.put("balance", newRecipientBalance);
-            transaction.set(recipientRef, recipientUpdates, SetOptions.merge());
-
-            // --- RECORD SENDER TRANSACTION (Expense) ---
-            Map<String, Object> senderTransaction = new HashMap<>();
-            senderTransaction.put("type", "Transfer (Sent)");
-            senderTransaction.put("amount", amount);
-            senderTransaction.put("description", description);
-            senderTransaction.put("source", "eWallet Bank"); // CORRECTED: Set Source to eWallet Bank
-            senderTransaction.put("timestamp", new Date());
-            transaction.set(senderRef.collection("transactions").document(), senderTransaction);
-
-            // --- RECORD RECIPIENT TRANSACTION (Income) ---
-            Map<String, Object> recipientTransaction = new HashMap<>();
-            recipientTransaction.put("type", "Transfer (Received)");
-            recipientTransaction.put("amount", amount);
-            recipientTransaction.put("description", description);
-            recipientTransaction.put("source", "eWallet Bank"); // CORRECTED: Set Source to eWallet Bank
-            recipientTransaction.put("timestamp", new Date());
-            transaction.set(recipientRef.collection("transactions").document(), recipientTransaction);
-
+            // Debit, blind credit, shared transfer record and ledger digests (see AtomicTransfer)
+            AtomicTransfer.apply(transaction, db, currentUid, senderCustomUserId, recipientUid, recipientUserId,
+                    amount, description);
             return null; // Commit transaction
 
         }).addOnSuccessListener(aVoid -> {
+            // Not bound to the view: later reads of this user must see the write even if the screen is gone
+            CachedReads.invalidate("users/" + currentUid);
+        }).addOnSuccessListener(scope.bindSuccess(aVoid -> {
             // --- 5. Success Feedback and Splash Screen Display ---
             Log.d(TAG, "Atomic transfer successful.");
 
             // Navigate to the success splash screen
             showTransferSplash(recipientUserId, amount, description, senderCustomUserId); // Pass custom sender ID
 
-        }).addOnFailureListener(e -> {
+        })).addOnFailureListener(scope.bindFailure(e -> {
             Log.e(TAG, "Atomic transfer failed: ", e);
             Toast.makeText(getContext(), "Transfer failed. Please check network/balance.", Toast.LENGTH_LONG).show();
-        });
+        }));
     }
 
     private void showTransferSplash(String recipientId, double amount, String description, String senderId) {
@@ -262,4 +316,11 @@ public class TransferFragment extends Fragment {
             ft.commit();
         }
     }
-}
\ No newline at end of file
+
+    @Override
+    public void onDestroyView() {
+        // Drops pending callbacks and skips queued work for the view being destroyed
+        scope.close();
+        super.onDestroyView();
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.ewallet;
+
+import android.util.Log;
+
+import com.google.android.gms.tasks.OnCompleteListener;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Binds a fragment's data loads to its view: opened in onCreateView, closed in onDestroyView.
+ * After close, bound callbacks are dropped instead of touching a dead view, listeners registered through
+ * onClose() are removed, and chained work checks checkActive() so the next query or the aggregation is never started
+ * (Firestore reads already on the wire cannot be aborted, but nothing downstream of them runs).
+ * Process-wide counters show how much wasted work this avoided (logged on every close).
+ */
+public final class ViewScope {
+
+    private static final String TAG = "ViewScope";
+
+    private static final AtomicLong droppedResults = new AtomicLong();  // Callbacks not delivered to a dead view
+    private static final AtomicLong skippedStages = new AtomicLong();   // Queries/aggregations never started
+    private static final AtomicLong removedListeners = new AtomicLong(); // onClose() actions run
+
+    private final String owner;
+    private final List<Runnable> closeActions = new ArrayList<>();
+    private volatile boolean closed;
+
+    public ViewScope(String owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * For continuations: throws CancellationException once the view is gone, so the rest of the chain
+     * (further queries, aggregation) is skipped and the final callback sees a cancelled task.
+     */
+    public void checkActive() {
+        if (closed) {
+            skippedStages.incrementAndGet();
+            throw new CancellationException(owner + " left the screen");
+        }
+    }
+
+    // Wraps a CachedReads callback: results and failures arriving after close are dropped
+    public <T> CachedReads.Callback<T> bind(CachedReads.Callback<T> callback) {
+        return new CachedReads.Callback<T>() {
+            @Override
+            public void onResult(T result, boolean fromCache) {
+                if (dropped()) return;
+                callback.onResult(result, fromCache);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                if (dropped() || e instanceof CancellationException) return;
+                callback.onFailure(e);
+            }
+        };
+    }
+
+    // Same for a plain Task listener (queries, transactions whose UI feedback belongs to this view)
+    public <T> OnCompleteListener<T> bind(OnCompleteListener<T> listener) {
+        return task -> {
+            if (dropped()) return;
+            listener.onComplete(task);
+        };
+    }
+
+    // Feedback of a write (transaction, update): the write itself always completes, only the UI part is dropped
+    public <T> OnSuccessListener<T> bindSuccess(OnSuccessListener<T> listener) {
+        return result -> {
+            if (dropped()) return;
+            listener.onSuccess(result);
+        };
+    }
+
+    public OnFailureListener bindFailure(OnFailureListener listener) {
+        return e -> {
+            if (dropped()) return;
+            listener.onFailure(e);
+        };
+    }
+
+    // Convenience for a task started by this view
+    public <T> void onComplete(Task<T> task, OnCompleteListener<T> listener) {
+        task.addOnCompleteListener(bind(listener));
+    }
+
+    // Unregisters a listener (feed, snapshot listener) when the view goes away
+    public void onClose(Runnable action) {
+        if (closed) {
+            action.run();
+            removedListeners.incrementAndGet();
+            return;
+        }
+        closeActions.add(action);
+    }
+
+    public void close() {
+        if (closed) return;
+        closed = true;
+        for (Runnable action : closeActions) {
+            action.run();
+            removedListeners.incrementAndGet();
+        }
+        closeActions.clear();
+        Log.d(TAG, owner + " closed. " + stats() + " reads: " + SingleFlight.stats() + " " + DocumentReads.stats());
+    }
+
+    private boolean dropped() {
+        if (!closed) return false;
+        droppedResults.incrementAndGet();
+        return true;
+    }
+
+    public static String stats() {
+        return "droppedResults=" + droppedResults.get()
+                + " skippedStages=" + skippedStages.get()
+                + " removedListeners=" + removedListeners.get();
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.ewallet;
+
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Local unit tests for the closed-form interest accrual (no Firestore involved).
+ */
+public class LoanAccrualTest {
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final double DELTA = 1e-9;
+
+    private static final Date START = new Date(1_700_000_000_000L);
+
+    @Test
+    public void accruesSimpleInterestOverElapsedTime() {
+        // 1000 at 12% p.a. for a full year (365 days)
+        LoanAccrual loan = LoanAccrual.accrue(1000.0, 0.0, 0.12, START, new Date(START.getTime() + 365 * DAY_MS));
+
+        assertEquals(1000.0, loan.getPrincipal(), DELTA);
+        assertEquals(120.0, loan.getInterest(), DELTA);
+        assertEquals(1120.0, loan.getTotalOwed(), DELTA);
+    }
+
+    @Test
+    public void addsToInterestAlreadySettled() {
+        LoanAccrual loan = LoanAccrual.accrue(1000.0, 5.0, 0.12, START, new Date(START.getTime() + 365 * DAY_MS));
+
+        assertEquals(125.0, loan.getInterest(), DELTA);
+    }
+
+    @Test
+    public void roundsInterestToCents() {
+        // 100 * 0.12 / 365 = 0.03287... per day: shown as 0.03, stored unrounded
+        LoanAccrual loan = LoanAccrual.accrue(100.0, 0.0, 0.12, START, new Date(START.getTime() + DAY_MS));
+
+        assertEquals(0.03, loan.getInterest(), DELTA);
+        assertEquals(100.0 * 0.12 / 365, (Double) loan.toFields().get(LoanAccrual.FIELD_INTEREST), DELTA);
+    }
+
+    @Test
+    public void frequentTouchesDoNotLoseSubCentInterest() {
+        // 1000 at 12% p.a. accrues ~0.0023 per 10 minutes: under half a cent per touch
+        LoanAccrual once = LoanAccrual.accrue(1000.0, 0.0, 0.12, START, new Date(START.getTime() + DAY_MS));
+
+        double interest = 0.0;
+        Date last = START;
+        for (int touch = 1; touch <= 144; touch++) {
+            Date now = new Date(START.getTime() + touch * DAY_MS / 144);
+            interest = (Double) LoanAccrual.accrue(1000.0, interest, 0.12, last, now).toFields().get(LoanAccrual.FIELD_INTEREST);
+            last = now;
+        }
+
+        assertEquals(0.33, once.getInterest(), DELTA);
+        assertEquals(once.getInterest(), LoanAccrual.accrue(1000.0, interest, 0.12, last, last).getInterest(), DELTA);
+    }
+
+    @Test
+    public void repaymentSettlesRoundedInterestAndKeepsTheRemainder() {
+        // 0.03287... owed: paying the shown 0.03 leaves the remainder accruing, not lost or overpaid
+        LoanAccrual loan = LoanAccrual.accrue(100.0, 0.0, 0.12, START, new Date(START.getTime() + DAY_MS));
+
+        assertEquals(0.03, loan.interestPortionOf(100.03), DELTA);
+        LoanAccrual repaid = loan.withRepayment(100.03);
+        assertEquals(0.0, repaid.getPrincipal(), DELTA);
+        assertEquals(0.0, repaid.getTotalOwed(), DELTA);
+        assertEquals(100.0 * 0.12 / 365 - 0.03, (Double) repaid.toFields().get(LoanAccrual.FIELD_INTEREST), DELTA);
+    }
+
+    @Test
+    public void noInterestWithoutPrincipalOrAccrualTime() {
+        Date later = new Date(START.getTime() + 30 * DAY_MS);
+
+        assertEquals(0.0, LoanAccrual.accrue(0.0, 0.0, 0.12, START, later).getInterest(), DELTA);
+        // Documents written before accrual existed start accruing from 'now'
+        assertEquals(0.0, LoanAccrual.accrue(1000.0, 0.0, 0.12, null, later).getInterest(), DELTA);
+    }
+
+    @Test
+    public void clockGoingBackwardsDoesNotReduceInterest() {
+        LoanAccrual loan = LoanAccrual.accrue(1000.0, 2.0, 0.12, START, new Date(START.getTime() - DAY_MS));
+
+        assertEquals(2.0, loan.getInterest(), DELTA);
+    }
+
+    @Test
+    public void newLoanGrowsPrincipalAndKeepsInterest() {
+        LoanAccrual loan = LoanAccrual.accrue(1000.0, 10.0, 0.12, START, START).withLoan(250.0);
+
+        assertEquals(1250.0, loan.getPrincipal(), DELTA);
+        assertEquals(10.0, loan.getInterest(), DELTA);
+    }
+
+    @Test
+    public void repaymentSettlesInterestBeforePrincipal() {
+        LoanAccrual loan = LoanAccrual.accrue(1000.0, 30.0, 0.12, START, START);
+
+        assertEquals(20.0, loan.interestPortionOf(20.0), DELTA);
+        LoanAccrual partial = loan.withRepayment(20.0);
+        assertEquals(1000.0, partial.getPrincipal(), DELTA);
+        assertEquals(10.0, partial.getInterest(), DELTA);
+
+        assertEquals(30.0, loan.interestPortionOf(100.0), DELTA);
+        LoanAccrual both = loan.withRepayment(100.0);
+        assertEquals(930.0, both.getPrincipal(), DELTA);
+        assertEquals(0.0, both.getInterest(), DELTA);
+    }
+
+    @Test
+    public void overpaymentClearsTheLoan() {
+        LoanAccrual loan = LoanAccrual.accrue(100.0, 5.0, 0.12, START, START).withRepayment(500.0);
+
+        assertEquals(0.0, loan.getTotalOwed(), DELTA);
+    }
+
+    @Test
+    public void fieldsRestartAccrualFromNow() {
+        Date now = new Date(START.getTime() + 10 * DAY_MS);
+        Map<String, Object> fields = LoanAccrual.accrue(1000.0, 0.0, 0.12, START, now).toFields();
+
+        assertEquals(1000.0, (Double) fields.get(LoanAccrual.FIELD_PRINCIPAL), DELTA);
+        assertEquals(1000.0 * 0.12 * 10 / 365, (Double) fields.get(LoanAccrual.FIELD_INTEREST), DELTA); // Shown as 3.29
+        assertEquals(0.12, (Double) fields.get(LoanAccrual.FIELD_RATE), DELTA);
+        assertEquals(now, fields.get(LoanAccrual.FIELD_ACCRUED_AT));
+    }
+
+    @Test
+    public void newAccountsStartWithoutDebtAtTheDefaultRate() {
+        Map<String, Object> fields = LoanAccrual.initialFields(START);
+
+        assertEquals(0.0, (Double) fields.get(LoanAccrual.FIELD_PRINCIPAL), DELTA);
+        assertEquals(0.0, (Double) fields.get(LoanAccrual.FIELD_INTEREST), DELTA);
+        assertEquals(LoanAccrual.DEFAULT_ANNUAL_RATE, (Double) fields.get(LoanAccrual.FIELD_RATE), DELTA);
+        assertEquals(START, fields.get(LoanAccrual.FIELD_ACCRUED_AT));
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.ewallet;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Local unit tests for the recipient prefix tree: prefix matching and the frequency x recency ranking.
+ */
+public class RecipientTrieTest {
+
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+    private static final long NOW = 1_700_000_000_000L;
+
+    private static List<String> userIds(List<RecipientTrie.Entry> entries) {
+        List<String> userIds = new ArrayList<>();
+        for (RecipientTrie.Entry entry : entries) {
+            userIds.add(entry.userId);
+        }
+        return userIds;
+    }
+
+    @Test
+    public void suggestsOnlyMatchingPrefixes() {
+        RecipientTrie trie = new RecipientTrie();
+        trie.record("alice", "uid-alice", NOW);
+        trie.record("alex", "uid-alex", NOW - DAY_MS);
+        trie.record("bob", "uid-bob", NOW);
+        trie.record("Alan", "uid-alan", NOW);
+
+        assertEquals(Arrays.asList("alice", "alex"), userIds(trie.suggest("al", 10, NOW)));
+        assertEquals(Arrays.asList("Alan"), userIds(trie.suggest("A", 10, NOW))); // Case-sensitive
+        assertEquals(Arrays.asList("alice"), userIds(trie.suggest("alice", 10, NOW)));
+        assertTrue(trie.suggest("alicia", 10, NOW).isEmpty());
+        assertTrue(trie.suggest("z", 10, NOW).isEmpty());
+    }
+
+    @Test
+    public void recentPayeeBeatsAnOldFrequentOne() {
+        RecipientTrie trie = new RecipientTrie();
+        // Four transfers 120 days ago: 4 x 0.5^4 = 0.25
+        for (int i = 0; i < 4; i++) {
+            trie.record("bob", "uid-bob", NOW - 120 * DAY_MS);
+        }
+        // One transfer yesterday: about 0.98
+        trie.record("bobby", "uid-bobby", NOW - DAY_MS);
+
+        assertEquals(Arrays.asList("bobby", "bob"), userIds(trie.suggest("bob", 10, NOW)));
+    }
+
+    @Test
+    public void frequencyWinsAtTheSameAge() {
+        RecipientTrie trie = new RecipientTrie();
+        trie.record("carol", "uid-carol", NOW);
+        trie.record("carl", "uid-carl", NOW);
+        trie.record("carl", "uid-carl", NOW);
+
+        assertEquals(Arrays.asList("carl", "carol"), userIds(trie.suggest("car", 10, NOW)));
+    }
+
+    @Test
+    public void emptyPrefixReturnsTheBestOverallUpToTheLimit() {
+        RecipientTrie trie = new RecipientTrie();
+        trie.record("dave", "uid-dave", NOW - 10 * DAY_MS);
+        trie.record("erin", "uid-erin", NOW);
+        trie.record("frank", "uid-frank", NOW - 60 * DAY_MS);
+
+        assertEquals(Arrays.asList("erin", "dave"), userIds(trie.suggest("", 2, NOW)));
+        assertEquals(3, trie.suggest("", 10, NOW).size());
+    }
+
+    @Test
+    public void repeatedTransfersKeepOneEntryAndTheLatestTime() {
+        RecipientTrie trie = new RecipientTrie();
+        trie.record("gina", "uid-gina", NOW);
+        trie.record("gina", "uid-gina", NOW - 90 * DAY_MS); // Older transfer recorded later
+        trie.record("hank", "uid-hank", NOW - DAY_MS);
+        trie.record("hank", "uid-hank", NOW - DAY_MS);
+
+        assertEquals(2, trie.size());
+        // Same count; gina's latest transfer is the newer one
+        assertEquals(Arrays.asList("gina", "hank"), userIds(trie.suggest("", 10, NOW)));
+    }
+
+    @Test
+    public void uidLookupIsExact() {
+        RecipientTrie trie = new RecipientTrie();
+        trie.record("ivan", "uid-ivan", NOW);
+
+        assertEquals("uid-ivan", trie.uidOf("ivan"));
+        assertNull(trie.uidOf("iva"));
+        assertNull(trie.uidOf("ivana"));
+    }
+
+    @Test
+    public void incompleteTransfersAreIgnored() {
+        RecipientTrie trie = new RecipientTrie();
+        trie.record(null, "uid-x", NOW);
+        trie.record("", "uid-y", NOW);
+        trie.record("judy", null, NOW);
+
+        assertEquals(0, trie.size());
+        assertTrue(trie.suggest("", 10, NOW).isEmpty());
+    }
+}
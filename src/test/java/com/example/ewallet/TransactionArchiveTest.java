@@ -0,0 +1,117 @@
+package com.example.ewallet;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Local unit tests for the archive blob format (encode/decode round trip) and the month helpers.
+ */
+public class TransactionArchiveTest {
+
+    private static final Date MONTH_START = new Date(1_759_276_800_000L); // 2025-10-01T00:00:00Z
+
+    private static LedgerEntry entry(String id, String type, double amount, String description, long offsetMs,
+                                     Double principalPaid) {
+        return new LedgerEntry(id, type, amount, description, new Date(MONTH_START.getTime() + offsetMs), principalPaid);
+    }
+
+    private static void assertSameEntry(LedgerEntry expected, LedgerEntry actual) {
+        assertEquals(expected.id, actual.id);
+        assertEquals(expected.type, actual.type);
+        assertEquals(expected.amount, actual.amount, 0.0);
+        assertEquals(expected.description, actual.description);
+        assertEquals(expected.timestamp, actual.timestamp);
+        assertEquals(expected.principalPaid, actual.principalPaid);
+    }
+
+    @Test
+    public void roundTripKeepsEveryField() throws IOException {
+        List<LedgerEntry> entries = new ArrayList<>();
+        entries.add(entry("a1", "Income", 100.00, "Salary", 0L, null));
+        entries.add(entry("b2", "Loan Taken", 250.50, null, 3_600_000L, null));
+        entries.add(entry("c3", "Loan Repayment", 60.25, "Repay", 86_400_000L, 55.10));
+        entries.add(entry("d4", "Transfer (Sent)", 0.01, "Dinner \u00e9 \u20ac", 30L * 86_400_000L - 1, null));
+        entries.add(entry("e5", "Transfer (Received)", 12_345.67, "Rent", 1L, null));
+        entries.add(entry("f6", "Cashback", 3.30, "Unknown type", 42L, null)); // Stored by name
+
+        List<LedgerEntry> decoded = TransactionArchive.decode(TransactionArchive.encode(entries, MONTH_START), MONTH_START);
+
+        assertEquals(entries.size(), decoded.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertSameEntry(entries.get(i), decoded.get(i));
+        }
+    }
+
+    @Test
+    public void emptyMonthRoundTrips() throws IOException {
+        byte[] data = TransactionArchive.encode(Collections.emptyList(), MONTH_START);
+
+        assertTrue(TransactionArchive.decode(data, MONTH_START).isEmpty());
+    }
+
+    @Test
+    public void amountsAreStoredInWholeCents() throws IOException {
+        // 0.1 + 0.2 is not exactly 0.3 as a double; the archive keeps the cent value
+        List<LedgerEntry> entries = Collections.singletonList(entry("a1", "Income", 0.1 + 0.2, null, 0L, null));
+
+        List<LedgerEntry> decoded = TransactionArchive.decode(TransactionArchive.encode(entries, MONTH_START), MONTH_START);
+
+        assertEquals(0.30, decoded.get(0).amount, 0.0);
+    }
+
+    @Test
+    public void fullPartStaysCompact() throws IOException {
+        List<LedgerEntry> entries = new ArrayList<>();
+        for (int i = 0; i < TransactionArchive.ENTRIES_PER_PART; i++) {
+            // Firestore-style 20 character ids
+            String id = String.format("%020d", i * 7_919L);
+            entries.add(entry(id, i % 2 == 0 ? "Transfer (Sent)" : "Income", 5.00 + i % 100, "Groceries",
+                    i * 600_000L, null));
+        }
+
+        byte[] data = TransactionArchive.encode(entries, MONTH_START);
+
+        assertTrue("Encoded " + data.length + " bytes", data.length < 1_048_576 / 4);
+        assertEquals(entries.size(), TransactionArchive.decode(data, MONTH_START).size());
+    }
+
+    @Test
+    public void corruptDataFailsLoudly() {
+        byte[] data = TransactionArchive.encode(
+                Collections.singletonList(entry("a1", "Income", 1.00, null, 0L, null)), MONTH_START);
+        byte[] truncated = new byte[data.length / 2];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+
+        try {
+            TransactionArchive.decode(truncated, MONTH_START);
+            fail("Decoded a truncated archive");
+        } catch (IOException expected) {
+            // Never a silently shorter month
+        }
+    }
+
+    @Test
+    public void monthStartIsTheFirstUtcInstant() {
+        Date lastInstant = new Date(MONTH_START.getTime() + 31L * 86_400_000L - 1); // 2025-10-31T23:59:59.999Z
+
+        assertEquals(MONTH_START, TransactionArchive.monthStart(MONTH_START));
+        assertEquals(MONTH_START, TransactionArchive.monthStart(lastInstant));
+        assertEquals(new Date(lastInstant.getTime() + 1),
+                TransactionArchive.monthStart(new Date(lastInstant.getTime() + 1)));
+    }
+
+    @Test
+    public void laterPartsGetASuffix() {
+        assertEquals("2025-10", TransactionArchive.partId("2025-10", 0));
+        assertEquals("2025-10.2", TransactionArchive.partId("2025-10", 2));
+    }
+}